@@ -0,0 +1,51 @@
+package com.aws.ingest.benchmark;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Shared setup for the benchmarks
+ */
+public final class BenchmarkSupport
+{
+    public static final String INPUT_BUCKET = "input";
+    public static final String PROCESSED_BUCKET = "processed";
+    public static final String CONFIG_BUCKET = "config";
+
+    public static final long MEGABYTE = 1024L * 1024L;
+
+    private BenchmarkSupport()
+    {
+    }
+
+    /**
+     * Raises the log level so per part log messages are not measured
+     */
+    public static void quietLogging()
+    {
+        Logger.getRootLogger().setLevel(Level.WARN);
+    }
+
+    /**
+     * Generates CSV data into a local S3 object
+     * @param s3 the local S3
+     * @param bucket the bucket
+     * @param key the key
+     * @param dataType the data type to generate
+     * @param sizeMB the size in megabytes
+     * @param seed the random seed
+     * @return the number of rows generated
+     * @throws IOException thrown on failure to generate
+     */
+    public static long generateObject(LocalObjectStore s3, String bucket, String key,
+                                      String dataType, long sizeMB, long seed) throws IOException
+    {
+        try (OutputStream out = s3.createObject(bucket, key))
+        {
+            return DataGenerator.generate(dataType, out, sizeMB * MEGABYTE, seed);
+        }
+    }
+}
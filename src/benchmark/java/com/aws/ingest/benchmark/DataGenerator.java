@@ -0,0 +1,243 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.exception.IngestException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Generates deterministic synthetic customer and transaction CSV data
+ * matching the sample input configuration, sized in bytes so inputs
+ * from 1MB to several GB can be produced. A share of the values need
+ * CSV quoting, addresses containing commas and descriptions containing
+ * quotes, so the quoted field paths are exercised as well.
+ */
+public final class DataGenerator
+{
+    public static final String CUSTOMER = "customer";
+    public static final String TRANSACTION = "transaction";
+
+    /**
+     * The input configuration the generated data conforms to
+     */
+    public static final String INPUT_CONFIG = "{\n" +
+            "  \"version\": \"1.0.0\",\n" +
+            "  \"dataTypes\": [\n" +
+            "    {\n" +
+            "      \"name\": \"customer\",\n" +
+            "      \"enabled\": true,\n" +
+            "      \"inputColumns\": [\"customer_id\", \"title\", \"first_name\", \"last_name\", \"dob\",\n" +
+            "        \"address1\", \"address2\", \"suburb\", \"state\", \"postcode\"],\n" +
+            "      \"outputColumns\": [\"customer_id\", \"address1\", \"postcode\", \"dob\"]\n" +
+            "    },\n" +
+            "    {\n" +
+            "      \"name\": \"transaction\",\n" +
+            "      \"enabled\": true,\n" +
+            "      \"inputColumns\": [\"transaction_id\", \"account_id\", \"customer_id\",\n" +
+            "        \"transaction_date\", \"description\", \"amount\"],\n" +
+            "      \"outputColumns\": [\"transaction_id\", \"account_id\", \"customer_id\",\n" +
+            "        \"transaction_date\", \"amount\"]\n" +
+            "    }\n" +
+            "  ]\n" +
+            "}";
+
+    private static final String CUSTOMER_HEADER =
+            "customer_id,title,first_name,last_name,dob,address1,address2,suburb,state,postcode\r\n";
+
+    private static final String TRANSACTION_HEADER =
+            "transaction_id,account_id,customer_id,transaction_date,description,amount\r\n";
+
+    private static final String [] TITLES = { "Mr", "Mrs", "Ms", "Miss", "Dr" };
+
+    private static final String [] FIRST_NAMES = { "Josh", "Amelia", "Oliver", "Charlotte", "Jack",
+            "Isla", "William", "Mia", "Noah", "Olivia", "Thomas", "Ava", "José", "Zoë" };
+
+    private static final String [] LAST_NAMES = { "Passenger", "Smith", "Jones", "Williams", "Brown",
+            "Wilson", "Taylor", "Nguyen", "O'Brien", "Kelly", "Martin", "Anderson" };
+
+    private static final String [] STREETS = { "Jones St", "George St", "Queen St", "Main Rd",
+            "Beach Pde", "Station St", "Church St", "Park Ave" };
+
+    private static final String [] SUBURBS = { "Bardon", "Paddington", "Fitzroy", "Glebe",
+            "Subiaco", "Sandy Bay", "Manly", "Norwood" };
+
+    private static final String [] STATES = { "QLD", "NSW", "VIC", "WA", "SA", "TAS", "ACT", "NT" };
+
+    private static final String [] MERCHANTS = { "Coffee Shop", "Supermarket", "Fuel", "Pharmacy",
+            "Hardware", "Bakery", "Book Store", "Transfer" };
+
+    private DataGenerator()
+    {
+    }
+
+    /**
+     * Generates CSV data for a data type, including a header record
+     * @param dataType the data type, customer or transaction
+     * @param out the output to write to
+     * @param targetBytes the size to generate, the last row may take the output slightly past this
+     * @param seed the random seed
+     * @return the number of rows generated excluding the header
+     * @throws IOException thrown on failure to write
+     */
+    public static long generate(String dataType, OutputStream out, long targetBytes, long seed) throws IOException
+    {
+        boolean customer = isCustomer(dataType);
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder row = new StringBuilder(256);
+
+        OutputStream buffered = new BufferedOutputStream(out, 1024 * 1024);
+
+        byte [] header = (customer ? CUSTOMER_HEADER : TRANSACTION_HEADER).getBytes(StandardCharsets.UTF_8);
+        buffered.write(header);
+
+        long written = header.length;
+        long rowCount = 0L;
+
+        while (written < targetBytes)
+        {
+            row.setLength(0);
+            rowCount++;
+
+            if (customer)
+            {
+                customerRow(random, rowCount, row);
+            }
+            else
+            {
+                transactionRow(random, rowCount, row);
+            }
+
+            byte [] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+            buffered.write(bytes);
+            written += bytes.length;
+        }
+
+        buffered.flush();
+
+        return rowCount;
+    }
+
+    /**
+     * Generates CSV data for a data type into a byte array
+     * @param dataType the data type, customer or transaction
+     * @param targetBytes the size to generate, at most 1GB
+     * @param seed the random seed
+     * @return the generated data
+     */
+    public static byte [] generateBytes(String dataType, int targetBytes, long seed)
+    {
+        if (targetBytes > 1024 * 1024 * 1024)
+        {
+            throw new IngestException("In memory data is limited to 1GB, generate larger data into InMemoryS3");
+        }
+
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(targetBytes + 1024);
+            generate(dataType, out, targetBytes, seed);
+            return out.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IngestException("Failed to generate data", e);
+        }
+    }
+
+    private static boolean isCustomer(String dataType)
+    {
+        if (CUSTOMER.equals(dataType))
+        {
+            return true;
+        }
+
+        if (TRANSACTION.equals(dataType))
+        {
+            return false;
+        }
+
+        throw new IngestException("Unknown data type: " + dataType);
+    }
+
+    private static void customerRow(SplittableRandom random, long id, StringBuilder row)
+    {
+        row.append(id).append(',')
+            .append(pick(random, TITLES)).append(',')
+            .append(pick(random, FIRST_NAMES)).append(',')
+            .append(pick(random, LAST_NAMES)).append(',')
+            .append(1930 + random.nextInt(75)).append('-')
+            .append(twoDigits(1 + random.nextInt(12))).append('-')
+            .append(twoDigits(1 + random.nextInt(28))).append(',');
+
+        /**
+         * A quarter of addresses have a lot number and need quoting
+         */
+        if (random.nextInt(4) == 0)
+        {
+            row.append("\"Lot ").append(1 + random.nextInt(200)).append(", ");
+            row.append(1 + random.nextInt(300)).append(' ').append(pick(random, STREETS)).append('"');
+        }
+        else
+        {
+            row.append(1 + random.nextInt(300)).append(' ').append(pick(random, STREETS));
+        }
+
+        row.append(',');
+
+        if (random.nextInt(3) == 0)
+        {
+            row.append("Apartment ").append(1 + random.nextInt(50));
+        }
+
+        row.append(',')
+            .append(pick(random, SUBURBS)).append(',')
+            .append(pick(random, STATES)).append(',')
+            .append(1000 + random.nextInt(8000)).append("\r\n");
+    }
+
+    private static void transactionRow(SplittableRandom random, long id, StringBuilder row)
+    {
+        row.append(id).append(',')
+            .append(10000000 + random.nextInt(90000000)).append(',')
+            .append(1 + random.nextInt(1000000)).append(',')
+            .append(2015 + random.nextInt(6)).append('-')
+            .append(twoDigits(1 + random.nextInt(12))).append('-')
+            .append(twoDigits(1 + random.nextInt(28))).append('T')
+            .append(twoDigits(random.nextInt(24))).append(':')
+            .append(twoDigits(random.nextInt(60))).append(":00Z,");
+
+        /**
+         * One in ten descriptions contains quotes
+         */
+        if (random.nextInt(10) == 0)
+        {
+            row.append("\"Payment \"\"").append(pick(random, MERCHANTS)).append("\"\"\"");
+        }
+        else
+        {
+            row.append(pick(random, MERCHANTS)).append(' ').append(random.nextInt(1000));
+        }
+
+        row.append(',');
+
+        if (random.nextInt(5) == 0)
+        {
+            row.append('-');
+        }
+
+        row.append(random.nextInt(5000)).append('.').append(twoDigits(random.nextInt(100))).append("\r\n");
+    }
+
+    private static String pick(SplittableRandom random, String [] values)
+    {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String twoDigits(int value)
+    {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+}
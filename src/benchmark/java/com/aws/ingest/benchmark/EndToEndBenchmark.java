@@ -0,0 +1,144 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.lambda.SQSBatchResponse;
+import com.aws.ingest.lambda.input.InputLambda;
+import com.aws.ingest.manifest.Manifest;
+import com.aws.ingest.manifest.ManifestEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end to end manifest processing through InputLambda against
+ * the in-memory S3: download, MD5, transform, upload and manifest output.
+ * The transform mode selects the reader based parser, the byte level
+ * projection engine or the chunked parallel transform.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8", "-Xmx4g" })
+public class EndToEndBenchmark
+{
+    private static final String MANIFEST_KEY = "mytestsystem/benchmark/manifest.json";
+
+    /**
+     * The size of each input file in megabytes
+     */
+    @Param({ "1", "64" })
+    public long sizeMB;
+
+    @Param({ "1", "4" })
+    public int entries;
+
+    @Param({ "parser", "projector", "chunked" })
+    public String mode;
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final LocalContext context = new LocalContext(false);
+
+    private SQSEvent event;
+    private long inputLength;
+    private long inputRows;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        BenchmarkSupport.quietLogging();
+
+        System.setProperty("PROCESSED_BUCKET", BenchmarkSupport.PROCESSED_BUCKET);
+        System.setProperty("PROCESSED_KMS_ID", "local");
+        System.setProperty("CONFIG_BUCKET", BenchmarkSupport.CONFIG_BUCKET);
+        System.setProperty("PUBLIC_KEY", "None");
+        System.setProperty("PRIVATE_KEY", "None");
+        System.setProperty("BYTE_PROJECTION", Boolean.toString("projector".equals(mode)));
+        System.setProperty("METRICS_NAMESPACE", metrics ? "IngestPipeline" : "None");
+
+        if ("chunked".equals(mode))
+        {
+            System.setProperty("CHUNKED_TRANSFORM_MB", "1");
+        }
+        else
+        {
+            System.clearProperty("CHUNKED_TRANSFORM_MB");
+        }
+
+        s3.putText(BenchmarkSupport.CONFIG_BUCKET, "config/input_config.json", DataGenerator.INPUT_CONFIG);
+
+        Manifest manifest = new Manifest();
+        manifest.setCreatedDate("2020-01-09T12:55:31Z");
+        manifest.setSourceSystem("mytestsystem");
+        manifest.setKey(MANIFEST_KEY);
+
+        for (int i = 0; i < entries; i++)
+        {
+            String dataType = i % 2 == 0 ? DataGenerator.CUSTOMER : DataGenerator.TRANSACTION;
+
+            ManifestEntry entry = new ManifestEntry();
+            entry.setDataType(dataType);
+            entry.setFileName(dataType + "-" + i + ".csv");
+
+            String key = manifest.getKeyForEntry(entry);
+            long rows = BenchmarkSupport.generateObject(s3, BenchmarkSupport.INPUT_BUCKET, key, dataType, sizeMB, i);
+            entry.setRowCount(rows);
+
+            inputRows += rows;
+            inputLength += s3.getLength(BenchmarkSupport.INPUT_BUCKET, key);
+
+            manifest.getManifestEntries().add(entry);
+        }
+
+        s3.putText(BenchmarkSupport.INPUT_BUCKET, MANIFEST_KEY, Manifest.toJSON(manifest));
+
+        SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setBody(s3Event(BenchmarkSupport.INPUT_BUCKET, MANIFEST_KEY));
+
+        event = new SQSEvent();
+        event.setRecords(Collections.singletonList(message));
+    }
+
+    @Benchmark
+    public void processManifest(ThroughputCounters counters)
+    {
+        SQSBatchResponse response = new InputLambda(s3).handleRequest(event, context);
+
+        if (!response.getBatchItemFailures().isEmpty())
+        {
+            throw new IngestException("Failed to process manifest");
+        }
+
+        counters.record(inputLength, inputRows);
+    }
+
+    /**
+     * Builds the body of an S3 object created notification
+     * @param bucket the bucket
+     * @param key the key
+     * @return the notification JSON
+     */
+    static String s3Event(String bucket, String key)
+    {
+        return "{\"Records\":[{\"eventSource\":\"aws:s3\",\"eventName\":\"ObjectCreated:Put\"," +
+                "\"s3\":{\"bucket\":{\"name\":\"" + bucket + "\"},\"object\":{\"key\":\"" + key + "\"}}}]}";
+    }
+}
@@ -0,0 +1,326 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Wraps a local S3 stand in to inject latency, slow calls and 503 SlowDown
+ * errors into chosen operations, used to see how the pipeline behaves when
+ * S3 is slow or throttling. Faults are injected before the call reaches the
+ * wrapped client so a failed call has no effect.
+ */
+public class FaultInjectingS3 extends AbstractAmazonS3
+{
+    /**
+     * The operations faults can be injected into
+     */
+    public enum Operation
+    {
+        GET_OBJECT,
+        GET_METADATA,
+        PUT_OBJECT,
+        DELETE_OBJECT,
+        LIST_OBJECTS,
+        INITIATE_UPLOAD,
+        UPLOAD_PART,
+        COMPLETE_UPLOAD,
+        ABORT_UPLOAD
+    }
+
+    private static final int OPERATIONS = Operation.values().length;
+
+    private final AmazonS3 s3;
+
+    /**
+     * Per operation settings indexed by ordinal
+     */
+    private final long [] latencyMillis = new long[OPERATIONS];
+    private final double [] slowRate = new double[OPERATIONS];
+    private final long [] slowMillis = new long[OPERATIONS];
+    private final double [] errorRate = new double[OPERATIONS];
+    private final AtomicInteger [] failNext = new AtomicInteger[OPERATIONS];
+
+    /**
+     * Per operation counters indexed by ordinal
+     */
+    private final AtomicLongArray calls = new AtomicLongArray(OPERATIONS);
+    private final AtomicLongArray errors = new AtomicLongArray(OPERATIONS);
+    private final AtomicLongArray slowCalls = new AtomicLongArray(OPERATIONS);
+
+    /**
+     * Wraps a client
+     * @param s3 the client to pass calls on to
+     */
+    public FaultInjectingS3(AmazonS3 s3)
+    {
+        this.s3 = s3;
+
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            failNext[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Delays every call to an operation
+     * @param operation the operation
+     * @param millis the delay in milliseconds
+     * @return the client
+     */
+    public FaultInjectingS3 withLatency(Operation operation, long millis)
+    {
+        latencyMillis[operation.ordinal()] = millis;
+        return this;
+    }
+
+    /**
+     * Delays a random fraction of calls to an operation, simulating tail latency
+     * @param operation the operation
+     * @param rate the fraction of calls to delay between 0 and 1
+     * @param millis the extra delay in milliseconds
+     * @return the client
+     */
+    public FaultInjectingS3 withSlowCalls(Operation operation, double rate, long millis)
+    {
+        slowRate[operation.ordinal()] = rate;
+        slowMillis[operation.ordinal()] = millis;
+        return this;
+    }
+
+    /**
+     * Fails a random fraction of calls to an operation with 503 SlowDown
+     * @param operation the operation
+     * @param rate the fraction of calls to fail between 0 and 1
+     * @return the client
+     */
+    public FaultInjectingS3 withErrorRate(Operation operation, double rate)
+    {
+        errorRate[operation.ordinal()] = rate;
+        return this;
+    }
+
+    /**
+     * Fails the next calls to an operation with 503 SlowDown
+     * @param operation the operation
+     * @param count the number of calls to fail
+     * @return the client
+     */
+    public FaultInjectingS3 failNext(Operation operation, int count)
+    {
+        failNext[operation.ordinal()].set(count);
+        return this;
+    }
+
+    /**
+     * Removes every fault, counters are kept
+     * @return the client
+     */
+    public FaultInjectingS3 clearFaults()
+    {
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            latencyMillis[i] = 0L;
+            slowRate[i] = 0.0;
+            slowMillis[i] = 0L;
+            errorRate[i] = 0.0;
+            failNext[i].set(0);
+        }
+
+        return this;
+    }
+
+    public long getCallCount(Operation operation)
+    {
+        return calls.get(operation.ordinal());
+    }
+
+    public long getInjectedErrorCount(Operation operation)
+    {
+        return errors.get(operation.ordinal());
+    }
+
+    public long getSlowCallCount(Operation operation)
+    {
+        return slowCalls.get(operation.ordinal());
+    }
+
+    /**
+     * The errors injected across all operations
+     * @return the number of errors
+     */
+    public long getInjectedErrorCount()
+    {
+        long total = 0L;
+
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            total += errors.get(i);
+        }
+
+        return total;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request)
+    {
+        inject(Operation.GET_METADATA);
+        return s3.getObjectMetadata(request);
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucket, String key)
+    {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucket, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request)
+    {
+        inject(Operation.GET_OBJECT);
+        return s3.getObject(request);
+    }
+
+    @Override
+    public S3Object getObject(String bucket, String key)
+    {
+        return getObject(new GetObjectRequest(bucket, key));
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request)
+    {
+        inject(Operation.PUT_OBJECT);
+        return s3.putObject(request);
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucket, String key, String content)
+    {
+        byte [] data = content.getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        return putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(data), metadata));
+    }
+
+    @Override
+    public void deleteObject(DeleteObjectRequest request)
+    {
+        inject(Operation.DELETE_OBJECT);
+        s3.deleteObject(request.getBucketName(), request.getKey());
+    }
+
+    @Override
+    public void deleteObject(String bucket, String key)
+    {
+        deleteObject(new DeleteObjectRequest(bucket, key));
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request)
+    {
+        inject(Operation.LIST_OBJECTS);
+        return s3.listObjectsV2(request);
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request)
+    {
+        inject(Operation.INITIATE_UPLOAD);
+        return s3.initiateMultipartUpload(request);
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request)
+    {
+        inject(Operation.UPLOAD_PART);
+        return s3.uploadPart(request);
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request)
+    {
+        inject(Operation.COMPLETE_UPLOAD);
+        return s3.completeMultipartUpload(request);
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request)
+    {
+        inject(Operation.ABORT_UPLOAD);
+        s3.abortMultipartUpload(request);
+    }
+
+    /**
+     * Applies the configured latency and errors to a call
+     * @param operation the operation called
+     */
+    private void inject(Operation operation)
+    {
+        int index = operation.ordinal();
+        calls.incrementAndGet(index);
+
+        long delay = latencyMillis[index];
+
+        if (slowRate[index] > 0.0 && ThreadLocalRandom.current().nextDouble() < slowRate[index])
+        {
+            slowCalls.incrementAndGet(index);
+            delay += slowMillis[index];
+        }
+
+        if (delay > 0L)
+        {
+            try
+            {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AmazonServiceException("Interrupted", e);
+            }
+        }
+
+        boolean fail = failNext[index].getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0 ||
+                (errorRate[index] > 0.0 && ThreadLocalRandom.current().nextDouble() < errorRate[index]);
+
+        if (fail)
+        {
+            errors.incrementAndGet(index);
+            throw slowDown();
+        }
+    }
+
+    private static AmazonServiceException slowDown()
+    {
+        AmazonServiceException e = new AmazonServiceException("Please reduce your request rate.");
+        e.setErrorCode("SlowDown");
+        e.setErrorType(AmazonServiceException.ErrorType.Service);
+        e.setStatusCode(503);
+        e.setServiceName("Amazon S3");
+        return e;
+    }
+}
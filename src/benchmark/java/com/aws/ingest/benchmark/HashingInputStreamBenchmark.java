@@ -0,0 +1,89 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.io.HashAlgorithm;
+import com.aws.ingest.io.HashingInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of computing several hashes in a single pass
+ * with HashingInputStream
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8", "-Xmx2g" })
+public class HashingInputStreamBenchmark
+{
+    /**
+     * Comma separated algorithms to compute
+     */
+    @Param({ "MD5", "SHA256", "CRC32C", "MD5,SHA256,CRC32C" })
+    public String algorithms;
+
+    /**
+     * The size of each read, 1 uses single byte reads
+     */
+    @Param({ "1", "8192" })
+    public int readSize;
+
+    @Param({ "64" })
+    public int sizeMB;
+
+    private byte [] data;
+    private HashAlgorithm [] hashAlgorithms;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        data = DataGenerator.generateBytes(DataGenerator.CUSTOMER, sizeMB * 1024 * 1024, 42L);
+        hashAlgorithms = Arrays.stream(algorithms.split(",")).map(HashAlgorithm::valueOf).toArray(HashAlgorithm[]::new);
+    }
+
+    @Benchmark
+    public byte [] read(ThroughputCounters counters) throws IOException
+    {
+        HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(data), hashAlgorithms);
+
+        if (readSize == 1)
+        {
+            while (in.read() != -1)
+            {
+                /**
+                 * Consume a byte at a time
+                 */
+            }
+        }
+        else
+        {
+            byte [] buffer = new byte[readSize];
+
+            while (in.read(buffer, 0, buffer.length) != -1)
+            {
+                /**
+                 * Consume a buffer at a time
+                 */
+            }
+        }
+
+        counters.record(data.length, 0L);
+        return in.getDigest();
+    }
+}
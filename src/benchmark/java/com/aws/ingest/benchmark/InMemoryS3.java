@@ -0,0 +1,567 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local in-memory stand in for S3 that supports the operations the
+ * pipeline uses: whole and ranged GETs with ETag constraints, metadata
+ * lookups, PUTs, deletes, listings and multipart uploads. Objects are held as a list of
+ * chunks so objects larger than 2GB can be stored given enough heap.
+ * Part MD5s are not validated so the stand in adds as little cost
+ * as possible to the code being measured.
+ */
+public class InMemoryS3 extends AbstractAmazonS3 implements LocalObjectStore
+{
+    /**
+     * The chunk size used when objects are written through createObject
+     */
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte []>> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong eTagSequence = new AtomicLong();
+
+    /**
+     * An immutable stored object
+     */
+    private static class StoredObject
+    {
+        private final List<byte []> chunks;
+        private final long [] offsets;
+        private final long length;
+        private final String eTag;
+
+        private StoredObject(List<byte []> chunks, String eTag)
+        {
+            this.chunks = chunks;
+            this.offsets = new long[chunks.size()];
+            this.eTag = eTag;
+
+            long offset = 0L;
+
+            for (int i = 0; i < chunks.size(); i++)
+            {
+                offsets[i] = offset;
+                offset += chunks.get(i).length;
+            }
+
+            this.length = offset;
+        }
+
+        /**
+         * Opens a stream over a range of the object
+         * @param start the first byte
+         * @param end the last byte exclusive
+         * @return the stream
+         */
+        private InputStream open(long start, long end)
+        {
+            return new ChunkInputStream(this, start, end);
+        }
+    }
+
+    /**
+     * Reads a range of a chunked object without copying it
+     */
+    private static class ChunkInputStream extends InputStream
+    {
+        private final StoredObject object;
+        private long position;
+        private final long end;
+        private int chunk;
+
+        private ChunkInputStream(StoredObject object, long start, long end)
+        {
+            this.object = object;
+            this.position = start;
+            this.end = end;
+
+            int found = Arrays.binarySearch(object.offsets, start);
+            this.chunk = found >= 0 ? found : -found - 2;
+        }
+
+        @Override
+        public int read()
+        {
+            byte [] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+
+            if (position >= end)
+            {
+                return -1;
+            }
+
+            while (position - object.offsets[chunk] >= object.chunks.get(chunk).length)
+            {
+                chunk++;
+            }
+
+            byte [] data = object.chunks.get(chunk);
+            int offset = (int) (position - object.offsets[chunk]);
+            int count = (int) Math.min(Math.min(len, data.length - offset), end - position);
+            System.arraycopy(data, offset, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+
+    /**
+     * Stores text as an object
+     * @param bucket the bucket
+     * @param key the key
+     * @param content the UTF-8 content
+     */
+    @Override
+    public void putText(String bucket, String key, String content)
+    {
+        store(bucket, key, singletonChunk(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Opens an output stream that stores an object when closed,
+     * used to generate large objects without a contiguous copy
+     * @param bucket the bucket
+     * @param key the key
+     * @return the output stream
+     */
+    @Override
+    public OutputStream createObject(String bucket, String key)
+    {
+        return new OutputStream()
+        {
+            private final List<byte []> chunks = new ArrayList<>();
+            private byte [] current = new byte[CHUNK_SIZE];
+            private int length = 0;
+            private boolean closed = false;
+
+            @Override
+            public void write(int b)
+            {
+                if (length == current.length)
+                {
+                    nextChunk();
+                }
+
+                current[length++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte [] b, int off, int len)
+            {
+                while (len > 0)
+                {
+                    if (length == current.length)
+                    {
+                        nextChunk();
+                    }
+
+                    int count = Math.min(len, current.length - length);
+                    System.arraycopy(b, off, current, length, count);
+                    length += count;
+                    off += count;
+                    len -= count;
+                }
+            }
+
+            @Override
+            public void close()
+            {
+                if (closed)
+                {
+                    return;
+                }
+
+                closed = true;
+                chunks.add(Arrays.copyOf(current, length));
+                current = null;
+                store(bucket, key, chunks);
+            }
+
+            private void nextChunk()
+            {
+                chunks.add(current);
+                current = new byte[CHUNK_SIZE];
+                length = 0;
+            }
+        };
+    }
+
+    /**
+     * Reads a whole object into a byte array
+     * @param bucket the bucket
+     * @param key the key
+     * @return the object content
+     */
+    @Override
+    public byte [] getBytes(String bucket, String key)
+    {
+        StoredObject object = getStoredObject(bucket, key);
+
+        try
+        {
+            return IOUtils.toByteArray(object.open(0L, object.length));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a whole object as UTF-8 text
+     * @param bucket the bucket
+     * @param key the key
+     * @return the object content
+     */
+    @Override
+    public String getText(String bucket, String key)
+    {
+        return new String(getBytes(bucket, key), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Fetches the length of an object
+     * @param bucket the bucket
+     * @param key the key
+     * @return the length in bytes
+     */
+    @Override
+    public long getLength(String bucket, String key)
+    {
+        return getStoredObject(bucket, key).length;
+    }
+
+    /**
+     * Removes all objects and uploads
+     */
+    public void clear()
+    {
+        objects.clear();
+        uploads.clear();
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request)
+    {
+        return metadata(getStoredObject(request.getBucketName(), request.getKey()), 0L, -1L);
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucket, String key)
+    {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucket, key));
+    }
+
+    /**
+     * Gets an object or a range of an object, returning null
+     * when an ETag constraint is not met
+     * @param request the request
+     * @return the object or null
+     */
+    @Override
+    public S3Object getObject(GetObjectRequest request)
+    {
+        StoredObject object = getStoredObject(request.getBucketName(), request.getKey());
+
+        if (!request.getMatchingETagConstraints().isEmpty() &&
+            !request.getMatchingETagConstraints().contains(object.eTag))
+        {
+            return null;
+        }
+
+        if (request.getNonmatchingETagConstraints().contains(object.eTag))
+        {
+            return null;
+        }
+
+        long start = 0L;
+        long end = object.length;
+        long [] range = request.getRange();
+
+        if (range != null)
+        {
+            start = Math.min(range[0], object.length);
+            end = Math.min(range[1] + 1L, object.length);
+        }
+
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(request.getBucketName());
+        s3Object.setKey(request.getKey());
+        s3Object.setObjectMetadata(metadata(object, start, end));
+        s3Object.setObjectContent(object.open(start, end));
+        return s3Object;
+    }
+
+    @Override
+    public S3Object getObject(String bucket, String key)
+    {
+        return getObject(new GetObjectRequest(bucket, key));
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request)
+    {
+        byte [] data;
+
+        try (InputStream in = request.getFile() != null ?
+                new FileInputStream(request.getFile()) : request.getInputStream())
+        {
+            data = IOUtils.toByteArray(in);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        StoredObject object = store(request.getBucketName(), request.getKey(), singletonChunk(data));
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(object.eTag);
+        return result;
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucket, String key, String content)
+    {
+        putText(bucket, key, content);
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(getStoredObject(bucket, key).eTag);
+        return result;
+    }
+
+    @Override
+    public void deleteObject(String bucket, String key)
+    {
+        objects.remove(bucket + "/" + key);
+    }
+
+    /**
+     * Lists every object under a prefix in a single page
+     * @param request the request
+     * @return the listing
+     */
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request)
+    {
+        String prefix = request.getBucketName() + "/" + (request.getPrefix() != null ? request.getPrefix() : "");
+        Map<String, StoredObject> matches = new TreeMap<>();
+
+        for (Map.Entry<String, StoredObject> object: objects.entrySet())
+        {
+            if (object.getKey().startsWith(prefix))
+            {
+                matches.put(object.getKey().substring(request.getBucketName().length() + 1), object.getValue());
+            }
+        }
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(request.getPrefix());
+        result.setTruncated(false);
+
+        for (Map.Entry<String, StoredObject> match: matches.entrySet())
+        {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(match.getKey());
+            summary.setSize(match.getValue().length);
+            summary.setETag(match.getValue().eTag);
+            result.getObjectSummaries().add(summary);
+        }
+
+        result.setKeyCount(result.getObjectSummaries().size());
+        return result;
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request)
+    {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request)
+    {
+        Map<Integer, byte []> parts = getUpload(request.getUploadId());
+
+        byte [] data = new byte[(int) request.getPartSize()];
+
+        try
+        {
+            IOUtils.readFully(request.getInputStream(), data);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        parts.put(request.getPartNumber(), data);
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(nextETag());
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request)
+    {
+        Map<Integer, byte []> parts = getUpload(request.getUploadId());
+        List<byte []> chunks = new ArrayList<>();
+
+        for (PartETag partETag: request.getPartETags())
+        {
+            byte [] part = parts.get(partETag.getPartNumber());
+
+            if (part == null)
+            {
+                throw serviceException("InvalidPart", 400);
+            }
+
+            chunks.add(part);
+        }
+
+        uploads.remove(request.getUploadId());
+
+        StoredObject object = store(request.getBucketName(), request.getKey(), chunks);
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(object.eTag);
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request)
+    {
+        uploads.remove(request.getUploadId());
+    }
+
+    /**
+     * The number of multipart uploads neither completed nor aborted
+     * @return the number of open uploads
+     */
+    @Override
+    public int getOpenUploadCount()
+    {
+        return uploads.size();
+    }
+
+    private StoredObject store(String bucket, String key, List<byte []> chunks)
+    {
+        StoredObject object = new StoredObject(chunks, nextETag());
+        objects.put(bucket + "/" + key, object);
+        return object;
+    }
+
+    private StoredObject getStoredObject(String bucket, String key)
+    {
+        StoredObject object = objects.get(bucket + "/" + key);
+
+        if (object == null)
+        {
+            throw serviceException("NoSuchKey", 404);
+        }
+
+        return object;
+    }
+
+    private Map<Integer, byte []> getUpload(String uploadId)
+    {
+        Map<Integer, byte []> parts = uploads.get(uploadId);
+
+        if (parts == null)
+        {
+            throw serviceException("NoSuchUpload", 404);
+        }
+
+        return parts;
+    }
+
+    private static ObjectMetadata metadata(StoredObject object, long start, long end)
+    {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(end == -1L ? object.length : end - start);
+        metadata.setHeader("ETag", object.eTag);
+        return metadata;
+    }
+
+    private static List<byte []> singletonChunk(byte [] data)
+    {
+        List<byte []> chunks = new ArrayList<>();
+        chunks.add(data);
+        return chunks;
+    }
+
+    private String nextETag()
+    {
+        return String.format("%032x", eTagSequence.incrementAndGet());
+    }
+
+    private static AmazonServiceException serviceException(String errorCode, int statusCode)
+    {
+        AmazonServiceException e = new AmazonServiceException(errorCode);
+        e.setErrorCode(errorCode);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+}
@@ -0,0 +1,109 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A Lambda context for invoking handlers locally
+ */
+public class LocalContext implements Context
+{
+    private final String requestId = UUID.randomUUID().toString();
+    private final LambdaLogger logger;
+
+    /**
+     * Creates a context
+     * @param verbose true to log to standard error, false to discard log messages
+     */
+    public LocalContext(boolean verbose)
+    {
+        this.logger = new LambdaLogger()
+        {
+            @Override
+            public void log(String message)
+            {
+                if (verbose)
+                {
+                    System.err.println(message);
+                }
+            }
+
+            @Override
+            public void log(byte [] message)
+            {
+                log(new String(message, StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    @Override
+    public String getAwsRequestId()
+    {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName()
+    {
+        return "local";
+    }
+
+    @Override
+    public String getLogStreamName()
+    {
+        return "local";
+    }
+
+    @Override
+    public String getFunctionName()
+    {
+        return "local";
+    }
+
+    @Override
+    public String getFunctionVersion()
+    {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn()
+    {
+        return "arn:aws:lambda:local:000000000000:function:local";
+    }
+
+    @Override
+    public CognitoIdentity getIdentity()
+    {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext()
+    {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getMemoryLimitInMB()
+    {
+        return (int) (Runtime.getRuntime().maxMemory() / (1024L * 1024L));
+    }
+
+    @Override
+    public LambdaLogger getLogger()
+    {
+        return logger;
+    }
+}
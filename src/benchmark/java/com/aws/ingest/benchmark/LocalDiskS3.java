@@ -0,0 +1,577 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A local stand in for S3 that keeps objects as files under a directory,
+ * so manifests larger than the heap can be processed on a laptop. Objects
+ * are stored at {root}/objects/{bucket}/{key} and multipart parts under
+ * {root}/uploads/{upload id}/ until the upload is completed, when they are
+ * concatenated into the object. Objects are replaced atomically.
+ *
+ * Supports the same operations as InMemoryS3. A key cannot also be the
+ * prefix directory of another key, which the pipeline never does.
+ */
+public class LocalDiskS3 extends AbstractAmazonS3 implements LocalObjectStore
+{
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path objectsDir;
+    private final Path uploadsDir;
+    private final Path tempDir;
+
+    /**
+     * ETags of objects stored since creation, objects found on disk
+     * have an ETag derived from their length and modification time
+     */
+    private final Map<Path, String> eTags = new ConcurrentHashMap<>();
+
+    /**
+     * Open multipart uploads and the directory holding their parts
+     */
+    private final Map<String, Path> uploads = new ConcurrentHashMap<>();
+
+    private final AtomicLong eTagSequence = new AtomicLong();
+
+    /**
+     * Creates a stand in storing objects under a directory
+     * @param root the directory, created if missing
+     */
+    public LocalDiskS3(Path root)
+    {
+        this.objectsDir = root.resolve("objects");
+        this.uploadsDir = root.resolve("uploads");
+        this.tempDir = root.resolve("tmp");
+
+        try
+        {
+            Files.createDirectories(objectsDir);
+            Files.createDirectories(uploadsDir);
+            Files.createDirectories(tempDir);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void putText(String bucket, String key, String content)
+    {
+        try (OutputStream out = createObject(bucket, key))
+        {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens an output stream to a temporary file that
+     * replaces the object when the stream is closed
+     * @param bucket the bucket
+     * @param key the key
+     * @return the output stream
+     */
+    @Override
+    public OutputStream createObject(String bucket, String key)
+    {
+        Path temp = newTempFile();
+
+        try
+        {
+            return new FilterOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))
+            {
+                private boolean closed = false;
+
+                @Override
+                public void write(byte [] b, int off, int len) throws IOException
+                {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    if (closed)
+                    {
+                        return;
+                    }
+
+                    closed = true;
+                    super.close();
+                    store(bucket, key, temp);
+                }
+            };
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public byte [] getBytes(String bucket, String key)
+    {
+        try
+        {
+            return Files.readAllBytes(getObjectPath(bucket, key));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getText(String bucket, String key)
+    {
+        return new String(getBytes(bucket, key), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long getLength(String bucket, String key)
+    {
+        try
+        {
+            return Files.size(getObjectPath(bucket, key));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int getOpenUploadCount()
+    {
+        return uploads.size();
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request)
+    {
+        Path path = getObjectPath(request.getBucketName(), request.getKey());
+        long length = getLength(request.getBucketName(), request.getKey());
+        return metadata(length, getETag(path));
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucket, String key)
+    {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucket, key));
+    }
+
+    /**
+     * Gets an object or a range of an object, returning null
+     * when an ETag constraint is not met
+     * @param request the request
+     * @return the object or null
+     */
+    @Override
+    public S3Object getObject(GetObjectRequest request)
+    {
+        Path path = getObjectPath(request.getBucketName(), request.getKey());
+        String eTag = getETag(path);
+
+        if (!request.getMatchingETagConstraints().isEmpty() &&
+            !request.getMatchingETagConstraints().contains(eTag))
+        {
+            return null;
+        }
+
+        if (request.getNonmatchingETagConstraints().contains(eTag))
+        {
+            return null;
+        }
+
+        long length = getLength(request.getBucketName(), request.getKey());
+        long start = 0L;
+        long end = length;
+        long [] range = request.getRange();
+
+        if (range != null)
+        {
+            start = Math.min(range[0], length);
+            end = Math.min(range[1] + 1L, length);
+        }
+
+        try
+        {
+            InputStream in = new FileInputStream(path.toFile());
+            IOUtils.skipFully(in, start);
+
+            S3Object s3Object = new S3Object();
+            s3Object.setBucketName(request.getBucketName());
+            s3Object.setKey(request.getKey());
+            s3Object.setObjectMetadata(metadata(end - start, eTag));
+            s3Object.setObjectContent(new BufferedInputStream(new BoundedInputStream(in, end - start), BUFFER_SIZE));
+            return s3Object;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public S3Object getObject(String bucket, String key)
+    {
+        return getObject(new GetObjectRequest(bucket, key));
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request)
+    {
+        Path temp = newTempFile();
+
+        try (InputStream in = request.getFile() != null ?
+                new FileInputStream(request.getFile()) : request.getInputStream())
+        {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(store(request.getBucketName(), request.getKey(), temp));
+        return result;
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucket, String key, String content)
+    {
+        putText(bucket, key, content);
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(getETag(getObjectPath(bucket, key)));
+        return result;
+    }
+
+    @Override
+    public void deleteObject(String bucket, String key)
+    {
+        Path path = objectsDir.resolve(bucket).resolve(key);
+
+        try
+        {
+            Files.deleteIfExists(path);
+            eTags.remove(path);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lists every object under a prefix in a single page
+     * @param request the request
+     * @return the listing
+     */
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request)
+    {
+        Path bucketDir = objectsDir.resolve(request.getBucketName());
+        String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+        Map<String, Path> matches = new TreeMap<>();
+
+        if (Files.isDirectory(bucketDir))
+        {
+            try (Stream<Path> files = Files.walk(bucketDir))
+            {
+                files.filter(Files::isRegularFile).forEach(file ->
+                {
+                    String key = bucketDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+
+                    if (key.startsWith(prefix))
+                    {
+                        matches.put(key, file);
+                    }
+                });
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(request.getPrefix());
+        result.setTruncated(false);
+
+        for (Map.Entry<String, Path> match: matches.entrySet())
+        {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(match.getKey());
+            summary.setSize(match.getValue().toFile().length());
+            summary.setETag(getETag(match.getValue()));
+            result.getObjectSummaries().add(summary);
+        }
+
+        result.setKeyCount(result.getObjectSummaries().size());
+        return result;
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request)
+    {
+        String uploadId = UUID.randomUUID().toString();
+
+        try
+        {
+            uploads.put(uploadId, Files.createDirectories(uploadsDir.resolve(uploadId)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request)
+    {
+        Path uploadDir = getUpload(request.getUploadId());
+        Path temp = newTempFile();
+
+        try
+        {
+            try (OutputStream out = Files.newOutputStream(temp))
+            {
+                long copied = IOUtils.copyLarge(request.getInputStream(), out, 0L, request.getPartSize());
+
+                if (copied != request.getPartSize())
+                {
+                    throw serviceException("IncompleteBody", 400);
+                }
+            }
+
+            Files.move(temp, uploadDir.resolve(Integer.toString(request.getPartNumber())),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (NoSuchFileException e)
+        {
+            throw serviceException("NoSuchUpload", 404);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        finally
+        {
+            /**
+             * Only left behind if the part failed or the upload was aborted
+             */
+            FileUtils.deleteQuietly(temp.toFile());
+        }
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(nextETag());
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request)
+    {
+        Path uploadDir = getUpload(request.getUploadId());
+        Path temp = newTempFile();
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE))
+        {
+            for (PartETag partETag: request.getPartETags())
+            {
+                Path part = uploadDir.resolve(Integer.toString(partETag.getPartNumber()));
+
+                if (!Files.exists(part))
+                {
+                    throw serviceException("InvalidPart", 400);
+                }
+
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ))
+                {
+                    long position = 0L;
+                    long size = in.size();
+
+                    while (position < size)
+                    {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        String eTag = store(request.getBucketName(), request.getKey(), temp);
+        removeUpload(request.getUploadId());
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(eTag);
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request)
+    {
+        removeUpload(request.getUploadId());
+    }
+
+    /**
+     * Moves a completed temporary file into place as an object
+     * @param bucket the bucket
+     * @param key the key
+     * @param temp the temporary file
+     * @return the new ETag
+     */
+    private String store(String bucket, String key, Path temp)
+    {
+        Path path = objectsDir.resolve(bucket).resolve(key);
+        String eTag = nextETag();
+
+        try
+        {
+            Files.createDirectories(path.getParent());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        eTags.put(path, eTag);
+        return eTag;
+    }
+
+    private Path getObjectPath(String bucket, String key)
+    {
+        Path path = objectsDir.resolve(bucket).resolve(key);
+
+        if (!Files.isRegularFile(path))
+        {
+            throw serviceException("NoSuchKey", 404);
+        }
+
+        return path;
+    }
+
+    private String getETag(Path path)
+    {
+        return eTags.computeIfAbsent(path, found ->
+                String.format("%016x%016x", found.toFile().length(), found.toFile().lastModified()));
+    }
+
+    private Path getUpload(String uploadId)
+    {
+        Path uploadDir = uploads.get(uploadId);
+
+        if (uploadDir == null)
+        {
+            throw serviceException("NoSuchUpload", 404);
+        }
+
+        return uploadDir;
+    }
+
+    private void removeUpload(String uploadId)
+    {
+        Path uploadDir = uploads.remove(uploadId);
+
+        if (uploadDir != null)
+        {
+            FileUtils.deleteQuietly(uploadDir.toFile());
+        }
+    }
+
+    private Path newTempFile()
+    {
+        try
+        {
+            return Files.createTempFile(tempDir, "object", ".tmp");
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ObjectMetadata metadata(long length, String eTag)
+    {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(length);
+        metadata.setHeader("ETag", eTag);
+        return metadata;
+    }
+
+    private String nextETag()
+    {
+        return String.format("%032x", eTagSequence.incrementAndGet());
+    }
+
+    private static AmazonServiceException serviceException(String errorCode, int statusCode)
+    {
+        AmazonServiceException e = new AmazonServiceException(errorCode);
+        e.setErrorCode(errorCode);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+}
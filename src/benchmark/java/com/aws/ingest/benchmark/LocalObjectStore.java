@@ -0,0 +1,58 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.OutputStream;
+
+/**
+ * A local S3 stand in that data can be generated into and read back
+ * from directly, held in memory by InMemoryS3 or on disk by LocalDiskS3
+ */
+public interface LocalObjectStore extends AmazonS3
+{
+    /**
+     * Stores text as an object
+     * @param bucket the bucket
+     * @param key the key
+     * @param content the UTF-8 content
+     */
+    void putText(String bucket, String key, String content);
+
+    /**
+     * Opens an output stream that stores an object when closed
+     * @param bucket the bucket
+     * @param key the key
+     * @return the output stream
+     */
+    OutputStream createObject(String bucket, String key);
+
+    /**
+     * Reads a whole object into a byte array
+     * @param bucket the bucket
+     * @param key the key
+     * @return the object content
+     */
+    byte [] getBytes(String bucket, String key);
+
+    /**
+     * Reads a whole object as UTF-8 text
+     * @param bucket the bucket
+     * @param key the key
+     * @return the object content
+     */
+    String getText(String bucket, String key);
+
+    /**
+     * Fetches the length of an object
+     * @param bucket the bucket
+     * @param key the key
+     * @return the length in bytes
+     */
+    long getLength(String bucket, String key);
+
+    /**
+     * The number of multipart uploads neither completed nor aborted
+     * @return the number of open uploads
+     */
+    int getOpenUploadCount();
+}
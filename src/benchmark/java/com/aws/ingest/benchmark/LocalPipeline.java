@@ -0,0 +1,311 @@
+package com.aws.ingest.benchmark;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.aws.ingest.lambda.SQSBatchResponse;
+import com.aws.ingest.lambda.input.InputLambda;
+import com.aws.ingest.lambda.processed.ProcessedLambda;
+import com.aws.ingest.logging.Log;
+import com.aws.ingest.manifest.Manifest;
+import com.aws.ingest.manifest.ManifestEntry;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Runs the whole pipeline on a laptop: generates signed manifests of
+ * synthetic data into a local S3 stand in, feeds their notifications to
+ * the Input Lambda as one SQS batch, then feeds the processed manifests to
+ * the Processed Lambda delivering to a local directory. Latency and 503
+ * SlowDown errors can be injected into S3 calls to load test the retry
+ * and concurrency behaviour. Settings are given as key=value arguments:
+ *
+ *   manifests       the number of manifests in the SQS batch (1)
+ *   entries         the number of entries in each manifest (4)
+ *   sizeMB          the size of each entry in megabytes (64)
+ *   storage         memory or disk (memory)
+ *   dir             the directory for disk storage and delivered files (a temporary directory)
+ *   deliver         false to stop after the Input Lambda (true)
+ *   verbose         true to print the Lambda log (false)
+ *   partLatencyMs   latency added to every part upload (0)
+ *   partSlowRate    the fraction of part uploads delayed by partSlowMs (0)
+ *   partSlowMs      the extra latency of a slow part upload (0)
+ *   partErrorRate   the fraction of part uploads failing with 503 (0)
+ *   getLatencyMs    latency added to every GET (0)
+ *   getErrorRate    the fraction of GETs failing with 503 (0)
+ *
+ * Pipeline settings such as UPLOAD_CONCURRENCY are given as system properties.
+ * Progress and results are logged at INFO, the pipeline's own log only when verbose.
+ */
+public final class LocalPipeline
+{
+    private static final Log LOGGER = Log.getLog(LocalPipeline.class);
+
+    private static final String SOURCE_SYSTEM = "localpipeline";
+
+    private LocalPipeline()
+    {
+    }
+
+    public static void main(String [] args) throws Exception
+    {
+        Map<String, String> settings = parse(args);
+
+        int manifests = Integer.parseInt(settings.getOrDefault("manifests", "1"));
+        int entries = Integer.parseInt(settings.getOrDefault("entries", "4"));
+        long sizeMB = Long.parseLong(settings.getOrDefault("sizeMB", "64"));
+        boolean deliver = Boolean.parseBoolean(settings.getOrDefault("deliver", "true"));
+        boolean verbose = Boolean.parseBoolean(settings.getOrDefault("verbose", "false"));
+
+        Path dir = settings.containsKey("dir") ?
+                Files.createDirectories(Paths.get(settings.get("dir"))) :
+                Files.createTempDirectory("localpipeline");
+
+        LocalObjectStore store;
+
+        if ("disk".equals(settings.getOrDefault("storage", "memory")))
+        {
+            store = new LocalDiskS3(dir.resolve("s3"));
+        }
+        else
+        {
+            store = new InMemoryS3();
+        }
+
+        FaultInjectingS3 s3 = new FaultInjectingS3(store)
+                .withLatency(FaultInjectingS3.Operation.UPLOAD_PART, getLong(settings, "partLatencyMs"))
+                .withSlowCalls(FaultInjectingS3.Operation.UPLOAD_PART,
+                        getDouble(settings, "partSlowRate"), getLong(settings, "partSlowMs"))
+                .withErrorRate(FaultInjectingS3.Operation.UPLOAD_PART, getDouble(settings, "partErrorRate"))
+                .withLatency(FaultInjectingS3.Operation.GET_OBJECT, getLong(settings, "getLatencyMs"))
+                .withErrorRate(FaultInjectingS3.Operation.GET_OBJECT, getDouble(settings, "getErrorRate"));
+
+        if (!verbose)
+        {
+            BenchmarkSupport.quietLogging();
+            Logger.getLogger(LocalPipeline.class).setLevel(Level.INFO);
+        }
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair upstream = generator.generateKeyPair();
+        KeyPair downstream = generator.generateKeyPair();
+
+        System.setProperty("PROCESSED_BUCKET", BenchmarkSupport.PROCESSED_BUCKET);
+        System.setProperty("PROCESSED_KMS_ID", "local");
+        System.setProperty("CONFIG_BUCKET", BenchmarkSupport.CONFIG_BUCKET);
+        System.setProperty("PUBLIC_KEY", Base64.encodeBase64String(upstream.getPublic().getEncoded()));
+        System.setProperty("PRIVATE_KEY", Base64.encodeBase64String(downstream.getPrivate().getEncoded()));
+
+        store.putText(BenchmarkSupport.CONFIG_BUCKET, "config/input_config.json", DataGenerator.INPUT_CONFIG);
+
+        LOGGER.info("Generating " + manifests + " x " + entries + " x " + sizeMB + "MB in " + dir);
+
+        List<String> manifestKeys = new ArrayList<>();
+        long inputLength = 0L;
+        long inputRows = 0L;
+
+        for (int m = 0; m < manifests; m++)
+        {
+            Manifest manifest = new Manifest();
+            manifest.setCreatedDate("2020-01-09T12:55:31Z");
+            manifest.setSourceSystem(SOURCE_SYSTEM);
+            manifest.setKey(SOURCE_SYSTEM + "/batch-" + m + "/manifest.json");
+
+            for (int i = 0; i < entries; i++)
+            {
+                String dataType = i % 2 == 0 ? DataGenerator.CUSTOMER : DataGenerator.TRANSACTION;
+
+                ManifestEntry entry = new ManifestEntry();
+                entry.setDataType(dataType);
+                entry.setFileName(dataType + "-" + i + ".csv");
+
+                String key = manifest.getKeyForEntry(entry);
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+                try (OutputStream out = new DigestOutputStream(
+                        store.createObject(BenchmarkSupport.INPUT_BUCKET, key), md5))
+                {
+                    entry.setRowCount(DataGenerator.generate(dataType, out,
+                            sizeMB * BenchmarkSupport.MEGABYTE, (long) m * entries + i));
+                }
+
+                entry.setMd5(Base64.encodeBase64String(md5.digest()));
+
+                inputRows += entry.getRowCount();
+                inputLength += store.getLength(BenchmarkSupport.INPUT_BUCKET, key);
+
+                manifest.getManifestEntries().add(entry);
+            }
+
+            manifest.signManifest(upstream.getPrivate());
+            store.putText(BenchmarkSupport.INPUT_BUCKET, manifest.getKey(), Manifest.toJSON(manifest));
+            manifestKeys.add(manifest.getKey());
+        }
+
+        List<String> metrics = Collections.synchronizedList(new ArrayList<>());
+
+        long start = System.nanoTime();
+        SQSBatchResponse response = new InputLambda(s3)
+                .withMetricsSink(metrics::add)
+                .handleRequest(batch(BenchmarkSupport.INPUT_BUCKET, manifestKeys), new LocalContext(verbose));
+        long inputNanos = System.nanoTime() - start;
+
+        report("Input Lambda", inputNanos, inputLength, inputRows, manifests, response);
+
+        for (String record : metrics)
+        {
+            if (record.contains("\"Scope\":\"Manifest\""))
+            {
+                LOGGER.info("  " + record);
+            }
+        }
+
+        if (deliver && response.getBatchItemFailures().size() < manifests)
+        {
+            Path delivered = Files.createDirectories(dir.resolve("delivered"));
+
+            System.setProperty("PUBLIC_KEY", Base64.encodeBase64String(downstream.getPublic().getEncoded()));
+            System.setProperty("DELIVERY_URL", delivered.toString());
+
+            Set<String> failed = new HashSet<>();
+
+            for (SQSBatchResponse.BatchItemFailure failure : response.getBatchItemFailures())
+            {
+                failed.add(failure.getItemIdentifier());
+            }
+
+            List<String> processedKeys = new ArrayList<>();
+
+            for (int i = 0; i < manifestKeys.size(); i++)
+            {
+                if (!failed.contains(messageId(i)))
+                {
+                    processedKeys.add(manifestKeys.get(i));
+                }
+            }
+
+            start = System.nanoTime();
+            response = new ProcessedLambda(s3)
+                    .handleRequest(batch(BenchmarkSupport.PROCESSED_BUCKET, processedKeys), new LocalContext(verbose));
+            long processedNanos = System.nanoTime() - start;
+
+            report("Processed Lambda", processedNanos, length(delivered), inputRows, processedKeys.size(), response);
+            LOGGER.info("  delivered to " + delivered);
+        }
+
+        LOGGER.info("S3 calls:");
+
+        for (FaultInjectingS3.Operation operation : FaultInjectingS3.Operation.values())
+        {
+            if (s3.getCallCount(operation) > 0L)
+            {
+                LOGGER.info(String.format("  %-16s %8d calls %6d errors injected %6d slow",
+                        operation, s3.getCallCount(operation),
+                        s3.getInjectedErrorCount(operation), s3.getSlowCallCount(operation)));
+            }
+        }
+
+        LOGGER.info("Open multipart uploads: " + store.getOpenUploadCount());
+
+        System.exit(0);
+    }
+
+    /**
+     * Builds an SQS batch holding one object created notification per key
+     * @param bucket the bucket
+     * @param keys the keys
+     * @return the event
+     */
+    private static SQSEvent batch(String bucket, List<String> keys)
+    {
+        List<SQSEvent.SQSMessage> messages = new ArrayList<>();
+
+        for (int i = 0; i < keys.size(); i++)
+        {
+            SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+            message.setMessageId(messageId(i));
+            message.setBody(EndToEndBenchmark.s3Event(bucket, keys.get(i)));
+            messages.add(message);
+        }
+
+        SQSEvent event = new SQSEvent();
+        event.setRecords(messages);
+        return event;
+    }
+
+    private static String messageId(int index)
+    {
+        return "message-" + index;
+    }
+
+    private static void report(String stage, long nanos, long bytes, long rows,
+                               int messages, SQSBatchResponse response)
+    {
+        double seconds = nanos / 1.0E9;
+
+        LOGGER.info(String.format("%s: %d messages, %d failed, %.2fs, %.1f MB/s, %.0f rows/s",
+                stage, messages, response.getBatchItemFailures().size(), seconds,
+                bytes / (double) BenchmarkSupport.MEGABYTE / seconds, rows / seconds));
+    }
+
+    /**
+     * Totals the size of the files under a directory
+     * @param dir the directory
+     * @return the total length in bytes
+     * @throws IOException thrown on failure to list the directory
+     */
+    private static long length(Path dir) throws IOException
+    {
+        try (Stream<Path> files = Files.walk(dir))
+        {
+            return files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static Map<String, String> parse(String [] args)
+    {
+        Map<String, String> settings = new HashMap<>();
+
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+
+            if (equals <= 0)
+            {
+                throw new IllegalArgumentException("Expected key=value, found: " + arg);
+            }
+
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        return settings;
+    }
+
+    private static long getLong(Map<String, String> settings, String name)
+    {
+        return Long.parseLong(settings.getOrDefault(name, "0"));
+    }
+
+    private static double getDouble(Map<String, String> settings, String name)
+    {
+        return Double.parseDouble(settings.getOrDefault(name, "0"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.io.MD5InputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures MD5InputStream with the read patterns seen in the pipeline,
+ * single byte reads, small and large bulk reads and decoding through a
+ * buffered reader as the CSVParser path does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8", "-Xmx2g" })
+public class MD5InputStreamBenchmark
+{
+    /**
+     * The size of each read, 1 uses single byte reads
+     */
+    @Param({ "1", "64", "8192", "1048576" })
+    public int readSize;
+
+    @Param({ "64" })
+    public int sizeMB;
+
+    private byte [] data;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        data = DataGenerator.generateBytes(DataGenerator.CUSTOMER, sizeMB * 1024 * 1024, 42L);
+    }
+
+    @Benchmark
+    public byte [] read(ThroughputCounters counters) throws IOException
+    {
+        MD5InputStream in = new MD5InputStream(new ByteArrayInputStream(data));
+
+        if (readSize == 1)
+        {
+            while (in.read() != -1)
+            {
+                /**
+                 * Consume a byte at a time
+                 */
+            }
+        }
+        else
+        {
+            byte [] buffer = new byte[readSize];
+
+            while (in.read(buffer, 0, buffer.length) != -1)
+            {
+                /**
+                 * Consume a buffer at a time
+                 */
+            }
+        }
+
+        counters.record(data.length, 0L);
+        return in.getDigest();
+    }
+
+    @Benchmark
+    public byte [] readLines(ThroughputCounters counters) throws IOException
+    {
+        MD5InputStream in = new MD5InputStream(new ByteArrayInputStream(data));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), readSize);
+        long lines = 0L;
+
+        while (reader.readLine() != null)
+        {
+            lines++;
+        }
+
+        counters.record(data.length, lines);
+        return in.getDigest();
+    }
+}
@@ -0,0 +1,113 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.io.S3OutputStream;
+import com.aws.ingest.metrics.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures S3OutputStream part buffering, hashing and upload
+ * hand off against the in-memory S3 for different write sizes
+ * with synchronous and asynchronous part uploads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8", "-Xmx2g" })
+public class S3OutputStreamBenchmark
+{
+    private static final String KEY = "upload/output.csv";
+
+    /**
+     * The size of each write, 1 uses single byte writes
+     */
+    @Param({ "1", "8192", "1048576" })
+    public int writeSize;
+
+    @Param({ "false", "true" })
+    public boolean async;
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    @Param({ "10" })
+    public int partSizeMB;
+
+    @Param({ "64" })
+    public int sizeMB;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+
+    private byte [] data;
+    private ExecutorService uploadExecutor;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.quietLogging();
+
+        data = DataGenerator.generateBytes(DataGenerator.TRANSACTION, sizeMB * 1024 * 1024, 42L);
+        uploadExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        uploadExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public byte [] write(ThroughputCounters counters) throws IOException
+    {
+        S3OutputStream out = new S3OutputStream(s3, BenchmarkSupport.PROCESSED_BUCKET,
+                KEY, partSizeMB * 1024 * 1024);
+
+        if (async)
+        {
+            out.withUploadExecutor(uploadExecutor, 2);
+        }
+
+        if (metrics)
+        {
+            out.withMetrics(new Metrics());
+        }
+
+        if (writeSize == 1)
+        {
+            for (byte b: data)
+            {
+                out.write(b);
+            }
+        }
+        else
+        {
+            for (int offset = 0; offset < data.length; offset += writeSize)
+            {
+                out.write(data, offset, Math.min(writeSize, data.length - offset));
+            }
+        }
+
+        out.close();
+
+        counters.record(data.length, 0L);
+        return out.getDigest();
+    }
+}
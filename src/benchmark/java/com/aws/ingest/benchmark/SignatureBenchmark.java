@@ -0,0 +1,96 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.manifest.Manifest;
+import com.aws.ingest.manifest.ManifestEntry;
+import com.aws.ingest.security.KeyCache;
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures manifest signing and verification parsing keys for every
+ * manifest against the cached verifiers and signers in KeyCache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark
+{
+    @Param({ "1", "10" })
+    public int entries;
+
+    private String publicKeyString;
+    private String privateKeyString;
+    private Manifest manifest;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchAlgorithmException
+    {
+        BenchmarkSupport.quietLogging();
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        publicKeyString = Base64.encodeBase64String(keyPair.getPublic().getEncoded());
+        privateKeyString = Base64.encodeBase64String(keyPair.getPrivate().getEncoded());
+
+        manifest = new Manifest();
+
+        for (int i = 0; i < entries; i++)
+        {
+            ManifestEntry entry = new ManifestEntry();
+            entry.setFileName("file-" + i + ".csv");
+            entry.setMd5(Base64.encodeBase64String(new byte[] { (byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 }));
+            manifest.getManifestEntries().add(entry);
+        }
+
+        manifest.signManifest(keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public Manifest verifyParsingKey()
+    {
+        manifest.verifySignature(KeyCache.loadPublicKey(publicKeyString));
+        return manifest;
+    }
+
+    @Benchmark
+    public Manifest verifyCached()
+    {
+        KeyCache.getVerifier(publicKeyString).verify(manifest);
+        return manifest;
+    }
+
+    @Benchmark
+    public Manifest signParsingKey()
+    {
+        manifest.signManifest(KeyCache.loadPrivateKey(privateKeyString));
+        return manifest;
+    }
+
+    @Benchmark
+    public Manifest signCached()
+    {
+        KeyCache.getSigner(privateKeyString).sign(manifest);
+        return manifest;
+    }
+}
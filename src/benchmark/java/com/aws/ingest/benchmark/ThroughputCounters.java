@@ -0,0 +1,46 @@
+package com.aws.ingest.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH results reported alongside the operation rate, when
+ * run in throughput mode JMH reports these as MB/s and rows/s
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ThroughputCounters
+{
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Input megabytes processed
+     */
+    public double megabytes;
+
+    /**
+     * Input rows processed
+     */
+    public long rows;
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+        megabytes = 0.0;
+        rows = 0L;
+    }
+
+    /**
+     * Records a completed operation
+     * @param bytes the input bytes processed
+     * @param rowCount the input rows processed
+     */
+    public void record(long bytes, long rowCount)
+    {
+        megabytes += bytes / MEGABYTE;
+        rows += rowCount;
+    }
+}
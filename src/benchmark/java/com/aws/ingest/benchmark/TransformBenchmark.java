@@ -0,0 +1,131 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.config.DataType;
+import com.aws.ingest.config.InputConfig;
+import com.aws.ingest.io.CSVProjector;
+import com.aws.ingest.manifest.ManifestEntry;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CSV parse, project and print stage in isolation comparing
+ * the CSVParser and CSVPrinter path with the byte level projection engine.
+ * Input is streamed from an in-memory object so multi-gigabyte inputs can
+ * be measured, for example: -p sizeMB=4096 with a large enough heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8", "-Xmx4g" })
+public class TransformBenchmark
+{
+    private static final String KEY = "transform/input.csv";
+
+    @Param({ "customer", "transaction" })
+    public String dataType;
+
+    @Param({ "1", "64" })
+    public long sizeMB;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+
+    private DataType type;
+    private ManifestEntry entry;
+    private long inputLength;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        BenchmarkSupport.quietLogging();
+
+        type = InputConfig.fromJSON(DataGenerator.INPUT_CONFIG).getDataType(dataType);
+        entry = new ManifestEntry();
+        entry.setDataType(dataType);
+
+        BenchmarkSupport.generateObject(s3, BenchmarkSupport.INPUT_BUCKET, KEY, dataType, sizeMB, 42L);
+        inputLength = s3.getLength(BenchmarkSupport.INPUT_BUCKET, KEY);
+    }
+
+    /**
+     * The reader based path used when byte projection is disabled
+     */
+    @Benchmark
+    public long parserPrinter(ThroughputCounters counters) throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        String [] outputRow = new String[type.getOutputColumns().size()];
+        long rowCount = 0L;
+
+        try (InputStream in = openInput())
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1024 * 1024);
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+            CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader()
+                    .withHeader(type.getInputColumns().toArray(new String [0])));
+            CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+
+            for (CSVRecord row : parser)
+            {
+                entry.processRow(type, row, outputRow);
+                printer.printRecord((Object []) outputRow);
+                rowCount++;
+            }
+
+            printer.flush();
+        }
+
+        counters.record(inputLength, rowCount);
+        return out.getByteCount();
+    }
+
+    /**
+     * The byte level projection engine
+     */
+    @Benchmark
+    public long byteProjector(ThroughputCounters counters) throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        long rowCount;
+
+        try (InputStream in = openInput())
+        {
+            rowCount = new CSVProjector(type.getProjection(), 1024 * 1024).project(in, out, true);
+        }
+
+        counters.record(inputLength, rowCount);
+        return out.getByteCount();
+    }
+
+    private InputStream openInput()
+    {
+        return s3.getObject(BenchmarkSupport.INPUT_BUCKET, KEY).getObjectContent();
+    }
+}
@@ -0,0 +1,187 @@
+package com.aws.ingest.benchmark;
+
+import com.aws.ingest.config.ColumnSpec;
+import com.aws.ingest.config.ColumnType;
+import com.aws.ingest.config.DataType;
+import com.aws.ingest.config.InputConfig;
+import com.aws.ingest.io.CSVProjector;
+import com.aws.ingest.manifest.ManifestEntry;
+import com.aws.ingest.validation.RowValidator;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of row validation on the parse, project and print
+ * stage by running both transform paths with and without validation. The
+ * validated data types check typed columns on every row, the customer type
+ * also matches a regular expression so exercises the decoding path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dfile.encoding=UTF-8", "-Xmx4g" })
+public class ValidationBenchmark
+{
+    private static final String KEY = "validation/input.csv";
+
+    @Param({ "customer", "transaction" })
+    public String dataType;
+
+    @Param({ "false", "true" })
+    public boolean validated;
+
+    @Param({ "64" })
+    public long sizeMB;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+
+    private DataType type;
+    private RowValidator validator;
+    private ManifestEntry entry;
+    private long inputLength;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        BenchmarkSupport.quietLogging();
+
+        type = InputConfig.fromJSON(DataGenerator.INPUT_CONFIG).getDataType(dataType);
+
+        if (validated)
+        {
+            List<ColumnSpec> validation = type.getValidation();
+
+            if (DataGenerator.CUSTOMER.equals(dataType))
+            {
+                validation.add(spec("customer_id", ColumnType.INT, null, null, true));
+                validation.add(spec("first_name", ColumnType.STRING, null, null, true));
+                validation.add(spec("dob", ColumnType.DATE, "yyyy-MM-dd", null, true));
+                validation.add(spec("postcode", ColumnType.STRING, null, "[0-9]{4}", true));
+            }
+            else
+            {
+                validation.add(spec("transaction_id", ColumnType.INT, null, null, true));
+                validation.add(spec("account_id", ColumnType.INT, null, null, true));
+                validation.add(spec("customer_id", ColumnType.INT, null, null, true));
+                validation.add(spec("transaction_date", ColumnType.DATE, "yyyy-MM-dd'T'HH:mm:ss'Z'", null, true));
+                validation.add(spec("amount", ColumnType.DECIMAL, null, null, true));
+            }
+
+            type.compile();
+            validator = type.getRowValidator();
+        }
+
+        entry = new ManifestEntry();
+        entry.setDataType(dataType);
+
+        BenchmarkSupport.generateObject(s3, BenchmarkSupport.INPUT_BUCKET, KEY, dataType, sizeMB, 42L);
+        inputLength = s3.getLength(BenchmarkSupport.INPUT_BUCKET, KEY);
+    }
+
+    private static ColumnSpec spec(String column, ColumnType columnType, String format, String pattern, boolean required)
+    {
+        ColumnSpec spec = new ColumnSpec();
+        spec.setColumn(column);
+        spec.setType(columnType);
+        spec.setFormat(format);
+        spec.setPattern(pattern);
+        spec.setRequired(required);
+        return spec;
+    }
+
+    /**
+     * The reader based path validating parsed records
+     */
+    @Benchmark
+    public long parserPrinter(ThroughputCounters counters) throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        String [] outputRow = new String[type.getOutputColumns().size()];
+        long rowCount = 0L;
+
+        try (InputStream in = openInput())
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1024 * 1024);
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+            CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader()
+                    .withHeader(type.getInputColumns().toArray(new String [0])));
+            CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+
+            for (CSVRecord row : parser)
+            {
+                if (validator != null && validator.validate(row) != RowValidator.VALID)
+                {
+                    continue;
+                }
+
+                entry.processRow(type, row, outputRow);
+                printer.printRecord((Object []) outputRow);
+                rowCount++;
+            }
+
+            printer.flush();
+        }
+
+        counters.record(inputLength, rowCount);
+        return out.getByteCount();
+    }
+
+    /**
+     * The byte level projection engine validating field bytes in place
+     */
+    @Benchmark
+    public long byteProjector(ThroughputCounters counters) throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        long rowCount;
+
+        try (InputStream in = openInput())
+        {
+            CSVProjector projector = new CSVProjector(type.getProjection(), 1024 * 1024);
+
+            if (validator != null)
+            {
+                projector.withValidation(validator, NullOutputStream.NULL_OUTPUT_STREAM);
+            }
+
+            rowCount = projector.project(in, out, true);
+        }
+
+        counters.record(inputLength, rowCount);
+        return out.getByteCount();
+    }
+
+    private InputStream openInput()
+    {
+        return s3.getObject(BenchmarkSupport.INPUT_BUCKET, KEY).getObjectContent();
+    }
+}
@@ -0,0 +1,97 @@
+package com.aws.ingest.config;
+
+/**
+ * Optional validation of an input column, rows with
+ * values that fail validation are written to a rejects file
+ */
+public class ColumnSpec
+{
+    /**
+     * The default format of date columns
+     */
+    public static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+
+    /**
+     * The input column to validate
+     */
+    private String column = null;
+
+    /**
+     * The type of the column's values
+     */
+    private ColumnType type = ColumnType.STRING;
+
+    /**
+     * The DateTimeFormatter pattern of date columns
+     */
+    private String format = null;
+
+    /**
+     * A regular expression non empty values must match in full
+     */
+    private String pattern = null;
+
+    /**
+     * True if the value may not be empty, empty values are otherwise valid
+     */
+    private boolean required = false;
+
+    public String getColumn()
+    {
+        return column;
+    }
+
+    public void setColumn(String column)
+    {
+        this.column = column;
+    }
+
+    public ColumnType getType()
+    {
+        return type;
+    }
+
+    public void setType(ColumnType type)
+    {
+        this.type = type;
+    }
+
+    public String getFormat()
+    {
+        return format;
+    }
+
+    public void setFormat(String format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * Fetches the configured date format or the default
+     * @return the date format
+     */
+    public String getEffectiveFormat()
+    {
+        return format != null ? format : DEFAULT_DATE_FORMAT;
+    }
+
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    public void setPattern(String pattern)
+    {
+        this.pattern = pattern;
+    }
+
+    public boolean isRequired()
+    {
+        return required;
+    }
+
+    public void setRequired(boolean required)
+    {
+        this.required = required;
+    }
+}
@@ -0,0 +1,33 @@
+package com.aws.ingest.config;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The type an input column's values are validated as
+ */
+public enum ColumnType
+{
+    /**
+     * Any text, only checked against a pattern if one is configured
+     */
+    @SerializedName(value = "string", alternate = { "STRING" })
+    STRING,
+
+    /**
+     * A whole number that fits in a long with an optional sign
+     */
+    @SerializedName(value = "int", alternate = { "INT", "integer", "INTEGER" })
+    INT,
+
+    /**
+     * A plain decimal number with an optional sign and fraction, no exponent
+     */
+    @SerializedName(value = "decimal", alternate = { "DECIMAL" })
+    DECIMAL,
+
+    /**
+     * A date or date time in the configured format
+     */
+    @SerializedName(value = "date", alternate = { "DATE" })
+    DATE
+}
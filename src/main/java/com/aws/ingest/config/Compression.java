@@ -0,0 +1,138 @@
+package com.aws.ingest.config;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stream compression applied to stored files
+ */
+public enum Compression
+{
+    @SerializedName(value = "none", alternate = { "NONE" })
+    NONE(null),
+
+    @SerializedName(value = "gzip", alternate = { "GZIP" })
+    GZIP(".gz"),
+
+    @SerializedName(value = "zstd", alternate = { "ZSTD" })
+    ZSTD(".zst");
+
+    /**
+     * The buffer size used by compressors and decompressors
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The zstd level, the library default favours speed
+     */
+    private static final int ZSTD_LEVEL = 3;
+
+    /**
+     * The file extension including the leading dot or null
+     */
+    private final String extension;
+
+    Compression(String extension)
+    {
+        this.extension = extension;
+    }
+
+    public String getExtension()
+    {
+        return extension;
+    }
+
+    /**
+     * Wraps an input stream to decompress it
+     * @param in the compressed input stream
+     * @return the decompressed input stream
+     * @throws IOException thrown on failure to read the compression header
+     */
+    public InputStream decompress(InputStream in) throws IOException
+    {
+        switch (this)
+        {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD:
+                return new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Wraps an output stream to compress data written to it,
+     * closing the returned stream finishes and closes the output
+     * @param out the output stream to receive compressed data
+     * @return the compressing output stream
+     * @throws IOException thrown on failure to write the compression header
+     */
+    public OutputStream compress(OutputStream out) throws IOException
+    {
+        switch (this)
+        {
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdOutputStream(out, ZSTD_LEVEL);
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * Appends this compression's extension to a file name
+     * @param fileName the file name
+     * @return the file name with the extension appended
+     */
+    public String addExtension(String fileName)
+    {
+        return extension == null ? fileName : fileName + extension;
+    }
+
+    /**
+     * Detects compression from a file name's extension
+     * @param fileName the file name
+     * @return the detected compression, NONE if not recognised
+     */
+    public static Compression fromFileName(String fileName)
+    {
+        String lower = fileName.toLowerCase();
+
+        if (lower.endsWith(".gz") || lower.endsWith(".gzip"))
+        {
+            return GZIP;
+        }
+
+        if (lower.endsWith(".zst") || lower.endsWith(".zstd"))
+        {
+            return ZSTD;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Removes a recognised compression extension from a file name
+     * @param fileName the file name
+     * @return the file name without a compression extension
+     */
+    public static String removeExtension(String fileName)
+    {
+        if (fromFileName(fileName) == NONE)
+        {
+            return fileName;
+        }
+
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+}
@@ -0,0 +1,108 @@
+package com.aws.ingest.config;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.logging.Log;
+import org.apache.commons.io.IOUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caches configuration parsed from an S3 object across warm invocations.
+ * Once the time to live expires the object is revalidated with a
+ * conditional GET on its ETag, so an unchanged object costs a single
+ * 304 response and is never downloaded or parsed again.
+ * @param <T> the parsed configuration type
+ */
+public class ConfigCache<T>
+{
+    private static final Log LOGGER = Log.getLog(ConfigCache.class);
+
+    private final String bucket;
+    private final String key;
+    private final long ttlNanos;
+    private final Function<String, T> parser;
+
+    private T value = null;
+    private String eTag = null;
+    private long expiry = 0L;
+
+    /**
+     * Creates a config cache
+     * @param bucket the bucket holding the configuration
+     * @param key the configuration key
+     * @param ttlSeconds the number of seconds before the cached value is revalidated
+     * @param parser parses the configuration text
+     */
+    public ConfigCache(String bucket, String key, int ttlSeconds, Function<String, T> parser)
+    {
+        this.bucket = bucket;
+        this.key = key;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.parser = parser;
+    }
+
+    /**
+     * Fetches the configuration, revalidating it if the time to live has expired
+     * @param s3 the S3 client
+     * @return the configuration
+     */
+    public synchronized T get(AmazonS3 s3)
+    {
+        long now = System.nanoTime();
+
+        if (value != null && now - expiry < 0L)
+        {
+            return value;
+        }
+
+        GetObjectRequest request = new GetObjectRequest(bucket, key);
+
+        if (value != null && eTag != null)
+        {
+            request.withNonmatchingETagConstraint(eTag);
+        }
+
+        try (S3Object s3Object = s3.getObject(request))
+        {
+            /**
+             * A null object means the ETag still matches
+             */
+            if (s3Object != null)
+            {
+                String text = IOUtils.toString(s3Object.getObjectContent(), StandardCharsets.UTF_8);
+                value = parser.apply(text);
+                eTag = s3Object.getObjectMetadata().getETag();
+
+                LOGGER.info(() -> "Loaded configuration from: " + getPath() + " etag: " + eTag +
+                        " length: " + text.length());
+                LOGGER.debug(() -> "Configuration content: " + Log.summarize(text));
+            }
+            else
+            {
+                LOGGER.info("Configuration is unchanged at: " + getPath());
+            }
+
+            expiry = now + ttlNanos;
+
+            return value;
+        }
+        catch (IngestException e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            throw new IngestException("Failed to load configuration from: " + getPath(), t);
+        }
+    }
+
+    public String getPath()
+    {
+        return String.format("s3://%s/%s", bucket, key);
+    }
+}
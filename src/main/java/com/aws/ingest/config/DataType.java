@@ -1,7 +1,13 @@
 package com.aws.ingest.config;
 
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.validation.RowValidator;
+import org.apache.commons.io.FilenameUtils;
+
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A data type in the system
@@ -14,6 +20,31 @@ public class DataType
     private final List<String> inputColumns = new ArrayList<>();
     private final List<String> outputColumns = new ArrayList<>();
 
+    /**
+     * The format of processed files, CSV unless configured
+     */
+    private OutputFormat outputFormat = OutputFormat.CSV;
+
+    /**
+     * The compression of processed files, none for CSV and gzip for Parquet unless configured
+     */
+    private Compression outputCompression = null;
+
+    /**
+     * Optional validation of input columns, rows that fail are written to a rejects file
+     */
+    private final List<ColumnSpec> validation = new ArrayList<>();
+
+    /**
+     * The input column position of each output column, compiled on load
+     */
+    private transient int [] projection = null;
+
+    /**
+     * The compiled validation or null if no columns are validated
+     */
+    private transient RowValidator rowValidator = null;
+
     public String getName()
     {
         return name;
@@ -43,4 +74,140 @@ public class DataType
     {
         return outputColumns;
     }
+
+    public List<ColumnSpec> getValidation()
+    {
+        return validation;
+    }
+
+    public OutputFormat getOutputFormat()
+    {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat)
+    {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Fetches the configured output compression or the output format's default
+     * @return the output compression
+     */
+    public Compression getOutputCompression()
+    {
+        if (outputCompression != null)
+        {
+            return outputCompression;
+        }
+
+        return outputFormat == OutputFormat.PARQUET ? Compression.GZIP : Compression.NONE;
+    }
+
+    public void setOutputCompression(Compression outputCompression)
+    {
+        this.outputCompression = outputCompression;
+    }
+
+    /**
+     * Computes the processed file name for an input file, replacing
+     * any input compression extension with the output's
+     * @param fileName the input file name
+     * @return the output file name
+     */
+    public String getOutputFileName(String fileName)
+    {
+        String outputFileName = outputFormat.getOutputFileName(Compression.removeExtension(fileName));
+
+        if (outputFormat.isStreamCompressed())
+        {
+            return getOutputCompression().addExtension(outputFileName);
+        }
+
+        return outputFileName;
+    }
+
+    /**
+     * Computes the rejects file name for an input file, rejected
+     * rows are written as uncompressed CSV whatever the output format
+     * @param fileName the input file name
+     * @return the rejects file name
+     */
+    public String getRejectsFileName(String fileName)
+    {
+        return FilenameUtils.removeExtension(Compression.removeExtension(fileName)) + ".rejects.csv";
+    }
+
+    /**
+     * Compiles the projection from output columns to input column
+     * positions and the row validator, rejecting unknown or duplicate
+     * columns, invalid column specs and an invalid output format
+     */
+    public void compile()
+    {
+        /**
+         * Gson leaves unrecognised enum values null
+         */
+        if (outputFormat == null)
+        {
+            throw new IngestException("Invalid output format in data type: " + name);
+        }
+
+        Map<String, Integer> inputPositions = new HashMap<>();
+
+        for (int i = 0; i < inputColumns.size(); i++)
+        {
+            if (inputPositions.put(inputColumns.get(i), i) != null)
+            {
+                throw new IngestException("Duplicate input column: " + inputColumns.get(i) +
+                        " in data type: " + name);
+            }
+        }
+
+        int [] compiled = new int[outputColumns.size()];
+
+        for (int i = 0; i < outputColumns.size(); i++)
+        {
+            Integer position = inputPositions.get(outputColumns.get(i));
+
+            if (position == null)
+            {
+                throw new IngestException("Unknown output column: " + outputColumns.get(i) +
+                        " in data type: " + name);
+            }
+
+            compiled[i] = position;
+        }
+
+        projection = compiled;
+        rowValidator = validation.isEmpty() ? null : new RowValidator(name, inputColumns, validation);
+    }
+
+    /**
+     * Fetches the compiled projection, compiling it if required
+     * @return the input column position of each output column
+     */
+    public int [] getProjection()
+    {
+        if (projection == null)
+        {
+            compile();
+        }
+
+        return projection;
+    }
+
+    /**
+     * Fetches the compiled row validator, compiling it if required
+     * @return the row validator or null if no columns are validated
+     */
+    public RowValidator getRowValidator()
+    {
+        if (projection == null)
+        {
+            compile();
+        }
+
+        return rowValidator;
+    }
 }
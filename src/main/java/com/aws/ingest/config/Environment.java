@@ -0,0 +1,65 @@
+package com.aws.ingest.config;
+
+import com.aws.ingest.exception.IngestException;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Helpers for reading per deployment settings from the environment
+ */
+public final class Environment
+{
+    private Environment()
+    {
+    }
+
+    /**
+     * Reads a setting from the environment, a system property with
+     * the same name takes precedence so settings can be supplied
+     * when running outside Lambda, for example in benchmarks
+     * @param name the environment variable name
+     * @return the value or null if not set
+     */
+    public static String get(String name)
+    {
+        String value = System.getProperty(name);
+
+        if (value != null)
+        {
+            return value;
+        }
+
+        return System.getenv(name);
+    }
+
+    /**
+     * Reads a positive integer from the environment
+     * @param name the environment variable name
+     * @param defaultValue the value to use if the variable is not set
+     * @return the parsed value or the default value
+     */
+    public static int getInt(String name, int defaultValue)
+    {
+        String value = get(name);
+
+        if (StringUtils.isBlank(value))
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            int parsed = Integer.parseInt(value.trim());
+
+            if (parsed < 1)
+            {
+                throw new IngestException("Environment variable: " + name + " must be > 0 found: " + value);
+            }
+
+            return parsed;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IngestException("Invalid integer in environment variable: " + name + " found: " + value, e);
+        }
+    }
+}
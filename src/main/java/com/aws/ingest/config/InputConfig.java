@@ -5,7 +5,9 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Configuration for input processing
@@ -17,6 +19,11 @@ public class InputConfig
 
     private final List<DataType> dataTypes = new ArrayList<>();
 
+    /**
+     * Data types indexed by name, built on load
+     */
+    private transient Map<String, DataType> dataTypeIndex = null;
+
     public List<DataType> getDataTypes()
     {
         return dataTypes;
@@ -40,7 +47,19 @@ public class InputConfig
     public static InputConfig fromJSON(String json)
     {
         Gson gson = new GsonBuilder().create();
-        return gson.fromJson(json, InputConfig.class);
+        InputConfig config = gson.fromJson(json, InputConfig.class);
+
+        /**
+         * Compile data types on load so bad configuration fails before any file is processed
+         */
+        for (DataType dataType: config.getDataTypes())
+        {
+            dataType.compile();
+        }
+
+        config.buildIndex();
+
+        return config;
     }
 
     /**
@@ -50,15 +69,37 @@ public class InputConfig
      */
     public DataType getDataType(String name)
     {
+        if (dataTypeIndex == null)
+        {
+            buildIndex();
+        }
+
+        DataType dataType = dataTypeIndex.get(name);
+
+        if (dataType == null)
+        {
+            throw new IngestException("Failed to locate data type for: " + name);
+        }
+
+        return dataType;
+    }
+
+    /**
+     * Indexes the data types by name rejecting duplicate names
+     */
+    private void buildIndex()
+    {
+        Map<String, DataType> index = new HashMap<>();
+
         for (DataType dt: dataTypes)
         {
-            if (dt.getName().equals(name))
+            if (index.put(dt.getName(), dt) != null)
             {
-                return dt;
+                throw new IngestException("Duplicate data type: " + dt.getName());
             }
         }
 
-        throw new IngestException("Failed to locate data type for: " + name);
+        dataTypeIndex = index;
     }
 
     public String getOutputBucket()
@@ -0,0 +1,52 @@
+package com.aws.ingest.config;
+
+import com.google.gson.annotations.SerializedName;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * The file format written to the processed bucket for a data type
+ */
+public enum OutputFormat
+{
+    @SerializedName(value = "csv", alternate = { "CSV" })
+    CSV(null, true),
+
+    @SerializedName(value = "parquet", alternate = { "PARQUET" })
+    PARQUET("parquet", false);
+
+    /**
+     * The extension given to output files or null to keep the input file name
+     */
+    private final String extension;
+
+    /**
+     * True if the whole file is compressed, false if the format compresses internally
+     */
+    private final boolean streamCompressed;
+
+    OutputFormat(String extension, boolean streamCompressed)
+    {
+        this.extension = extension;
+        this.streamCompressed = streamCompressed;
+    }
+
+    public boolean isStreamCompressed()
+    {
+        return streamCompressed;
+    }
+
+    /**
+     * Computes the processed file name for an input file
+     * @param fileName the input file name
+     * @return the output file name
+     */
+    public String getOutputFileName(String fileName)
+    {
+        if (extension == null)
+        {
+            return fileName;
+        }
+
+        return FilenameUtils.removeExtension(fileName) + "." + extension;
+    }
+}
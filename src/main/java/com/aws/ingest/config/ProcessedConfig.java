@@ -1,8 +1,130 @@
 package com.aws.ingest.config;
 
+import com.aws.ingest.exception.IngestException;
+import org.apache.commons.lang3.StringUtils;
+
 /**
- * Configuration for input processing
+ * Configuration for processed file delivery, read from the environment
  */
 public class ProcessedConfig
 {
+    /**
+     * The default number of manifest entries to deliver concurrently
+     */
+    private static final int DEFAULT_DELIVERY_CONCURRENCY = 4;
+
+    /**
+     * Where to deliver files, either an smb:// share URL or a directory path
+     */
+    private String deliveryUrl = null;
+
+    private String smbDomain = null;
+    private String smbUsername = null;
+    private String smbPassword = null;
+
+    private int deliveryConcurrency = DEFAULT_DELIVERY_CONCURRENCY;
+
+    /**
+     * The public key to verify processed manifests with or None to disable
+     */
+    private String publicKey = null;
+
+    /**
+     * Loads the configuration from the environment
+     * @return the loaded configuration
+     */
+    public static ProcessedConfig fromEnvironment()
+    {
+        ProcessedConfig config = new ProcessedConfig();
+
+        config.setDeliveryUrl(Environment.get("DELIVERY_URL"));
+
+        if (StringUtils.isBlank(config.getDeliveryUrl()))
+        {
+            throw new IngestException("Missing environment variable: DELIVERY_URL");
+        }
+
+        config.setSmbDomain(Environment.get("SMB_DOMAIN"));
+        config.setSmbUsername(Environment.get("SMB_USERNAME"));
+        config.setSmbPassword(Environment.get("SMB_PASSWORD"));
+        config.setDeliveryConcurrency(Environment.getInt("DELIVERY_CONCURRENCY", DEFAULT_DELIVERY_CONCURRENCY));
+
+        config.setPublicKey(Environment.get("PUBLIC_KEY"));
+
+        if (StringUtils.isBlank(config.getPublicKey()))
+        {
+            throw new IngestException("Missing environment variable: PUBLIC_KEY use 'None' to disable");
+        }
+
+        return config;
+    }
+
+    /**
+     * True if files are delivered to an SMB share rather than a directory
+     * @return true for SMB delivery
+     */
+    public boolean isSMBDelivery()
+    {
+        return deliveryUrl != null && deliveryUrl.startsWith("smb://");
+    }
+
+    public String getDeliveryUrl()
+    {
+        return deliveryUrl;
+    }
+
+    public void setDeliveryUrl(String deliveryUrl)
+    {
+        this.deliveryUrl = deliveryUrl;
+    }
+
+    public String getSmbDomain()
+    {
+        return smbDomain;
+    }
+
+    public void setSmbDomain(String smbDomain)
+    {
+        this.smbDomain = smbDomain;
+    }
+
+    public String getSmbUsername()
+    {
+        return smbUsername;
+    }
+
+    public void setSmbUsername(String smbUsername)
+    {
+        this.smbUsername = smbUsername;
+    }
+
+    public String getSmbPassword()
+    {
+        return smbPassword;
+    }
+
+    public void setSmbPassword(String smbPassword)
+    {
+        this.smbPassword = smbPassword;
+    }
+
+    public int getDeliveryConcurrency()
+    {
+        return deliveryConcurrency;
+    }
+
+    public void setDeliveryConcurrency(int deliveryConcurrency)
+    {
+        this.deliveryConcurrency = deliveryConcurrency;
+    }
+
+    public String getPublicKey()
+    {
+        return publicKey;
+    }
+
+    public void setPublicKey(String publicKey)
+    {
+        this.publicKey = publicKey;
+    }
 }
@@ -0,0 +1,27 @@
+package com.aws.ingest.delivery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A file being delivered, either committed into place or aborted
+ */
+public interface DeliveryOutput
+{
+    /**
+     * The stream to write file content to
+     * @return the output stream
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * Closes the file and moves it into place, replacing any existing file
+     * @throws IOException thrown on failure to close or move the file
+     */
+    void commit() throws IOException;
+
+    /**
+     * Closes and removes the partial file, never throws
+     */
+    void abort();
+}
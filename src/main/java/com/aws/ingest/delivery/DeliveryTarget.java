@@ -0,0 +1,32 @@
+package com.aws.ingest.delivery;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A destination that processed files are delivered to. Files are written
+ * under a temporary name and only moved into place once committed so
+ * downstream consumers never see a partial or unverified file.
+ */
+public interface DeliveryTarget extends Closeable
+{
+    /**
+     * Suffix of files still being written
+     */
+    String PARTIAL_SUFFIX = ".partial";
+
+    /**
+     * Opens a file for delivery
+     * @param path the relative path of the file, using / as the separator
+     * @return the output to write the file to
+     * @throws IOException thrown on failure to create the file
+     */
+    DeliveryOutput open(String path) throws IOException;
+
+    /**
+     * Describes the location of a delivered file for logging
+     * @param path the relative path of the file
+     * @return the location
+     */
+    String getLocation(String path);
+}
@@ -0,0 +1,110 @@
+package com.aws.ingest.delivery;
+
+import com.aws.ingest.logging.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Delivers files to a directory, for example a mounted share
+ * or a local directory when testing without a CIFS server
+ */
+public class FileSystemDeliveryTarget implements DeliveryTarget
+{
+    private static final Log LOGGER = Log.getLog(FileSystemDeliveryTarget.class);
+
+    private final Path root;
+
+    /**
+     * Creates a file system delivery target
+     * @param root the directory to deliver into
+     */
+    public FileSystemDeliveryTarget(Path root)
+    {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public DeliveryOutput open(String path) throws IOException
+    {
+        Path target = resolve(path);
+        Path partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+
+        Files.createDirectories(target.getParent());
+
+        OutputStream out = Files.newOutputStream(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        return new DeliveryOutput()
+        {
+            @Override
+            public OutputStream getOutputStream()
+            {
+                return out;
+            }
+
+            @Override
+            public void commit() throws IOException
+            {
+                out.close();
+
+                try
+                {
+                    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            @Override
+            public void abort()
+            {
+                try
+                {
+                    out.close();
+                    Files.deleteIfExists(partial);
+                }
+                catch (Throwable t)
+                {
+                    LOGGER.error("Failed to remove partial file: " + partial, t);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getLocation(String path)
+    {
+        return resolve(path).toString();
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * Resolves a relative path under the root refusing paths that escape it
+     * @param path the relative path
+     * @return the resolved path
+     */
+    private Path resolve(String path)
+    {
+        Path resolved = root.resolve(path).normalize();
+
+        if (!resolved.startsWith(root) || resolved.equals(root))
+        {
+            throw new IllegalArgumentException("Invalid delivery path: " + path);
+        }
+
+        return resolved;
+    }
+}
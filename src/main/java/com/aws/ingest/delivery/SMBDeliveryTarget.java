@@ -0,0 +1,170 @@
+package com.aws.ingest.delivery;
+
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.logging.Log;
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.smb.NtlmPasswordAuthenticator;
+import jcifs.smb.SmbFile;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Delivers files to a CIFS/SMB share using jcifs-ng
+ * See: https://github.com/AgNO3/jcifs-ng
+ */
+public class SMBDeliveryTarget implements DeliveryTarget
+{
+    private static final Log LOGGER = Log.getLog(SMBDeliveryTarget.class);
+
+    private final String baseUrl;
+    private final CIFSContext context;
+
+    /**
+     * Creates an SMB delivery target
+     * @param url the share directory URL, for example smb://server/share/ingest/
+     * @param domain the domain, may be blank
+     * @param username the username, blank to connect as a guest
+     * @param password the password
+     */
+    public SMBDeliveryTarget(String url, String domain, String username, String password)
+    {
+        this.baseUrl = url.endsWith("/") ? url : url + "/";
+
+        try
+        {
+            Properties properties = new Properties();
+            properties.setProperty("jcifs.smb.client.minVersion", "SMB202");
+            properties.setProperty("jcifs.smb.client.maxVersion", "SMB311");
+
+            CIFSContext baseContext = new BaseContext(new PropertyConfiguration(properties));
+
+            if (StringUtils.isBlank(username))
+            {
+                this.context = baseContext.withGuestCrendentials();
+            }
+            else
+            {
+                this.context = baseContext.withCredentials(
+                        new NtlmPasswordAuthenticator(domain, username, password));
+            }
+        }
+        catch (CIFSException e)
+        {
+            throw new IngestException("Failed to create SMB context for: " + url, e);
+        }
+    }
+
+    @Override
+    public DeliveryOutput open(String path) throws IOException
+    {
+        SmbFile target = new SmbFile(getLocation(path), context);
+        SmbFile partial = new SmbFile(getLocation(path) + PARTIAL_SUFFIX, context);
+
+        try
+        {
+            createParent(target);
+            OutputStream out = partial.openOutputStream(false);
+
+            return new DeliveryOutput()
+            {
+                @Override
+                public OutputStream getOutputStream()
+                {
+                    return out;
+                }
+
+                @Override
+                public void commit() throws IOException
+                {
+                    try
+                    {
+                        out.close();
+                        partial.renameTo(target, true);
+                    }
+                    finally
+                    {
+                        partial.close();
+                        target.close();
+                    }
+                }
+
+                @Override
+                public void abort()
+                {
+                    try
+                    {
+                        out.close();
+                        partial.delete();
+                    }
+                    catch (Throwable t)
+                    {
+                        LOGGER.error("Failed to remove partial file: " + partial, t);
+                    }
+                    finally
+                    {
+                        partial.close();
+                        target.close();
+                    }
+                }
+            };
+        }
+        catch (IOException | RuntimeException e)
+        {
+            partial.close();
+            target.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getLocation(String path)
+    {
+        if (path.startsWith("/") || path.contains("\\") || ("/" + path + "/").contains("/../"))
+        {
+            throw new IllegalArgumentException("Invalid delivery path: " + path);
+        }
+
+        return baseUrl + path;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        context.close();
+    }
+
+    /**
+     * Creates the parent directory of a file, tolerating
+     * a concurrent delivery creating it at the same time
+     * @param file the file
+     * @throws IOException thrown on failure to create the directory
+     */
+    private void createParent(SmbFile file) throws IOException
+    {
+        try (SmbFile parent = new SmbFile(file.getParent(), context))
+        {
+            if (parent.exists())
+            {
+                return;
+            }
+
+            try
+            {
+                parent.mkdirs();
+            }
+            catch (IOException e)
+            {
+                if (!parent.exists())
+                {
+                    throw e;
+                }
+            }
+        }
+    }
+}
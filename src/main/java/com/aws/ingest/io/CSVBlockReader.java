@@ -0,0 +1,235 @@
+package com.aws.ingest.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits CSV character data into blocks that always end on a record
+ * boundary so blocks can be parsed independently. Quoted fields are
+ * tracked so newlines inside quoted values, for example multi-line
+ * addresses, never split a record. Matches the quoting rules of
+ * CSVFormat.DEFAULT, a quote only opens a quoted field at the start
+ * of a field and a doubled quote inside a quoted field is an escaped quote.
+ * Records may end with LF, CRLF or a bare CR.
+ */
+public class CSVBlockReader
+{
+    private static final char DELIMITER = ',';
+    private static final char QUOTE = '"';
+    private static final char LF = '\n';
+    private static final char CR = '\r';
+
+    /**
+     * Scanner states
+     */
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final Reader reader;
+
+    private char [] buffer;
+
+    /**
+     * The number of valid characters in the buffer
+     */
+    private int length = 0;
+
+    /**
+     * The number of characters in the buffer already scanned
+     */
+    private int scanned = 0;
+
+    private int state = FIELD_START;
+    private boolean eof = false;
+
+    /**
+     * True if the last character scanned was a record ending carriage return,
+     * a boundary is placed after it once the next character shows it is not CRLF
+     */
+    private boolean afterCR = false;
+
+    /**
+     * Creates a block reader
+     * @param reader the reader to split
+     * @param blockSize the target block size in characters, blocks
+     *                  grow beyond this only to fit a single large record
+     */
+    public CSVBlockReader(Reader reader, int blockSize)
+    {
+        if (blockSize < 1)
+        {
+            throw new IllegalArgumentException("Block size must be > 0");
+        }
+
+        this.reader = reader;
+        this.buffer = new char[blockSize];
+    }
+
+    /**
+     * Reads the next block of whole records
+     * @return the next block or null at the end of the input
+     * @throws IOException thrown on failure to read
+     */
+    public String nextBlock() throws IOException
+    {
+        while (true)
+        {
+            fill();
+
+            int boundary = scan();
+
+            if (boundary > 0)
+            {
+                return take(boundary);
+            }
+
+            if (eof)
+            {
+                return length > 0 ? take(length) : null;
+            }
+
+            /**
+             * A single record is larger than the buffer
+             */
+            char [] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Fills the buffer until it is full or the input ends
+     * @throws IOException thrown on failure to read
+     */
+    private void fill() throws IOException
+    {
+        while (!eof && length < buffer.length)
+        {
+            int read = reader.read(buffer, length, buffer.length - length);
+
+            if (read == -1)
+            {
+                eof = true;
+            }
+            else
+            {
+                length += read;
+            }
+        }
+    }
+
+    /**
+     * Scans the unscanned characters returning the offset just after
+     * the last record ending found, or 0 if there is none
+     * @return the offset of the last record boundary
+     */
+    private int scan()
+    {
+        int boundary = 0;
+
+        for (int i = scanned; i < length; i++)
+        {
+            char c = buffer[i];
+
+            if (afterCR)
+            {
+                afterCR = false;
+
+                if (c != LF)
+                {
+                    boundary = i;
+                }
+            }
+
+            switch (state)
+            {
+                case FIELD_START:
+                    if (c == QUOTE)
+                    {
+                        state = QUOTED;
+                    }
+                    else if (c == LF)
+                    {
+                        boundary = i + 1;
+                    }
+                    else if (c == CR)
+                    {
+                        afterCR = true;
+                    }
+                    else if (c != DELIMITER)
+                    {
+                        state = UNQUOTED;
+                    }
+                    break;
+                case UNQUOTED:
+                    if (c == DELIMITER)
+                    {
+                        state = FIELD_START;
+                    }
+                    else if (c == CR)
+                    {
+                        state = FIELD_START;
+                        afterCR = true;
+                    }
+                    else if (c == LF)
+                    {
+                        state = FIELD_START;
+                        boundary = i + 1;
+                    }
+                    break;
+                case QUOTED:
+                    if (c == QUOTE)
+                    {
+                        state = QUOTE_IN_QUOTED;
+                    }
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if (c == QUOTE)
+                    {
+                        state = QUOTED;
+                    }
+                    else if (c == LF)
+                    {
+                        state = FIELD_START;
+                        boundary = i + 1;
+                    }
+                    else if (c == DELIMITER)
+                    {
+                        state = FIELD_START;
+                    }
+                    else if (c == CR)
+                    {
+                        state = FIELD_START;
+                        afterCR = true;
+                    }
+                    else
+                    {
+                        state = UNQUOTED;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid scanner state: " + state);
+            }
+        }
+
+        scanned = length;
+
+        return boundary;
+    }
+
+    /**
+     * Takes a block from the front of the buffer moving the remainder down
+     * @param count the number of characters to take
+     * @return the block
+     */
+    private String take(int count)
+    {
+        String block = new String(buffer, 0, count);
+        System.arraycopy(buffer, count, buffer, 0, length - count);
+        length -= count;
+        scanned -= count;
+        return block;
+    }
+}
@@ -0,0 +1,699 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.validation.RowValidator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A byte level CSV projection engine that scans field delimiters directly
+ * in the input bytes and copies the selected fields straight to the output
+ * without decoding them to characters.
+ *
+ * Unquoted fields are copied as byte ranges, only quoted fields take the
+ * slower path that tracks doubled quotes. The output is byte identical to
+ * parsing with CSVFormat.DEFAULT and printing with CSVPrinter using
+ * CSVFormat.DEFAULT for UTF-8 input, as every byte the CSV rules depend on
+ * is ASCII and so never appears inside a multi-byte UTF-8 sequence.
+ * Malformed UTF-8 is copied through unchanged rather than replaced.
+ *
+ * Rows may be validated in place before they are projected, ASCII only
+ * rules read the field bytes directly and other rules decode the field.
+ * Rows that fail are written whole with the reason to a rejects output.
+ */
+public class CSVProjector
+{
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final int COMMENT = '#';
+    private static final int SP = ' ';
+
+    /**
+     * Field flags
+     */
+    private static final int QUOTED_INPUT = 1;
+    private static final int NEEDS_QUOTES = 2;
+    private static final int HAS_QUOTE = 4;
+    private static final int ESCAPED_QUOTE = 8;
+
+    /**
+     * Record scan results
+     */
+    private static final int RECORD = 0;
+    private static final int END = 1;
+    private static final int MORE = 2;
+
+    /**
+     * Receives the input position of each record boundary, used
+     * to checkpoint a projection so it can be resumed part way
+     */
+    public interface RecordListener
+    {
+        /**
+         * Called after each record has been written
+         * @param inputOffset the number of input bytes consumed up to the end of the record
+         * @param rowCount the number of records written
+         * @throws IOException thrown on failure to handle the record boundary
+         */
+        void onRecord(long inputOffset, long rowCount) throws IOException;
+    }
+
+    private final int [] projection;
+    private final int requiredFields;
+
+    private InputStream in;
+    private byte [] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    /**
+     * The number of input bytes before the start of the buffer
+     */
+    private long consumed = 0L;
+
+    private int fieldCount = 0;
+    private int [] fieldStarts = new int[32];
+    private int [] fieldEnds = new int[32];
+    private int [] fieldFlags = new int[32];
+
+    /**
+     * Optional validation and its rejects output
+     */
+    private RowValidator validator = null;
+    private OutputStream rejectsOut = null;
+    private long rejectCount = 0L;
+
+    /**
+     * Creates a projector
+     * @param projection the input field position of each output field
+     * @param bufferSize the initial read buffer size, grown to fit large records
+     */
+    public CSVProjector(int [] projection, int bufferSize)
+    {
+        this.projection = projection.clone();
+        this.buffer = new byte[bufferSize];
+
+        int max = -1;
+
+        for (int column: projection)
+        {
+            max = Math.max(max, column);
+        }
+
+        this.requiredFields = max + 1;
+    }
+
+    /**
+     * Validates each record before it is projected, writing records
+     * that fail to the rejects output with the reason appended
+     * @param validator the row validator
+     * @param rejectsOut the output to write rejected records to
+     * @return the projector
+     */
+    public CSVProjector withValidation(RowValidator validator, OutputStream rejectsOut)
+    {
+        this.validator = validator;
+        this.rejectsOut = rejectsOut;
+        return this;
+    }
+
+    /**
+     * The number of records rejected by the last projection
+     * @return the reject count
+     */
+    public long getRejectCount()
+    {
+        return rejectCount;
+    }
+
+    /**
+     * Projects every record from the input to the output
+     * @param in the UTF-8 CSV input
+     * @param out the output to write projected records to
+     * @param skipHeader true to skip the first record as a header
+     * @return the number of records written
+     * @throws IOException thrown on failure to read, parse or write
+     */
+    public long project(InputStream in, OutputStream out, boolean skipHeader) throws IOException
+    {
+        return project(in, out, skipHeader, null);
+    }
+
+    /**
+     * Projects every record from the input to the output, notifying
+     * a listener of the input offset after each record is written
+     * @param in the UTF-8 CSV input
+     * @param out the output to write projected records to
+     * @param skipHeader true to skip the first record as a header
+     * @param listener the listener to notify or null
+     * @return the number of records written
+     * @throws IOException thrown on failure to read, parse or write
+     */
+    public long project(InputStream in, OutputStream out, boolean skipHeader, RecordListener listener) throws IOException
+    {
+        this.in = in;
+        position = 0;
+        limit = 0;
+        eof = false;
+        consumed = 0L;
+        rejectCount = 0L;
+
+        long recordCount = 0L;
+        long rowCount = 0L;
+
+        if (skipHeader && !nextRecord())
+        {
+            return 0L;
+        }
+
+        while (nextRecord())
+        {
+            recordCount++;
+
+            if (validator != null)
+            {
+                int failure = validateRecord();
+
+                if (failure != RowValidator.VALID)
+                {
+                    writeReject(validator.getReason(failure));
+                    rejectCount++;
+                    continue;
+                }
+            }
+
+            if (fieldCount < requiredFields)
+            {
+                throw new IOException("Row: " + recordCount + " has: " + fieldCount +
+                        " fields but: " + requiredFields + " are required");
+            }
+
+            writeRecord(out);
+            rowCount++;
+
+            if (listener != null)
+            {
+                listener.onRecord(consumed + position, rowCount);
+            }
+        }
+
+        return rowCount;
+    }
+
+    /**
+     * Parses the next record, reading more input as required
+     * @return true if a record was parsed, false at the end of the input
+     * @throws IOException thrown on failure to read or parse
+     */
+    private boolean nextRecord() throws IOException
+    {
+        while (true)
+        {
+            int result = scanRecord();
+
+            if (result == RECORD)
+            {
+                return true;
+            }
+
+            if (result == END)
+            {
+                return false;
+            }
+
+            fill();
+        }
+    }
+
+    /**
+     * Scans a record starting at the current position, a partial record
+     * is rescanned from its start once more input has been read
+     * @return RECORD if a record was parsed, END at the end of input or MORE if more input is required
+     * @throws IOException thrown on invalid CSV
+     */
+    private int scanRecord() throws IOException
+    {
+        /**
+         * Skip empty lines
+         */
+        while (true)
+        {
+            if (position == limit)
+            {
+                return eof ? END : MORE;
+            }
+
+            byte b = buffer[position];
+
+            if (b == LF)
+            {
+                position++;
+            }
+            else if (b == CR)
+            {
+                if (position + 1 == limit && !eof)
+                {
+                    return MORE;
+                }
+
+                position = skipEndOfLine(position);
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        fieldCount = 0;
+        int p = position;
+
+        while (true)
+        {
+            /**
+             * End of input straight after a delimiter is an empty field
+             */
+            if (p == limit)
+            {
+                if (!eof)
+                {
+                    return MORE;
+                }
+
+                addField(p, p, 0);
+                position = p;
+                return RECORD;
+            }
+
+            int q;
+            int start;
+            int end;
+            int flags;
+
+            if (buffer[p] == QUOTE)
+            {
+                flags = QUOTED_INPUT;
+                start = p + 1;
+                q = start;
+
+                while (true)
+                {
+                    if (q == limit)
+                    {
+                        if (!eof)
+                        {
+                            return MORE;
+                        }
+
+                        throw new IOException("EOF reached before encapsulated token finished");
+                    }
+
+                    byte c = buffer[q];
+
+                    if (c == QUOTE)
+                    {
+                        if (q + 1 == limit && !eof)
+                        {
+                            return MORE;
+                        }
+
+                        if (q + 1 < limit && buffer[q + 1] == QUOTE)
+                        {
+                            flags |= NEEDS_QUOTES | ESCAPED_QUOTE;
+                            q += 2;
+                            continue;
+                        }
+
+                        break;
+                    }
+
+                    if (c == DELIMITER || c == LF || c == CR)
+                    {
+                        flags |= NEEDS_QUOTES;
+                    }
+
+                    q++;
+                }
+
+                end = q++;
+
+                /**
+                 * Whitespace is ignored between the closing quote and the delimiter
+                 */
+                while (q < limit)
+                {
+                    byte c = buffer[q];
+
+                    if (c == DELIMITER || c == LF || c == CR)
+                    {
+                        break;
+                    }
+
+                    int width = whitespaceWidth(q);
+
+                    if (width == -1)
+                    {
+                        return MORE;
+                    }
+
+                    if (width == 0)
+                    {
+                        throw new IOException("Invalid char between encapsulated token and delimiter");
+                    }
+
+                    q += width;
+                }
+            }
+            else
+            {
+                flags = 0;
+                start = p;
+                q = p;
+
+                while (q < limit)
+                {
+                    byte c = buffer[q];
+
+                    if (c == DELIMITER || c == LF || c == CR)
+                    {
+                        break;
+                    }
+
+                    if (c == QUOTE)
+                    {
+                        flags |= NEEDS_QUOTES | HAS_QUOTE;
+                    }
+
+                    q++;
+                }
+
+                end = q;
+            }
+
+            if (q == limit)
+            {
+                if (!eof)
+                {
+                    return MORE;
+                }
+
+                addField(start, end, flags);
+                position = q;
+                return RECORD;
+            }
+
+            byte c = buffer[q];
+
+            if (c == DELIMITER)
+            {
+                addField(start, end, flags);
+                p = q + 1;
+                continue;
+            }
+
+            if (c == CR && q + 1 == limit && !eof)
+            {
+                return MORE;
+            }
+
+            addField(start, end, flags);
+            position = skipEndOfLine(q);
+            return RECORD;
+        }
+    }
+
+    /**
+     * Skips a line feed, carriage return or carriage return line feed
+     * @param p the position of the end of line
+     * @return the position after the end of line
+     */
+    private int skipEndOfLine(int p)
+    {
+        if (buffer[p] == CR && p + 1 < limit && buffer[p + 1] == LF)
+        {
+            return p + 2;
+        }
+
+        return p + 1;
+    }
+
+    /**
+     * Measures a whitespace character encoded as UTF-8
+     * @param p the position of the character
+     * @return the width in bytes if whitespace, 0 if not whitespace or -1 if more input is required
+     */
+    private int whitespaceWidth(int p)
+    {
+        int b = buffer[p] & 0xFF;
+        int width;
+        int codePoint;
+
+        if (b < 0x80)
+        {
+            return Character.isWhitespace((char) b) ? 1 : 0;
+        }
+        else if (b >= 0xC0 && b < 0xE0)
+        {
+            width = 2;
+            codePoint = b & 0x1F;
+        }
+        else if (b >= 0xE0 && b < 0xF0)
+        {
+            width = 3;
+            codePoint = b & 0x0F;
+        }
+        else
+        {
+            return 0;
+        }
+
+        if (p + width > limit)
+        {
+            return eof ? 0 : -1;
+        }
+
+        for (int i = 1; i < width; i++)
+        {
+            codePoint = (codePoint << 6) | (buffer[p + i] & 0x3F);
+        }
+
+        return Character.isWhitespace((char) codePoint) ? width : 0;
+    }
+
+    /**
+     * Records a field of the current record
+     * @param start the start of the field content
+     * @param end the end of the field content
+     * @param flags the field flags
+     */
+    private void addField(int start, int end, int flags)
+    {
+        if (fieldCount == fieldStarts.length)
+        {
+            int size = fieldCount * 2;
+            fieldStarts = Arrays.copyOf(fieldStarts, size);
+            fieldEnds = Arrays.copyOf(fieldEnds, size);
+            fieldFlags = Arrays.copyOf(fieldFlags, size);
+        }
+
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldFlags[fieldCount] = flags;
+        fieldCount++;
+    }
+
+    /**
+     * Validates the current record
+     * @return VALID or the failed rule
+     */
+    private int validateRecord()
+    {
+        if (fieldCount < validator.getFieldCount())
+        {
+            return validator.getRuleCount();
+        }
+
+        for (int rule = 0; rule < validator.getRuleCount(); rule++)
+        {
+            int position = validator.getPosition(rule);
+            boolean valid;
+
+            if (validator.isAsciiOnly(rule) && (fieldFlags[position] & ESCAPED_QUOTE) == 0)
+            {
+                valid = validator.isValid(rule, buffer, fieldStarts[position], fieldEnds[position]);
+            }
+            else
+            {
+                valid = validator.isValid(rule, decodeField(position));
+            }
+
+            if (!valid)
+            {
+                return rule;
+            }
+        }
+
+        return RowValidator.VALID;
+    }
+
+    /**
+     * Decodes a field's value, removing doubled quotes from quoted input
+     * @param position the field position
+     * @return the value
+     */
+    private String decodeField(int position)
+    {
+        int start = fieldStarts[position];
+        String value = new String(buffer, start, fieldEnds[position] - start, StandardCharsets.UTF_8);
+        return (fieldFlags[position] & ESCAPED_QUOTE) == 0 ? value : value.replace("\"\"", "\"");
+    }
+
+    /**
+     * Writes the projected fields of the current record
+     * using the CSVPrinter minimal quoting rules
+     * @param out the output
+     * @throws IOException thrown on failure to write
+     */
+    private void writeRecord(OutputStream out) throws IOException
+    {
+        for (int i = 0; i < projection.length; i++)
+        {
+            if (i > 0)
+            {
+                out.write(DELIMITER);
+            }
+
+            writeField(out, projection[i], i == 0);
+        }
+
+        out.write(CR);
+        out.write(LF);
+    }
+
+    /**
+     * Writes every field of the current record followed by the reason it was rejected
+     * @param reason the reason
+     * @throws IOException thrown on failure to write
+     */
+    private void writeReject(String reason) throws IOException
+    {
+        for (int i = 0; i < fieldCount; i++)
+        {
+            writeField(rejectsOut, i, i == 0);
+            rejectsOut.write(DELIMITER);
+        }
+
+        /**
+         * Reasons start with a column name so are only quoted
+         * for a delimiter or quote in a configured format or pattern
+         */
+        if (reason.indexOf(DELIMITER) != -1 || reason.indexOf(QUOTE) != -1 ||
+                reason.indexOf(CR) != -1 || reason.indexOf(LF) != -1)
+        {
+            reason = '"' + reason.replace("\"", "\"\"") + '"';
+        }
+
+        rejectsOut.write(reason.getBytes(StandardCharsets.UTF_8));
+        rejectsOut.write(CR);
+        rejectsOut.write(LF);
+    }
+
+    /**
+     * Writes a field using the CSVPrinter minimal quoting rules
+     * @param out the output
+     * @param position the field position
+     * @param first true if the field is the first in the output record
+     * @throws IOException thrown on failure to write
+     */
+    private void writeField(OutputStream out, int position, boolean first) throws IOException
+    {
+        int start = fieldStarts[position];
+        int end = fieldEnds[position];
+        int flags = fieldFlags[position];
+        boolean quote;
+
+        if (start == end)
+        {
+            /**
+             * An empty first field is quoted so the record is never an empty line
+             */
+            quote = first;
+        }
+        else
+        {
+            quote = (flags & NEEDS_QUOTES) != 0 ||
+                    (buffer[start] & 0xFF) <= COMMENT ||
+                    (buffer[end - 1] & 0xFF) <= SP;
+        }
+
+        if (!quote)
+        {
+            out.write(buffer, start, end - start);
+            return;
+        }
+
+        out.write(QUOTE);
+
+        if ((flags & HAS_QUOTE) == 0)
+        {
+            /**
+             * Quoted input already has its quotes doubled
+             */
+            out.write(buffer, start, end - start);
+        }
+        else
+        {
+            int segment = start;
+
+            for (int p = start; p < end; p++)
+            {
+                if (buffer[p] == QUOTE)
+                {
+                    out.write(buffer, segment, p + 1 - segment);
+                    segment = p;
+                }
+            }
+
+            out.write(buffer, segment, end - segment);
+        }
+
+        out.write(QUOTE);
+    }
+
+    /**
+     * Reads more input, moving any partial record to the front
+     * of the buffer and growing the buffer if a record fills it
+     * @throws IOException thrown on failure to read
+     */
+    private void fill() throws IOException
+    {
+        if (position > 0)
+        {
+            consumed += position;
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        if (limit == buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+
+        if (read == -1)
+        {
+            eof = true;
+        }
+        else
+        {
+            limit += read;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.aws.ingest.io;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the number of S3 calls in flight, halving the limit when S3
+ * throttles and raising it by one after each limit's worth of calls
+ * succeed, up to the maximum. Calls already in flight when the limit is
+ * halved do not halve it again, so a burst of throttled responses only
+ * reduces it once. May be shared between streams writing to the same bucket.
+ */
+public class ConcurrencyLimit
+{
+    private final int maxLimit;
+
+    private int limit;
+    private int inFlight = 0;
+    private int successes = 0;
+
+    /**
+     * When the limit was last halved, initially just before any call can start
+     */
+    private long lastDecrease = System.nanoTime() - 1L;
+    private long throttleCount = 0L;
+
+    /**
+     * Creates a limit that starts at its maximum
+     * @param maxLimit the maximum number of calls in flight
+     */
+    public ConcurrencyLimit(int maxLimit)
+    {
+        if (maxLimit < 1)
+        {
+            throw new IllegalArgumentException("Max limit must be > 0");
+        }
+
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Waits until a call may start
+     * @return the start time of the call, passed to release()
+     * @throws InterruptedIOException thrown if interrupted while waiting
+     */
+    public synchronized long acquire() throws InterruptedIOException
+    {
+        while (inFlight >= limit)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to call S3");
+            }
+        }
+
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends a call, adjusting the limit
+     * @param started the start time returned by acquire()
+     * @param throttled true if S3 throttled the call
+     */
+    public synchronized void release(long started, boolean throttled)
+    {
+        inFlight--;
+
+        if (throttled)
+        {
+            throttleCount++;
+            successes = 0;
+
+            if (started - lastDecrease > 0L)
+            {
+                limit = Math.max(1, limit / 2);
+                lastDecrease = System.nanoTime();
+            }
+        }
+        else if (limit < maxLimit && ++successes >= limit)
+        {
+            limit++;
+            successes = 0;
+        }
+
+        notifyAll();
+    }
+
+    public synchronized int getLimit()
+    {
+        return limit;
+    }
+
+    public int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    public synchronized long getThrottleCount()
+    {
+        return throttleCount;
+    }
+}
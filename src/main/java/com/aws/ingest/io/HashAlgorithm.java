@@ -0,0 +1,94 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.exception.IngestException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The hash algorithms that can be computed while streaming data
+ */
+public enum HashAlgorithm
+{
+    MD5
+    {
+        @Override
+        public Hasher newHasher()
+        {
+            return messageDigest("MD5");
+        }
+    },
+
+    SHA256
+    {
+        @Override
+        public Hasher newHasher()
+        {
+            return messageDigest("SHA-256");
+        }
+    },
+
+    /**
+     * CRC32C as used by S3 additional checksums, encoded as 4 big endian bytes
+     */
+    CRC32C
+    {
+        @Override
+        public Hasher newHasher()
+        {
+            CRC32C crc = new CRC32C();
+
+            return new Hasher()
+            {
+                @Override
+                public void update(byte [] b, int off, int len)
+                {
+                    crc.update(b, off, len);
+                }
+
+                @Override
+                public byte [] digest()
+                {
+                    int value = (int) crc.getValue();
+                    crc.reset();
+                    return new byte [] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+                }
+            };
+        }
+    };
+
+    /**
+     * Creates a new hasher for this algorithm
+     * @return the hasher
+     */
+    public abstract Hasher newHasher();
+
+    private static Hasher messageDigest(String algorithm)
+    {
+        MessageDigest digest;
+
+        try
+        {
+            digest = MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IngestException("Failed to create digest: " + algorithm, e);
+        }
+
+        return new Hasher()
+        {
+            @Override
+            public void update(byte [] b, int off, int len)
+            {
+                digest.update(b, off, len);
+            }
+
+            @Override
+            public byte [] digest()
+            {
+                return digest.digest();
+            }
+        };
+    }
+}
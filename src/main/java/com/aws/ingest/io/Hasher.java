@@ -0,0 +1,21 @@
+package com.aws.ingest.io;
+
+/**
+ * Incrementally computes a hash or checksum over a stream of bytes
+ */
+public interface Hasher
+{
+    /**
+     * Adds bytes to the hash
+     * @param b the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     */
+    void update(byte [] b, int off, int len);
+
+    /**
+     * Completes the hash and resets the hasher
+     * @return the hash value
+     */
+    byte [] digest();
+}
@@ -0,0 +1,359 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.metrics.Metric;
+import com.aws.ingest.metrics.Metrics;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Computes one or more hashes of data read through an input stream in a
+ * single pass. Data is read into an internal buffer and hashed in bulk as
+ * it is consumed, so single byte reads cost an array access rather than a
+ * digest update, skipped bytes are hashed and mark and reset replay
+ * buffered bytes without hashing them twice. Each hash covers exactly the
+ * bytes consumed from the underlying stream.
+ */
+public class HashingInputStream extends FilterInputStream
+{
+    /**
+     * The default size of the internal buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final HashAlgorithm [] algorithms;
+    private final Hasher [] hashers;
+
+    private byte [] buffer;
+
+    /**
+     * The number of valid bytes in the buffer
+     */
+    private int count = 0;
+
+    /**
+     * The position of the next byte to return from the buffer
+     */
+    private int pos = 0;
+
+    /**
+     * Bytes in the buffer before this position have been hashed
+     */
+    private int hashed = 0;
+
+    /**
+     * Optional metrics, hashing is timed once per buffer
+     */
+    private Metrics metrics = null;
+
+    private int markPos = -1;
+    private int markLimit = 0;
+
+    /**
+     * Creates a hashing input stream with the default buffer size
+     * @param in the underlying input stream
+     * @param algorithms the algorithms to compute, at least one is required
+     */
+    public HashingInputStream(InputStream in, HashAlgorithm... algorithms)
+    {
+        this(in, DEFAULT_BUFFER_SIZE, algorithms);
+    }
+
+    /**
+     * Creates a hashing input stream
+     * @param in the underlying input stream
+     * @param bufferSize the size of the internal buffer
+     * @param algorithms the algorithms to compute, at least one is required
+     */
+    public HashingInputStream(InputStream in, int bufferSize, HashAlgorithm... algorithms)
+    {
+        super(in);
+
+        if (algorithms.length == 0)
+        {
+            throw new IngestException("At least one hash algorithm is required");
+        }
+
+        if (bufferSize < 1)
+        {
+            throw new IngestException("Invalid buffer size: " + bufferSize);
+        }
+
+        this.algorithms = algorithms.clone();
+        this.hashers = new Hasher[algorithms.length];
+
+        for (int i = 0; i < algorithms.length; i++)
+        {
+            hashers[i] = algorithms[i].newHasher();
+        }
+
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Creates a hashing input stream that computes a single algorithm
+     * with a provided hasher, such as one restored from a checkpoint
+     * @param in the underlying input stream
+     * @param algorithm the algorithm the hasher computes
+     * @param hasher the hasher
+     */
+    public HashingInputStream(InputStream in, HashAlgorithm algorithm, Hasher hasher)
+    {
+        super(in);
+        this.algorithms = new HashAlgorithm [] { algorithm };
+        this.hashers = new Hasher [] { hasher };
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Records the time spent hashing
+     * @param metrics the metrics to update
+     * @return this stream
+     */
+    public HashingInputStream withMetrics(Metrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Hashes every byte consumed so far without completing the hashes,
+     * so the state of a provided hasher can be saved
+     */
+    public void hashConsumed()
+    {
+        hashPending();
+    }
+
+    /**
+     * Completes the first algorithm's hash of the bytes consumed so far
+     * @return the hash
+     */
+    public byte [] getDigest()
+    {
+        return getDigest(algorithms[0]);
+    }
+
+    /**
+     * Completes the first algorithm's hash of the bytes consumed so far
+     * @return the Base64 encoded hash
+     */
+    public String getDigestBase64()
+    {
+        return Base64.encodeBase64String(getDigest());
+    }
+
+    /**
+     * Completes a hash of the bytes consumed so far, the hash restarts
+     * from the next byte consumed
+     * @param algorithm the algorithm to fetch
+     * @return the hash
+     */
+    public byte [] getDigest(HashAlgorithm algorithm)
+    {
+        for (int i = 0; i < algorithms.length; i++)
+        {
+            if (algorithms[i] == algorithm)
+            {
+                hashPending();
+                return hashers[i].digest();
+            }
+        }
+
+        throw new IngestException("Hash algorithm not computed: " + algorithm);
+    }
+
+    /**
+     * Completes a hash of the bytes consumed so far
+     * @param algorithm the algorithm to fetch
+     * @return the Base64 encoded hash
+     */
+    public String getDigestBase64(HashAlgorithm algorithm)
+    {
+        return Base64.encodeBase64String(getDigest(algorithm));
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (pos >= count && fill() <= 0)
+        {
+            return -1;
+        }
+
+        return buffer[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte [] b) throws IOException
+    {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte [] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (pos >= count)
+        {
+            /**
+             * Large reads with nothing buffered go straight into the
+             * caller's array and are hashed there, avoiding a copy
+             */
+            if (len >= buffer.length && markPos < 0)
+            {
+                hashPending();
+                pos = count = hashed = 0;
+
+                int result = in.read(b, off, len);
+
+                if (result > 0)
+                {
+                    update(b, off, result);
+                }
+
+                return result;
+            }
+
+            if (fill() <= 0)
+            {
+                return -1;
+            }
+        }
+
+        int result = Math.min(count - pos, len);
+        System.arraycopy(buffer, pos, b, off, result);
+        pos += result;
+        return result;
+    }
+
+    /**
+     * Skips by reading through the buffer so skipped bytes are hashed
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0L)
+        {
+            return 0L;
+        }
+
+        if (pos >= count && fill() <= 0)
+        {
+            return 0L;
+        }
+
+        int result = (int) Math.min(count - pos, n);
+        pos += result;
+        return result;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        long available = (long) (count - pos) + in.available();
+        return (int) Math.min(available, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit)
+    {
+        markPos = pos;
+        markLimit = readLimit;
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        if (markPos < 0)
+        {
+            throw new IOException("Resetting to invalid mark");
+        }
+
+        pos = markPos;
+    }
+
+    /**
+     * Hashes bytes that have been consumed from the buffer but not yet hashed
+     */
+    private void hashPending()
+    {
+        if (pos > hashed)
+        {
+            update(buffer, hashed, pos - hashed);
+            hashed = pos;
+        }
+    }
+
+    private void update(byte [] b, int off, int len)
+    {
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        for (Hasher hasher: hashers)
+        {
+            hasher.update(b, off, len);
+        }
+
+        if (metrics != null)
+        {
+            metrics.addTimeSince(Metric.MD5_TIME, start);
+        }
+    }
+
+    /**
+     * Refills the buffer once it has been consumed, keeping bytes
+     * after a valid mark so they can be replayed
+     * @return the number of bytes read or -1 at the end of the stream
+     * @throws IOException thrown on failure to read
+     */
+    private int fill() throws IOException
+    {
+        hashPending();
+
+        if (markPos < 0 || pos - markPos >= markLimit)
+        {
+            markPos = -1;
+            pos = count = hashed = 0;
+        }
+        else
+        {
+            if (markPos > 0)
+            {
+                System.arraycopy(buffer, markPos, buffer, 0, count - markPos);
+                pos -= markPos;
+                count -= markPos;
+                hashed -= markPos;
+                markPos = 0;
+            }
+
+            if (count == buffer.length)
+            {
+                byte [] grown = new byte[(int) Math.min((long) buffer.length * 2L, markLimit)];
+                System.arraycopy(buffer, 0, grown, 0, count);
+                buffer = grown;
+            }
+        }
+
+        int result = in.read(buffer, count, buffer.length - count);
+
+        if (result > 0)
+        {
+            count += result;
+        }
+
+        return result;
+    }
+}
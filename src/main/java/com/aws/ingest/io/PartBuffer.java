@@ -0,0 +1,162 @@
+package com.aws.ingest.io;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A reusable buffer holding the data for a single part of an upload
+ * or download, either allocated at its capacity or grown up to it as
+ * data is written so a small upload never allocates a full part
+ */
+public class PartBuffer
+{
+    private byte [] data;
+    private int capacity;
+    private int length = 0;
+
+    /**
+     * Creates a part buffer allocated at its capacity
+     * @param capacity the capacity in bytes
+     */
+    public PartBuffer(int capacity)
+    {
+        this(capacity, capacity);
+    }
+
+    /**
+     * Creates a part buffer that grows as it is written to
+     * @param initialCapacity the number of bytes allocated up front
+     * @param capacity the capacity in bytes
+     */
+    public PartBuffer(int initialCapacity, int capacity)
+    {
+        this.data = new byte[Math.min(initialCapacity, capacity)];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Writes a byte to the buffer, the caller must check there is space remaining
+     * @param b the byte to write
+     */
+    public void write(int b)
+    {
+        if (length == data.length)
+        {
+            grow(length + 1);
+        }
+
+        data[length++] = (byte) b;
+    }
+
+    /**
+     * Copies as many bytes as will fit into the buffer
+     * @param b the source bytes
+     * @param off the offset into the source
+     * @param len the number of bytes available
+     * @return the number of bytes copied
+     */
+    public int write(byte [] b, int off, int len)
+    {
+        int count = Math.min(len, remaining());
+        grow(length + count);
+        System.arraycopy(b, off, data, length, count);
+        length += count;
+        return count;
+    }
+
+    /**
+     * Reads exactly len bytes from an input stream into the buffer
+     * @param in the input stream to read from
+     * @param len the number of bytes to read
+     * @throws IOException thrown on failure to read or if the stream ends early
+     */
+    public void readFully(InputStream in, int len) throws IOException
+    {
+        if (len > remaining())
+        {
+            throw new IllegalArgumentException("Read of: " + len + " bytes exceeds remaining capacity: " + remaining());
+        }
+
+        grow(length + len);
+        IOUtils.readFully(in, data, length, len);
+        length += len;
+    }
+
+    /**
+     * Opens an input stream over the buffered data without copying it
+     * @return an input stream over the buffered data
+     */
+    public InputStream asInputStream()
+    {
+        return new ByteArrayInputStream(data, 0, length);
+    }
+
+    public byte [] getData()
+    {
+        return data;
+    }
+
+    public int getLength()
+    {
+        return length;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public int remaining()
+    {
+        return capacity - length;
+    }
+
+    public boolean isFull()
+    {
+        return length == capacity;
+    }
+
+    public boolean isEmpty()
+    {
+        return length == 0;
+    }
+
+    /**
+     * Grows the allocated array by at least double, up to the capacity
+     * @param required the number of bytes the array must hold
+     */
+    private void grow(int required)
+    {
+        if (required > data.length)
+        {
+            data = Arrays.copyOf(data, (int) Math.min(capacity, Math.max(required, data.length * 2L)));
+        }
+    }
+
+    /**
+     * Changes the capacity of an empty buffer so it can be reused for a part of
+     * another size, the allocated array is kept and grows as it is written to
+     * @param capacity the capacity in bytes
+     */
+    public void setCapacity(int capacity)
+    {
+        if (length > 0)
+        {
+            throw new IllegalStateException("Only an empty buffer can change capacity");
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Empties the buffer for reuse, keeping the allocated array
+     */
+    public void reset()
+    {
+        length = 0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.aws.ingest.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of part buffers, buffers are allocated lazily and
+ * recycled on release so the pool never holds more than the maximum
+ * number of buffers. Buffers may be requested with a size other than the
+ * default, a free buffer is then given the new size and keeps its allocation.
+ */
+public class PartBufferPool
+{
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final int initialCapacity;
+    private final Semaphore available;
+    private final ConcurrentLinkedQueue<PartBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a buffer pool
+     * @param bufferSize the size of each buffer in bytes
+     * @param maxBuffers the maximum number of buffers that may be allocated
+     */
+    public PartBufferPool(int bufferSize, int maxBuffers)
+    {
+        this(bufferSize, maxBuffers, bufferSize);
+    }
+
+    /**
+     * Creates a buffer pool whose buffers start small and grow as they are written to
+     * @param bufferSize the default size of each buffer in bytes
+     * @param maxBuffers the maximum number of buffers that may be allocated
+     * @param initialCapacity the number of bytes allocated when a buffer is created
+     */
+    public PartBufferPool(int bufferSize, int maxBuffers, int initialCapacity)
+    {
+        if (maxBuffers < 1)
+        {
+            throw new IllegalArgumentException("Max buffers must be > 0");
+        }
+
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.initialCapacity = initialCapacity;
+        this.available = new Semaphore(maxBuffers);
+    }
+
+    /**
+     * Acquires an empty buffer, blocking until one is released
+     * if the maximum number of buffers are in use
+     * @return an empty buffer
+     * @throws InterruptedIOException thrown if interrupted while waiting
+     */
+    public PartBuffer acquire() throws InterruptedIOException
+    {
+        return acquire(bufferSize);
+    }
+
+    /**
+     * Acquires an empty buffer of a given size, blocking until one
+     * is released if the maximum number of buffers are in use
+     * @param size the size of the buffer in bytes
+     * @return an empty buffer
+     * @throws InterruptedIOException thrown if interrupted while waiting
+     */
+    public PartBuffer acquire(int size) throws InterruptedIOException
+    {
+        try
+        {
+            available.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a part buffer");
+        }
+
+        PartBuffer buffer = freeBuffers.poll();
+
+        if (buffer == null)
+        {
+            buffer = new PartBuffer(initialCapacity, size);
+        }
+        else if (buffer.getCapacity() != size)
+        {
+            buffer.setCapacity(size);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool for reuse
+     * @param buffer the buffer to release
+     */
+    public void release(PartBuffer buffer)
+    {
+        buffer.reset();
+        freeBuffers.offer(buffer);
+        available.release();
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public int getMaxBuffers()
+    {
+        return maxBuffers;
+    }
+}
@@ -0,0 +1,216 @@
+package com.aws.ingest.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An OutputStream that hands blocks of data to a worker thread which
+ * writes them to the target stream, so expensive work in the target such
+ * as compression runs alongside the producer instead of serialising with
+ * it. Blocks are recycled so memory is bounded by the block size and
+ * number of blocks. Failures in the worker are raised on the next write,
+ * flush or close and the target is only closed after a clean finish.
+ */
+public class PipelinedOutputStream extends OutputStream
+{
+    /**
+     * Marks the end of the data for the worker
+     */
+    private static final PartBuffer END = new PartBuffer(0);
+
+    private final OutputStream target;
+    private final BlockingQueue<PartBuffer> filled;
+    private final BlockingQueue<PartBuffer> free;
+    private final Future<?> worker;
+
+    private PartBuffer current;
+    private volatile Throwable failure = null;
+    private boolean closed = false;
+
+    /**
+     * Creates a pipelined output stream and starts its worker
+     * @param target the stream the worker writes to, closed when this stream is closed
+     * @param executor the executor to run the worker on, it occupies a thread until closed
+     * @param blockSize the size of each block
+     * @param blocks the number of blocks, at least 2 so one can fill while another is written
+     */
+    public PipelinedOutputStream(OutputStream target, ExecutorService executor, int blockSize, int blocks)
+    {
+        this.target = target;
+        this.filled = new ArrayBlockingQueue<>(blocks + 1);
+        this.free = new ArrayBlockingQueue<>(blocks);
+
+        for (int i = 1; i < blocks; i++)
+        {
+            free.add(new PartBuffer(blockSize));
+        }
+
+        this.current = new PartBuffer(blockSize);
+        this.worker = executor.submit(this::drain);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (current.isFull())
+        {
+            handOff();
+        }
+
+        current.write(b);
+    }
+
+    @Override
+    public void write(byte [] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            if (current.isFull())
+            {
+                handOff();
+            }
+
+            int copied = current.write(b, off, len);
+            off += copied;
+            len -= copied;
+        }
+    }
+
+    /**
+     * Hands any buffered data to the worker, the target is not flushed
+     * as compressors would emit a partial block
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (!current.isEmpty())
+        {
+            handOff();
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Waits for the worker to write all data then closes the target
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        try
+        {
+            if (!current.isEmpty())
+            {
+                handOff();
+            }
+
+            closed = true;
+            filled.put(END);
+            worker.get();
+        }
+        catch (IOException e)
+        {
+            abort();
+            throw e;
+        }
+        catch (InterruptedException e)
+        {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for pipelined writes");
+        }
+        catch (ExecutionException e)
+        {
+            abort();
+            throw new IOException("Pipelined write failed", e.getCause());
+        }
+
+        checkFailure();
+        target.close();
+    }
+
+    /**
+     * Stops the worker without closing the target, used on failure
+     */
+    public void abort()
+    {
+        closed = true;
+        worker.cancel(true);
+    }
+
+    private void handOff() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream is closed");
+        }
+
+        checkFailure();
+
+        try
+        {
+            filled.put(current);
+            current = free.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted handing off data");
+        }
+
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException
+    {
+        if (failure != null)
+        {
+            throw new IOException("Pipelined write failed", failure);
+        }
+    }
+
+    /**
+     * Writes blocks to the target until the end marker, after a failure
+     * blocks are recycled unwritten so the producer never blocks
+     */
+    private void drain()
+    {
+        try
+        {
+            PartBuffer block;
+
+            while ((block = filled.take()) != END)
+            {
+                if (failure == null)
+                {
+                    try
+                    {
+                        target.write(block.getData(), 0, block.getLength());
+                    }
+                    catch (Throwable t)
+                    {
+                        failure = t;
+                    }
+                }
+
+                block.reset();
+                free.put(block);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.logging.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives progress while a batch of data is processed, may be
+ * called concurrently from several threads so must be thread safe
+ */
+@FunctionalInterface
+public interface ProgressListener
+{
+    /**
+     * Reports progress
+     * @param bytesDone the number of bytes processed so far
+     * @param bytesTotal the total number of bytes to process
+     * @param elapsedNanos the nanoseconds since processing started
+     */
+    void onProgress(long bytesDone, long bytesTotal, long elapsedNanos);
+
+    /**
+     * A listener that ignores progress
+     */
+    ProgressListener NONE = (bytesDone, bytesTotal, elapsedNanos) -> { };
+
+    /**
+     * Creates a listener that logs progress and throughput in MB/s
+     * at most once per interval and once when processing completes
+     * @param logger the logger to log to
+     * @param intervalMillis the minimum time between log messages
+     * @return the logging listener
+     */
+    static ProgressListener logging(Log logger, long intervalMillis)
+    {
+        AtomicLong nextLog = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+
+        return (bytesDone, bytesTotal, elapsedNanos) ->
+        {
+            long next = nextLog.get();
+            boolean complete = bytesDone >= bytesTotal;
+
+            if (next == Long.MAX_VALUE || (!complete && elapsedNanos < next))
+            {
+                return;
+            }
+
+            if (nextLog.compareAndSet(next, complete ? Long.MAX_VALUE :
+                    elapsedNanos + TimeUnit.MILLISECONDS.toNanos(intervalMillis)))
+            {
+                double megabytes = bytesDone / (1024.0 * 1024.0);
+                double seconds = Math.max(elapsedNanos, 1L) / 1e9;
+
+                logger.info(() -> String.format("Processed %.1f of %.1f MB at %.1f MB/s",
+                        megabytes, bytesTotal / (1024.0 * 1024.0), megabytes / seconds));
+            }
+        };
+    }
+}
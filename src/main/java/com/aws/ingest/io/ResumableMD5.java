@@ -0,0 +1,247 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.exception.IngestException;
+import org.apache.commons.codec.binary.Base64;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An MD5 implementation whose intermediate state can be saved and restored,
+ * so a hash of a very large stream can be resumed by another process from
+ * a checkpoint. MessageDigest state cannot be exported, so this is only used
+ * where a checkpoint is required and produces the same digest.
+ */
+public class ResumableMD5 implements Hasher
+{
+    private static final int BLOCK_SIZE = 64;
+
+    private static final int [] SHIFTS = {
+        7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+        5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+        4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+        6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21
+    };
+
+    private static final int [] TABLE = new int[64];
+
+    static
+    {
+        for (int i = 0; i < 64; i++)
+        {
+            TABLE[i] = (int) (long) ((1L << 32) * Math.abs(Math.sin(i + 1)));
+        }
+    }
+
+    private int a;
+    private int b;
+    private int c;
+    private int d;
+
+    /**
+     * The total number of bytes hashed
+     */
+    private long length;
+
+    /**
+     * Bytes waiting for a complete block
+     */
+    private final byte [] pending = new byte[BLOCK_SIZE];
+
+    private final int [] words = new int[16];
+
+    /**
+     * Creates a hasher in its initial state
+     */
+    public ResumableMD5()
+    {
+        reset();
+    }
+
+    /**
+     * Restores a hasher from a saved state
+     * @param state the state returned by getState()
+     * @return the restored hasher
+     */
+    public static ResumableMD5 fromState(String state)
+    {
+        ResumableMD5 md5 = new ResumableMD5();
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.decodeBase64(state));
+            md5.a = buffer.getInt();
+            md5.b = buffer.getInt();
+            md5.c = buffer.getInt();
+            md5.d = buffer.getInt();
+            md5.length = buffer.getLong();
+
+            int pendingLength = (int) (md5.length % BLOCK_SIZE);
+
+            if (buffer.remaining() != pendingLength)
+            {
+                throw new IngestException("Invalid MD5 state length");
+            }
+
+            buffer.get(md5.pending, 0, pendingLength);
+        }
+        catch (IngestException e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            throw new IngestException("Failed to restore MD5 state", t);
+        }
+
+        return md5;
+    }
+
+    /**
+     * Saves the intermediate state of the hash
+     * @return the Base64 encoded state
+     */
+    public String getState()
+    {
+        int pendingLength = (int) (length % BLOCK_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(24 + pendingLength);
+        buffer.putInt(a).putInt(b).putInt(c).putInt(d).putLong(length);
+        buffer.put(pending, 0, pendingLength);
+        return Base64.encodeBase64String(buffer.array());
+    }
+
+    /**
+     * The number of bytes hashed so far
+     * @return the length in bytes
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    @Override
+    public void update(byte [] input, int off, int len)
+    {
+        int pendingLength = (int) (length % BLOCK_SIZE);
+        length += len;
+
+        if (pendingLength > 0)
+        {
+            int copied = Math.min(BLOCK_SIZE - pendingLength, len);
+            System.arraycopy(input, off, pending, pendingLength, copied);
+            off += copied;
+            len -= copied;
+
+            if (pendingLength + copied < BLOCK_SIZE)
+            {
+                return;
+            }
+
+            transform(pending, 0);
+        }
+
+        while (len >= BLOCK_SIZE)
+        {
+            transform(input, off);
+            off += BLOCK_SIZE;
+            len -= BLOCK_SIZE;
+        }
+
+        System.arraycopy(input, off, pending, 0, len);
+    }
+
+    @Override
+    public byte [] digest()
+    {
+        long bitLength = length << 3;
+        int pendingLength = (int) (length % BLOCK_SIZE);
+        int padding = pendingLength < 56 ? 56 - pendingLength : 120 - pendingLength;
+
+        byte [] trailer = new byte[padding + 8];
+        trailer[0] = (byte) 0x80;
+
+        for (int i = 0; i < 8; i++)
+        {
+            trailer[padding + i] = (byte) (bitLength >>> (8 * i));
+        }
+
+        update(trailer, 0, trailer.length);
+
+        byte [] result = new byte[16];
+        int [] state = { a, b, c, d };
+
+        for (int i = 0; i < 16; i++)
+        {
+            result[i] = (byte) (state[i >> 2] >>> (8 * (i & 3)));
+        }
+
+        reset();
+        return result;
+    }
+
+    private void reset()
+    {
+        a = 0x67452301;
+        b = 0xefcdab89;
+        c = 0x98badcfe;
+        d = 0x10325476;
+        length = 0L;
+    }
+
+    /**
+     * Hashes a single 64 byte block
+     * @param block the bytes
+     * @param off the offset of the block
+     */
+    private void transform(byte [] block, int off)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            int p = off + (i << 2);
+            words[i] = (block[p] & 0xFF) | ((block[p + 1] & 0xFF) << 8) |
+                    ((block[p + 2] & 0xFF) << 16) | ((block[p + 3] & 0xFF) << 24);
+        }
+
+        int aa = a;
+        int bb = b;
+        int cc = c;
+        int dd = d;
+
+        for (int i = 0; i < 64; i++)
+        {
+            int f;
+            int g;
+
+            if (i < 16)
+            {
+                f = (bb & cc) | (~bb & dd);
+                g = i;
+            }
+            else if (i < 32)
+            {
+                f = (dd & bb) | (~dd & cc);
+                g = (5 * i + 1) & 15;
+            }
+            else if (i < 48)
+            {
+                f = bb ^ cc ^ dd;
+                g = (3 * i + 5) & 15;
+            }
+            else
+            {
+                f = cc ^ (bb | ~dd);
+                g = (7 * i) & 15;
+            }
+
+            int rotated = Integer.rotateLeft(aa + f + TABLE[i] + words[g], SHIFTS[i]);
+            aa = dd;
+            dd = cc;
+            cc = bb;
+            bb = bb + rotated;
+        }
+
+        a += aa;
+        b += bb;
+        c += cc;
+        d += dd;
+    }
+}
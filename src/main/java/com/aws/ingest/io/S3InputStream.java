@@ -0,0 +1,371 @@
+package com.aws.ingest.io;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.aws.ingest.logging.Log;
+import com.aws.ingest.metrics.Metric;
+import com.aws.ingest.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An InputStream that reads an S3 object using several concurrent ranged
+ * GETs prefetched into a bounded ring of part buffers while still
+ * presenting the data to the reader strictly in order
+ */
+public class S3InputStream extends InputStream
+{
+    private static final Log LOGGER = Log.getLog(S3InputStream.class);
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String key;
+    private final String inputPath;
+    private final int partSize;
+    private final ExecutorService downloadExecutor;
+
+    private final long contentLength;
+    private final String eTag;
+
+    private final PartBufferPool bufferPool;
+
+    /**
+     * Part downloads in flight, in part order
+     */
+    private final LinkedList<Future<PartBuffer>> pendingParts = new LinkedList<>();
+
+    /**
+     * The offset of the next part to schedule
+     */
+    private long nextPartOffset = 0L;
+
+    /**
+     * The part currently being read and the read position within it
+     */
+    private PartBuffer currentPart = null;
+    private int position = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Optional metrics, updated by the reading thread once per part
+     */
+    private Metrics metrics = null;
+
+    /**
+     * Creates an input stream from S3
+     * @param s3 the S3 client
+     * @param bucket the bucket
+     * @param key the key
+     * @param partSize the size of each ranged GET
+     * @param maxInFlightParts the maximum number of parts to prefetch
+     * @param downloadExecutor the executor to download parts with, may be shared between streams
+     * @throws IOException thrown on failure to start the download
+     */
+    public S3InputStream(AmazonS3 s3, String bucket, String key, int partSize,
+                         int maxInFlightParts, ExecutorService downloadExecutor) throws IOException
+    {
+        this(s3, bucket, key, partSize, maxInFlightParts, downloadExecutor, 0L, null);
+    }
+
+    /**
+     * Creates an input stream from S3 starting part way through the object,
+     * used to resume reading from a checkpoint
+     * @param s3 the S3 client
+     * @param bucket the bucket
+     * @param key the key
+     * @param partSize the size of each ranged GET
+     * @param maxInFlightParts the maximum number of parts to prefetch
+     * @param downloadExecutor the executor to download parts with, may be shared between streams
+     * @param startOffset the offset of the first byte to read
+     * @param expectedETag the ETag the object must still have or null to accept any
+     * @throws IOException thrown on failure to start the download or if the object has changed
+     */
+    public S3InputStream(AmazonS3 s3, String bucket, String key, int partSize,
+                         int maxInFlightParts, ExecutorService downloadExecutor,
+                         long startOffset, String expectedETag) throws IOException
+    {
+        if (partSize < 1)
+        {
+            throw new IllegalArgumentException("Part size must be > 0");
+        }
+
+        if (maxInFlightParts < 1)
+        {
+            throw new IllegalArgumentException("Max in flight parts must be > 0");
+        }
+
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.inputPath = "s3://" + bucket + "/" + key;
+        this.downloadExecutor = downloadExecutor;
+
+        ObjectMetadata metadata = s3.getObjectMetadata(new GetObjectMetadataRequest(bucket, key));
+        this.contentLength = metadata.getContentLength();
+        this.eTag = metadata.getETag();
+
+        if (expectedETag != null && !expectedETag.equals(eTag))
+        {
+            throw new IOException("Object has changed since the checkpoint: " + getInputPath());
+        }
+
+        if (startOffset < 0L || startOffset > contentLength)
+        {
+            throw new IOException("Invalid start offset: " + startOffset + " for: " + getInputPath());
+        }
+
+        this.nextPartOffset = startOffset;
+
+        /**
+         * Small objects only need a buffer as large as the object
+         */
+        this.partSize = (int) Math.max(1L, Math.min(partSize, contentLength));
+        this.bufferPool = new PartBufferPool(this.partSize, maxInFlightParts);
+
+        for (int i = 0; i < maxInFlightParts && nextPartOffset < contentLength; i++)
+        {
+            schedulePart(bufferPool.acquire());
+        }
+
+        LOGGER.info("Opened parallel download from: " + getInputPath() + " length: " + contentLength +
+                (startOffset > 0L ? " offset: " + startOffset : ""));
+    }
+
+    /**
+     * Records the bytes and parts read and the time spent waiting for parts
+     * @param metrics the metrics to update
+     * @return this stream
+     */
+    public S3InputStream withMetrics(Metrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Reads a single byte
+     * @return the byte read or -1 at the end of the stream
+     * @throws IOException thrown on failure to read
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (!ensureData())
+        {
+            return -1;
+        }
+
+        return currentPart.getData()[position++] & 0xFF;
+    }
+
+    /**
+     * Reads up to len bytes from the current part
+     * @param b the destination buffer
+     * @param off the offset into the destination
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read or -1 at the end of the stream
+     * @throws IOException thrown on failure to read
+     */
+    @Override
+    public int read(byte [] b, int off, int len) throws IOException
+    {
+        if ((off | len | (b.length - (len + off))) < 0)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (!ensureData())
+        {
+            return -1;
+        }
+
+        int count = Math.min(len, currentPart.getLength() - position);
+        System.arraycopy(currentPart.getData(), position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available()
+    {
+        return currentPart == null ? 0 : currentPart.getLength() - position;
+    }
+
+    /**
+     * Cancels any prefetches still in flight
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        closed = true;
+
+        for (Future<PartBuffer> pendingPart: pendingParts)
+        {
+            pendingPart.cancel(true);
+        }
+
+        pendingParts.clear();
+    }
+
+    /**
+     * Makes sure there is unread data in the current part, advancing
+     * to the next part and scheduling further prefetches as required
+     * @return true if there is data to read, false at the end of the stream
+     * @throws IOException thrown on failure to download a part
+     */
+    private boolean ensureData() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream is closed from: " + getInputPath());
+        }
+
+        while (currentPart == null || position == currentPart.getLength())
+        {
+            if (currentPart != null)
+            {
+                bufferPool.release(currentPart);
+                currentPart = null;
+
+                if (nextPartOffset < contentLength)
+                {
+                    schedulePart(bufferPool.acquire());
+                }
+            }
+
+            Future<PartBuffer> nextPart = pendingParts.poll();
+
+            if (nextPart == null)
+            {
+                return false;
+            }
+
+            currentPart = getPart(nextPart);
+            position = 0;
+
+            if (metrics != null)
+            {
+                metrics.add(Metric.INPUT_BYTES, currentPart.getLength());
+                metrics.add(Metric.PARTS_DOWNLOADED, 1L);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Schedules a ranged GET for the next part
+     * @param buffer the buffer to download into
+     */
+    private void schedulePart(PartBuffer buffer)
+    {
+        long start = nextPartOffset;
+        int length = (int) Math.min(partSize, contentLength - start);
+        nextPartOffset += length;
+
+        pendingParts.add(downloadExecutor.submit(() -> downloadPart(buffer, start, length)));
+    }
+
+    /**
+     * Downloads a part into a buffer, the ETag is matched so
+     * a concurrent overwrite of the object fails the read
+     * @param buffer the buffer to download into
+     * @param start the start offset in the object
+     * @param length the number of bytes to download
+     * @return the filled buffer
+     * @throws IOException thrown on failure to download
+     */
+    private PartBuffer downloadPart(PartBuffer buffer, long start, int length) throws IOException
+    {
+        GetObjectRequest request = new GetObjectRequest(bucket, key)
+                .withRange(start, start + length - 1);
+
+        if (eTag != null)
+        {
+            request.withMatchingETagConstraint(eTag);
+        }
+
+        try (S3Object s3Object = s3.getObject(request))
+        {
+            if (s3Object == null)
+            {
+                throw new IOException("Object was modified during download from: " + getInputPath());
+            }
+
+            buffer.readFully(s3Object.getObjectContent(), length);
+            return buffer;
+        }
+    }
+
+    /**
+     * Waits for a part download to complete
+     * @param pendingPart the pending part
+     * @return the downloaded part
+     * @throws IOException thrown if the download failed
+     */
+    private PartBuffer getPart(Future<PartBuffer> pendingPart) throws IOException
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            return pendingPart.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for part download from: " + getInputPath());
+        }
+        catch (CancellationException e)
+        {
+            throw new IOException("Part download was cancelled from: " + getInputPath(), e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Failed to download part from: " + getInputPath(), e.getCause());
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.addTimeSince(Metric.READ_WAIT_TIME, start);
+            }
+        }
+    }
+
+    public long getContentLength()
+    {
+        return contentLength;
+    }
+
+    public String getETag()
+    {
+        return eTag;
+    }
+
+    public String getInputPath()
+    {
+        return inputPath;
+    }
+}
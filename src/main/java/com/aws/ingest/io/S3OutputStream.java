@@ -1,73 +1,188 @@
 package com.aws.ingest.io;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
-import com.amazonaws.util.Md5Utils;
 import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.logging.Log;
+import com.aws.ingest.metrics.Metric;
+import com.aws.ingest.metrics.Metrics;
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Base64;
-import org.apache.log4j.Logger;
+import org.apache.commons.codec.binary.Hex;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * An OutputStream that buffers data and flushes to S3 using multipart put
- * while computing an MD5 hash of the overall upload
+ * while computing an MD5 hash of the overall upload. A stream closed before
+ * its first part fills is stored with a single PUT instead.
+ *
+ * Parts start at the part size, or larger if a size hint needs it, and double
+ * every 1,000 parts so uploads far larger than expected stay under the limit
+ * of 10,000 parts. Part buffers start small and grow as they are written to.
+ *
+ * Each part is kept in its buffer until S3 acknowledges it, so a part that
+ * fails with a transient error or is throttled is uploaded again after a
+ * jittered exponential backoff, as are the calls that start, complete or
+ * PUT the upload. An optional concurrency limit shared between streams
+ * reduces the number of calls in flight while S3 is throttling.
  */
 public class S3OutputStream extends OutputStream
 {
-    private final Logger LOGGER = Logger.getLogger(S3OutputStream.class);
+    private static final Log LOGGER = Log.getLog(S3OutputStream.class);
 
-    private static final int FIVE_MB = 5 * 1024 * 1024;
+    /**
+     * The smallest part S3 allows other than the last
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * The largest part this stream uploads, below the S3 limit of 5GB
+     * as a part is buffered in a single array
+     */
+    private static final int MAX_PART_SIZE = 1024 * 1024 * 1024;
+
+    /**
+     * The most parts S3 allows in an upload
+     */
+    private static final int MAX_PARTS = 10000;
+
+    /**
+     * The part size doubles after this many parts, a size hint picks
+     * a part size that fits the hinted length within this many parts
+     */
+    private static final int PART_SIZE_GROWTH_INTERVAL = 1000;
+
+    /**
+     * The bytes allocated when a part buffer is created, doubling as it fills
+     */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The default number of attempts at each S3 call and the delays
+     * the backoff before each retry is randomly chosen up to,
+     * doubling from the base delay up to the maximum delay
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 100L;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10000L;
+
+    /**
+     * Written bytes are hashed once this many are pending, small enough that
+     * they are still in cache and large enough that small writes are batched
+     */
+    private static final int HASH_SLICE_SIZE = 64 * 1024;
 
     private final AmazonS3 s3;
     private final String bucket;
     private final String key;
+    private final String outputPath;
     private String kmsKeyId = null;
-    private final int partSize;
 
-    private final ByteArrayOutputStream outputBuffer;
-    private MessageDigest digest;
+    /**
+     * The size of the first part, grown for later parts
+     */
+    private int partSize;
+    private int maxInFlightParts = 0;
+
+    private PartBufferPool bufferPool;
+    private PartBuffer outputBuffer = null;
+    private Hasher digest;
+    private MessageDigest partDigest;
+    private byte [] digestValue = null;
+
+    /**
+     * The number of bytes in the current part that have been hashed
+     */
+    private int hashedLength = 0;
 
-    private long length = 0L;
     private long totalLength = 0L;
 
-    private String uploadId = null;
+    private volatile String uploadId = null;
+    private volatile boolean aborted = false;
+    private boolean closed = false;
     private int partNumber = 1;
     private String etag = null;
     private List<PartETag> partETags = new ArrayList<>();
 
+    /**
+     * Optional executor for asynchronous part uploads
+     */
+    private ExecutorService uploadExecutor = null;
+
+    /**
+     * Part uploads that have not yet been collected, in part order
+     */
+    private final LinkedList<PartUpload> pendingParts = new LinkedList<>();
+
+    /**
+     * Optional metrics, updated once per hashed slice and per part
+     */
+    private Metrics metrics = null;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /**
+     * Optional limit on S3 calls in flight, reduced while S3 is throttling
+     */
+    private ConcurrencyLimit concurrencyLimit = null;
+
+    /**
+     * Counters across every S3 call made by the stream, updated from the upload threads
+     */
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder throttleCount = new LongAdder();
+    private final LongAccumulator maxPartNanos = new LongAccumulator(Math::max, 0L);
+
     /**
      * Creates an output stream to S3
      * @param s3 the S3 client
      * @param bucket the bucket
      * @param key the key
-     * @param partSize the maximum part size
+     * @param partSize the size of the first part
      */
     public S3OutputStream(AmazonS3 s3, String bucket, String key, int partSize)
     {
         this.s3 = s3;
         this.bucket = bucket;
         this.key = key;
+        this.outputPath = "s3://" + bucket + "/" + key;
         this.partSize = partSize;
 
         resetDigest();
 
-        if (partSize < FIVE_MB)
+        if (partSize < MIN_PART_SIZE)
         {
             throw new IllegalArgumentException("Part size must be > 5MB");
         }
 
-        outputBuffer = new ByteArrayOutputStream(partSize);
+        bufferPool = new PartBufferPool(partSize, 1, INITIAL_BUFFER_SIZE);
     }
 
-
     /**
      * Enables a KMS key
      * @param kmsKeyId the key id
@@ -80,10 +195,247 @@ public class S3OutputStream extends OutputStream
     }
 
     /**
-     * Aborts the upload
+     * Enables asynchronous part uploads, filled parts are handed to the
+     * executor while the writer continues to fill the next part.
+     * The stream holds at most maxInFlightParts + 1 part buffers.
+     * @param uploadExecutor the executor to upload parts with, may be shared between streams
+     * @param maxInFlightParts the maximum number of parts in flight for this stream
+     * @return the output stream
      */
-    public void abort()
+    public S3OutputStream withUploadExecutor(ExecutorService uploadExecutor, int maxInFlightParts)
     {
+        if (maxInFlightParts < 1)
+        {
+            throw new IllegalArgumentException("Max in flight parts must be > 0");
+        }
+
+        this.uploadExecutor = uploadExecutor;
+        this.maxInFlightParts = maxInFlightParts;
+        this.bufferPool = new PartBufferPool(partSize, maxInFlightParts + 1, INITIAL_BUFFER_SIZE);
+        return this;
+    }
+
+    /**
+     * Raises the part size if needed so an upload of about the expected
+     * length fits within 1,000 parts, such as the length of the input an
+     * upload is transformed from. The hint only affects part sizes so an
+     * upload may end up smaller or larger than the hint.
+     * @param expectedLength the expected length in bytes
+     * @return the output stream
+     */
+    public S3OutputStream withSizeHint(long expectedLength)
+    {
+        long megabyte = 1024L * 1024L;
+        long hintedSize = (expectedLength + PART_SIZE_GROWTH_INTERVAL - 1) / PART_SIZE_GROWTH_INTERVAL;
+        hintedSize = (hintedSize + megabyte - 1) / megabyte * megabyte;
+
+        if (hintedSize > partSize && partSize < MAX_PART_SIZE)
+        {
+            partSize = (int) Math.min(hintedSize, MAX_PART_SIZE);
+            bufferPool = new PartBufferPool(partSize, maxInFlightParts + 1, INITIAL_BUFFER_SIZE);
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets how S3 calls that fail with a transient error or are throttled are retried,
+     * each retry waits a random time up to the base delay doubled for every attempt
+     * so far, capped at the maximum delay
+     * @param maxAttempts the number of attempts at each call, 1 disables retries
+     * @param baseDelayMillis the delay before the first retry in milliseconds
+     * @param maxDelayMillis the maximum delay before a retry in milliseconds
+     * @return the output stream
+     */
+    public S3OutputStream withRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis)
+    {
+        if (maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("Max attempts must be > 0");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * Limits the S3 calls in flight, the limit may be shared between
+     * streams so throttling seen by one slows them all
+     * @param concurrencyLimit the limit
+     * @return the output stream
+     */
+    public S3OutputStream withConcurrencyLimit(ConcurrencyLimit concurrencyLimit)
+    {
+        this.concurrencyLimit = concurrencyLimit;
+        return this;
+    }
+
+    /**
+     * Records the time spent hashing, uploading parts and waiting for uploads,
+     * along with the S3 calls retried and throttled
+     * @param metrics the metrics to update
+     * @return the output stream
+     */
+    public S3OutputStream withMetrics(Metrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Computes the MD5 of the upload with a hasher whose state can be
+     * saved, required to checkpoint the upload with getDigestState()
+     * @return the output stream
+     */
+    public S3OutputStream withCheckpointing()
+    {
+        this.digest = new ResumableMD5();
+        return this;
+    }
+
+    /**
+     * Resumes a multipart upload from a checkpoint, parts already uploaded
+     * are kept and writing continues with the next part
+     * @param uploadId the upload id of the multipart upload
+     * @param completedParts the parts uploaded before the checkpoint in part order
+     * @param length the number of bytes in the completed parts
+     * @param digestState the saved MD5 state of the completed parts
+     * @return the output stream
+     */
+    public S3OutputStream resume(String uploadId, List<PartETag> completedParts, long length, String digestState)
+    {
+        ResumableMD5 resumedDigest = ResumableMD5.fromState(digestState);
+
+        if (resumedDigest.getLength() != length)
+        {
+            throw new IngestException("Checkpoint digest covers: " + resumedDigest.getLength() +
+                    " bytes but the completed parts hold: " + length);
+        }
+
+        this.uploadId = uploadId;
+        this.partETags = new ArrayList<>(completedParts);
+        this.partNumber = completedParts.size() + 1;
+        this.totalLength = length;
+        this.digest = resumedDigest;
+
+        LOGGER.info("Resumed upload to: " + getOutputPath() + " at part: " + partNumber);
+
+        return this;
+    }
+
+    /**
+     * Starts the multipart upload if it has not already started,
+     * so its upload id is known before any part is written
+     * @throws IOException thrown on failure to start the upload
+     */
+    public void start() throws IOException
+    {
+        if (uploadId == null)
+        {
+            startMultipart();
+        }
+    }
+
+    /**
+     * Uploads the buffered bytes as a part now rather than waiting
+     * for the buffer to fill, so the part ends where the writer chooses
+     * @return the number of the part uploaded
+     * @throws IOException thrown if less than 5MB is buffered or on failure to upload
+     */
+    public int cutPart() throws IOException
+    {
+        if (getBufferedLength() < MIN_PART_SIZE)
+        {
+            throw new IOException("Parts other than the last must be at least 5MB to: " + getOutputPath());
+        }
+
+        int cutPartNumber = partNumber;
+        flushPart(false);
+        return cutPartNumber;
+    }
+
+    /**
+     * The size of the part being written, which
+     * doubles every 1,000 parts up to 1GB
+     * @return the part size in bytes
+     */
+    public int getPartSize()
+    {
+        int doublings = Math.min((partNumber - 1) / PART_SIZE_GROWTH_INTERVAL, 30);
+        return (int) Math.max(partSize, Math.min((long) partSize << doublings, MAX_PART_SIZE));
+    }
+
+    /**
+     * The number of bytes written but not yet handed to a part upload
+     * @return the buffered length
+     */
+    public int getBufferedLength()
+    {
+        return outputBuffer == null ? 0 : outputBuffer.getLength();
+    }
+
+    /**
+     * Fetches the parts that have finished uploading, stopping at
+     * the first part still in flight
+     * @return the completed parts in part order
+     * @throws IOException thrown if a part upload failed
+     */
+    public List<PartETag> getCompletedParts() throws IOException
+    {
+        collectCompletedParts();
+        return new ArrayList<>(partETags);
+    }
+
+    /**
+     * Saves the MD5 state of every byte handed to a part upload,
+     * only valid straight after cutPart() with checkpointing enabled
+     * @return the saved state
+     */
+    public String getDigestState()
+    {
+        if (!(digest instanceof ResumableMD5) || getBufferedLength() > 0)
+        {
+            throw new IngestException("Digest state is only available after a part is cut with checkpointing enabled");
+        }
+
+        return ((ResumableMD5) digest).getState();
+    }
+
+    public String getUploadId()
+    {
+        return uploadId;
+    }
+
+    /**
+     * Aborts the upload, this may be called from a thread other
+     * than the writing thread to cancel an upload in flight
+     */
+    public synchronized void abort()
+    {
+        aborted = true;
+
+        /**
+         * Wakes any call backing off before a retry
+         */
+        notifyAll();
+
+        /**
+         * Parts cancelled before they start never run so their buffers are
+         * released here, waking a writer waiting for a buffer
+         */
+        synchronized (pendingParts)
+        {
+            for (PartUpload pendingPart: pendingParts)
+            {
+                if (pendingPart.future.cancel(false) && pendingPart.claim())
+                {
+                    bufferPool.release(pendingPart.part);
+                }
+            }
+        }
+
         if (uploadId != null)
         {
             AbortMultipartUploadRequest request = new AbortMultipartUploadRequest(bucket, key, uploadId);
@@ -94,71 +446,468 @@ public class S3OutputStream extends OutputStream
     }
 
     /**
-     * Writes a byte to the buffer
+     * Writes a byte to the buffer, single bytes are hashed
+     * in bulk when the next slice is written or the part is flushed
      * @param b the byte to write
      * @throws IOException thrown on failure to write
      */
     @Override
     public void write(int b) throws IOException
     {
+        if (outputBuffer == null)
+        {
+            outputBuffer = acquireBuffer();
+        }
+
         outputBuffer.write(b);
-        length++;
         totalLength++;
 
-        if (length == partSize)
+        if (outputBuffer.isFull())
         {
             flushPart(false);
         }
     }
 
+    /**
+     * Copies a slice into the current part buffer, splitting it at part
+     * boundaries, and hashes copied bytes in slices while they are still hot
+     * @param b the bytes to write
+     * @param off the offset of the slice
+     * @param len the length of the slice
+     * @throws IOException thrown on failure to write
+     */
+    @Override
+    public void write(byte [] b, int off, int len) throws IOException
+    {
+        if ((off | len | (b.length - (len + off))) < 0)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0)
+        {
+            if (outputBuffer == null)
+            {
+                outputBuffer = acquireBuffer();
+            }
+
+            int copied = outputBuffer.write(b, off, len);
+            totalLength += copied;
+            off += copied;
+            len -= copied;
+
+            if (outputBuffer.getLength() - hashedLength >= HASH_SLICE_SIZE)
+            {
+                hashPending();
+            }
+
+            if (outputBuffer.isFull())
+            {
+                flushPart(false);
+            }
+        }
+    }
+
+    /**
+     * Updates the part and overall digests with any bytes in the
+     * current part that have not yet been hashed
+     */
+    private void hashPending()
+    {
+        int unhashed = outputBuffer.getLength() - hashedLength;
+
+        if (unhashed > 0)
+        {
+            long start = metrics != null ? System.nanoTime() : 0L;
+
+            partDigest.update(outputBuffer.getData(), hashedLength, unhashed);
+            digest.update(outputBuffer.getData(), hashedLength, unhashed);
+            hashedLength += unhashed;
+
+            if (metrics != null)
+            {
+                metrics.addTimeSince(Metric.MD5_TIME, start);
+            }
+        }
+    }
+
+    /**
+     * Acquires a part buffer, waiting while the maximum number of parts are in flight
+     * @return an empty part buffer
+     * @throws InterruptedIOException thrown if interrupted while waiting
+     */
+    private PartBuffer acquireBuffer() throws InterruptedIOException
+    {
+        long start = System.nanoTime();
+        PartBuffer buffer = bufferPool.acquire(getPartSize());
+
+        if (metrics != null)
+        {
+            metrics.addTimeSince(Metric.UPLOAD_WAIT_TIME, start);
+        }
+
+        return buffer;
+    }
+
     /**
      * Flushes a part
      * @param isLastPart true if this is the last part
      */
-    private void flushPart(boolean isLastPart)
+    private void flushPart(boolean isLastPart) throws IOException
     {
-        if (length == 0)
+        checkNotAborted();
+
+        if (outputBuffer == null || outputBuffer.isEmpty())
         {
             return;
         }
 
+        if (partNumber > MAX_PARTS)
+        {
+            throw new IOException("Upload exceeds the maximum of: " + MAX_PARTS + " parts to: " + getOutputPath());
+        }
+
         if (uploadId == null)
         {
             startMultipart();
         }
 
-        byte [] outputData = outputBuffer.toByteArray();
+        /**
+         * Both digests are always computed on the writing thread in part order
+         */
+        hashPending();
+
+        PartBuffer part = outputBuffer;
+        String partMD5 = Base64.encodeBase64String(partDigest.digest());
+        outputBuffer = null;
+        hashedLength = 0;
+
+        int currentPartNumber = partNumber++;
+
+        if (uploadExecutor == null)
+        {
+            long start = System.nanoTime();
+
+            try
+            {
+                partETags.add(uploadPart(currentPartNumber, part, partMD5, isLastPart));
+            }
+            finally
+            {
+                bufferPool.release(part);
+
+                if (metrics != null)
+                {
+                    metrics.addTimeSince(Metric.UPLOAD_WAIT_TIME, start);
+                }
+            }
+
+            return;
+        }
+
+        collectCompletedParts();
+
+        try
+        {
+            PartUpload pendingPart = new PartUpload(part);
+            pendingPart.future = uploadExecutor.submit(() ->
+            {
+                if (!pendingPart.claim())
+                {
+                    throw new CancellationException("Part upload was cancelled to: " + getOutputPath());
+                }
+
+                try
+                {
+                    return uploadPart(currentPartNumber, part, partMD5, isLastPart);
+                }
+                finally
+                {
+                    bufferPool.release(part);
+                }
+            });
+
+            synchronized (pendingParts)
+            {
+                pendingParts.add(pendingPart);
+            }
+        }
+        catch (Throwable t)
+        {
+            bufferPool.release(part);
+            throw new IOException("Failed to schedule part upload to: " + getOutputPath(), t);
+        }
+    }
+
+    /**
+     * Uploads a single part directly from its buffer, uploading
+     * it again from the buffer if the attempt fails and can be retried
+     * @param currentPartNumber the part number
+     * @param part the part data
+     * @param partMD5 the base64 encoded MD5 of the part
+     * @param isLastPart true if this is the last part
+     * @return the part etag
+     * @throws IOException thrown if the upload is aborted or interrupted while retrying
+     */
+    private PartETag uploadPart(int currentPartNumber, PartBuffer part, String partMD5, boolean isLastPart)
+            throws IOException
+    {
+        UploadPartResult response = callWithRetries("part: " + currentPartNumber, () ->
+        {
+            UploadPartRequest uploadPartRequest = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(key)
+                    .withPartNumber(currentPartNumber)
+                    .withPartSize(part.getLength())
+                    .withUploadId(uploadId)
+                    .withLastPart(isLastPart)
+                    .withMD5Digest(partMD5)
+                    .withInputStream(part.asInputStream());
+
+            long start = System.nanoTime();
+
+            try
+            {
+                return s3.uploadPart(uploadPartRequest);
+            }
+            finally
+            {
+                long elapsed = System.nanoTime() - start;
+                maxPartNanos.accumulate(elapsed);
+
+                if (metrics != null)
+                {
+                    metrics.add(Metric.UPLOAD_PART_TIME, elapsed);
+                }
+            }
+        });
+
+        if (metrics != null)
+        {
+            metrics.add(Metric.PARTS_UPLOADED, 1L);
+        }
+
+        LOGGER.debug(() -> "Part uploaded: " + currentPartNumber + " to: " + outputPath);
+
+        return new PartETag(currentPartNumber, response.getETag());
+    }
+
+    /**
+     * Makes an S3 call within the concurrency limit, retrying it after a backoff
+     * if S3 reports a transient error or throttles it, or the client fails in a
+     * way it reports as retryable such as a dropped connection
+     * @param description the call, for logging
+     * @param call the call, which must build a new request for every attempt
+     * @param <T> the result type
+     * @return the result of the call
+     * @throws IOException thrown if the upload is aborted or interrupted while retrying
+     */
+    private <T> T callWithRetries(String description, Supplier<T> call) throws IOException
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            checkNotAborted();
 
-        outputBuffer.reset();
-        length = 0;
+            long started = concurrencyLimit != null ? concurrencyLimit.acquire() : 0L;
+            boolean throttled = false;
+            AmazonClientException failure;
 
-        ByteArrayInputStream bytesIn = new ByteArrayInputStream(outputData);
+            try
+            {
+                return call.get();
+            }
+            catch (AmazonClientException e)
+            {
+                throttled = RetryUtils.isThrottlingException(e);
 
-        UploadPartRequest uploadPartRequest = new UploadPartRequest()
-                .withBucketName(bucket)
-                .withKey(key)
-                .withPartNumber(partNumber)
-                .withPartSize(outputData.length)
-                .withUploadId(uploadId)
-                .withLastPart(isLastPart)
-                .withMD5Digest(Md5Utils.md5AsBase64(outputData))
-                .withInputStream(bytesIn);
+                if (throttled)
+                {
+                    throttleCount.increment();
 
-        UploadPartResult response = s3.uploadPart(uploadPartRequest);
-        partETags.add(new PartETag(partNumber, response.getETag()));
+                    if (metrics != null)
+                    {
+                        metrics.add(Metric.UPLOAD_THROTTLES, 1L);
+                    }
+                }
 
-        digest.update(outputData);
+                if (aborted || attempt >= maxAttempts || !isRetryable(e))
+                {
+                    throw e;
+                }
 
-        LOGGER.info("Part uploaded: " + partNumber + " to: " + getOutputPath());
+                failure = e;
+            }
+            finally
+            {
+                if (concurrencyLimit != null)
+                {
+                    concurrencyLimit.release(started, throttled);
+                }
+            }
 
-        partNumber++;
+            backoff(description, attempt, failure);
+        }
+    }
+
+    /**
+     * Waits before a retry, a random time up to the base delay doubled for each attempt so far,
+     * the wait releases the monitor and ends early if the upload is aborted
+     * @param description the call, for logging
+     * @param attempt the attempt that failed
+     * @param failure the failure
+     * @throws InterruptedIOException thrown if interrupted while waiting
+     */
+    private void backoff(String description, int attempt, AmazonClientException failure) throws InterruptedIOException
+    {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(Math.max(ceiling, 0L) + 1L);
+
+        LOGGER.warn("Retrying " + description + " to: " + outputPath + " after attempt: " + attempt +
+                " of: " + maxAttempts + " in: " + delay + "ms cause: " + failure.toString());
+
+        retryCount.increment();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(delay);
+
+        try
+        {
+            synchronized (this)
+            {
+                long remaining;
+
+                while (!aborted && (remaining = deadline - System.nanoTime()) > 0L)
+                {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted retrying upload to: " + getOutputPath());
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.add(Metric.UPLOAD_RETRIES, 1L);
+                metrics.addTimeSince(Metric.UPLOAD_BACKOFF_TIME, start);
+            }
+        }
     }
 
     /**
-     * Starts a multipart upload
+     * Checks whether a failed S3 call may succeed if made again
+     * @param e the failure
+     * @return true for server errors, throttling and retryable client errors
      */
-    private void startMultipart()
+    private static boolean isRetryable(AmazonClientException e)
     {
+        if (e instanceof AmazonServiceException)
+        {
+            return RetryUtils.isRetryableServiceException(e) || RetryUtils.isThrottlingException(e);
+        }
+
+        return e.isRetryable();
+    }
+
+    /**
+     * Collects the etags of parts that have completed uploading in part order
+     * failing fast if any part upload has failed
+     * @throws IOException thrown if a part upload failed
+     */
+    private void collectCompletedParts() throws IOException
+    {
+        synchronized (pendingParts)
+        {
+            Iterator<PartUpload> iterator = pendingParts.iterator();
+
+            while (iterator.hasNext())
+            {
+                PartUpload pendingPart = iterator.next();
+
+                if (!pendingPart.future.isDone())
+                {
+                    return;
+                }
+
+                partETags.add(getPart(pendingPart.future));
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Waits for every outstanding part upload to complete
+     * @throws IOException thrown if a part upload failed
+     */
+    private void awaitPendingParts() throws IOException
+    {
+        while (true)
+        {
+            PartUpload pendingPart;
+
+            synchronized (pendingParts)
+            {
+                pendingPart = pendingParts.poll();
+            }
+
+            if (pendingPart == null)
+            {
+                return;
+            }
+
+            partETags.add(getPart(pendingPart.future));
+        }
+    }
+
+    /**
+     * Waits for a part upload to complete
+     * @param pendingPart the pending part
+     * @return the part etag
+     * @throws IOException thrown if the part upload failed
+     */
+    private PartETag getPart(Future<PartETag> pendingPart) throws IOException
+    {
+        try
+        {
+            return pendingPart.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for part upload to: " + getOutputPath());
+        }
+        catch (CancellationException e)
+        {
+            throw new IOException("Part upload was cancelled to: " + getOutputPath(), e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Failed to upload part to: " + getOutputPath(), e.getCause());
+        }
+    }
+
+    /**
+     * Fails if the upload has been aborted
+     * @throws IOException thrown if the upload was aborted
+     */
+    private void checkNotAborted() throws IOException
+    {
+        if (aborted)
+        {
+            throw new IOException("Upload was aborted to: " + getOutputPath());
+        }
+    }
+
+    /**
+     * Starts a multipart upload, retrying outside the monitor so abort() is never held up
+     * @throws IOException thrown if the upload is aborted or interrupted while retrying
+     */
+    private void startMultipart() throws IOException
+    {
+        checkNotAborted();
+
         InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucket, key)
             .withCannedACL(CannedAccessControlList.BucketOwnerFullControl);
 
@@ -167,23 +916,53 @@ public class S3OutputStream extends OutputStream
             request.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams().withAwsKmsKeyId(kmsKeyId));
         }
 
-        InitiateMultipartUploadResult result = s3.initiateMultipartUpload(request);
-        uploadId = result.getUploadId();
+        InitiateMultipartUploadResult result = callWithRetries("start", () -> s3.initiateMultipartUpload(request));
+
+        /**
+         * An abort that landed while the upload was starting could not see it so aborts it here
+         */
+        synchronized (this)
+        {
+            if (aborted)
+            {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, result.getUploadId()));
+                throw new IOException("Upload was aborted to: " + getOutputPath());
+            }
+
+            uploadId = result.getUploadId();
+        }
 
         LOGGER.info("Commenced upload to: " + getOutputPath());
     }
 
     /**
-     * Completes a multipart upload
+     * Completes a multipart upload. A complete that succeeds but whose response is lost
+     * fails its retries with NoSuchUpload, the object is then checked against the parts
+     * @throws IOException thrown if the upload is aborted or interrupted while retrying
      */
-    private void completeUpload()
+    private void completeUpload() throws IOException
     {
-        CompleteMultipartUploadRequest request = 
-                new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags);
+        AtomicInteger attempts = new AtomicInteger();
 
-        CompleteMultipartUploadResult result = s3.completeMultipartUpload(request);
+        try
+        {
+            CompleteMultipartUploadResult result = callWithRetries("complete", () ->
+            {
+                attempts.incrementAndGet();
+                return s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+            });
+
+            etag = result.getETag();
+        }
+        catch (AmazonServiceException e)
+        {
+            if (attempts.get() < 2 || !"NoSuchUpload".equals(e.getErrorCode()))
+            {
+                throw e;
+            }
 
-        etag = result.getETag();
+            etag = getCompletedETag(e);
+        }
 
         uploadId = null;
 
@@ -191,32 +970,194 @@ public class S3OutputStream extends OutputStream
             " ETag: " + etag + " MD5: " + getDigestBase64());
     }
 
+    /**
+     * Checks the object with a HEAD after a retried complete reported NoSuchUpload,
+     * it was completed by an earlier attempt if its ETag is the one S3 derives from
+     * the parts, the MD5 of the part ETags followed by the part count
+     * @param failure the NoSuchUpload failure, rethrown if the object does not match
+     * @return the ETag of the object
+     * @throws IOException thrown if the upload is aborted or interrupted while retrying
+     */
+    private String getCompletedETag(AmazonServiceException failure) throws IOException
+    {
+        String expected = getMultipartETag();
+        String actual;
+
+        try
+        {
+            actual = callWithRetries("check", () -> s3.getObjectMetadata(bucket, key)).getETag();
+        }
+        catch (AmazonServiceException e)
+        {
+            failure.addSuppressed(e);
+            throw failure;
+        }
+
+        if (actual == null || !expected.equals(actual = actual.replace("\"", "")))
+        {
+            LOGGER.error("Upload to: " + getOutputPath() + " is missing, found ETag: " +
+                    actual + " expected: " + expected);
+            throw failure;
+        }
+
+        LOGGER.warn("Upload to: " + getOutputPath() + " was completed by an earlier attempt ETag: " + actual);
+        return actual;
+    }
+
+    /**
+     * Computes the ETag S3 gives an object completed from the uploaded parts
+     * @return the ETag without quotes
+     */
+    private String getMultipartETag()
+    {
+        try
+        {
+            MessageDigest partsDigest = MessageDigest.getInstance("MD5");
+
+            for (PartETag partETag: partETags)
+            {
+                partsDigest.update(Hex.decodeHex(partETag.getETag().replace("\"", "").toCharArray()));
+            }
+
+            return Hex.encodeHexString(partsDigest.digest()) + "-" + partETags.size();
+        }
+        catch (NoSuchAlgorithmException | DecoderException e)
+        {
+            throw new IngestException("Failed to compute multipart ETag for: " + getOutputPath(), e);
+        }
+    }
+
+    /**
+     * Stores the buffered bytes with a single PUT, used when the
+     * stream is closed before the first part is uploaded
+     * @throws IOException thrown if the upload was aborted while in flight
+     */
+    private void putSingleObject() throws IOException
+    {
+        if (outputBuffer == null || outputBuffer.isEmpty())
+        {
+            /**
+             * Nothing was written so no object is created
+             */
+            LOGGER.debug(() -> "Stream closed with nothing written to: " + outputPath);
+            return;
+        }
+
+        hashPending();
+
+        PartBuffer part = outputBuffer;
+        outputBuffer = null;
+        hashedLength = 0;
+
+        String contentMD5 = Base64.encodeBase64String(partDigest.digest());
+        long start = System.nanoTime();
+
+        try
+        {
+            etag = callWithRetries("put", () ->
+            {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(part.getLength());
+                metadata.setContentMD5(contentMD5);
+
+                PutObjectRequest request = new PutObjectRequest(bucket, key, part.asInputStream(), metadata)
+                    .withCannedAcl(CannedAccessControlList.BucketOwnerFullControl);
+
+                if (kmsKeyId != null)
+                {
+                    request.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams().withAwsKmsKeyId(kmsKeyId));
+                }
+
+                return s3.putObject(request);
+            }).getETag();
+        }
+        finally
+        {
+            bufferPool.release(part);
+
+            if (metrics != null)
+            {
+                metrics.addTimeSince(Metric.UPLOAD_PART_TIME, start);
+                metrics.addTimeSince(Metric.UPLOAD_WAIT_TIME, start);
+                metrics.add(Metric.PARTS_UPLOADED, 1L);
+            }
+        }
+
+        /**
+         * An abort from another thread cannot stop a PUT in flight so removes its object,
+         * checked under the monitor abort() holds so a later abort finds a completed upload
+         */
+        synchronized (this)
+        {
+            if (aborted)
+            {
+                s3.deleteObject(bucket, key);
+                throw new IOException("Upload was aborted to: " + getOutputPath());
+            }
+        }
+
+        LOGGER.info("Upload completed to: " + getOutputPath() +
+            " ETag: " + etag + " MD5: " + getDigestBase64());
+    }
+
     @Override
     public void close() throws IOException
     {
-        flushPart(true);
+        checkNotAborted();
 
-        if (uploadId != null)
+        if (closed)
         {
-            completeUpload();
-            LOGGER.info("Stream closed to: " + getOutputPath());
+            LOGGER.warn("Stream is closed, ignoring");
+            return;
         }
-        else
+
+        closed = true;
+
+        if (uploadId == null && partNumber == 1)
         {
-            LOGGER.warn("Stream is closed, ignoring");
+            putSingleObject();
+            return;
         }
 
+        flushPart(true);
+
+        long start = System.nanoTime();
+
+        awaitPendingParts();
 
+        checkNotAborted();
+
+        if (uploadId != null)
+        {
+            completeUpload();
+
+            if (metrics != null)
+            {
+                metrics.addTimeSince(Metric.UPLOAD_WAIT_TIME, start);
+            }
+
+            LOGGER.debug(() -> "Stream closed to: " + outputPath);
+        }
     }
 
+    /**
+     * Fetches the MD5 of all data written, the digest is finalised
+     * on first call so this should only be called once writing is complete
+     * @return the MD5 digest
+     */
     public byte [] getDigest()
     {
-        return digest.digest();
+        if (digestValue == null)
+        {
+            digestValue = digest.digest();
+        }
+
+        return digestValue.clone();
     }
 
     public String getDigestBase64()
     {
-        return Base64.encodeBase64String(digest.digest());
+        return Base64.encodeBase64String(getDigest());
     }
 
     public String getETag()
@@ -226,14 +1167,16 @@ public class S3OutputStream extends OutputStream
 
     public String getOutputPath()
     {
-        return String.format("s3://%s/%s", bucket, key);
+        return outputPath;
     }
 
     private void resetDigest()
     {
+        digest = HashAlgorithm.MD5.newHasher();
+
         try
         {
-            digest = MessageDigest.getInstance("MD5");
+            partDigest = MessageDigest.getInstance("MD5");
         }
         catch (NoSuchAlgorithmException e)
         {
@@ -245,4 +1188,56 @@ public class S3OutputStream extends OutputStream
     {
         return totalLength;
     }
+
+    /**
+     * The number of S3 calls retried
+     * @return the retry count
+     */
+    public long getRetryCount()
+    {
+        return retryCount.sum();
+    }
+
+    /**
+     * The number of S3 calls throttled, whether or not they were retried
+     * @return the throttle count
+     */
+    public long getThrottleCount()
+    {
+        return throttleCount.sum();
+    }
+
+    /**
+     * The longest single attempt at uploading a part
+     * @return the latency in milliseconds
+     */
+    public long getMaxPartLatencyMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(maxPartNanos.get());
+    }
+
+    /**
+     * A part handed to the upload executor, its buffer is released exactly
+     * once, by the upload when it runs or by abort() if it is cancelled first
+     */
+    private static final class PartUpload
+    {
+        private final PartBuffer part;
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private Future<PartETag> future;
+
+        private PartUpload(PartBuffer part)
+        {
+            this.part = part;
+        }
+
+        /**
+         * Takes ownership of the part buffer
+         * @return true if the caller now owns the buffer
+         */
+        private boolean claim()
+        {
+            return claimed.compareAndSet(false, true);
+        }
+    }
 }
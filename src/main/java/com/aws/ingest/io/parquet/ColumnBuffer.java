@@ -0,0 +1,228 @@
+package com.aws.ingest.io.parquet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers the values of one column for the current row group. Values are
+ * dictionary encoded until the dictionary grows too large, after which
+ * the column chunk falls back to plain encoding.
+ */
+class ColumnBuffer
+{
+    private final int maxDictionarySize;
+
+    private Map<String, Integer> dictionary = new HashMap<>();
+    private final List<byte []> dictionaryValues = new ArrayList<>();
+    private int dictionarySize = 0;
+    private int [] ids = new int[1024];
+
+    /**
+     * Plain encoded values, only used once the dictionary is abandoned
+     */
+    private byte [] plain = null;
+    private int plainLength = 0;
+
+    private int valueCount = 0;
+    private long rawSize = 0L;
+
+    /**
+     * Creates a column buffer
+     * @param maxDictionarySize the largest plain encoded dictionary before falling back to plain encoding
+     */
+    ColumnBuffer(int maxDictionarySize)
+    {
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    void add(String value)
+    {
+        if (value == null)
+        {
+            value = "";
+        }
+
+        if (dictionary != null)
+        {
+            Integer id = dictionary.get(value);
+
+            if (id == null)
+            {
+                byte [] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+                if (dictionarySize + 4 + bytes.length > maxDictionarySize)
+                {
+                    abandonDictionary();
+                    addPlain(bytes);
+                    return;
+                }
+
+                id = dictionaryValues.size();
+                dictionary.put(value, id);
+                dictionaryValues.add(bytes);
+                dictionarySize += 4 + bytes.length;
+            }
+
+            if (valueCount == ids.length)
+            {
+                int [] grown = new int[ids.length * 2];
+                System.arraycopy(ids, 0, grown, 0, valueCount);
+                ids = grown;
+            }
+
+            ids[valueCount++] = id;
+            rawSize += 4 + dictionaryValues.get(id).length;
+        }
+        else
+        {
+            addPlain(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    boolean isDictionaryEncoded()
+    {
+        return dictionary != null;
+    }
+
+    int getValueCount()
+    {
+        return valueCount;
+    }
+
+    /**
+     * The plain encoded size of the buffered values
+     * @return the size in bytes
+     */
+    long getRawSize()
+    {
+        return rawSize;
+    }
+
+    int [] getIds()
+    {
+        return ids;
+    }
+
+    int getDictionaryCount()
+    {
+        return dictionaryValues.size();
+    }
+
+    /**
+     * The number of bits needed to encode a dictionary id
+     * @return the bit width, at least 1
+     */
+    int getBitWidth()
+    {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(dictionaryValues.size() - 1));
+    }
+
+    /**
+     * Encodes the dictionary as plain values
+     * @return the encoded dictionary
+     */
+    byte [] encodeDictionary()
+    {
+        byte [] encoded = new byte[dictionarySize];
+        int offset = 0;
+
+        for (byte [] value: dictionaryValues)
+        {
+            offset = putPlain(encoded, offset, value);
+        }
+
+        return encoded;
+    }
+
+    byte [] getPlain()
+    {
+        return plain;
+    }
+
+    int getPlainLength()
+    {
+        return plainLength;
+    }
+
+    /**
+     * Clears the buffer for the next row group, dictionary encoding is
+     * attempted again as the next row group's values may repeat more
+     */
+    void reset()
+    {
+        if (dictionary == null)
+        {
+            dictionary = new HashMap<>();
+        }
+        else
+        {
+            dictionary.clear();
+        }
+
+        dictionaryValues.clear();
+        dictionarySize = 0;
+        plainLength = 0;
+        valueCount = 0;
+        rawSize = 0L;
+    }
+
+    /**
+     * Rewrites the buffered ids as plain values
+     */
+    private void abandonDictionary()
+    {
+        plain = new byte[(int) Math.max(1024L, Math.min(rawSize * 2L, Integer.MAX_VALUE - 8))];
+        plainLength = 0;
+
+        int count = valueCount;
+        valueCount = 0;
+        rawSize = 0L;
+
+        for (int i = 0; i < count; i++)
+        {
+            addPlain(dictionaryValues.get(ids[i]));
+        }
+
+        dictionary = null;
+        dictionaryValues.clear();
+        dictionarySize = 0;
+    }
+
+    private void addPlain(byte [] bytes)
+    {
+        if (plain == null)
+        {
+            plain = new byte[1024];
+        }
+
+        int required = plainLength + 4 + bytes.length;
+
+        if (required > plain.length)
+        {
+            byte [] grown = new byte[Math.max(required, plain.length * 2)];
+            System.arraycopy(plain, 0, grown, 0, plainLength);
+            plain = grown;
+        }
+
+        plainLength = putPlain(plain, plainLength, bytes);
+        valueCount++;
+        rawSize += 4 + bytes.length;
+    }
+
+    /**
+     * Writes a plain encoded byte array value, a little endian length then the bytes
+     */
+    private static int putPlain(byte [] target, int offset, byte [] value)
+    {
+        int length = value.length;
+        target[offset] = (byte) length;
+        target[offset + 1] = (byte) (length >>> 8);
+        target[offset + 2] = (byte) (length >>> 16);
+        target[offset + 3] = (byte) (length >>> 24);
+        System.arraycopy(value, 0, target, offset + 4, length);
+        return offset + 4 + length;
+    }
+}
@@ -0,0 +1,46 @@
+package com.aws.ingest.io.parquet;
+
+import com.aws.ingest.config.Compression;
+
+/**
+ * Page compression codecs supported by the Parquet writer
+ */
+public enum ParquetCompression
+{
+    UNCOMPRESSED(0),
+    GZIP(2),
+    ZSTD(6);
+
+    /**
+     * The Parquet CompressionCodec value
+     */
+    private final int codec;
+
+    ParquetCompression(int codec)
+    {
+        this.codec = codec;
+    }
+
+    int getCodec()
+    {
+        return codec;
+    }
+
+    /**
+     * Maps a configured compression to its Parquet page codec
+     * @param compression the configured compression
+     * @return the page codec
+     */
+    public static ParquetCompression of(Compression compression)
+    {
+        switch (compression)
+        {
+            case GZIP:
+                return GZIP;
+            case ZSTD:
+                return ZSTD;
+            default:
+                return UNCOMPRESSED;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.aws.ingest.io.parquet;
+
+import com.aws.ingest.exception.IngestException;
+import com.github.luben.zstd.Zstd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams rows of string columns to an output stream as a Parquet file.
+ * Rows are buffered per column until a row group fills and each row group
+ * is written straight through to the output, so memory is bounded by the
+ * row group size regardless of file size. Column chunks are dictionary
+ * encoded while the dictionary stays small and pages are compressed
+ * with GZIP unless configured otherwise.
+ * Columns are required UTF8 byte arrays, matching CSV where an empty
+ * field is an empty string.
+ */
+public class ParquetWriter
+{
+    /**
+     * The default plain encoded size of the buffered values in a row group
+     */
+    public static final long DEFAULT_ROW_GROUP_SIZE = 32L * 1024L * 1024L;
+
+    /**
+     * The target uncompressed size of each data page
+     */
+    private static final int PAGE_SIZE = 1024 * 1024;
+
+    /**
+     * The largest dictionary before a column chunk falls back to plain encoding
+     */
+    private static final int MAX_DICTIONARY_SIZE = 1024 * 1024;
+
+    private static final byte [] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int ZSTD_LEVEL = 3;
+
+    private static final String CREATED_BY = "IngestPipeline version 1.0.0";
+
+    /**
+     * Parquet enumeration values
+     */
+    private static final int TYPE_BYTE_ARRAY = 6;
+    private static final int REPETITION_REQUIRED = 0;
+    private static final int CONVERTED_TYPE_UTF8 = 0;
+    private static final int PAGE_TYPE_DATA = 0;
+    private static final int PAGE_TYPE_DICTIONARY = 2;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_PLAIN_DICTIONARY = 2;
+    private static final int ENCODING_RLE = 3;
+
+    private final OutputStream out;
+    private final List<String> columns;
+    private final ColumnBuffer [] buffers;
+
+    private long rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+    private ParquetCompression compression = ParquetCompression.GZIP;
+
+    private final List<RowGroupMetadata> rowGroups = new ArrayList<>();
+    private final ThriftCompactWriter thrift = new ThriftCompactWriter();
+    private final ByteArrayOutputStream pageBuffer = new ByteArrayOutputStream(PAGE_SIZE);
+    private final ByteArrayOutputStream compressedBuffer = new ByteArrayOutputStream(PAGE_SIZE);
+
+    private long position = 0L;
+    private long rowCount = 0L;
+    private int rowGroupRows = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a Parquet writer
+     * @param out the output stream, which is not closed by the writer
+     * @param columns the column names
+     */
+    public ParquetWriter(OutputStream out, List<String> columns)
+    {
+        if (columns.isEmpty())
+        {
+            throw new IngestException("At least one column is required");
+        }
+
+        this.out = out;
+        this.columns = new ArrayList<>(columns);
+        this.buffers = new ColumnBuffer[columns.size()];
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = new ColumnBuffer(MAX_DICTIONARY_SIZE);
+        }
+    }
+
+    public ParquetWriter withRowGroupSize(long rowGroupSize)
+    {
+        this.rowGroupSize = rowGroupSize;
+        return this;
+    }
+
+    public ParquetWriter withCompression(ParquetCompression compression)
+    {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Writes a row, flushing a row group to the output once it is full
+     * @param row the row values, one per column
+     * @throws IOException thrown on failure to write
+     */
+    public void writeRow(String [] row) throws IOException
+    {
+        if (finished)
+        {
+            throw new IngestException("Parquet writer is finished");
+        }
+
+        if (row.length != buffers.length)
+        {
+            throw new IngestException("Expected: " + buffers.length + " values found: " + row.length);
+        }
+
+        if (position == 0L)
+        {
+            write(MAGIC, 0, MAGIC.length);
+        }
+
+        long size = 0L;
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i].add(row[i]);
+            size += buffers[i].getRawSize();
+        }
+
+        rowGroupRows++;
+        rowCount++;
+
+        if (size >= rowGroupSize)
+        {
+            flushRowGroup();
+        }
+    }
+
+    /**
+     * Writes any buffered rows and the file footer, the output is flushed but not closed
+     * @throws IOException thrown on failure to write
+     */
+    public void finish() throws IOException
+    {
+        if (finished)
+        {
+            return;
+        }
+
+        if (position == 0L)
+        {
+            write(MAGIC, 0, MAGIC.length);
+        }
+
+        if (rowGroupRows > 0)
+        {
+            flushRowGroup();
+        }
+
+        byte [] footer = encodeFileMetadata();
+        write(footer, 0, footer.length);
+
+        byte [] footerLength = new byte [] { (byte) footer.length, (byte) (footer.length >>> 8),
+                (byte) (footer.length >>> 16), (byte) (footer.length >>> 24) };
+        write(footerLength, 0, footerLength.length);
+        write(MAGIC, 0, MAGIC.length);
+
+        out.flush();
+        finished = true;
+    }
+
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Writes each buffered column as a column chunk
+     * @throws IOException thrown on failure to write
+     */
+    private void flushRowGroup() throws IOException
+    {
+        RowGroupMetadata rowGroup = new RowGroupMetadata();
+        rowGroup.fileOffset = position;
+        rowGroup.numRows = rowGroupRows;
+        rowGroup.columns = new ColumnChunkMetadata[buffers.length];
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            ColumnChunkMetadata chunk = writeColumnChunk(buffers[i]);
+            rowGroup.columns[i] = chunk;
+            rowGroup.totalByteSize += chunk.uncompressedSize;
+            rowGroup.totalCompressedSize += chunk.compressedSize;
+            buffers[i].reset();
+        }
+
+        rowGroups.add(rowGroup);
+        rowGroupRows = 0;
+    }
+
+    private ColumnChunkMetadata writeColumnChunk(ColumnBuffer buffer) throws IOException
+    {
+        ColumnChunkMetadata chunk = new ColumnChunkMetadata();
+        chunk.numValues = buffer.getValueCount();
+        chunk.dictionaryEncoded = buffer.isDictionaryEncoded();
+
+        if (chunk.dictionaryEncoded)
+        {
+            chunk.dictionaryPageOffset = position;
+
+            byte [] dictionary = buffer.encodeDictionary();
+            pageBuffer.reset();
+            pageBuffer.write(dictionary, 0, dictionary.length);
+            writePage(chunk, PAGE_TYPE_DICTIONARY, buffer.getDictionaryCount(), ENCODING_PLAIN_DICTIONARY);
+
+            chunk.dataPageOffset = position;
+
+            int bitWidth = buffer.getBitWidth();
+            int valuesPerPage = Math.max(8, (int) Math.min(Integer.MAX_VALUE, PAGE_SIZE * 8L / bitWidth));
+
+            for (int from = 0; from < buffer.getValueCount(); from += valuesPerPage)
+            {
+                int to = (int) Math.min((long) from + valuesPerPage, buffer.getValueCount());
+
+                pageBuffer.reset();
+                pageBuffer.write(bitWidth);
+                RleBitPackedEncoder.encode(buffer.getIds(), from, to, bitWidth, pageBuffer);
+                writePage(chunk, PAGE_TYPE_DATA, to - from, ENCODING_PLAIN_DICTIONARY);
+            }
+        }
+        else
+        {
+            chunk.dataPageOffset = position;
+
+            byte [] plain = buffer.getPlain();
+            int offset = 0;
+
+            while (offset < buffer.getPlainLength())
+            {
+                /**
+                 * Split plain values into pages on value boundaries
+                 */
+                int start = offset;
+                int values = 0;
+
+                while (offset < buffer.getPlainLength() && (values == 0 || offset - start < PAGE_SIZE))
+                {
+                    int length = (plain[offset] & 0xFF) | (plain[offset + 1] & 0xFF) << 8 |
+                            (plain[offset + 2] & 0xFF) << 16 | (plain[offset + 3] & 0xFF) << 24;
+                    offset += 4 + length;
+                    values++;
+                }
+
+                pageBuffer.reset();
+                pageBuffer.write(plain, start, offset - start);
+                writePage(chunk, PAGE_TYPE_DATA, values, ENCODING_PLAIN);
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Compresses the page buffer and writes it with its header
+     */
+    private void writePage(ColumnChunkMetadata chunk, int pageType, int numValues, int encoding) throws IOException
+    {
+        int uncompressedLength = pageBuffer.size();
+        int compressedLength = uncompressedLength;
+
+        if (compression == ParquetCompression.GZIP)
+        {
+            compressedBuffer.reset();
+
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressedBuffer, 64 * 1024))
+            {
+                pageBuffer.writeTo(gzip);
+            }
+
+            compressedLength = compressedBuffer.size();
+        }
+        else if (compression == ParquetCompression.ZSTD)
+        {
+            /**
+             * Single shot compression records the content size in the frame header
+             */
+            byte [] compressed = Zstd.compress(pageBuffer.toByteArray(), ZSTD_LEVEL);
+            compressedBuffer.reset();
+            compressedBuffer.write(compressed, 0, compressed.length);
+            compressedLength = compressed.length;
+        }
+
+        thrift.reset();
+        thrift.structBegin();
+        thrift.fieldI32(1, pageType);
+        thrift.fieldI32(2, uncompressedLength);
+        thrift.fieldI32(3, compressedLength);
+
+        if (pageType == PAGE_TYPE_DICTIONARY)
+        {
+            thrift.fieldStructBegin(7);
+            thrift.fieldI32(1, numValues);
+            thrift.fieldI32(2, encoding);
+            thrift.structEnd();
+        }
+        else
+        {
+            thrift.fieldStructBegin(5);
+            thrift.fieldI32(1, numValues);
+            thrift.fieldI32(2, encoding);
+            thrift.fieldI32(3, ENCODING_RLE);
+            thrift.fieldI32(4, ENCODING_RLE);
+            thrift.structEnd();
+        }
+
+        thrift.structEnd();
+
+        byte [] header = thrift.toByteArray();
+        write(header, 0, header.length);
+
+        if (compression == ParquetCompression.UNCOMPRESSED)
+        {
+            pageBuffer.writeTo(out);
+        }
+        else
+        {
+            compressedBuffer.writeTo(out);
+        }
+
+        position += compressedLength;
+
+        chunk.uncompressedSize += header.length + uncompressedLength;
+        chunk.compressedSize += header.length + compressedLength;
+    }
+
+    private byte [] encodeFileMetadata()
+    {
+        thrift.reset();
+        thrift.structBegin();
+        thrift.fieldI32(1, 1);
+
+        /**
+         * The schema is a root element followed by one element per column
+         */
+        thrift.fieldListBegin(2, ThriftCompactWriter.TYPE_STRUCT, columns.size() + 1);
+        thrift.structBegin();
+        thrift.fieldString(4, "schema");
+        thrift.fieldI32(5, columns.size());
+        thrift.structEnd();
+
+        for (String column: columns)
+        {
+            thrift.structBegin();
+            thrift.fieldI32(1, TYPE_BYTE_ARRAY);
+            thrift.fieldI32(3, REPETITION_REQUIRED);
+            thrift.fieldString(4, column);
+            thrift.fieldI32(6, CONVERTED_TYPE_UTF8);
+
+            /**
+             * LogicalType STRING
+             */
+            thrift.fieldStructBegin(10);
+            thrift.fieldStructBegin(1);
+            thrift.structEnd();
+            thrift.structEnd();
+
+            thrift.structEnd();
+        }
+
+        thrift.fieldI64(3, rowCount);
+
+        thrift.fieldListBegin(4, ThriftCompactWriter.TYPE_STRUCT, rowGroups.size());
+
+        for (RowGroupMetadata rowGroup: rowGroups)
+        {
+            thrift.structBegin();
+            thrift.fieldListBegin(1, ThriftCompactWriter.TYPE_STRUCT, rowGroup.columns.length);
+
+            for (int i = 0; i < rowGroup.columns.length; i++)
+            {
+                ColumnChunkMetadata chunk = rowGroup.columns[i];
+
+                thrift.structBegin();
+                thrift.fieldI64(2, chunk.dictionaryEncoded ? chunk.dictionaryPageOffset : chunk.dataPageOffset);
+                thrift.fieldStructBegin(3);
+                thrift.fieldI32(1, TYPE_BYTE_ARRAY);
+
+                thrift.fieldListBegin(2, ThriftCompactWriter.TYPE_I32, 2);
+                thrift.listI32(chunk.dictionaryEncoded ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN);
+                thrift.listI32(ENCODING_RLE);
+
+                thrift.fieldListBegin(3, ThriftCompactWriter.TYPE_BINARY, 1);
+                thrift.writeString(columns.get(i));
+
+                thrift.fieldI32(4, compression.getCodec());
+                thrift.fieldI64(5, chunk.numValues);
+                thrift.fieldI64(6, chunk.uncompressedSize);
+                thrift.fieldI64(7, chunk.compressedSize);
+                thrift.fieldI64(9, chunk.dataPageOffset);
+
+                if (chunk.dictionaryEncoded)
+                {
+                    thrift.fieldI64(11, chunk.dictionaryPageOffset);
+                }
+
+                thrift.structEnd();
+                thrift.structEnd();
+            }
+
+            thrift.fieldI64(2, rowGroup.totalByteSize);
+            thrift.fieldI64(3, rowGroup.numRows);
+            thrift.fieldI64(5, rowGroup.fileOffset);
+            thrift.fieldI64(6, rowGroup.totalCompressedSize);
+            thrift.structEnd();
+        }
+
+        thrift.fieldString(6, CREATED_BY);
+        thrift.structEnd();
+
+        return thrift.toByteArray();
+    }
+
+    private void write(byte [] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+        position += len;
+    }
+
+    private static class ColumnChunkMetadata
+    {
+        boolean dictionaryEncoded;
+        long dictionaryPageOffset;
+        long dataPageOffset;
+        long numValues;
+        long uncompressedSize;
+        long compressedSize;
+    }
+
+    private static class RowGroupMetadata
+    {
+        ColumnChunkMetadata [] columns;
+        long fileOffset;
+        long numRows;
+        long totalByteSize;
+        long totalCompressedSize;
+    }
+}
@@ -0,0 +1,125 @@
+package com.aws.ingest.io.parquet;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes dictionary ids with the Parquet RLE / bit packed hybrid encoding,
+ * runs of repeated ids are run length encoded and the rest bit packed
+ */
+final class RleBitPackedEncoder
+{
+    /**
+     * Repeats shorter than this are bit packed
+     */
+    private static final int MIN_RUN_LENGTH = 8;
+
+    /**
+     * Groups of 8 values per bit packed run, kept small for older readers
+     */
+    private static final int MAX_GROUPS_PER_RUN = 63;
+
+    private RleBitPackedEncoder()
+    {
+    }
+
+    /**
+     * Encodes values into the output
+     * @param values the values
+     * @param from the first value to encode
+     * @param to the end of the values to encode, exclusive
+     * @param bitWidth the number of bits per value
+     * @param out receives the encoded runs
+     */
+    static void encode(int [] values, int from, int to, int bitWidth, ByteArrayOutputStream out)
+    {
+        int i = from;
+
+        while (i < to)
+        {
+            int runLength = runLength(values, i, to);
+
+            if (runLength >= MIN_RUN_LENGTH)
+            {
+                writeVarint(runLength << 1, out);
+
+                for (int b = 0; b < bitWidth; b += 8)
+                {
+                    out.write(values[i] >>> b);
+                }
+
+                i += runLength;
+            }
+            else
+            {
+                /**
+                 * Bit packed groups always hold 8 values, only the final
+                 * group of the page may be padded
+                 */
+                int start = i;
+                int groups = 0;
+
+                do
+                {
+                    i = Math.min(i + 8, to);
+                    groups++;
+                }
+                while (i < to && groups < MAX_GROUPS_PER_RUN && runLength(values, i, to) < MIN_RUN_LENGTH);
+
+                writeVarint((groups << 1) | 1, out);
+                bitPack(values, start, i, groups * 8, bitWidth, out);
+            }
+        }
+    }
+
+    private static int runLength(int [] values, int from, int to)
+    {
+        int value = values[from];
+        int end = from + 1;
+
+        while (end < to && values[end] == value)
+        {
+            end++;
+        }
+
+        return end - from;
+    }
+
+    /**
+     * Packs values least significant bit first, padding with zeros
+     */
+    private static void bitPack(int [] values, int from, int to, int count, int bitWidth, ByteArrayOutputStream out)
+    {
+        long buffer = 0L;
+        int bits = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            int value = from + i < to ? values[from + i] : 0;
+            buffer |= ((long) value) << bits;
+            bits += bitWidth;
+
+            while (bits >= 8)
+            {
+                out.write((int) buffer);
+                buffer >>>= 8;
+                bits -= 8;
+            }
+        }
+
+        if (bits > 0)
+        {
+            out.write((int) buffer);
+        }
+    }
+
+    private static void writeVarint(int value, ByteArrayOutputStream out)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+}
@@ -0,0 +1,154 @@
+package com.aws.ingest.io.parquet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the subset of the Thrift compact protocol needed to
+ * encode Parquet page headers and file metadata
+ */
+class ThriftCompactWriter
+{
+    static final int TYPE_BOOLEAN_TRUE = 1;
+    static final int TYPE_BOOLEAN_FALSE = 2;
+    static final int TYPE_I32 = 5;
+    static final int TYPE_I64 = 6;
+    static final int TYPE_BINARY = 8;
+    static final int TYPE_LIST = 9;
+    static final int TYPE_STRUCT = 12;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    /**
+     * The last field id written in each open struct, field ids are delta encoded
+     */
+    private short [] lastFieldIds = new short[16];
+    private int depth = 0;
+
+    /**
+     * Starts a struct, either the top level struct or a list element
+     */
+    void structBegin()
+    {
+        if (++depth == lastFieldIds.length)
+        {
+            short [] grown = new short[lastFieldIds.length * 2];
+            System.arraycopy(lastFieldIds, 0, grown, 0, lastFieldIds.length);
+            lastFieldIds = grown;
+        }
+
+        lastFieldIds[depth] = 0;
+    }
+
+    void structEnd()
+    {
+        out.write(0);
+        depth--;
+    }
+
+    void fieldStructBegin(int id)
+    {
+        fieldHeader(id, TYPE_STRUCT);
+        structBegin();
+    }
+
+    void fieldI32(int id, int value)
+    {
+        fieldHeader(id, TYPE_I32);
+        writeVarint(zigzag(value));
+    }
+
+    void fieldI64(int id, long value)
+    {
+        fieldHeader(id, TYPE_I64);
+        writeVarint(zigzag(value));
+    }
+
+    void fieldBoolean(int id, boolean value)
+    {
+        fieldHeader(id, value ? TYPE_BOOLEAN_TRUE : TYPE_BOOLEAN_FALSE);
+    }
+
+    void fieldString(int id, String value)
+    {
+        fieldHeader(id, TYPE_BINARY);
+        writeString(value);
+    }
+
+    /**
+     * Starts a list field, the caller then writes size elements
+     * @param id the field id
+     * @param elementType the compact type of each element
+     * @param size the number of elements
+     */
+    void fieldListBegin(int id, int elementType, int size)
+    {
+        fieldHeader(id, TYPE_LIST);
+
+        if (size < 15)
+        {
+            out.write((size << 4) | elementType);
+        }
+        else
+        {
+            out.write(0xF0 | elementType);
+            writeVarint(size);
+        }
+    }
+
+    void listI32(int value)
+    {
+        writeVarint(zigzag(value));
+    }
+
+    void writeString(String value)
+    {
+        byte [] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    byte [] toByteArray()
+    {
+        return out.toByteArray();
+    }
+
+    void reset()
+    {
+        out.reset();
+        depth = 0;
+    }
+
+    private void fieldHeader(int id, int type)
+    {
+        int delta = id - lastFieldIds[depth];
+
+        if (delta > 0 && delta <= 15)
+        {
+            out.write((delta << 4) | type);
+        }
+        else
+        {
+            out.write(type);
+            writeVarint(zigzag(id));
+        }
+
+        lastFieldIds[depth] = (short) id;
+    }
+
+    private void writeVarint(long value)
+    {
+        while ((value & ~0x7FL) != 0L)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+}
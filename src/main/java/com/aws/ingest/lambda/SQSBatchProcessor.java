@@ -0,0 +1,127 @@
+package com.aws.ingest.lambda;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.amazonaws.services.s3.event.S3EventNotification;
+import com.amazonaws.services.s3.event.S3EventNotification.S3EventNotificationRecord;
+import com.aws.ingest.logging.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Processes the S3 event records in a batch of SQS messages concurrently.
+ * Messages fail independently, a message fails if any of its records
+ * fail, and the failed messages are reported in a partial batch response
+ * so messages that succeeded are not redelivered.
+ */
+public class SQSBatchProcessor
+{
+    private final ExecutorService executor;
+
+    /**
+     * Creates a batch processor
+     * @param executor the bounded executor records are processed on
+     */
+    public SQSBatchProcessor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Processes every record of every message in the event
+     * @param event the SQS event
+     * @param handler processes a single S3 event record
+     * @param logger the log
+     * @return the response listing failed messages
+     */
+    public SQSBatchResponse process(SQSEvent event, Consumer<S3EventNotificationRecord> handler, Log logger)
+    {
+        SQSBatchResponse response = new SQSBatchResponse();
+        Map<SQSMessage, List<S3EventNotificationRecord>> batch = new LinkedHashMap<>();
+        int recordCount = 0;
+
+        for (SQSMessage msg : event.getRecords())
+        {
+            logger.info(() -> "Received request message: " + msg.getMessageId() + " body: " + Log.summarize(msg.getBody()));
+
+            try
+            {
+                List<S3EventNotificationRecord> records = S3EventNotification.parseJson(msg.getBody()).getRecords();
+                batch.put(msg, records);
+                recordCount += records.size();
+            }
+            catch (Throwable t)
+            {
+                logger.error("Failed to parse message: " + msg.getMessageId() + " cause: " + t.toString());
+                response.getBatchItemFailures().add(new SQSBatchResponse.BatchItemFailure(msg.getMessageId()));
+            }
+        }
+
+        /**
+         * A single record is processed on the calling thread
+         */
+        boolean inline = recordCount == 1;
+
+        Map<SQSMessage, List<Future<?>>> inFlight = new LinkedHashMap<>();
+
+        for (Map.Entry<SQSMessage, List<S3EventNotificationRecord>> entry: batch.entrySet())
+        {
+            List<Future<?>> futures = new ArrayList<>();
+
+            if (!inline)
+            {
+                for (S3EventNotificationRecord record: entry.getValue())
+                {
+                    futures.add(executor.submit(() -> handler.accept(record)));
+                }
+            }
+
+            inFlight.put(entry.getKey(), futures);
+        }
+
+        for (Map.Entry<SQSMessage, List<Future<?>>> entry: inFlight.entrySet())
+        {
+            SQSMessage msg = entry.getKey();
+
+            try
+            {
+                if (inline)
+                {
+                    batch.get(msg).forEach(handler);
+                }
+                else
+                {
+                    for (Future<?> future: entry.getValue())
+                    {
+                        future.get();
+                    }
+                }
+
+                logger.info("Processed message: " + msg.getMessageId());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                response.getBatchItemFailures().add(new SQSBatchResponse.BatchItemFailure(msg.getMessageId()));
+            }
+            catch (Throwable t)
+            {
+                Throwable cause = t instanceof ExecutionException ? t.getCause() : t;
+                logger.error("Failed to process message: " + msg.getMessageId() + " cause: " + cause.toString());
+                response.getBatchItemFailures().add(new SQSBatchResponse.BatchItemFailure(msg.getMessageId()));
+            }
+        }
+
+        logger.info("Processed: " + event.getRecords().size() + " messages with: " +
+                response.getBatchItemFailures().size() + " failures");
+
+        return response;
+    }
+}
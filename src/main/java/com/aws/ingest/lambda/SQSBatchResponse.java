@@ -0,0 +1,51 @@
+package com.aws.ingest.lambda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A partial batch response telling Lambda which SQS messages failed,
+ * only those messages are returned to the queue for redelivery. Requires
+ * ReportBatchItemFailures on the event source mapping.
+ */
+public class SQSBatchResponse
+{
+    private List<BatchItemFailure> batchItemFailures = new ArrayList<>();
+
+    public List<BatchItemFailure> getBatchItemFailures()
+    {
+        return batchItemFailures;
+    }
+
+    public void setBatchItemFailures(List<BatchItemFailure> batchItemFailures)
+    {
+        this.batchItemFailures = batchItemFailures;
+    }
+
+    /**
+     * A failed message
+     */
+    public static class BatchItemFailure
+    {
+        private String itemIdentifier = null;
+
+        public BatchItemFailure()
+        {
+        }
+
+        public BatchItemFailure(String itemIdentifier)
+        {
+            this.itemIdentifier = itemIdentifier;
+        }
+
+        public String getItemIdentifier()
+        {
+            return itemIdentifier;
+        }
+
+        public void setItemIdentifier(String itemIdentifier)
+        {
+            this.itemIdentifier = itemIdentifier;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.aws.ingest.lambda.input;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.logging.Log;
+import com.aws.ingest.manifest.ManifestEntry;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves entry checkpoints for a manifest as small JSON objects in S3 under
+ * checkpoints/{manifest key}/, so a redelivered manifest skips entries that
+ * completed in an earlier attempt and resumes or cleans up the rest.
+ * Checkpoints are deleted once the processed manifest has been saved.
+ * Entries are processed concurrently so the store is thread safe.
+ */
+class CheckpointStore
+{
+    private static final Log LOGGER = Log.getLog(CheckpointStore.class);
+
+    private static final String PREFIX = "checkpoints/";
+    private static final String SUFFIX = ".checkpoint";
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String prefix;
+    private final String kmsKeyId;
+
+    /**
+     * Checkpoints found from an earlier attempt keyed on input file name
+     */
+    private final Map<String, EntryCheckpoint> previous = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of every checkpoint found or saved
+     */
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a checkpoint store
+     * @param s3 the S3 client
+     * @param bucket the bucket to save checkpoints in
+     * @param manifestKey the key of the input manifest
+     * @param kmsKeyId the KMS key to encrypt checkpoints with
+     */
+    CheckpointStore(AmazonS3 s3, String bucket, String manifestKey, String kmsKeyId)
+    {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = PREFIX + manifestKey + "/";
+        this.kmsKeyId = kmsKeyId;
+    }
+
+    /**
+     * Loads the checkpoints saved by an earlier attempt with a single listing,
+     * a fresh manifest has none so costs one request
+     * @return the store
+     */
+    CheckpointStore load()
+    {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucket)
+                .withPrefix(prefix);
+
+        ListObjectsV2Result result;
+
+        do
+        {
+            result = s3.listObjectsV2(request);
+
+            for (S3ObjectSummary summary: result.getObjectSummaries())
+            {
+                if (!summary.getKey().endsWith(SUFFIX))
+                {
+                    continue;
+                }
+
+                EntryCheckpoint checkpoint = loadCheckpoint(summary.getKey());
+                previous.put(checkpoint.getFileName(), checkpoint);
+                keys.add(summary.getKey());
+            }
+
+            request.setContinuationToken(result.getNextContinuationToken());
+        }
+        while (result.isTruncated());
+
+        if (!previous.isEmpty())
+        {
+            LOGGER.info("Found: " + previous.size() + " checkpoints under: s3://" + bucket + "/" + prefix);
+        }
+
+        return this;
+    }
+
+    /**
+     * Fetches a completed entry from an earlier attempt if its input is
+     * unchanged and its processed file is still in place, setting the
+     * entry's verified MD5 so its signature can be checked again
+     * @param entry the input entry
+     * @param inputETag the current ETag of the input object
+     * @param outputKey the key of the processed file
+     * @return a copy of the processed entry or null to process the entry
+     */
+    ManifestEntry getCompleted(ManifestEntry entry, String inputETag, String outputKey)
+    {
+        EntryCheckpoint checkpoint = previous.get(entry.getFileName());
+
+        if (checkpoint == null || !checkpoint.isComplete() || !checkpoint.matches(entry, inputETag, outputKey))
+        {
+            return null;
+        }
+
+        try
+        {
+            ObjectMetadata metadata = s3.getObjectMetadata(bucket, outputKey);
+
+            if (!metadata.getETag().equals(checkpoint.getOutputETag()))
+            {
+                return null;
+            }
+        }
+        catch (AmazonServiceException e)
+        {
+            if (e.getStatusCode() == 404)
+            {
+                return null;
+            }
+
+            throw e;
+        }
+
+        entry.setMd5(checkpoint.getInputMd5());
+
+        ManifestEntry outputEntry = checkpoint.getOutputEntry().clone();
+        outputEntry.setMd5(checkpoint.getOutputMd5());
+        return outputEntry;
+    }
+
+    /**
+     * Fetches an in progress checkpoint to resume from, any other upload
+     * left by an earlier attempt is aborted so it is not orphaned
+     * @param entry the input entry
+     * @param inputETag the current ETag of the input object
+     * @param outputKey the key of the processed file
+     * @param resumable true if the entry's processing path can resume
+     * @return the checkpoint to resume from or null to start over
+     */
+    EntryCheckpoint getResumable(ManifestEntry entry, String inputETag, String outputKey, boolean resumable)
+    {
+        EntryCheckpoint checkpoint = previous.remove(entry.getFileName());
+
+        if (checkpoint == null || checkpoint.isComplete() || checkpoint.getUploadId() == null)
+        {
+            return null;
+        }
+
+        if (resumable && !checkpoint.getParts().isEmpty() && checkpoint.matches(entry, inputETag, outputKey))
+        {
+            return checkpoint;
+        }
+
+        try
+        {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket,
+                    checkpoint.getOutputKey(), checkpoint.getUploadId()));
+
+            LOGGER.info("Aborted upload left by an earlier attempt for: " + entry.getFileName());
+        }
+        catch (AmazonServiceException e)
+        {
+            LOGGER.warn("Failed to abort upload left by an earlier attempt for: " +
+                    entry.getFileName() + " cause: " + e.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Saves a checkpoint, a failure to save only costs progress
+     * on redelivery so it is logged rather than failing the entry
+     * @param checkpoint the checkpoint to save
+     */
+    void save(EntryCheckpoint checkpoint)
+    {
+        String key = getKey(checkpoint.getFileName());
+        byte [] json = EntryCheckpoint.toJSON(checkpoint).getBytes(StandardCharsets.UTF_8);
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(json.length);
+        metadata.setContentType("application/json");
+
+        PutObjectRequest request = new PutObjectRequest(bucket, key, new ByteArrayInputStream(json), metadata);
+
+        if (kmsKeyId != null)
+        {
+            request.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(kmsKeyId));
+        }
+
+        try
+        {
+            s3.putObject(request);
+            keys.add(key);
+        }
+        catch (AmazonClientException e)
+        {
+            LOGGER.warn("Failed to save checkpoint: s3://" + bucket + "/" + key + " cause: " + e.toString());
+        }
+    }
+
+    /**
+     * Deletes the checkpoint for an entry, used when an entry fails
+     * in process and its upload has already been aborted
+     * @param fileName the input file name
+     */
+    void delete(String fileName)
+    {
+        String key = getKey(fileName);
+
+        if (keys.remove(key))
+        {
+            deleteQuietly(key);
+        }
+    }
+
+    /**
+     * Deletes every checkpoint found or saved once the manifest is complete
+     */
+    void deleteAll()
+    {
+        for (String key: keys)
+        {
+            deleteQuietly(key);
+        }
+
+        keys.clear();
+    }
+
+    private void deleteQuietly(String key)
+    {
+        try
+        {
+            s3.deleteObject(bucket, key);
+        }
+        catch (AmazonServiceException e)
+        {
+            LOGGER.warn("Failed to delete checkpoint: s3://" + bucket + "/" + key + " cause: " + e.toString());
+        }
+    }
+
+    private EntryCheckpoint loadCheckpoint(String key)
+    {
+        try (S3Object s3Object = s3.getObject(bucket, key))
+        {
+            return EntryCheckpoint.fromJSON(IOUtils.toString(s3Object.getObjectContent(), StandardCharsets.UTF_8));
+        }
+        catch (Throwable t)
+        {
+            throw new IngestException("Failed to load checkpoint: s3://" + bucket + "/" + key, t);
+        }
+    }
+
+    private String getKey(String fileName)
+    {
+        return prefix + fileName + SUFFIX;
+    }
+}
@@ -0,0 +1,212 @@
+package com.aws.ingest.lambda.input;
+
+import com.aws.ingest.config.DataType;
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.io.CSVBlockReader;
+import com.aws.ingest.manifest.ManifestEntry;
+import com.aws.ingest.validation.RowValidator;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Transforms a single large CSV file in parallel by splitting it into
+ * record aligned blocks, transforming the blocks on a fork join pool
+ * and writing the transformed blocks back out in the original order.
+ * Produces exactly the same output as the sequential transform.
+ */
+class ChunkedTransform
+{
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+
+    /**
+     * The result of transforming a single block
+     */
+    private static class BlockResult
+    {
+        private final String output;
+        private final long rowCount;
+        private final String rejects;
+        private final long rejectCount;
+
+        private BlockResult(String output, long rowCount, String rejects, long rejectCount)
+        {
+            this.output = output;
+            this.rowCount = rowCount;
+            this.rejects = rejects;
+            this.rejectCount = rejectCount;
+        }
+    }
+
+    /**
+     * Creates a chunked transform
+     * @param pool the pool to transform blocks on
+     * @param blockSize the target block size in characters
+     * @param maxBlocksInFlight the maximum number of blocks held in memory
+     */
+    ChunkedTransform(ForkJoinPool pool, int blockSize, int maxBlocksInFlight)
+    {
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+    }
+
+    /**
+     * Transforms the input writing transformed rows to the output,
+     * the input must start with a header record which is skipped.
+     * Rows that fail the data type's validation are written to the rejects.
+     * @param entry the manifest entry being processed
+     * @param dataType the data type of the entry
+     * @param in the CSV input
+     * @param out the CSV output
+     * @param rejects the rejects writer or null if the data type is not validated
+     * @return the number of rows transformed
+     * @throws IOException thrown on failure to read, transform or write
+     */
+    long transform(ManifestEntry entry, DataType dataType, Reader in, Writer out, RejectWriter rejects) throws IOException
+    {
+        CSVBlockReader blockReader = new CSVBlockReader(in, blockSize);
+        LinkedList<Future<BlockResult>> inFlight = new LinkedList<>();
+        long rowCount = 0L;
+        boolean firstBlock = true;
+
+        try
+        {
+            String block;
+
+            while ((block = blockReader.nextBlock()) != null)
+            {
+                String currentBlock = block;
+                boolean skipHeader = firstBlock;
+                firstBlock = false;
+
+                inFlight.add(pool.submit(() -> transformBlock(entry, dataType, currentBlock, skipHeader)));
+
+                if (inFlight.size() >= maxBlocksInFlight)
+                {
+                    rowCount += writeBlock(inFlight.poll(), out, rejects);
+                }
+            }
+
+            while (!inFlight.isEmpty())
+            {
+                rowCount += writeBlock(inFlight.poll(), out, rejects);
+            }
+
+            return rowCount;
+        }
+        finally
+        {
+            for (Future<BlockResult> pending: inFlight)
+            {
+                pending.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Waits for a block to be transformed and writes it out
+     * @param pending the pending block
+     * @param out the output
+     * @param rejects the rejects writer or null
+     * @return the number of rows in the block
+     * @throws IOException thrown on failure to transform or write
+     */
+    private long writeBlock(Future<BlockResult> pending, Writer out, RejectWriter rejects) throws IOException
+    {
+        try
+        {
+            BlockResult result = pending.get();
+            out.write(result.output);
+
+            if (rejects != null)
+            {
+                rejects.write(result.rejects, result.rejectCount);
+            }
+
+            return result.rowCount;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for block transform");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IngestException("Failed to transform block", e.getCause());
+        }
+    }
+
+    /**
+     * Transforms a block of whole records
+     * @param entry the manifest entry being processed
+     * @param dataType the data type
+     * @param block the block to transform
+     * @param skipHeader true if the first record is the header record
+     * @return the transformed block
+     * @throws IOException thrown on failure to parse
+     */
+    private static BlockResult transformBlock(ManifestEntry entry, DataType dataType,
+                                              String block, boolean skipHeader) throws IOException
+    {
+        CSVFormat inputFormat = CSVFormat.DEFAULT
+                .withHeader(dataType.getInputColumns().toArray(new String [0]))
+                .withSkipHeaderRecord(skipHeader);
+
+        StringBuilder output = new StringBuilder(block.length());
+        String [] outputRow = new String[dataType.getOutputColumns().size()];
+        long rowCount = 0L;
+
+        RowValidator validator = dataType.getRowValidator();
+        StringBuilder rejects = new StringBuilder();
+        long rejectCount = 0L;
+
+        try (CSVParser parser = new CSVParser(new StringReader(block), inputFormat))
+        {
+            CSVPrinter printer = new CSVPrinter(output, CSVFormat.DEFAULT);
+            CSVPrinter rejectPrinter = new CSVPrinter(rejects, CSVFormat.DEFAULT);
+
+            for (CSVRecord row : parser)
+            {
+                int failure = validator != null ? validator.validate(row) : RowValidator.VALID;
+
+                if (failure != RowValidator.VALID)
+                {
+                    for (String value: row)
+                    {
+                        rejectPrinter.print(value);
+                    }
+
+                    rejectPrinter.print(validator.getReason(failure));
+                    rejectPrinter.println();
+                    rejectCount++;
+                    continue;
+                }
+
+                entry.processRow(dataType, row, outputRow);
+                printer.printRecord((Object []) outputRow);
+                rowCount++;
+            }
+        }
+
+        return new BlockResult(output.toString(), rowCount, rejects.toString(), rejectCount);
+    }
+}
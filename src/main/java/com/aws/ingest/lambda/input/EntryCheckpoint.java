@@ -0,0 +1,250 @@
+package com.aws.ingest.lambda.input;
+
+import com.amazonaws.services.s3.model.PartETag;
+import com.aws.ingest.manifest.ManifestEntry;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The saved progress of a manifest entry, either complete with its
+ * processed manifest entry or in progress with the multipart upload
+ * and the input and output positions of the last record aligned part
+ */
+class EntryCheckpoint
+{
+    /**
+     * The input file name, signature and object ETag the checkpoint applies to
+     */
+    private String fileName = null;
+    private String signature = null;
+    private String inputETag = null;
+
+    /**
+     * The processed object key, changes if the data type's output changes
+     */
+    private String outputKey = null;
+
+    private boolean complete = false;
+
+    /**
+     * The multipart upload and the parts completed before the checkpoint
+     */
+    private String uploadId = null;
+    private List<PartETag> parts = new ArrayList<>();
+    private long outputLength = 0L;
+    private String outputDigestState = null;
+
+    /**
+     * The input offset of the first record after the last completed part,
+     * the input digest state may cover read ahead bytes past this offset
+     */
+    private long inputOffset = 0L;
+    private String inputDigestState = null;
+    private long rowCount = 0L;
+
+    /**
+     * The verified input MD5, processed entry, its MD5 and output ETag once complete
+     */
+    private String inputMd5 = null;
+    private ManifestEntry outputEntry = null;
+    private String outputMd5 = null;
+    private String outputETag = null;
+
+    /**
+     * Creates an empty checkpoint, used by Gson
+     */
+    EntryCheckpoint()
+    {
+    }
+
+    /**
+     * Creates a checkpoint for an entry
+     * @param entry the input manifest entry
+     * @param inputETag the ETag of the input object
+     * @param outputKey the processed object key
+     */
+    EntryCheckpoint(ManifestEntry entry, String inputETag, String outputKey)
+    {
+        this.fileName = entry.getFileName();
+        this.signature = entry.getSignature();
+        this.inputETag = inputETag;
+        this.outputKey = outputKey;
+    }
+
+    /**
+     * Checks the checkpoint was saved for the same input and output,
+     * a replaced input object or reconfigured data type starts over
+     * @param entry the input manifest entry
+     * @param currentInputETag the current ETag of the input object
+     * @param currentOutputKey the processed object key
+     * @return true if the checkpoint applies
+     */
+    boolean matches(ManifestEntry entry, String currentInputETag, String currentOutputKey)
+    {
+        return Objects.equals(fileName, entry.getFileName()) &&
+                Objects.equals(signature, entry.getSignature()) &&
+                Objects.equals(inputETag, currentInputETag) &&
+                Objects.equals(outputKey, currentOutputKey);
+    }
+
+    String getFileName()
+    {
+        return fileName;
+    }
+
+    String getOutputKey()
+    {
+        return outputKey;
+    }
+
+    String getInputETag()
+    {
+        return inputETag;
+    }
+
+    boolean isComplete()
+    {
+        return complete;
+    }
+
+    void setComplete(boolean complete)
+    {
+        this.complete = complete;
+    }
+
+    String getUploadId()
+    {
+        return uploadId;
+    }
+
+    void setUploadId(String uploadId)
+    {
+        this.uploadId = uploadId;
+    }
+
+    List<PartETag> getParts()
+    {
+        return parts;
+    }
+
+    void setParts(List<PartETag> parts)
+    {
+        this.parts = parts;
+    }
+
+    long getOutputLength()
+    {
+        return outputLength;
+    }
+
+    void setOutputLength(long outputLength)
+    {
+        this.outputLength = outputLength;
+    }
+
+    String getOutputDigestState()
+    {
+        return outputDigestState;
+    }
+
+    void setOutputDigestState(String outputDigestState)
+    {
+        this.outputDigestState = outputDigestState;
+    }
+
+    long getInputOffset()
+    {
+        return inputOffset;
+    }
+
+    void setInputOffset(long inputOffset)
+    {
+        this.inputOffset = inputOffset;
+    }
+
+    String getInputDigestState()
+    {
+        return inputDigestState;
+    }
+
+    void setInputDigestState(String inputDigestState)
+    {
+        this.inputDigestState = inputDigestState;
+    }
+
+    long getRowCount()
+    {
+        return rowCount;
+    }
+
+    void setRowCount(long rowCount)
+    {
+        this.rowCount = rowCount;
+    }
+
+    String getInputMd5()
+    {
+        return inputMd5;
+    }
+
+    void setInputMd5(String inputMd5)
+    {
+        this.inputMd5 = inputMd5;
+    }
+
+    ManifestEntry getOutputEntry()
+    {
+        return outputEntry;
+    }
+
+    void setOutputEntry(ManifestEntry outputEntry)
+    {
+        this.outputEntry = outputEntry;
+    }
+
+    String getOutputMd5()
+    {
+        return outputMd5;
+    }
+
+    void setOutputMd5(String outputMd5)
+    {
+        this.outputMd5 = outputMd5;
+    }
+
+    String getOutputETag()
+    {
+        return outputETag;
+    }
+
+    void setOutputETag(String outputETag)
+    {
+        this.outputETag = outputETag;
+    }
+
+    /**
+     * Parses a checkpoint from JSON
+     * @param json the JSON to parse
+     * @return the parsed checkpoint
+     */
+    static EntryCheckpoint fromJSON(String json)
+    {
+        Gson gson = new GsonBuilder().create();
+        return gson.fromJson(json, EntryCheckpoint.class);
+    }
+
+    /**
+     * Converts a checkpoint to JSON
+     * @param checkpoint the checkpoint
+     * @return the checkpoint as JSON
+     */
+    static String toJSON(EntryCheckpoint checkpoint)
+    {
+        Gson gson = new GsonBuilder().create();
+        return gson.toJson(checkpoint);
+    }
+}
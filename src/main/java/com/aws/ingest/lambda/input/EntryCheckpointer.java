@@ -0,0 +1,283 @@
+package com.aws.ingest.lambda.input;
+
+import com.amazonaws.services.s3.model.PartETag;
+import com.aws.ingest.io.CSVProjector;
+import com.aws.ingest.io.Hasher;
+import com.aws.ingest.io.MD5InputStream;
+import com.aws.ingest.io.ResumableMD5;
+import com.aws.ingest.io.S3OutputStream;
+import com.aws.ingest.manifest.ManifestEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Checkpoints a single entry while it is processed. Every checkpointed entry
+ * records its multipart upload as soon as it starts, so a later attempt can
+ * abort it, and its processed entry once complete, so a later attempt can
+ * skip it.
+ *
+ * Entries that are resumable also cut an output part at a record boundary
+ * whenever enough output is buffered, and periodically save the parts that
+ * have completed along with the input offset, row count and both MD5 states
+ * at the boundary ending the last of them. A later attempt resumes the upload
+ * and reads the input with ranged GETs from the record after that boundary.
+ */
+class EntryCheckpointer implements CSVProjector.RecordListener
+{
+    /**
+     * The state of an entry at the end of a cut part
+     */
+    private static class Boundary
+    {
+        private int partNumber;
+        private long inputOffset;
+        private long rowCount;
+        private String inputDigestState;
+        private long outputLength;
+        private String outputDigestState;
+    }
+
+    private final CheckpointStore store;
+    private final EntryCheckpoint checkpoint;
+    private final EntryCheckpoint resumeFrom;
+    private final int cutHeadroom;
+    private final long intervalMillis;
+
+    /**
+     * The input MD5 whose state is saved and the hasher that updates it
+     */
+    private final ResumableMD5 inputMD5;
+    private final Hasher inputHasher;
+
+    /**
+     * Boundaries of cut parts not yet saved, in part order
+     */
+    private final LinkedList<Boundary> boundaries = new LinkedList<>();
+
+    private S3OutputStream s3Out = null;
+    private MD5InputStream digestIn = null;
+    private long lastSaved = 0L;
+
+    /**
+     * Creates a checkpointer for an entry
+     * @param store the checkpoint store
+     * @param entry the input entry
+     * @param inputETag the ETag of the input object
+     * @param outputKey the key of the processed file
+     * @param resumeFrom the checkpoint to resume from or null to start over
+     * @param cutHeadroom a part is cut at the next record boundary once it is within this many bytes of full
+     * @param intervalMillis the minimum interval between saved checkpoints
+     */
+    EntryCheckpointer(CheckpointStore store, ManifestEntry entry, String inputETag, String outputKey,
+                      EntryCheckpoint resumeFrom, int cutHeadroom, long intervalMillis)
+    {
+        this.store = store;
+        this.checkpoint = new EntryCheckpoint(entry, inputETag, outputKey);
+        this.resumeFrom = resumeFrom;
+        this.cutHeadroom = cutHeadroom;
+        this.intervalMillis = intervalMillis;
+
+        if (resumeFrom != null)
+        {
+            /**
+             * The saved input state covers bytes read ahead of the boundary,
+             * which are read again from the boundary but not hashed again
+             */
+            inputMD5 = ResumableMD5.fromState(resumeFrom.getInputDigestState());
+            inputHasher = skipping(inputMD5, inputMD5.getLength() - resumeFrom.getInputOffset());
+        }
+        else
+        {
+            inputMD5 = new ResumableMD5();
+            inputHasher = inputMD5;
+        }
+    }
+
+    boolean isResumed()
+    {
+        return resumeFrom != null;
+    }
+
+    /**
+     * The input offset to start reading from
+     * @return the offset of the first record after the resumed boundary or zero
+     */
+    long getInputOffset()
+    {
+        return resumeFrom != null ? resumeFrom.getInputOffset() : 0L;
+    }
+
+    /**
+     * The number of rows written before the resumed boundary
+     * @return the row count
+     */
+    long getRowCount()
+    {
+        return resumeFrom != null ? resumeFrom.getRowCount() : 0L;
+    }
+
+    /**
+     * The hasher to compute the input MD5 with
+     * @return the input hasher
+     */
+    Hasher getInputHasher()
+    {
+        return inputHasher;
+    }
+
+    /**
+     * Starts or resumes the upload and saves a checkpoint recording it
+     * @param s3Out the upload, created with checkpointing enabled
+     * @param digestIn the input digest stream, created with getInputHasher()
+     * @throws IOException thrown on failure to start the upload
+     */
+    void begin(S3OutputStream s3Out, MD5InputStream digestIn) throws IOException
+    {
+        this.s3Out = s3Out;
+        this.digestIn = digestIn;
+
+        if (resumeFrom != null)
+        {
+            s3Out.resume(resumeFrom.getUploadId(), resumeFrom.getParts(),
+                    resumeFrom.getOutputLength(), resumeFrom.getOutputDigestState());
+
+            checkpoint.setParts(resumeFrom.getParts());
+            checkpoint.setInputOffset(resumeFrom.getInputOffset());
+            checkpoint.setRowCount(resumeFrom.getRowCount());
+            checkpoint.setInputDigestState(resumeFrom.getInputDigestState());
+            checkpoint.setOutputLength(resumeFrom.getOutputLength());
+            checkpoint.setOutputDigestState(resumeFrom.getOutputDigestState());
+        }
+        else
+        {
+            s3Out.start();
+        }
+
+        checkpoint.setUploadId(s3Out.getUploadId());
+        save();
+    }
+
+    /**
+     * Cuts a part once enough output is buffered, the record
+     * boundary is saved once the part and all before it complete.
+     * The cut point follows the part size as it grows.
+     */
+    @Override
+    public void onRecord(long inputOffset, long rowCount) throws IOException
+    {
+        if (s3Out.getBufferedLength() < Math.max(s3Out.getPartSize() - cutHeadroom, S3OutputStream.MIN_PART_SIZE))
+        {
+            return;
+        }
+
+        Boundary boundary = new Boundary();
+        boundary.partNumber = s3Out.cutPart();
+        boundary.inputOffset = getInputOffset() + inputOffset;
+        boundary.rowCount = getRowCount() + rowCount;
+        boundary.outputLength = s3Out.getTotalLength();
+        boundary.outputDigestState = s3Out.getDigestState();
+
+        digestIn.hashConsumed();
+        boundary.inputDigestState = inputMD5.getState();
+
+        boundaries.add(boundary);
+
+        if (System.currentTimeMillis() - lastSaved >= intervalMillis)
+        {
+            saveProgress();
+        }
+    }
+
+    /**
+     * Saves the latest boundary whose part and every part before it have completed
+     * @throws IOException thrown if a part upload failed
+     */
+    private void saveProgress() throws IOException
+    {
+        List<PartETag> completedParts = s3Out.getCompletedParts();
+        Boundary latest = null;
+
+        while (!boundaries.isEmpty() && boundaries.peek().partNumber <= completedParts.size())
+        {
+            latest = boundaries.poll();
+        }
+
+        if (latest == null)
+        {
+            return;
+        }
+
+        checkpoint.setParts(new ArrayList<>(completedParts.subList(0, latest.partNumber)));
+        checkpoint.setInputOffset(latest.inputOffset);
+        checkpoint.setRowCount(latest.rowCount);
+        checkpoint.setInputDigestState(latest.inputDigestState);
+        checkpoint.setOutputLength(latest.outputLength);
+        checkpoint.setOutputDigestState(latest.outputDigestState);
+        save();
+    }
+
+    /**
+     * Saves the completed entry so a later attempt skips it
+     * @param outputEntry the processed entry
+     * @param inputMd5 the verified input MD5
+     */
+    void complete(ManifestEntry outputEntry, String inputMd5)
+    {
+        checkpoint.setComplete(true);
+        checkpoint.setUploadId(null);
+        checkpoint.setParts(new ArrayList<>());
+        checkpoint.setInputDigestState(null);
+        checkpoint.setOutputDigestState(null);
+        checkpoint.setInputMd5(inputMd5);
+        checkpoint.setOutputEntry(outputEntry);
+        checkpoint.setOutputMd5(outputEntry.getMd5());
+        checkpoint.setOutputETag(s3Out.getETag());
+        save();
+    }
+
+    private void save()
+    {
+        store.save(checkpoint);
+        lastSaved = System.currentTimeMillis();
+    }
+
+    /**
+     * Wraps a hasher so the first bytes it is given are not hashed
+     * @param hasher the hasher to update
+     * @param skip the number of bytes to skip
+     * @return the skipping hasher
+     */
+    private static Hasher skipping(Hasher hasher, long skip)
+    {
+        return new Hasher()
+        {
+            private long remaining = skip;
+
+            @Override
+            public void update(byte [] b, int off, int len)
+            {
+                if (remaining > 0L)
+                {
+                    int skipped = (int) Math.min(remaining, len);
+                    remaining -= skipped;
+                    off += skipped;
+                    len -= skipped;
+                }
+
+                if (len > 0)
+                {
+                    hasher.update(b, off, len);
+                }
+            }
+
+            @Override
+            public byte [] digest()
+            {
+                return hasher.digest();
+            }
+        };
+    }
+}
@@ -1,22 +1,44 @@
 package com.aws.ingest.lambda.input;
 
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
-import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.event.S3EventNotification;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
+import com.aws.ingest.config.Compression;
+import com.aws.ingest.config.ConfigCache;
 import com.aws.ingest.config.DataType;
+import com.aws.ingest.config.Environment;
 import com.aws.ingest.config.InputConfig;
+import com.aws.ingest.config.OutputFormat;
 import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.io.CSVProjector;
+import com.aws.ingest.io.ConcurrencyLimit;
+import com.aws.ingest.io.PipelinedOutputStream;
+import com.aws.ingest.io.S3InputStream;
 import com.aws.ingest.io.S3OutputStream;
+import com.aws.ingest.io.parquet.ParquetCompression;
+import com.aws.ingest.io.parquet.ParquetWriter;
+import com.aws.ingest.lambda.SQSBatchProcessor;
+import com.aws.ingest.lambda.SQSBatchResponse;
+import com.aws.ingest.logging.Log;
+import com.aws.ingest.metrics.Metric;
+import com.aws.ingest.metrics.Metrics;
+import com.aws.ingest.metrics.MetricsEmitter;
+import com.aws.ingest.metrics.MetricsSink;
+import com.aws.ingest.manifest.DigestScope;
 import com.aws.ingest.manifest.Manifest;
 import com.aws.ingest.manifest.ManifestEntry;
+import com.aws.ingest.security.KeyCache;
+import com.aws.ingest.security.ManifestSigner;
+import com.aws.ingest.security.SignatureVerifier;
+import com.aws.ingest.validation.RowValidator;
 import com.aws.ingest.io.MD5InputStream;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
@@ -26,72 +48,229 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 
 import java.io.*;
-import java.security.KeyFactory;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Lambda function that ingests CSV files,
  * validates them and transforms them
  */
 @SuppressWarnings("unused")
-public class InputLambda implements RequestHandler<SQSEvent, Void>
+public class InputLambda implements RequestHandler<SQSEvent, SQSBatchResponse>
 {
-    private static LambdaLogger LOGGER = null;
+    private static Log LOGGER = null;
 
     /**
-     * Static lazily loaded input configuration
+     * Static input configuration cache that survives warm invocations
      */
-    private static InputConfig inputConfiguration = null;
+    private static ConfigCache<InputConfig> inputConfiguration = null;
+
+    /**
+     * The default number of seconds before cached configuration is revalidated
+     */
+    private static final int DEFAULT_CONFIG_TTL_SECONDS = 60;
 
     /**
      * Static reusable S3 client
      */
-    private static AmazonS3 s3 = null;
+    private static AmazonS3 defaultS3 = null;
 
     /**
-     * Input event handler function that receives the SQS event
-     * @param event the event
-     * @param context the Lambda context
-     * @return returns null
+     * Static reusable S3 client for uploads with SDK retries disabled,
+     * S3OutputStream retries and throttles its own calls
      */
-    @Override
-    public Void handleRequest(SQSEvent event, Context context)
-    {
-        LOGGER = context.getLogger();
+    private static AmazonS3 defaultUploadS3 = null;
 
-        inputConfiguration = null;
+    /**
+     * The S3 client provided to this handler or null to use the static client
+     */
+    private AmazonS3 s3 = null;
 
-        for (SQSMessage msg : event.getRecords())
-        {
-            LOGGER.log("Received request message: " + msg.getBody());
+    /**
+     * The default number of SQS records to process concurrently
+     */
+    private static final int DEFAULT_MESSAGE_CONCURRENCY = 2;
 
-            processEvent(msg.getBody());
-        }
+    /**
+     * Static lazily created executor for processing batched SQS records
+     */
+    private static ExecutorService messageExecutor = null;
+
+    /**
+     * The default number of manifest entries to process concurrently across all manifests
+     */
+    private static final int DEFAULT_ENTRY_CONCURRENCY = 4;
+
+    /**
+     * Static lazily created executor for manifest entries, shared between the
+     * manifests of a batch so the entries in flight and their buffers are bounded
+     */
+    private static ExecutorService entryExecutor = null;
+
+    /**
+     * The default number of threads uploading parts across all entries
+     */
+    private static final int DEFAULT_UPLOAD_CONCURRENCY = 8;
+
+    /**
+     * The default number of parts each entry may have in flight
+     */
+    private static final int DEFAULT_UPLOAD_PARTS_IN_FLIGHT = 2;
+
+    /**
+     * The default number of attempts at each S3 upload call before the entry fails
+     */
+    private static final int DEFAULT_UPLOAD_MAX_ATTEMPTS = S3OutputStream.DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Static lazily created executor for asynchronous part uploads
+     */
+    private static ExecutorService uploadExecutor = null;
+
+    /**
+     * Static lazily created limit on upload calls in flight across all entries,
+     * reduced while S3 is throttling
+     */
+    private static ConcurrencyLimit uploadLimit = null;
+
+    /**
+     * The size of each ranged GET when downloading input objects
+     */
+    private static final int DOWNLOAD_PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default number of threads downloading parts across all entries
+     */
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 8;
+
+    /**
+     * The default number of parts each entry may prefetch
+     */
+    private static final int DEFAULT_DOWNLOAD_PARTS_IN_FLIGHT = 4;
+
+    /**
+     * Static lazily created executor for parallel ranged downloads
+     */
+    private static ExecutorService downloadExecutor = null;
+
+    /**
+     * The target size in characters of each block in a chunked transform
+     */
+    private static final int TRANSFORM_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * Static lazily created chunked transform for large files
+     */
+    private static ChunkedTransform chunkedTransform = null;
+
+    /**
+     * The initial read buffer size of the byte level projection engine
+     */
+    private static final int PROJECTION_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The default size of each Parquet row group in megabytes of buffered values
+     */
+    private static final int DEFAULT_PARQUET_ROW_GROUP_MB = 32;
+
+    /**
+     * The size and number of blocks queued for the output compression thread
+     */
+    private static final int COMPRESSION_BLOCK_SIZE = 1024 * 1024;
+    private static final int COMPRESSION_BLOCKS = 4;
+
+    /**
+     * Static lazily created executor for output compression threads
+     */
+    private static ExecutorService compressionExecutor = null;
+
+    /**
+     * Checkpointed projections cut a part at the first record boundary once the
+     * part is within this much of full, leaving room in the part for that record
+     */
+    private static final int CHECKPOINT_RECORD_HEADROOM = 2 * 1024 * 1024;
 
-        LOGGER.log("Processing is complete");
-        return null;
+    /**
+     * The default minimum number of seconds between saved checkpoints of an entry
+     */
+    private static final int DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
+
+    /**
+     * The part size of rejects files, the smallest S3 allows as rejects should be rare
+     */
+    private static final int REJECTS_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * The CloudWatch namespace metrics are emitted to, None disables metrics
+     */
+    private static final String DEFAULT_METRICS_NAMESPACE = "IngestPipeline";
+
+    /**
+     * Receives metrics records, the Lambda log by default
+     */
+    private MetricsSink metricsSink = null;
+
+    /**
+     * Creates the handler, invoked by the Lambda runtime
+     */
+    public InputLambda()
+    {
     }
 
     /**
-     * Processes an SQS message string which should
-     * contain a serialised S3EventNotification
-     * @param message the message to process
+     * Creates a handler that uses the provided S3 client,
+     * used to run the pipeline locally against an S3 stand in
+     * @param s3Client the S3 client to use
      */
-    private void processEvent(String message)
+    public InputLambda(AmazonS3 s3Client)
     {
-        S3EventNotification s3EventNotification = S3EventNotification.parseJson(message);
+        this.s3 = s3Client;
+    }
 
-        for (S3EventNotification.S3EventNotificationRecord record: s3EventNotification.getRecords())
-        {
-            processRecord(record);
-        }
+    /**
+     * Emits metrics records to a sink rather than the Lambda log,
+     * used to collect metrics when running the pipeline locally
+     * @param metricsSink the sink
+     * @return the handler
+     */
+    public InputLambda withMetricsSink(MetricsSink metricsSink)
+    {
+        this.metricsSink = metricsSink;
+        return this;
+    }
+
+    /**
+     * Input event handler function that receives a batch of SQS messages,
+     * processing them concurrently and reporting the messages that failed
+     * @param event the event
+     * @param context the Lambda context
+     * @return the failed messages to redeliver
+     */
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context)
+    {
+        LOGGER = Log.getLog(context.getLogger());
+
+        SQSBatchResponse response = new SQSBatchProcessor(getMessageExecutor())
+                .process(event, this::processRecord, LOGGER);
+
+        LOGGER.info("Processing is complete");
+        return response;
     }
 
     /**
@@ -108,15 +287,15 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
          */
         if (!key.matches("^.*manifest.json$"))
         {
-            LOGGER.log("Skipping non-manifest object: " + key);
+            LOGGER.info("Skipping non-manifest object: " + key);
             return;
         }
 
-        LOGGER.log("Found manifest object to process: " + key);
+        LOGGER.info("Found manifest object to process: " + key);
 
         Manifest manifest = loadManifest(bucket, key);
 
-        LOGGER.log("Processing input data from source system: " + manifest.getSourceSystem() +
+        LOGGER.info("Processing input data from source system: " + manifest.getSourceSystem() +
             " created: " + manifest.getCreatedDate());
 
         /**
@@ -131,23 +310,29 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
      */
     private void processManifest(InputConfig config, Manifest manifest)
     {
-        LOGGER.log("Found: " + getConfiguration().getDataTypes().size() + " configured data types");
+        LOGGER.info("Found: " + config.getDataTypes().size() + " configured data types");
 
-        String outputBucket = System.getenv("PROCESSED_BUCKET");
+        String outputBucket = Environment.get("PROCESSED_BUCKET");
 
         if (StringUtils.isBlank(outputBucket))
         {
             throw new IngestException("Missing environment variable: PROCESSED_BUCKET");
         }
 
-        String outputKMSKey = System.getenv("PROCESSED_KMS_ID");
+        String outputKMSKey = Environment.get("PROCESSED_KMS_ID");
 
         if (StringUtils.isBlank(outputKMSKey))
         {
             throw new IngestException("Missing environment variable: PROCESSED_KMS_ID");
         }
 
-        LOGGER.log("Found processed KMS Key to use: " + outputKMSKey);
+        LOGGER.info("Found processed KMS Key to use: " + outputKMSKey);
+
+        /**
+         * Fetch cached keys up front so bad key configuration fails before any data is read
+         */
+        SignatureVerifier verifier = loadVerifier();
+        ManifestSigner signer = loadSigner();
 
         Manifest outputManifest = new Manifest();
 
@@ -159,48 +344,295 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
         outputManifest.setSourceSystem(manifest.getSourceSystem());
         outputManifest.setVersion("1.0.0");
 
-        for (ManifestEntry entry: manifest.getManifestEntries())
+        /**
+         * Load checkpoints left by an earlier attempt at this manifest
+         */
+        CheckpointStore checkpoints = null;
+
+        if (isCheckpointingEnabled())
         {
-            processManifestEntry(config, manifest, entry, outputManifest, outputKMSKey);
+            checkpoints = new CheckpointStore(getS3(), outputBucket, manifest.getKey(), outputKMSKey).load();
         }
 
-        String publicKeyString = System.getenv("PUBLIC_KEY");
+        MetricsEmitter emitter = getMetricsEmitter();
+        Metrics manifestMetrics = new Metrics();
+        boolean success = false;
 
-        if (StringUtils.isBlank(publicKeyString))
+        try
         {
-            throw new IngestException("Missing environment variable: PUBLIC_KEY use 'None' to disable");
+            /**
+             * Each entry is verified as soon as it has been read
+             */
+            processManifestEntries(config, manifest, outputManifest, outputKMSKey, verifier, checkpoints,
+                    emitter, manifestMetrics);
+
+            if (signer != null)
+            {
+                signer.sign(outputManifest);
+            }
+            else
+            {
+                LOGGER.info("Skipping manifest signing");
+            }
+
+            saveManifest(getUploadS3(), outputManifest, outputKMSKey);
+            success = true;
         }
+        finally
+        {
+            emitMetrics(emitter, manifestMetrics, "Manifest", null, manifest, null, success);
+        }
+
+        if (checkpoints != null)
+        {
+            checkpoints.deleteAll();
+        }
+
+        LOGGER.info("Manifest processing is complete");
+    }
 
-        if (!"None".equals(publicKeyString))
+    /**
+     * Loads the verifier for input manifest signatures
+     * @return the verifier or null if verification is disabled
+     */
+    private SignatureVerifier loadVerifier()
+    {
+        String publicKeyString = Environment.get("PUBLIC_KEY");
+
+        if (StringUtils.isBlank(publicKeyString))
         {
-            PublicKey publicKey = loadPublicKey(publicKeyString);
-            manifest.verifySignature(publicKey);
+            throw new IngestException("Missing environment variable: PUBLIC_KEY use 'None' to disable");
         }
-        else
+
+        if ("None".equals(publicKeyString))
         {
-            LOGGER.log("Skipping signature verification");
+            LOGGER.info("Skipping signature verification");
+            return null;
         }
 
-        String privateKeyString = System.getenv("PRIVATE_KEY");
+        return KeyCache.getVerifier(publicKeyString);
+    }
+
+    /**
+     * Loads the signer for output manifests
+     * @return the signer or null if signing is disabled
+     */
+    private ManifestSigner loadSigner()
+    {
+        String privateKeyString = Environment.get("PRIVATE_KEY");
 
         if (StringUtils.isBlank(privateKeyString))
         {
             throw new IngestException("Missing environment variable: PRIVATE_KEY use 'None' to disable");
         }
 
-        if (!"None".equals(privateKeyString))
+        if ("None".equals(privateKeyString))
+        {
+            return null;
+        }
+
+        return KeyCache.getSigner(privateKeyString);
+    }
+
+    /**
+     * Processes the manifest entries concurrently using a bounded worker pool
+     * adding output entries to the output manifest in the original order.
+     * The first failure aborts all in flight uploads and cancels the
+     * remaining entries.
+     * @param config the input config
+     * @param manifest the input manifest
+     * @param outputManifest the output manifest
+     * @param outputKMSKey the output KMS key id
+     * @param verifier the input signature verifier or null to skip verification
+     * @param checkpoints the checkpoint store or null if checkpointing is disabled
+     * @param emitter the metrics emitter or null if metrics are disabled
+     * @param manifestMetrics the manifest metrics that each entry's metrics are added to
+     */
+    private void processManifestEntries(InputConfig config,
+              Manifest manifest,
+              Manifest outputManifest,
+              String outputKMSKey,
+              SignatureVerifier verifier,
+              CheckpointStore checkpoints,
+              MetricsEmitter emitter,
+              Metrics manifestMetrics)
+    {
+        List<ManifestEntry> entries = manifest.getManifestEntries();
+
+        if (entries.isEmpty())
+        {
+            return;
+        }
+
+        LOGGER.info("Processing: " + entries.size() + " entries with concurrency: " +
+                Environment.getInt("ENTRY_CONCURRENCY", DEFAULT_ENTRY_CONCURRENCY));
+
+        /**
+         * Make sure the S3 clients are created before workers start
+         */
+        getS3();
+        getUploadS3();
+
+        Set<S3OutputStream> activeUploads = ConcurrentHashMap.newKeySet();
+        CompletionService<ManifestEntry> completionService = new ExecutorCompletionService<>(getEntryExecutor());
+        List<Future<ManifestEntry>> futures = new ArrayList<>();
+
+        try
+        {
+            for (ManifestEntry entry: entries)
+            {
+                futures.add(completionService.submit(() ->
+                {
+                    Metrics entryMetrics = new Metrics();
+                    boolean success = false;
+
+                    try
+                    {
+                        ManifestEntry outputEntry = processManifestEntry(config, manifest, entry, outputManifest,
+                                outputKMSKey, verifier, checkpoints, activeUploads, entryMetrics);
+                        success = true;
+                        return outputEntry;
+                    }
+                    finally
+                    {
+                        emitMetrics(emitter, entryMetrics, "Entry", entry, manifest, manifestMetrics, success);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++)
+            {
+                completionService.take().get();
+            }
+
+            for (Future<ManifestEntry> future: futures)
+            {
+                outputManifest.getManifestEntries().add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            abortAll(futures, activeUploads);
+
+            if (e.getCause() instanceof IngestException)
+            {
+                throw (IngestException) e.getCause();
+            }
+
+            throw new IngestException("Failed to process manifest entries", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            abortAll(futures, activeUploads);
+            Thread.currentThread().interrupt();
+            throw new IngestException("Interrupted processing manifest entries", e);
+        }
+    }
+
+    /**
+     * Cancels this manifest's queued and running entries, leaving other manifests
+     * sharing the entry executor untouched, and aborts all in flight uploads
+     * @param futures the manifest's entries
+     * @param activeUploads the uploads currently in flight
+     */
+    private void abortAll(List<Future<ManifestEntry>> futures, Set<S3OutputStream> activeUploads)
+    {
+        for (Future<ManifestEntry> future: futures)
         {
-            PrivateKey privateKey = loadPrivateKey(privateKeyString);
-            outputManifest.signManifest(privateKey);
+            future.cancel(true);
         }
-        else
+
+        for (S3OutputStream s3Out: activeUploads)
         {
-            LOGGER.log("Skipping manifest signing");
+            try
+            {
+                s3Out.abort();
+            }
+            catch (Throwable t)
+            {
+                LOGGER.error("Failed to abort upload to: " + s3Out.getOutputPath() +
+                        " cause: " + t.toString());
+            }
         }
+    }
 
-        saveManifest(s3, outputManifest, outputKMSKey);
+    /**
+     * Stops and emits the metrics for an entry or manifest, entry
+     * metrics are first added to the manifest's totals
+     * @param emitter the metrics emitter or null if metrics are disabled
+     * @param metrics the metrics to emit
+     * @param scope Entry or Manifest
+     * @param entry the input entry or null for the manifest
+     * @param manifest the input manifest
+     * @param manifestMetrics the manifest metrics to add entry metrics to or null for the manifest
+     * @param success true if processing succeeded
+     */
+    private void emitMetrics(MetricsEmitter emitter, Metrics metrics, String scope, ManifestEntry entry,
+                             Manifest manifest, Metrics manifestMetrics, boolean success)
+    {
+        metrics.stop();
+
+        if (manifestMetrics != null)
+        {
+            manifestMetrics.addAll(metrics);
+        }
 
-        LOGGER.log("Manifest processing is complete");
+        if (emitter == null)
+        {
+            return;
+        }
+
+        Map<String, String> dimensions = new LinkedHashMap<>();
+        dimensions.put("Scope", scope);
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("Manifest", manifest.getKey());
+        properties.put("SourceSystem", manifest.getSourceSystem());
+
+        if (entry != null)
+        {
+            dimensions.put("DataType", entry.getDataType());
+            properties.put("FileName", entry.getFileName());
+        }
+
+        properties.put("Status", success ? "Success" : "Failed");
+
+        try
+        {
+            emitter.emit(metrics, dimensions, properties);
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("Failed to emit metrics, cause: " + t.toString());
+        }
+    }
+
+    /**
+     * Creates the metrics emitter, logging records so CloudWatch
+     * extracts them unless a sink has been provided
+     * @return the emitter or null if metrics are disabled
+     */
+    private MetricsEmitter getMetricsEmitter()
+    {
+        String namespace = Environment.get("METRICS_NAMESPACE");
+
+        if (StringUtils.isBlank(namespace))
+        {
+            namespace = DEFAULT_METRICS_NAMESPACE;
+        }
+
+        if ("None".equals(namespace))
+        {
+            return null;
+        }
+
+        if (metricsSink != null)
+        {
+            return new MetricsEmitter(namespace, metricsSink);
+        }
+
+        Log logger = LOGGER;
+        return new MetricsEmitter(namespace, logger::write);
     }
 
     private void saveManifest(AmazonS3 s3, Manifest outputManifest, String processedKMSId)
@@ -211,107 +643,429 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
         {
             S3OutputStream out = new S3OutputStream(s3, outputManifest.getBucket(),
                     outputManifest.getKey(), tenMB).withKmsKey(processedKMSId);
+            withRetries(out);
             String json = Manifest.toJSON(outputManifest);
-            LOGGER.log("Generated processed manifest: " + Manifest.toJSON(outputManifest));
-            out.write(json.getBytes());
+            LOGGER.info(() -> "Generated processed manifest: " + outputManifest.getKey() + " entries: " +
+                    outputManifest.getManifestEntries().size() + " length: " + json.length());
+            LOGGER.debug(() -> "Processed manifest content: " + Log.summarize(json));
+            out.write(json.getBytes(StandardCharsets.UTF_8));
             out.close();
         }
         catch (Throwable t)
         {
-            LOGGER.log("Failed to save completed manifest, cause: " + t.toString());
+            LOGGER.error("Failed to save completed manifest, cause: " + t.toString());
             throw new IngestException("Failed to save manifest", t);
         }
     }
 
     /**
-     * Processes a Manifest entry returning the manifets entry for the processed entry
+     * Processes a Manifest entry returning the manifest entry for the processed entry
      * @param inputManifest the input manifest
      * @param config the config
      * @param entry the entry to process
      * @param outputManifest the output manifest
      * @param outputKMSKey the output KMS key id
+     * @param verifier the input signature verifier or null to skip verification
+     * @param checkpoints the checkpoint store or null if checkpointing is disabled
+     * @param activeUploads the uploads in flight, used to abort on failure
+     * @param metrics the entry metrics to update
+     * @return the processed manifest entry
      */
-    private void processManifestEntry(InputConfig config,
+    private ManifestEntry processManifestEntry(InputConfig config,
               Manifest inputManifest,
               ManifestEntry entry,
               Manifest outputManifest,
-              String outputKMSKey)
+              String outputKMSKey,
+              SignatureVerifier verifier,
+              CheckpointStore checkpoints,
+              Set<S3OutputStream> activeUploads,
+              Metrics metrics)
     {
-        DataType dataType = getConfiguration().getDataType(entry.getDataType());
+        DataType dataType = config.getDataType(entry.getDataType());
 
         ManifestEntry outputEntry = entry.clone();
         outputEntry.reset();
+        outputEntry.setFileName(dataType.getOutputFileName(entry.getFileName()));
+
+        /**
+         * Processed entries always sign the stored bytes of the processed file
+         */
+        Compression outputCompression = dataType.getOutputCompression();
+        outputEntry.setCompression(dataType.getOutputFormat().isStreamCompressed() ? outputCompression : Compression.NONE);
+        outputEntry.setDigestScope(DigestScope.STORED);
+
+        Compression inputCompression = entry.getEffectiveCompression();
+        boolean contentDigest = entry.getEffectiveDigestScope() == DigestScope.CONTENT;
 
         String inputEntryKey = inputManifest.getKeyForEntry(entry);
-        String outputEntryKey = outputManifest.getKeyForEntry(entry);
+        String outputEntryKey = outputManifest.getKeyForEntry(outputEntry);
 
-        LOGGER.log(String.format("Processing entry from: s3://%s/%s to s3://%s/%s",
-                inputManifest.getBucket(), inputEntryKey,
-                outputManifest.getBucket(), outputEntryKey));
+        LOGGER.info(() -> "Processing entry from: s3://" + inputManifest.getBucket() + "/" + inputEntryKey +
+                " to s3://" + outputManifest.getBucket() + "/" + outputEntryKey);
 
         /**
-         * 10MB buffer size and part size
+         * 10MB buffer size and minimum part size, larger inputs use larger parts
          */
         int bufferSize = 1024 * 1024 * 10;
 
         /**
-         * A buffer for an output row
+         * A reusable buffer for an output row
+         */
+        String [] outputRow = new String[dataType.getOutputColumns().size()];
+
+        /**
+         * The compiled validation or null if the data type is not validated
          */
-        List<String> outputBuffer = new ArrayList<>();
+        RowValidator validator = dataType.getRowValidator();
+
+        String inputETag = null;
+        EntryCheckpointer checkpointer = null;
+        boolean resumable = false;
+
+        if (checkpoints != null)
+        {
+            ObjectMetadata inputMetadata = getS3().getObjectMetadata(inputManifest.getBucket(), inputEntryKey);
+            inputETag = inputMetadata.getETag();
+
+            /**
+             * Skip entries completed by an earlier attempt, verifying
+             * the input MD5 it recorded against the entry's signature
+             */
+            ManifestEntry completedEntry = checkpoints.getCompleted(entry, inputETag, outputEntryKey);
+
+            if (completedEntry != null)
+            {
+                LOGGER.info("Skipping entry completed by an earlier attempt: " + entry.getFileName());
+
+                if (verifier != null)
+                {
+                    verifier.verify(entry);
+                }
+
+                return completedEntry;
+            }
+
+            boolean checkpointed = inputMetadata.getContentLength() >= getCheckpointThreshold();
+            resumable = checkpointed && isResumable(dataType, inputCompression, outputCompression);
+
+            /**
+             * Any other upload left by an earlier attempt is aborted
+             */
+            EntryCheckpoint resumeFrom = checkpoints.getResumable(entry, inputETag, outputEntryKey, resumable);
+
+            if (checkpointed)
+            {
+                checkpointer = new EntryCheckpointer(checkpoints, entry, inputETag, outputEntryKey, resumeFrom,
+                        CHECKPOINT_RECORD_HEADROOM,
+                        Environment.getInt("CHECKPOINT_INTERVAL_SECONDS", DEFAULT_CHECKPOINT_INTERVAL_SECONDS) * 1000L);
+            }
+
+            if (resumeFrom != null)
+            {
+                LOGGER.info("Resuming entry: " + entry.getFileName() + " from input offset: " +
+                        resumeFrom.getInputOffset() + " rows: " + resumeFrom.getRowCount());
+            }
+        }
 
         S3OutputStream s3Out = null;
+        S3OutputStream rejectsOut = null;
+        PipelinedOutputStream pipeline = null;
 
         try
         (
             /**
-             * Open an input stream to the incoming object in S3
-             * Pipe the input stream from S3 through an MD5 sum
-             * Read CSV data through the digest via a reader
+             * Open a parallel ranged input stream to the incoming object in S3
+             * Pipe the stored bytes or the decompressed content through an MD5 sum
+             * as the entry's digest scope requires, resumable entries are
+             * uncompressed and continue the MD5 sum saved in their checkpoint
              */
-            S3Object s3Object = getS3().getObject(inputManifest.getBucket(), inputEntryKey);
-            MD5InputStream digestIn = new MD5InputStream(s3Object.getObjectContent());
-            BufferedReader s3Reader = new BufferedReader(new InputStreamReader(digestIn), bufferSize)
+            S3InputStream s3In = new S3InputStream(getS3(), inputManifest.getBucket(), inputEntryKey,
+                    DOWNLOAD_PART_SIZE, Environment.getInt("DOWNLOAD_PARTS_IN_FLIGHT", DEFAULT_DOWNLOAD_PARTS_IN_FLIGHT),
+                    getDownloadExecutor(), resumable ? checkpointer.getInputOffset() : 0L, inputETag)
+                    .withMetrics(metrics);
+            MD5InputStream digestIn = resumable ? new MD5InputStream(s3In, checkpointer.getInputHasher()) :
+                    new MD5InputStream(contentDigest ? inputCompression.decompress(s3In) : s3In);
+            InputStream dataIn = contentDigest ? digestIn : inputCompression.decompress(digestIn)
         )
         {
-            s3Out = new S3OutputStream(s3, outputManifest.getBucket(),
-                    outputEntryKey, bufferSize).withKmsKey(outputKMSKey);
+            digestIn.withMetrics(metrics);
+
+            s3Out = new S3OutputStream(getUploadS3(), outputManifest.getBucket(),
+                    outputEntryKey, bufferSize).withKmsKey(outputKMSKey)
+                    .withUploadExecutor(getUploadExecutor(),
+                        Environment.getInt("UPLOAD_PARTS_IN_FLIGHT", DEFAULT_UPLOAD_PARTS_IN_FLIGHT))
+                    .withSizeHint(s3In.getContentLength())
+                    .withMetrics(metrics);
+            withRetries(s3Out);
+            activeUploads.add(s3Out);
+
+            if (checkpointer != null)
+            {
+                if (resumable)
+                {
+                    s3Out.withCheckpointing();
+                }
+
+                checkpointer.begin(s3Out, digestIn);
+            }
+
+            RejectWriter rejects = null;
 
-            OutputStreamWriter s3Writer = new OutputStreamWriter(s3Out);
+            if (validator != null)
+            {
+                outputEntry.setRejectsFileName(dataType.getRejectsFileName(entry.getFileName()));
+                rejectsOut = new S3OutputStream(getUploadS3(), outputManifest.getBucket(),
+                        outputManifest.getKeyForFile(outputEntry.getRejectsFileName()), REJECTS_PART_SIZE)
+                        .withKmsKey(outputKMSKey).withMetrics(metrics);
+                withRetries(rejectsOut);
+                activeUploads.add(rejectsOut);
+                rejects = new RejectWriter(rejectsOut, dataType.getInputColumns());
+            }
 
-            CSVParser parser = new CSVParser(s3Reader,
-                CSVFormat.DEFAULT.withFirstRecordAsHeader()
-                .withHeader(dataType.getInputColumns().toArray(new String [0])));
-            CSVPrinter printer = new CSVPrinter(s3Writer,
-                CSVFormat.DEFAULT.withFirstRecordAsHeader()
-                .withHeader(dataType.getOutputColumns().toArray(new String [0])));
+            OutputStream dataOut = s3Out;
+
+            if (dataType.getOutputFormat().isStreamCompressed() && outputCompression != Compression.NONE)
+            {
+                /**
+                 * Compress on another thread so compression overlaps with parsing
+                 */
+                pipeline = new PipelinedOutputStream(outputCompression.compress(s3Out), getCompressionExecutor(),
+                        COMPRESSION_BLOCK_SIZE, COMPRESSION_BLOCKS);
+                dataOut = pipeline;
+            }
 
-            printer.printRecord(dataType.getOutputColumns().toArray());
+            OutputStreamWriter s3Writer = new OutputStreamWriter(dataOut);
+            CSVPrinter printer = null;
 
-            for (CSVRecord row : parser)
+            if (dataType.getOutputFormat() == OutputFormat.CSV)
             {
-                outputBuffer.clear();
-                entry.processRow(dataType, row, outputBuffer);
-                printer.printRecord(outputBuffer.toArray());
-                outputEntry.incrementRowCount();
+                printer = new CSVPrinter(s3Writer,
+                    CSVFormat.DEFAULT.withFirstRecordAsHeader()
+                    .withHeader(dataType.getOutputColumns().toArray(new String [0])));
+
+                if (checkpointer == null || !checkpointer.isResumed())
+                {
+                    printer.printRecord(dataType.getOutputColumns().toArray());
+                }
+            }
+
+            if (dataType.getOutputFormat() == OutputFormat.PARQUET)
+            {
+                /**
+                 * Stream row groups of columnar data into the output parts
+                 */
+                BufferedReader s3Reader = new BufferedReader(new InputStreamReader(dataIn), bufferSize);
+                CSVParser parser = new CSVParser(s3Reader,
+                    CSVFormat.DEFAULT.withFirstRecordAsHeader()
+                    .withHeader(dataType.getInputColumns().toArray(new String [0])));
+
+                ParquetWriter parquetWriter = new ParquetWriter(s3Out, dataType.getOutputColumns())
+                    .withRowGroupSize(Environment.getInt("PARQUET_ROW_GROUP_MB", DEFAULT_PARQUET_ROW_GROUP_MB) * 1024L * 1024L)
+                    .withCompression(ParquetCompression.of(outputCompression));
+
+                for (CSVRecord row : parser)
+                {
+                    if (!isValid(validator, row, rejects))
+                    {
+                        continue;
+                    }
+
+                    entry.processRow(dataType, row, outputRow);
+                    parquetWriter.writeRow(outputRow);
+                }
+
+                parquetWriter.finish();
+                outputEntry.setRowCount(parquetWriter.getRowCount());
+            }
+            else if (!resumable && s3In.getContentLength() >= getChunkedTransformThreshold())
+            {
+                /**
+                 * Large files are split into blocks and transformed in parallel
+                 */
+                LOGGER.info("Using chunked transform for entry: " + entry.getFileName() +
+                        " length: " + s3In.getContentLength());
+
+                BufferedReader s3Reader = new BufferedReader(new InputStreamReader(dataIn), bufferSize);
+                outputEntry.setRowCount(getChunkedTransform().transform(entry, dataType, s3Reader, s3Writer, rejects));
+            }
+            else if (isByteProjectionEnabled())
+            {
+                /**
+                 * Project fields directly from the input bytes into the output part buffers
+                 */
+                s3Writer.flush();
+                CSVProjector projector = new CSVProjector(dataType.getProjection(), PROJECTION_BUFFER_SIZE);
+
+                if (validator != null)
+                {
+                    projector.withValidation(validator, rejects.getOutputStream());
+                }
+
+                if (resumable)
+                {
+                    /**
+                     * Cut parts at record boundaries so progress can be checkpointed,
+                     * a resumed entry starts after a record so has no header to skip
+                     */
+                    outputEntry.setRowCount(checkpointer.getRowCount() +
+                            projector.project(dataIn, dataOut, !checkpointer.isResumed(), checkpointer));
+                }
+                else
+                {
+                    outputEntry.setRowCount(projector.project(dataIn, dataOut, true));
+                }
+
+                if (rejects != null)
+                {
+                    rejects.addRejectCount(projector.getRejectCount());
+                }
+            }
+            else
+            {
+                /**
+                 * Read CSV data through the digest via a reader
+                 */
+                BufferedReader s3Reader = new BufferedReader(new InputStreamReader(dataIn), bufferSize);
+                CSVParser parser = new CSVParser(s3Reader,
+                    CSVFormat.DEFAULT.withFirstRecordAsHeader()
+                    .withHeader(dataType.getInputColumns().toArray(new String [0])));
+
+                for (CSVRecord row : parser)
+                {
+                    if (!isValid(validator, row, rejects))
+                    {
+                        continue;
+                    }
+
+                    entry.processRow(dataType, row, outputRow);
+                    printer.printRecord((Object []) outputRow);
+                    outputEntry.incrementRowCount();
+                }
             }
 
             s3Writer.flush();
-            s3Writer.close();
 
+            /**
+             * Decompressors may stop short of the end of the stored
+             * object, read the rest so the MD5 sum covers every byte
+             */
+            IOUtils.skip(digestIn, Long.MAX_VALUE);
+
+            /**
+             * Verify the entry before its upload is completed so
+             * a tampered file never reaches the processed bucket
+             */
             entry.setMd5(digestIn.getDigestBase64());
+
+            if (verifier != null)
+            {
+                verifier.verify(entry);
+            }
+
+            s3Writer.close();
+
             outputEntry.setMd5(s3Out.getDigestBase64());
-            outputManifest.getManifestEntries().add(outputEntry);
+
+            if (rejects != null)
+            {
+                rejects.close();
+                outputEntry.setRejectCount(rejects.getRejectCount());
+
+                if (rejects.getRejectCount() > 0L)
+                {
+                    LOGGER.info("Rejected: " + rejects.getRejectCount() + " rows from entry: " +
+                            entry.getFileName() + " to: " + rejectsOut.getOutputPath());
+                }
+                else
+                {
+                    outputEntry.setRejectsFileName(null);
+                }
+            }
+
+            if (checkpointer != null)
+            {
+                checkpointer.complete(outputEntry, entry.getMd5());
+            }
+
+            long rejectCount = rejects != null ? rejects.getRejectCount() : 0L;
+
+            metrics.add(Metric.ENTRIES, 1L);
+            metrics.add(Metric.OUTPUT_BYTES, s3Out.getTotalLength());
+            metrics.add(Metric.ROWS_WRITTEN, outputEntry.getRowCount());
+            metrics.add(Metric.ROWS_REJECTED, rejectCount);
+            metrics.add(Metric.ROWS_PARSED, outputEntry.getRowCount() + rejectCount);
+
+            return outputEntry;
         }
         catch (Throwable t)
         {
-            LOGGER.log("[ERROR] Aborting upload due to failure processing entry: " + entry.getFileName() +
+            LOGGER.error("Aborting upload due to failure processing entry: " + entry.getFileName() +
                     " cause: " + t.toString());
 
-            s3Out.abort();
+            if (pipeline != null)
+            {
+                pipeline.abort();
+            }
+
+            if (s3Out != null)
+            {
+                s3Out.abort();
+            }
+
+            if (rejectsOut != null)
+            {
+                rejectsOut.abort();
+            }
+
+            /**
+             * The upload is gone so a later attempt must start over
+             */
+            if (checkpointer != null)
+            {
+                checkpoints.delete(entry.getFileName());
+            }
 
             throw new IngestException("Failed to process manifest entry: "
                     + entry.getFileName(), t);
         }
+        finally
+        {
+            if (s3Out != null)
+            {
+                activeUploads.remove(s3Out);
+            }
+
+            if (rejectsOut != null)
+            {
+                activeUploads.remove(rejectsOut);
+            }
+        }
+    }
+
+    /**
+     * Validates a row, writing it to the rejects if it fails
+     * @param validator the row validator or null if the data type is not validated
+     * @param row the row
+     * @param rejects the rejects writer
+     * @return true if the row is valid
+     * @throws IOException thrown on failure to write a reject
+     */
+    private static boolean isValid(RowValidator validator, CSVRecord row, RejectWriter rejects) throws IOException
+    {
+        if (validator == null)
+        {
+            return true;
+        }
+
+        int failure = validator.validate(row);
+
+        if (failure == RowValidator.VALID)
+        {
+            return true;
+        }
+
+        rejects.reject(row, validator.getReason(failure));
+        return false;
     }
 
     /**
@@ -323,9 +1077,12 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
     private Manifest loadManifest(String bucket, String key)
     {
         String manifestString = loadS3Text(bucket, key);
-        LOGGER.log("Loaded manifest: " + manifestString);
         Manifest manifest = Manifest.fromJSON(manifestString);
 
+        LOGGER.info(() -> "Loaded manifest: s3://" + bucket + "/" + key + " entries: " +
+                manifest.getManifestEntries().size() + " length: " + manifestString.length());
+        LOGGER.debug(() -> "Manifest content: " + Log.summarize(manifestString));
+
         /**
          * Inject the bucket and key into the manifest
          */
@@ -336,21 +1093,35 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
     }
 
     /**
-     * Lazily load configuration if not already loaded
+     * Fetches the input configuration from the cache which
+     * revalidates it with S3 once its time to live expires
      * @return the loaded input configuration
      */
     private InputConfig getConfiguration()
+    {
+        return getConfigCache().get(getS3());
+    }
+
+    /**
+     * Lazily create the input configuration cache
+     * @return the configuration cache
+     */
+    private static synchronized ConfigCache<InputConfig> getConfigCache()
     {
         if (inputConfiguration != null)
         {
             return inputConfiguration;
         }
 
-        String configString = loadS3Text(System.getenv("CONFIG_BUCKET"), "config/input_config.json");
+        String configBucket = Environment.get("CONFIG_BUCKET");
 
-        LOGGER.log("Loaded configuration: " + configString);
+        if (StringUtils.isBlank(configBucket))
+        {
+            throw new IngestException("Missing environment variable: CONFIG_BUCKET");
+        }
 
-        inputConfiguration = InputConfig.fromJSON(configString);
+        inputConfiguration = new ConfigCache<>(configBucket, "config/input_config.json",
+                Environment.getInt("CONFIG_TTL_SECONDS", DEFAULT_CONFIG_TTL_SECONDS), InputConfig::fromJSON);
 
         return inputConfiguration;
     }
@@ -371,54 +1142,283 @@ public class InputLambda implements RequestHandler<SQSEvent, Void>
         }
         catch (Throwable t)
         {
-            LOGGER.log("[ERROR] Failed to fetch S3 content: " + t.toString());
+            LOGGER.error("Failed to fetch S3 content: " + t.toString());
             throw new IngestException("Failed to fetch S3 content", t);
         }
     }
 
     /**
-     * Lazily create an S3 client if required
+     * Fetches the S3 client of this handler, the static client unless one was provided
      * @return an S3 client
      */
     private AmazonS3 getS3()
     {
-        if (s3 != null)
+        return s3 != null ? s3 : getDefaultS3();
+    }
+
+    /**
+     * Lazily create the static S3 client if required, synchronized as
+     * messages in a batch are processed concurrently
+     * @return an S3 client
+     */
+    private static synchronized AmazonS3 getDefaultS3()
+    {
+        if (defaultS3 != null)
         {
-            return s3;
+            return defaultS3;
         }
 
-        s3 = AmazonS3ClientBuilder.standard().build();
+        defaultS3 = AmazonS3ClientBuilder.standard().build();
 
-        return s3;
+        return defaultS3;
     }
 
-    private PublicKey loadPublicKey(String publicKeyString)
+    /**
+     * Fetches the S3 client for uploads, the static upload client unless one was provided
+     * @return an S3 client
+     */
+    private AmazonS3 getUploadS3()
     {
-        try
+        return s3 != null ? s3 : getDefaultUploadS3();
+    }
+
+    /**
+     * Lazily create the static upload S3 client if required, with SDK retries
+     * disabled so throttling reaches the upload retry policy and concurrency limit
+     * rather than being retried underneath them
+     * @return an S3 client
+     */
+    private static synchronized AmazonS3 getDefaultUploadS3()
+    {
+        if (defaultUploadS3 != null)
         {
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            X509EncodedKeySpec keySpecX509 = new X509EncodedKeySpec(Base64.decodeBase64(publicKeyString));
-            return kf.generatePublic(keySpecX509);
+            return defaultUploadS3;
         }
-        catch (Throwable t)
+
+        defaultUploadS3 = AmazonS3ClientBuilder.standard()
+            .withClientConfiguration(new ClientConfiguration()
+                .withRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY)
+                .withMaxErrorRetry(0))
+            .build();
+
+        return defaultUploadS3;
+    }
+
+    /**
+     * Lazily create the shared part upload executor using daemon threads
+     * so idle threads never hold up a container
+     * @return the upload executor
+     */
+    private static synchronized ExecutorService getUploadExecutor()
+    {
+        if (uploadExecutor != null)
         {
-            throw new IngestException("Failed to load public key", t);
+            return uploadExecutor;
         }
+
+        uploadExecutor = Executors.newFixedThreadPool(
+            Environment.getInt("UPLOAD_CONCURRENCY", DEFAULT_UPLOAD_CONCURRENCY), runnable ->
+            {
+                Thread thread = new Thread(runnable, "s3-part-upload");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        return uploadExecutor;
     }
 
-    private PrivateKey loadPrivateKey(String privateKeyString)
+    /**
+     * Lazily create the limit on upload calls in flight, starting at the upload concurrency
+     * @return the upload limit
+     */
+    private static synchronized ConcurrencyLimit getUploadLimit()
     {
-        try
+        if (uploadLimit != null)
         {
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            PKCS8EncodedKeySpec keySpecPKCS8 = new PKCS8EncodedKeySpec(Base64.decodeBase64(privateKeyString));
-            return kf.generatePrivate(keySpecPKCS8);
+            return uploadLimit;
         }
-        catch (Throwable t)
+
+        uploadLimit = new ConcurrencyLimit(Environment.getInt("UPLOAD_CONCURRENCY", DEFAULT_UPLOAD_CONCURRENCY));
+        return uploadLimit;
+    }
+
+    /**
+     * Retries failed upload calls on a stream within the shared upload limit
+     * @param out the output stream
+     */
+    private static void withRetries(S3OutputStream out)
+    {
+        out.withRetryPolicy(Environment.getInt("UPLOAD_MAX_ATTEMPTS", DEFAULT_UPLOAD_MAX_ATTEMPTS),
+                S3OutputStream.DEFAULT_BASE_DELAY_MILLIS, S3OutputStream.DEFAULT_MAX_DELAY_MILLIS)
+            .withConcurrencyLimit(getUploadLimit());
+    }
+
+    /**
+     * Lazily create the executor that processes the records of an SQS batch concurrently
+     * @return the message executor
+     */
+    private static synchronized ExecutorService getMessageExecutor()
+    {
+        if (messageExecutor != null)
         {
-            throw new IngestException("Failed to load public key", t);
+            return messageExecutor;
         }
+
+        messageExecutor = Executors.newFixedThreadPool(
+            Environment.getInt("MESSAGE_CONCURRENCY", DEFAULT_MESSAGE_CONCURRENCY), runnable ->
+            {
+                Thread thread = new Thread(runnable, "sqs-message");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        return messageExecutor;
     }
 
+    /**
+     * Lazily create the executor that processes manifest entries across all manifests
+     * @return the entry executor
+     */
+    private static synchronized ExecutorService getEntryExecutor()
+    {
+        if (entryExecutor != null)
+        {
+            return entryExecutor;
+        }
 
+        entryExecutor = Executors.newFixedThreadPool(
+            Environment.getInt("ENTRY_CONCURRENCY", DEFAULT_ENTRY_CONCURRENCY), runnable ->
+            {
+                Thread thread = new Thread(runnable, "manifest-entry");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        return entryExecutor;
+    }
+
+    /**
+     * Lazily create the shared ranged download executor using daemon threads
+     * @return the download executor
+     */
+    private static synchronized ExecutorService getDownloadExecutor()
+    {
+        if (downloadExecutor != null)
+        {
+            return downloadExecutor;
+        }
+
+        downloadExecutor = Executors.newFixedThreadPool(
+            Environment.getInt("DOWNLOAD_CONCURRENCY", DEFAULT_DOWNLOAD_CONCURRENCY), runnable ->
+            {
+                Thread thread = new Thread(runnable, "s3-part-download");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        return downloadExecutor;
+    }
+
+    /**
+     * Lazily create the output compression executor, each compressed
+     * entry holds a thread while it is processed so the pool is unbounded
+     * and limited in practice by the entry concurrency
+     * @return the compression executor
+     */
+    private static synchronized ExecutorService getCompressionExecutor()
+    {
+        if (compressionExecutor != null)
+        {
+            return compressionExecutor;
+        }
+
+        compressionExecutor = Executors.newCachedThreadPool(runnable ->
+            {
+                Thread thread = new Thread(runnable, "output-compression");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        return compressionExecutor;
+    }
+
+    /**
+     * Lazily create the chunked transform backed by a fork join
+     * pool with a thread per available core
+     * @return the chunked transform
+     */
+    private static synchronized ChunkedTransform getChunkedTransform()
+    {
+        if (chunkedTransform != null)
+        {
+            return chunkedTransform;
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        chunkedTransform = new ChunkedTransform(new ForkJoinPool(parallelism),
+                TRANSFORM_BLOCK_SIZE, parallelism * 2);
+
+        return chunkedTransform;
+    }
+
+    /**
+     * Input objects at least this large use the chunked transform,
+     * which is disabled unless CHUNKED_TRANSFORM_MB is set
+     * @return the chunked transform threshold in bytes
+     */
+    private static long getChunkedTransformThreshold()
+    {
+        return Environment.getInt("CHUNKED_TRANSFORM_MB", Integer.MAX_VALUE) * 1024L * 1024L;
+    }
+
+    /**
+     * Checkpointing is enabled when CHECKPOINT_MB is set
+     * @return true if entries are checkpointed
+     */
+    private static boolean isCheckpointingEnabled()
+    {
+        return Environment.getInt("CHECKPOINT_MB", Integer.MAX_VALUE) != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Input objects at least this large are checkpointed
+     * @return the checkpoint threshold in bytes
+     */
+    private static long getCheckpointThreshold()
+    {
+        return Environment.getInt("CHECKPOINT_MB", Integer.MAX_VALUE) * 1024L * 1024L;
+    }
+
+    /**
+     * Checkpointed entries can resume part way when uncompressed CSV is
+     * projected to uncompressed CSV, as the input can then be read from any
+     * record and the output parts end at record boundaries. Other entries
+     * hold decompressor, compressor or row group state that cannot be saved
+     * so start over, though they are still skipped once complete, as do
+     * validated entries whose rejects file is not checkpointed.
+     * @param dataType the data type
+     * @param inputCompression the compression of the input
+     * @param outputCompression the compression of the output
+     * @return true if the entry can resume from a checkpoint
+     */
+    private static boolean isResumable(DataType dataType, Compression inputCompression, Compression outputCompression)
+    {
+        return dataType.getOutputFormat() == OutputFormat.CSV &&
+                inputCompression == Compression.NONE &&
+                outputCompression == Compression.NONE &&
+                dataType.getRowValidator() == null &&
+                isByteProjectionEnabled();
+    }
+
+    /**
+     * The byte level projection engine is used when BYTE_PROJECTION is true
+     * and text is decoded as UTF-8, it copies bytes without decoding them
+     * so it only matches the reader based path for UTF-8 data
+     * @return true if byte level projection should be used
+     */
+    private static boolean isByteProjectionEnabled()
+    {
+        return Boolean.parseBoolean(Environment.get("BYTE_PROJECTION")) &&
+                StandardCharsets.UTF_8.equals(Charset.defaultCharset());
+    }
 }
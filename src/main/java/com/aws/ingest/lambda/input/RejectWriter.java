@@ -0,0 +1,155 @@
+package com.aws.ingest.lambda.input;
+
+import com.aws.ingest.io.S3OutputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes rows that fail validation to a rejects CSV file alongside the
+ * processed file, with the input columns and the reason each row was
+ * rejected. The header is written with the first reject so entries
+ * without rejects never start an upload or create a file.
+ */
+class RejectWriter
+{
+    private static final String REASON_COLUMN = "reject_reason";
+
+    private final S3OutputStream s3Out;
+    private final List<String> inputColumns;
+    private final Writer writer;
+    private CSVPrinter printer = null;
+    private long rejectCount = 0L;
+
+    /**
+     * Writes raw rejected records from the byte projector after the header
+     */
+    private final OutputStream rawOut = new OutputStream()
+    {
+        @Override
+        public void write(int b) throws IOException
+        {
+            start();
+            s3Out.write(b);
+        }
+
+        @Override
+        public void write(byte [] b, int off, int len) throws IOException
+        {
+            start();
+            s3Out.write(b, off, len);
+        }
+    };
+
+    /**
+     * Creates a reject writer
+     * @param s3Out the rejects upload
+     * @param inputColumns the data type's input columns
+     */
+    RejectWriter(S3OutputStream s3Out, List<String> inputColumns)
+    {
+        this.s3Out = s3Out;
+        this.inputColumns = inputColumns;
+        this.writer = new OutputStreamWriter(s3Out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the header before the first reject
+     * @throws IOException thrown on failure to write
+     */
+    private void start() throws IOException
+    {
+        if (printer != null)
+        {
+            return;
+        }
+
+        printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+
+        for (String column: inputColumns)
+        {
+            printer.print(column);
+        }
+
+        printer.print(REASON_COLUMN);
+        printer.println();
+        writer.flush();
+    }
+
+    /**
+     * Writes a rejected row
+     * @param record the row
+     * @param reason the reason it was rejected
+     * @throws IOException thrown on failure to write
+     */
+    void reject(CSVRecord record, String reason) throws IOException
+    {
+        start();
+
+        for (String value: record)
+        {
+            printer.print(value);
+        }
+
+        printer.print(reason);
+        printer.println();
+        rejectCount++;
+    }
+
+    /**
+     * Writes rejected rows already formatted as CSV
+     * @param rows the rows
+     * @param count the number of rows
+     * @throws IOException thrown on failure to write
+     */
+    void write(String rows, long count) throws IOException
+    {
+        if (count == 0L)
+        {
+            return;
+        }
+
+        start();
+        writer.write(rows);
+        rejectCount += count;
+    }
+
+    /**
+     * The output for raw rejected records, the caller adds their count
+     * @return the output
+     */
+    OutputStream getOutputStream()
+    {
+        return rawOut;
+    }
+
+    void addRejectCount(long count)
+    {
+        rejectCount += count;
+    }
+
+    long getRejectCount()
+    {
+        return rejectCount;
+    }
+
+    /**
+     * Completes the rejects upload if any row was rejected
+     * @throws IOException thrown on failure to complete the upload
+     */
+    void close() throws IOException
+    {
+        if (printer != null)
+        {
+            writer.flush();
+            s3Out.close();
+        }
+    }
+}
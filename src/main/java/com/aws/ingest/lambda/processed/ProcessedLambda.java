@@ -1,30 +1,58 @@
 package com.aws.ingest.lambda.processed;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
-import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.event.S3EventNotification;
 import com.amazonaws.services.s3.model.S3Object;
+import com.aws.ingest.config.Environment;
 import com.aws.ingest.config.ProcessedConfig;
+import com.aws.ingest.delivery.DeliveryOutput;
+import com.aws.ingest.delivery.DeliveryTarget;
+import com.aws.ingest.delivery.FileSystemDeliveryTarget;
+import com.aws.ingest.delivery.SMBDeliveryTarget;
 import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.io.MD5InputStream;
+import com.aws.ingest.io.S3InputStream;
+import com.aws.ingest.lambda.SQSBatchProcessor;
+import com.aws.ingest.lambda.SQSBatchResponse;
+import com.aws.ingest.logging.Log;
+import com.aws.ingest.manifest.DigestScope;
 import com.aws.ingest.manifest.Manifest;
+import com.aws.ingest.manifest.ManifestEntry;
+import com.aws.ingest.security.KeyCache;
+import com.aws.ingest.security.SignatureVerifier;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Lambda function that copies transformed files to a CIFS share
+ * streaming each file from S3 and verifying its signature in flight
  * See: https://github.com/AgNO3/jcifs-ng
  */
 @SuppressWarnings("unused")
-public class ProcessedLambda implements RequestHandler<SQSEvent, Void>
+public class ProcessedLambda implements RequestHandler<SQSEvent, SQSBatchResponse>
 {
-    private static LambdaLogger LOGGER = null;
+    private static Log LOGGER = null;
 
     /**
      * Static lazily loaded processed configuration
@@ -34,44 +62,87 @@ public class ProcessedLambda implements RequestHandler<SQSEvent, Void>
     /**
      * Static reusable S3 client
      */
-    private static AmazonS3 s3 = null;
+    private static AmazonS3 defaultS3 = null;
 
     /**
-     * Input event handler function that receives the SQS event
-     * @param event the event
-     * @param context the Lambda context
-     * @return returns null
+     * The S3 client provided to this handler or null to use the static client
      */
-    @Override
-    public Void handleRequest(SQSEvent event, Context context)
-    {
-        LOGGER = context.getLogger();
+    private AmazonS3 s3 = null;
 
-        for (SQSMessage msg : event.getRecords())
-        {
-            LOGGER.log("Received request message: " + msg.getBody());
+    /**
+     * The default number of SQS records to process concurrently
+     */
+    private static final int DEFAULT_MESSAGE_CONCURRENCY = 4;
 
-            processEvent(msg.getBody(), context);
-        }
+    /**
+     * Static lazily created executor for processing batched SQS records
+     */
+    private static ExecutorService messageExecutor = null;
 
-        LOGGER.log("Processing is complete");
-        return null;
+    /**
+     * Static lazily created delivery target
+     */
+    private static DeliveryTarget deliveryTarget = null;
+
+    /**
+     * The size of each ranged GET when downloading processed objects
+     */
+    private static final int DOWNLOAD_PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default number of threads downloading parts across all entries
+     */
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 8;
+
+    /**
+     * The default number of parts each entry may prefetch
+     */
+    private static final int DEFAULT_DOWNLOAD_PARTS_IN_FLIGHT = 4;
+
+    /**
+     * Static lazily created executor for parallel ranged downloads
+     */
+    private static ExecutorService downloadExecutor = null;
+
+    /**
+     * The size of each write to the delivery target
+     */
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Creates the handler, invoked by the Lambda runtime
+     */
+    public ProcessedLambda()
+    {
     }
 
     /**
-     * Processes an SQS message string which should
-     * contain a serialised S3EventNotification
-     * @param message the message to process
+     * Creates a handler that uses the provided S3 client,
+     * used to run the pipeline locally against an S3 stand in
+     * @param s3Client the S3 client to use
+     */
+    public ProcessedLambda(AmazonS3 s3Client)
+    {
+        this.s3 = s3Client;
+    }
+
+    /**
+     * Input event handler function that receives a batch of SQS messages,
+     * processing them concurrently and reporting the messages that failed
+     * @param event the event
      * @param context the Lambda context
+     * @return the failed messages to redeliver
      */
-    private void processEvent(String message, Context context)
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context)
     {
-        S3EventNotification s3EventNotification = S3EventNotification.parseJson(message);
+        LOGGER = Log.getLog(context.getLogger());
 
-        for (S3EventNotification.S3EventNotificationRecord record: s3EventNotification.getRecords())
-        {
-            processRecord(record, context);
-        }
+        SQSBatchResponse response = new SQSBatchProcessor(getMessageExecutor())
+                .process(event, record -> processRecord(record, context), LOGGER);
+
+        LOGGER.info("Processing is complete");
+        return response;
     }
 
     /**
@@ -90,15 +161,15 @@ public class ProcessedLambda implements RequestHandler<SQSEvent, Void>
          */
         if (!key.matches("^.*manifest.json$"))
         {
-            LOGGER.log("Skipping non-manifest object: " + key);
+            LOGGER.info("Skipping non-manifest object: " + key);
             return;
         }
 
-        LOGGER.log("Found manifest object to process: " + key);
+        LOGGER.info("Found manifest object to process: " + key);
 
         Manifest manifest = loadManifest(bucket, key);
 
-        LOGGER.log("Processing input data from source system: " + manifest.getSourceSystem() +
+        LOGGER.info("Processing input data from source system: " + manifest.getSourceSystem() +
                 " created: " + manifest.getCreatedDate());
 
         /**
@@ -113,23 +184,264 @@ public class ProcessedLambda implements RequestHandler<SQSEvent, Void>
     }
 
     /**
-     * Validates the manifest
+     * Validates the manifest, entry file names become paths on
+     * the share so they must be relative and stay within it
      * @param manifest the manifest to validate
      */
     private void validateManifest(Manifest manifest)
     {
-        // TODO implement validation
-        LOGGER.log("Validation is not yet implemented");
+        Set<String> fileNames = new HashSet<>();
+
+        for (ManifestEntry entry: manifest.getManifestEntries())
+        {
+            String fileName = entry.getFileName();
+
+            if (StringUtils.isBlank(fileName))
+            {
+                throw new IngestException("Manifest entry is missing a file name");
+            }
+
+            if (fileName.startsWith("/") || fileName.contains("\\") ||
+                ("/" + fileName + "/").contains("/../") || fileName.endsWith(DeliveryTarget.PARTIAL_SUFFIX))
+            {
+                throw new IngestException("Invalid file name in manifest entry: " + fileName);
+            }
+
+            if (!fileNames.add(fileName))
+            {
+                throw new IngestException("Duplicate file name in manifest: " + fileName);
+            }
+
+            /**
+             * Files are delivered as stored so their MD5 sums must cover the stored bytes
+             */
+            if (entry.getEffectiveDigestScope() != DigestScope.STORED)
+            {
+                throw new IngestException("Processed manifest entries must use a stored digest scope: " + fileName);
+            }
+        }
+
+        LOGGER.info("Validated manifest with: " + fileNames.size() + " entries");
     }
 
     /**
-     * Processed the manifest transforming each file
+     * Processes the manifest delivering each file concurrently, the manifest
+     * itself is delivered last once every file has been verified and delivered
      * @param manifest the manifest to process
      */
     private void processManifest(Manifest manifest)
     {
-        // TODO implement processing
-        LOGGER.log("Processing is not yet implemented");
+        ProcessedConfig config = getConfiguration();
+        DeliveryTarget target = getDeliveryTarget(config);
+
+        SignatureVerifier verifier = null;
+
+        if (!"None".equals(config.getPublicKey()))
+        {
+            verifier = KeyCache.getVerifier(config.getPublicKey());
+        }
+        else
+        {
+            LOGGER.info("Skipping signature verification");
+        }
+
+        deliverEntries(config, manifest, target, verifier);
+
+        deliverManifest(manifest, target);
+
+        LOGGER.info("Manifest delivery is complete");
+    }
+
+    /**
+     * Delivers the manifest entries concurrently using a bounded worker pool,
+     * the first failure cancels the remaining entries and aborts those in flight
+     * @param config the processed config
+     * @param manifest the manifest
+     * @param target the delivery target
+     * @param verifier the signature verifier or null to skip verification
+     */
+    private void deliverEntries(ProcessedConfig config,
+                                Manifest manifest,
+                                DeliveryTarget target,
+                                SignatureVerifier verifier)
+    {
+        List<ManifestEntry> entries = manifest.getManifestEntries();
+
+        if (entries.isEmpty())
+        {
+            return;
+        }
+
+        int concurrency = Math.min(entries.size(), config.getDeliveryConcurrency());
+
+        LOGGER.info("Delivering: " + entries.size() + " entries with concurrency: " + concurrency);
+
+        Set<DeliveryOutput> activeOutputs = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        CompletionService<ManifestEntry> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<ManifestEntry>> futures = new ArrayList<>();
+
+        try
+        {
+            for (ManifestEntry entry: entries)
+            {
+                futures.add(completionService.submit(() ->
+                        deliverEntry(manifest, entry, target, verifier, activeOutputs)));
+            }
+
+            for (int i = 0; i < futures.size(); i++)
+            {
+                completionService.take().get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            abortAll(executor, activeOutputs);
+
+            if (e.getCause() instanceof IngestException)
+            {
+                throw (IngestException) e.getCause();
+            }
+
+            throw new IngestException("Failed to deliver manifest entries", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            abortAll(executor, activeOutputs);
+            Thread.currentThread().interrupt();
+            throw new IngestException("Interrupted delivering manifest entries", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cancels queued entries and aborts all in flight deliveries so
+     * no partial files are left at the delivery target
+     * @param executor the entry executor
+     * @param activeOutputs the deliveries currently in flight
+     */
+    private void abortAll(ExecutorService executor, Set<DeliveryOutput> activeOutputs)
+    {
+        executor.shutdownNow();
+
+        for (DeliveryOutput output: activeOutputs)
+        {
+            /**
+             * Removing the output claims it, so a worker committing or
+             * aborting the same output concurrently leaves it alone
+             */
+            if (activeOutputs.remove(output))
+            {
+                output.abort();
+            }
+        }
+    }
+
+    /**
+     * Streams an entry from S3 to the delivery target through an MD5 sum,
+     * the signature is verified once the last byte is read and the file
+     * is only moved into place if it verifies
+     * @param manifest the manifest
+     * @param entry the entry to deliver
+     * @param target the delivery target
+     * @param verifier the signature verifier or null to skip verification
+     * @param activeOutputs the deliveries in flight, which this delivery is added to while open
+     * @return the delivered entry
+     */
+    private ManifestEntry deliverEntry(Manifest manifest,
+                                       ManifestEntry entry,
+                                       DeliveryTarget target,
+                                       SignatureVerifier verifier,
+                                       Set<DeliveryOutput> activeOutputs)
+    {
+        String entryKey = manifest.getKeyForEntry(entry);
+
+        LOGGER.info(() -> "Delivering entry from: s3://" + manifest.getBucket() + "/" + entryKey +
+                " to: " + target.getLocation(entryKey));
+
+        DeliveryOutput output = null;
+        boolean committing = false;
+
+        try
+        (
+            /**
+             * Prefetch parts with parallel ranged GETs so downloads
+             * overlap with writes to the delivery target
+             */
+            S3InputStream s3In = new S3InputStream(getS3(), manifest.getBucket(), entryKey,
+                    DOWNLOAD_PART_SIZE, Environment.getInt("DOWNLOAD_PARTS_IN_FLIGHT", DEFAULT_DOWNLOAD_PARTS_IN_FLIGHT),
+                    getDownloadExecutor());
+            MD5InputStream digestIn = new MD5InputStream(s3In)
+        )
+        {
+            output = target.open(entryKey);
+            activeOutputs.add(output);
+
+            long length = IOUtils.copyLarge(digestIn, output.getOutputStream(), new byte[COPY_BUFFER_SIZE]);
+
+            entry.setMd5(digestIn.getDigestBase64());
+
+            if (verifier != null)
+            {
+                verifier.verify(entry);
+            }
+
+            if (!activeOutputs.remove(output))
+            {
+                throw new IngestException("Delivery was aborted for entry: " + entry.getFileName());
+            }
+
+            committing = true;
+            output.commit();
+
+            LOGGER.info("Delivered entry: " + entry.getFileName() + " length: " + length);
+
+            return entry;
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("Aborting delivery due to failure delivering entry: " + entry.getFileName() +
+                    " cause: " + t.toString());
+
+            if (output != null && (committing || activeOutputs.remove(output)))
+            {
+                output.abort();
+            }
+
+            throw new IngestException("Failed to deliver manifest entry: " + entry.getFileName(), t);
+        }
+    }
+
+    /**
+     * Delivers the manifest itself, signalling the delivery is complete
+     * @param manifest the manifest
+     * @param target the delivery target
+     */
+    private void deliverManifest(Manifest manifest, DeliveryTarget target)
+    {
+        DeliveryOutput output = null;
+
+        try
+        {
+            output = target.open(manifest.getKey());
+            OutputStream out = output.getOutputStream();
+            out.write(Manifest.toJSON(manifest).getBytes(StandardCharsets.UTF_8));
+            output.commit();
+
+            LOGGER.info("Delivered manifest to: " + target.getLocation(manifest.getKey()));
+        }
+        catch (Throwable t)
+        {
+            if (output != null)
+            {
+                output.abort();
+            }
+
+            throw new IngestException("Failed to deliver manifest: " + manifest.getKey(), t);
+        }
     }
 
     /**
@@ -141,8 +453,19 @@ public class ProcessedLambda implements RequestHandler<SQSEvent, Void>
     private Manifest loadManifest(String bucket, String key)
     {
         String manifestString = loadS3Text(bucket, key);
-        LOGGER.log("Loaded manifest: " + manifestString);
-        return Manifest.fromJSON(manifestString);
+        Manifest manifest = Manifest.fromJSON(manifestString);
+
+        LOGGER.info(() -> "Loaded manifest: s3://" + bucket + "/" + key + " entries: " +
+                manifest.getManifestEntries().size() + " length: " + manifestString.length());
+        LOGGER.debug(() -> "Manifest content: " + Log.summarize(manifestString));
+
+        /**
+         * Inject the bucket and key into the manifest
+         */
+        manifest.setBucket(bucket);
+        manifest.setKey(key);
+
+        return manifest;
     }
 
     /**
@@ -161,40 +484,119 @@ public class ProcessedLambda implements RequestHandler<SQSEvent, Void>
         }
         catch (IOException io)
         {
-            LOGGER.log("Failed to fetch S3 content: " + io.toString());
+            LOGGER.error("Failed to fetch S3 content: " + io.toString());
             throw new IngestException("Failed to fetch S3 content", io);
         }
     }
 
     /**
-     * Loads configuration if not already loaded
+     * Loads configuration from the environment if not already loaded
+     * @return the processed configuration
      */
-    private ProcessedConfig loadConfiguration()
+    private static synchronized ProcessedConfig getConfiguration()
     {
         if (processedConfiguration != null)
         {
             return processedConfiguration;
         }
 
-        processedConfiguration = new ProcessedConfig();
+        processedConfiguration = ProcessedConfig.fromEnvironment();
         return processedConfiguration;
     }
 
     /**
-     * Lazily create an S3 client if required
+     * Lazily create the delivery target, an SMB share for smb:// URLs
+     * otherwise a directory such as a mounted file system
+     * @param config the processed config
+     * @return the delivery target
+     */
+    private static synchronized DeliveryTarget getDeliveryTarget(ProcessedConfig config)
+    {
+        if (deliveryTarget != null)
+        {
+            return deliveryTarget;
+        }
+
+        if (config.isSMBDelivery())
+        {
+            deliveryTarget = new SMBDeliveryTarget(config.getDeliveryUrl(), config.getSmbDomain(),
+                    config.getSmbUsername(), config.getSmbPassword());
+        }
+        else
+        {
+            deliveryTarget = new FileSystemDeliveryTarget(Paths.get(config.getDeliveryUrl()));
+        }
+
+        return deliveryTarget;
+    }
+
+    /**
+     * Fetches the S3 client of this handler, the static client unless one was provided
      * @return an S3 client
      */
     private AmazonS3 getS3()
     {
-        if (s3 != null)
+        return s3 != null ? s3 : getDefaultS3();
+    }
+
+    /**
+     * Lazily create the static S3 client if required, synchronized as
+     * messages in a batch are processed concurrently
+     * @return an S3 client
+     */
+    private static synchronized AmazonS3 getDefaultS3()
+    {
+        if (defaultS3 != null)
+        {
+            return defaultS3;
+        }
+
+        defaultS3 = AmazonS3ClientBuilder.standard().build();
+
+        return defaultS3;
+    }
+
+    /**
+     * Lazily create the executor that processes the records of an SQS batch concurrently
+     * @return the message executor
+     */
+    private static synchronized ExecutorService getMessageExecutor()
+    {
+        if (messageExecutor != null)
         {
-            return s3;
+            return messageExecutor;
         }
 
-        s3 = AmazonS3ClientBuilder.standard().build();
+        messageExecutor = Executors.newFixedThreadPool(
+            Environment.getInt("MESSAGE_CONCURRENCY", DEFAULT_MESSAGE_CONCURRENCY), runnable ->
+            {
+                Thread thread = new Thread(runnable, "sqs-message");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-        return s3;
+        return messageExecutor;
     }
 
+    /**
+     * Lazily create the shared ranged download executor using daemon threads
+     * @return the download executor
+     */
+    private static synchronized ExecutorService getDownloadExecutor()
+    {
+        if (downloadExecutor != null)
+        {
+            return downloadExecutor;
+        }
+
+        downloadExecutor = Executors.newFixedThreadPool(
+            Environment.getInt("DOWNLOAD_CONCURRENCY", DEFAULT_DOWNLOAD_CONCURRENCY), runnable ->
+            {
+                Thread thread = new Thread(runnable, "s3-part-download");
+                thread.setDaemon(true);
+                return thread;
+            });
 
+        return downloadExecutor;
+    }
 }
@@ -0,0 +1,287 @@
+package com.aws.ingest.logging;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.aws.ingest.config.Environment;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.util.function.Supplier;
+
+/**
+ * Level gated logging used across the pipeline, writing to log4j in library
+ * classes and to the Lambda logger in the handlers. Messages that are costly
+ * to build are passed as suppliers so nothing is built at disabled levels.
+ *
+ * The level is read from LOG_LEVEL, INFO by default. An explicit
+ * level is applied to the log4j root logger as well.
+ */
+public abstract class Log
+{
+    public enum Level
+    {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR,
+        OFF
+    }
+
+    /**
+     * The default maximum length of a logged payload summary
+     */
+    public static final int SUMMARY_LENGTH = 1024;
+
+    private static volatile Level level = null;
+
+    /**
+     * Creates a log writing to log4j
+     * @param type the class logging
+     * @return the log
+     */
+    public static Log getLog(Class<?> type)
+    {
+        return new Log4jLog(Logger.getLogger(type));
+    }
+
+    /**
+     * Creates a log writing to the Lambda logger, warnings
+     * and errors are prefixed with their level
+     * @param logger the Lambda logger
+     * @return the log
+     */
+    public static Log getLog(LambdaLogger logger)
+    {
+        return new LambdaLog(logger);
+    }
+
+    /**
+     * Fetches the level messages are logged at
+     * @return the level
+     */
+    public static Level getLevel()
+    {
+        Level current = level;
+
+        if (current == null)
+        {
+            String name = Environment.get("LOG_LEVEL");
+
+            if (StringUtils.isBlank(name))
+            {
+                current = Level.INFO;
+                level = current;
+            }
+            else
+            {
+                try
+                {
+                    current = Level.valueOf(name.trim().toUpperCase());
+                }
+                catch (IllegalArgumentException e)
+                {
+                    current = Level.INFO;
+                }
+
+                setLevel(current);
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Overrides the level messages are logged at
+     * @param newLevel the level
+     */
+    public static void setLevel(Level newLevel)
+    {
+        level = newLevel;
+        Logger.getRootLogger().setLevel(Log4jLog.toLog4j(newLevel));
+    }
+
+    /**
+     * Truncates a large payload such as a manifest or configuration
+     * @param text the payload
+     * @return the payload or its start and total length if longer than SUMMARY_LENGTH
+     */
+    public static String summarize(String text)
+    {
+        return summarize(text, SUMMARY_LENGTH);
+    }
+
+    /**
+     * Truncates a large payload
+     * @param text the payload
+     * @param maxLength the maximum number of characters to keep
+     * @return the payload or its start and total length if longer than maxLength
+     */
+    public static String summarize(String text, int maxLength)
+    {
+        if (text == null || text.length() <= maxLength)
+        {
+            return text;
+        }
+
+        return text.substring(0, maxLength) + "... (" + text.length() + " characters)";
+    }
+
+    public boolean isEnabled(Level messageLevel)
+    {
+        return messageLevel.compareTo(getLevel()) >= 0 && messageLevel != Level.OFF;
+    }
+
+    public boolean isDebugEnabled()
+    {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void debug(String message)
+    {
+        log(Level.DEBUG, message, null);
+    }
+
+    public void debug(Supplier<String> message)
+    {
+        log(Level.DEBUG, message);
+    }
+
+    public void info(String message)
+    {
+        log(Level.INFO, message, null);
+    }
+
+    public void info(Supplier<String> message)
+    {
+        log(Level.INFO, message);
+    }
+
+    public void warn(String message)
+    {
+        log(Level.WARN, message, null);
+    }
+
+    public void warn(Supplier<String> message)
+    {
+        log(Level.WARN, message);
+    }
+
+    public void error(String message)
+    {
+        log(Level.ERROR, message, null);
+    }
+
+    public void error(String message, Throwable t)
+    {
+        log(Level.ERROR, message, t);
+    }
+
+    public void error(Supplier<String> message)
+    {
+        log(Level.ERROR, message);
+    }
+
+    /**
+     * Writes a structured record such as a metrics record whatever the level,
+     * unprefixed so it remains a single line of JSON
+     * @param record the record
+     */
+    public abstract void write(String record);
+
+    /**
+     * Writes an enabled message
+     * @param messageLevel the level
+     * @param message the message
+     * @param t the cause or null
+     */
+    protected abstract void write(Level messageLevel, String message, Throwable t);
+
+    private void log(Level messageLevel, String message, Throwable t)
+    {
+        if (isEnabled(messageLevel))
+        {
+            write(messageLevel, message, t);
+        }
+    }
+
+    private void log(Level messageLevel, Supplier<String> message)
+    {
+        if (isEnabled(messageLevel))
+        {
+            write(messageLevel, message.get(), null);
+        }
+    }
+
+    /**
+     * Writes to a log4j logger, which applies its own level as well
+     */
+    private static class Log4jLog extends Log
+    {
+        private final Logger logger;
+
+        Log4jLog(Logger logger)
+        {
+            this.logger = logger;
+        }
+
+        @Override
+        public boolean isEnabled(Level messageLevel)
+        {
+            return super.isEnabled(messageLevel) && logger.isEnabledFor(toLog4j(messageLevel));
+        }
+
+        @Override
+        public void write(String record)
+        {
+            logger.info(record);
+        }
+
+        @Override
+        protected void write(Level messageLevel, String message, Throwable t)
+        {
+            logger.log(toLog4j(messageLevel), message, t);
+        }
+
+        private static org.apache.log4j.Level toLog4j(Level messageLevel)
+        {
+            switch (messageLevel)
+            {
+                case DEBUG:
+                    return org.apache.log4j.Level.DEBUG;
+                case INFO:
+                    return org.apache.log4j.Level.INFO;
+                case WARN:
+                    return org.apache.log4j.Level.WARN;
+                case ERROR:
+                    return org.apache.log4j.Level.ERROR;
+                default:
+                    return org.apache.log4j.Level.OFF;
+            }
+        }
+    }
+
+    /**
+     * Writes to the Lambda logger, which writes each message to CloudWatch as is
+     */
+    private static class LambdaLog extends Log
+    {
+        private final LambdaLogger logger;
+
+        LambdaLog(LambdaLogger logger)
+        {
+            this.logger = logger;
+        }
+
+        @Override
+        public void write(String record)
+        {
+            logger.log(record);
+        }
+
+        @Override
+        protected void write(Level messageLevel, String message, Throwable t)
+        {
+            String line = messageLevel == Level.INFO ? message : "[" + messageLevel + "] " + message;
+            logger.log(t == null ? line : line + " cause: " + t.toString());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.aws.ingest.manifest;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The bytes a manifest entry's MD5 sum and signature cover
+ */
+public enum DigestScope
+{
+    /**
+     * The file as stored, compressed if the file is compressed
+     */
+    @SerializedName(value = "stored", alternate = { "STORED" })
+    STORED,
+
+    /**
+     * The uncompressed file contents
+     */
+    @SerializedName(value = "content", alternate = { "CONTENT" })
+    CONTENT
+}
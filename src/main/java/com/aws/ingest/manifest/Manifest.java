@@ -1,28 +1,55 @@
 package com.aws.ingest.manifest;
 
+import com.aws.ingest.config.Compression;
 import com.aws.ingest.exception.IngestException;
-import com.aws.ingest.io.MD5InputStream;
+import com.aws.ingest.io.ProgressListener;
+import com.aws.ingest.logging.Log;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.log4j.Logger;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
+import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 /**
  * A manifest for uploaded assets
  */
 public class Manifest
 {
-    private static final Logger LOGGER = Logger.getLogger(Manifest.class);
+    private static final Log LOGGER = Log.getLog(Manifest.class);
+
+    /**
+     * The algorithm manifest entries are signed with
+     */
+    public static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    /**
+     * The size of each read when computing MD5 sums from files
+     */
+    private static final int MD5_BLOCK_SIZE = 4 * 1024 * 1024;
 
     private String createdDate = null;
     private String sourceSystem = null;
@@ -109,7 +136,17 @@ public class Manifest
 
     public String getKeyForEntry(ManifestEntry entry)
     {
-        return parentKey + entry.getFileName();
+        return getKeyForFile(entry.getFileName());
+    }
+
+    /**
+     * Computes the key of a file stored alongside the manifest
+     * @param fileName the file name
+     * @return the key of the file
+     */
+    public String getKeyForFile(String fileName)
+    {
+        return parentKey + fileName;
     }
 
     /**
@@ -120,39 +157,9 @@ public class Manifest
     {
         try
         {
-            Signature signature = Signature.getInstance("SHA256withRSA");
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
             signature.initVerify(publicKey);
-
-            for (ManifestEntry entry: manifestEntries)
-            {
-                /**
-                 * Require an MD5 for each entry
-                 */
-                if (StringUtils.isBlank(entry.getMd5()))
-                {
-                    throw new IngestException("MD5 sum was missing on: " + entry.getFileName());
-                }
-
-                /**
-                 * Require signatures for each entry
-                 */
-                if (StringUtils.isBlank(entry.getSignature()))
-                {
-                    throw new IngestException("Signature was missing on: " + entry.getFileName());
-                }
-
-                signature.update(entry.getMd5().getBytes());
-
-                if (!signature.verify(Base64.decodeBase64(entry.getSignature())))
-                {
-                    LOGGER.error("Signature verification failed");
-                    throw new IngestException("Failed to verify signature for entry: " + entry.getFileName());
-                }
-                else
-                {
-                    LOGGER.info("Successfully verified manifest signatures");
-                }
-            }
+            verifySignature(signature);
         }
         catch (IngestException e)
         {
@@ -165,16 +172,94 @@ public class Manifest
     }
 
     /**
-     * TODO implement signing manifests
+     * Verifies every entry with a reusable signature
+     * @param signature the signature initialised for verification
+     */
+    public void verifySignature(Signature signature)
+    {
+        for (ManifestEntry entry: manifestEntries)
+        {
+            verifyEntrySignature(signature, entry);
+        }
+
+        LOGGER.info("Successfully verified manifest signatures");
+    }
+
+    /**
+     * Verifies the signature of a single entry as soon as its MD5 sum is
+     * known, each entry is signed independently as verify resets the
+     * signature so it can be reused for the next entry
+     * @param signature the signature initialised for verification
+     * @param entry the entry to verify
+     */
+    public static void verifyEntrySignature(Signature signature, ManifestEntry entry)
+    {
+        /**
+         * Require an MD5 for each entry
+         */
+        if (StringUtils.isBlank(entry.getMd5()))
+        {
+            throw new IngestException("MD5 sum was missing on: " + entry.getFileName());
+        }
+
+        /**
+         * Require signatures for each entry
+         */
+        if (StringUtils.isBlank(entry.getSignature()))
+        {
+            throw new IngestException("Signature was missing on: " + entry.getFileName());
+        }
+
+        boolean verified;
+
+        try
+        {
+            signature.update(entry.getMd5().getBytes());
+            verified = signature.verify(Base64.decodeBase64(entry.getSignature()));
+        }
+        catch (SignatureException e)
+        {
+            throw new IngestException("Failed to verify signature for entry: " + entry.getFileName(), e);
+        }
+
+        if (!verified)
+        {
+            LOGGER.error("Signature verification failed");
+            throw new IngestException("Failed to verify signature for entry: " + entry.getFileName());
+        }
+    }
+
+    /**
+     * Signs each manifest entry's MD5 sum
      * @param privateKey the private key to sign with
      */
     public void signManifest(PrivateKey privateKey)
     {
         try
         {
-            Signature signature = Signature.getInstance("SHA256withRSA");
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
             signature.initSign(privateKey);
+            signManifest(signature);
+        }
+        catch (IngestException e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            throw new IngestException("Failed to sign message", t);
+        }
+    }
 
+    /**
+     * Signs each manifest entry's MD5 sum with a reusable signature,
+     * sign resets the signature so each entry is signed independently
+     * @param signature the signature initialised for signing
+     */
+    public void signManifest(Signature signature)
+    {
+        try
+        {
             for (ManifestEntry entry: manifestEntries)
             {
                 if (StringUtils.isBlank(entry.getMd5()))
@@ -188,13 +273,9 @@ public class Manifest
 
             LOGGER.info("Successfully signed manifest entries");
         }
-        catch (IngestException e)
+        catch (SignatureException e)
         {
-            throw e;
-        }
-        catch (Throwable t)
-        {
-            throw new IngestException("Failed to sign message");
+            throw new IngestException("Failed to sign message", e);
         }
     }
 
@@ -213,26 +294,157 @@ public class Manifest
         return version;
     }
 
+    /**
+     * Computes the MD5 sum of each entry's file hashing files
+     * concurrently with a thread per available core
+     * @param directory the directory containing the files
+     * @throws IOException thrown on failure to read a file
+     */
     public void computeMD5SumsFromFiles(File directory) throws IOException
     {
+        computeMD5SumsFromFiles(directory, Runtime.getRuntime().availableProcessors(), ProgressListener.NONE);
+    }
+
+    /**
+     * Computes the MD5 sum of each entry's file, files are hashed
+     * concurrently and read through a file channel in large blocks
+     * @param directory the directory containing the files
+     * @param threads the maximum number of files to hash concurrently
+     * @param listener receives progress across all files, called concurrently
+     * @throws IOException thrown on failure to read a file
+     */
+    public void computeMD5SumsFromFiles(File directory, int threads, ProgressListener listener) throws IOException
+    {
+        if (manifestEntries.isEmpty())
+        {
+            return;
+        }
+
+        long totalBytes = 0L;
+
         for (ManifestEntry entry: manifestEntries)
         {
-            FileInputStream fileIn = new FileInputStream(new File(directory, entry.getFileName()));
-            MD5InputStream md5In = new MD5InputStream(fileIn);
+            File file = new File(directory, entry.getFileName());
+
+            if (!file.isFile())
+            {
+                throw new FileNotFoundException("Missing file for entry: " + file);
+            }
+
+            totalBytes += file.length();
+        }
+
+        long bytesTotal = totalBytes;
+        long start = System.nanoTime();
+        AtomicLong bytesDone = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, manifestEntries.size())));
+        List<Future<String>> futures = new ArrayList<>();
+
+        try
+        {
+            for (ManifestEntry entry: manifestEntries)
+            {
+                File file = new File(directory, entry.getFileName());
+
+                Compression compression = entry.getEffectiveDigestScope() == DigestScope.CONTENT ?
+                        entry.getEffectiveCompression() : Compression.NONE;
+
+                futures.add(executor.submit(() -> computeMD5(file, compression, read ->
+                        listener.onProgress(bytesDone.addAndGet(read), bytesTotal, System.nanoTime() - start))));
+            }
+
+            for (int i = 0; i < manifestEntries.size(); i++)
+            {
+                ManifestEntry entry = manifestEntries.get(i);
+                entry.setMd5(futures.get(i).get());
+
+                LOGGER.debug(() -> "Made MD5 sum: " + entry.getMd5() + " for entry: " + entry.getFileName());
+            }
+
+            listener.onProgress(bytesDone.get(), bytesTotal, System.nanoTime() - start);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted computing MD5 sums");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IngestException("Failed to compute MD5 sums", e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 
-            while (true)
+    /**
+     * Computes the MD5 sum of a file reading it in large blocks
+     * @param file the file to hash
+     * @param compression the compression to remove before hashing, NONE hashes the stored bytes
+     * @param progress receives the number of stored bytes read by each block
+     * @return the Base64 encoded MD5 sum
+     * @throws IOException thrown on failure to read
+     */
+    private static String computeMD5(File file, Compression compression, LongConsumer progress) throws IOException
+    {
+        MessageDigest digest;
+
+        try
+        {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IngestException("Failed to create digest", e);
+        }
+
+        if (compression != Compression.NONE)
+        {
+            byte [] buffer = new byte[MD5_BLOCK_SIZE];
+
+            try (CountingInputStream counted = new CountingInputStream(Files.newInputStream(file.toPath()));
+                 InputStream in = compression.decompress(counted))
             {
-                int read = md5In.read();
+                long reported = 0L;
+                int read;
 
-                if (read == -1)
+                while ((read = in.read(buffer)) != -1)
                 {
-                    break;
+                    digest.update(buffer, 0, read);
+                    progress.accept(counted.getByteCount() - reported);
+                    reported = counted.getByteCount();
                 }
             }
 
-            entry.setMd5(md5In.getDigestBase64());
+            return Base64.encodeBase64String(digest.digest());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MD5_BLOCK_SIZE);
 
-            LOGGER.info("Made MD5 sum: " + entry.getMd5() + " for entry: " + entry.getFileName());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            int read;
+
+            while ((read = channel.read(buffer)) != -1)
+            {
+                if (Thread.interrupted())
+                {
+                    throw new InterruptedIOException("Interrupted hashing: " + file);
+                }
+
+                digest.update(buffer.array(), 0, read);
+                buffer.clear();
+                progress.accept(read);
+            }
         }
+
+        return Base64.encodeBase64String(digest.digest());
     }
 }
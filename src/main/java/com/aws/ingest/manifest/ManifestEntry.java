@@ -1,12 +1,11 @@
 package com.aws.ingest.manifest;
 
+import com.aws.ingest.config.Compression;
 import com.aws.ingest.config.DataType;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.csv.CSVRecord;
 
-import java.util.List;
-
 /**
  * An entry in the manifest representing an uploaded CSV file
  */
@@ -32,6 +31,23 @@ public class ManifestEntry
      */
     private String signature = null;
 
+    /**
+     * The compression of the stored file, detected from the file name if not set
+     */
+    private Compression compression = null;
+
+    /**
+     * The bytes the MD5 sum and signature cover, the stored file if not set
+     */
+    private DigestScope digestScope = null;
+
+    /**
+     * The number of rows that failed validation and the file they were
+     * written to, only set on processed entries of validated data types
+     */
+    private Long rejectCount = null;
+    private String rejectsFileName = null;
+
     /**
      * The MD5 of the file contents, never persisted
      */
@@ -77,6 +93,64 @@ public class ManifestEntry
         this.signature = signature;
     }
 
+    public Compression getCompression()
+    {
+        return compression;
+    }
+
+    public void setCompression(Compression compression)
+    {
+        this.compression = compression;
+    }
+
+    public DigestScope getDigestScope()
+    {
+        return digestScope;
+    }
+
+    public void setDigestScope(DigestScope digestScope)
+    {
+        this.digestScope = digestScope;
+    }
+
+    public Long getRejectCount()
+    {
+        return rejectCount;
+    }
+
+    public void setRejectCount(Long rejectCount)
+    {
+        this.rejectCount = rejectCount;
+    }
+
+    public String getRejectsFileName()
+    {
+        return rejectsFileName;
+    }
+
+    public void setRejectsFileName(String rejectsFileName)
+    {
+        this.rejectsFileName = rejectsFileName;
+    }
+
+    /**
+     * Fetches the configured compression or detects it from the file name
+     * @return the compression of the stored file
+     */
+    public Compression getEffectiveCompression()
+    {
+        return compression != null ? compression : Compression.fromFileName(fileName);
+    }
+
+    /**
+     * Fetches the configured digest scope defaulting to the stored file
+     * @return the bytes the MD5 sum covers
+     */
+    public DigestScope getEffectiveDigestScope()
+    {
+        return digestScope != null ? digestScope : DigestScope.STORED;
+    }
+
     public String getMd5()
     {
         return md5;
@@ -87,11 +161,20 @@ public class ManifestEntry
         this.md5 = md5;
     }
 
-    public void processRow(DataType dataType, CSVRecord row, List<String> outputBuffer)
+    /**
+     * Projects an input row into a reusable output row using
+     * the data type's compiled column positions
+     * @param dataType the data type
+     * @param row the input row
+     * @param outputRow the output row, sized to the number of output columns
+     */
+    public void processRow(DataType dataType, CSVRecord row, String [] outputRow)
     {
-        for (String outputColumn: dataType.getOutputColumns())
+        int [] projection = dataType.getProjection();
+
+        for (int i = 0; i < projection.length; i++)
         {
-            outputBuffer.add(row.get(outputColumn));
+            outputRow[i] = row.get(projection[i]);
         }
     }
 
@@ -129,6 +212,8 @@ public class ManifestEntry
     public void reset()
     {
         rowCount = 0;
+        rejectCount = null;
+        rejectsFileName = null;
         signature = null;
         md5 = null;
     }
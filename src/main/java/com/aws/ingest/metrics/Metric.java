@@ -0,0 +1,107 @@
+package com.aws.ingest.metrics;
+
+/**
+ * The metrics recorded while processing, times are recorded
+ * in nanoseconds and reported in milliseconds. A manifest's times
+ * other than its elapsed and garbage collection times are totals
+ * across entries processed concurrently so may exceed its elapsed time.
+ */
+public enum Metric
+{
+    INPUT_BYTES("InputBytes", Unit.BYTES),
+    OUTPUT_BYTES("OutputBytes", Unit.BYTES),
+    ROWS_PARSED("RowsParsed", Unit.COUNT),
+    ROWS_WRITTEN("RowsWritten", Unit.COUNT),
+    ROWS_REJECTED("RowsRejected", Unit.COUNT),
+    PARTS_DOWNLOADED("PartsDownloaded", Unit.COUNT),
+    PARTS_UPLOADED("PartsUploaded", Unit.COUNT),
+    ENTRIES("Entries", Unit.COUNT),
+    ELAPSED_TIME("ElapsedTime", Unit.NANOSECONDS),
+
+    /**
+     * Time the reading thread waited for ranged GETs to arrive
+     */
+    READ_WAIT_TIME("ReadWaitTime", Unit.NANOSECONDS),
+
+    /**
+     * Time the writing thread waited for part uploads, for a free part
+     * buffer, for synchronous uploads or for the final parts on close
+     */
+    UPLOAD_WAIT_TIME("UploadWaitTime", Unit.NANOSECONDS),
+
+    /**
+     * Total time spent in uploadPart calls across upload threads, including failed attempts
+     */
+    UPLOAD_PART_TIME("UploadPartTime", Unit.NANOSECONDS),
+
+    /**
+     * S3 upload calls retried after a transient error or throttling,
+     * and the total time spent backing off before the retries
+     */
+    UPLOAD_RETRIES("UploadRetries", Unit.COUNT),
+    UPLOAD_BACKOFF_TIME("UploadBackoffTime", Unit.NANOSECONDS),
+
+    /**
+     * S3 upload calls throttled with SlowDown or a similar error
+     */
+    UPLOAD_THROTTLES("UploadThrottles", Unit.COUNT),
+
+    /**
+     * Time spent computing input and output MD5 sums
+     */
+    MD5_TIME("MD5Time", Unit.NANOSECONDS),
+
+    /**
+     * Elapsed time not spent waiting on S3 or hashing, mostly decompressing,
+     * parsing, projecting, validating and compressing
+     */
+    TRANSFORM_TIME("TransformTime", Unit.NANOSECONDS),
+
+    /**
+     * Process wide garbage collection time while processing, so includes
+     * collections caused by other entries processed concurrently
+     */
+    GC_TIME("GcTime", Unit.NANOSECONDS);
+
+    /**
+     * CloudWatch units
+     */
+    public enum Unit
+    {
+        BYTES("Bytes"),
+        COUNT("Count"),
+        NANOSECONDS("Milliseconds"),
+        PERCENT("Percent");
+
+        private final String name;
+
+        Unit(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    private final String name;
+    private final Unit unit;
+
+    Metric(String name, Unit unit)
+    {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Unit getUnit()
+    {
+        return unit;
+    }
+}
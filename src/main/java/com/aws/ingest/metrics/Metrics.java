@@ -0,0 +1,123 @@
+package com.aws.ingest.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers for a single entry or manifest. Counters are updated
+ * from the reading, writing, compression and upload threads so each is a
+ * LongAdder, streams add to them once per buffer or part rather than per
+ * row so they are cheap enough to leave on.
+ */
+public class Metrics
+{
+    private final LongAdder [] values = new LongAdder[Metric.values().length];
+
+    private final long startNanos = System.nanoTime();
+    private final long startGcMillis = getGcMillis();
+
+    /**
+     * True once other metrics have been added, so the transform time is a total
+     */
+    private boolean totalled = false;
+
+    /**
+     * Creates metrics, starting the elapsed and garbage collection times
+     */
+    public Metrics()
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds to a metric
+     * @param metric the metric
+     * @param value the value to add, nanoseconds for times
+     */
+    public void add(Metric metric, long value)
+    {
+        values[metric.ordinal()].add(value);
+    }
+
+    /**
+     * Adds the time since a start time
+     * @param metric the time metric
+     * @param startNanos the start time from System.nanoTime()
+     */
+    public void addTimeSince(Metric metric, long startNanos)
+    {
+        values[metric.ordinal()].add(System.nanoTime() - startNanos);
+    }
+
+    public long get(Metric metric)
+    {
+        return values[metric.ordinal()].sum();
+    }
+
+    /**
+     * Adds every metric of another, used to total entries for a manifest
+     * @param other the metrics to add
+     */
+    public void addAll(Metrics other)
+    {
+        totalled = true;
+
+        for (Metric metric: Metric.values())
+        {
+            if (metric != Metric.ELAPSED_TIME && metric != Metric.GC_TIME)
+            {
+                add(metric, other.get(metric));
+            }
+        }
+    }
+
+    /**
+     * Records the elapsed and garbage collection time since these metrics were
+     * created, and unless totalled the transform time as the elapsed time
+     * not spent waiting on S3 or hashing
+     */
+    public void stop()
+    {
+        long elapsed = System.nanoTime() - startNanos;
+
+        add(Metric.ELAPSED_TIME, elapsed);
+        add(Metric.GC_TIME, TimeUnit.MILLISECONDS.toNanos(getGcMillis() - startGcMillis));
+
+        if (!totalled)
+        {
+            add(Metric.TRANSFORM_TIME, Math.max(0L, elapsed - get(Metric.READ_WAIT_TIME) -
+                    get(Metric.UPLOAD_WAIT_TIME) - get(Metric.MD5_TIME)));
+        }
+    }
+
+    /**
+     * The share of the elapsed time spent in garbage collection
+     * @return the percentage
+     */
+    public double getGcShare()
+    {
+        long elapsed = get(Metric.ELAPSED_TIME);
+        return elapsed == 0L ? 0.0 : Math.min(100.0, 100.0 * get(Metric.GC_TIME) / elapsed);
+    }
+
+    /**
+     * The total collection time of every garbage collector
+     * @return the collection time in milliseconds
+     */
+    private static long getGcMillis()
+    {
+        long total = 0L;
+
+        for (GarbageCollectorMXBean collector: ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(0L, collector.getCollectionTime());
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,126 @@
+package com.aws.ingest.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats metrics as CloudWatch embedded metric format records, a JSON
+ * log line declaring the metrics it carries so CloudWatch extracts them
+ * without any API calls, and emits them to a sink
+ */
+public class MetricsEmitter
+{
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private final String namespace;
+    private final MetricsSink sink;
+
+    /**
+     * Creates an emitter
+     * @param namespace the CloudWatch namespace
+     * @param sink the sink to emit records to
+     */
+    public MetricsEmitter(String namespace, MetricsSink sink)
+    {
+        this.namespace = namespace;
+        this.sink = sink;
+    }
+
+    /**
+     * Emits a metrics record
+     * @param metrics the metrics
+     * @param dimensions the dimension names and values in order
+     * @param properties extra values searchable in the logs but not extracted as metrics
+     */
+    public void emit(Metrics metrics, Map<String, String> dimensions, Map<String, Object> properties)
+    {
+        sink.emit(format(metrics, dimensions, properties, System.currentTimeMillis()));
+    }
+
+    /**
+     * Formats a metrics record
+     * @param metrics the metrics
+     * @param dimensions the dimension names and values in order
+     * @param properties extra values searchable in the logs but not extracted as metrics
+     * @param timestamp the timestamp in epoch milliseconds
+     * @return the record as a single line of JSON
+     */
+    public String format(Metrics metrics, Map<String, String> dimensions,
+                         Map<String, Object> properties, long timestamp)
+    {
+        JsonObject record = new JsonObject();
+        JsonArray definitions = new JsonArray();
+
+        for (Metric metric: Metric.values())
+        {
+            long value = metrics.get(metric);
+
+            if (metric.getUnit() == Metric.Unit.NANOSECONDS)
+            {
+                addMetric(record, definitions, metric.getName(), metric.getUnit(), value / NANOS_PER_MILLI);
+            }
+            else
+            {
+                addMetric(record, definitions, metric.getName(), metric.getUnit(), value);
+            }
+        }
+
+        addMetric(record, definitions, "GcShare", Metric.Unit.PERCENT, metrics.getGcShare());
+
+        JsonArray dimensionSet = new JsonArray();
+
+        for (Map.Entry<String, String> dimension: dimensions.entrySet())
+        {
+            dimensionSet.add(dimension.getKey());
+            record.addProperty(dimension.getKey(), dimension.getValue());
+        }
+
+        JsonArray dimensionSets = new JsonArray();
+        dimensionSets.add(dimensionSet);
+
+        JsonObject directive = new JsonObject();
+        directive.addProperty("Namespace", namespace);
+        directive.add("Dimensions", dimensionSets);
+        directive.add("Metrics", definitions);
+
+        JsonArray directives = new JsonArray();
+        directives.add(directive);
+
+        JsonObject aws = new JsonObject();
+        aws.addProperty("Timestamp", timestamp);
+        aws.add("CloudWatchMetrics", directives);
+        record.add("_aws", aws);
+
+        for (Map.Entry<String, Object> property: properties.entrySet())
+        {
+            Object value = property.getValue();
+
+            if (value instanceof Number)
+            {
+                record.addProperty(property.getKey(), (Number) value);
+            }
+            else if (value instanceof Boolean)
+            {
+                record.addProperty(property.getKey(), (Boolean) value);
+            }
+            else if (value != null)
+            {
+                record.addProperty(property.getKey(), value.toString());
+            }
+        }
+
+        return record.toString();
+    }
+
+    private static void addMetric(JsonObject record, JsonArray definitions, String name, Metric.Unit unit, Number value)
+    {
+        JsonObject definition = new JsonObject();
+        definition.addProperty("Name", name);
+        definition.addProperty("Unit", unit.getName());
+        definitions.add(definition);
+        record.addProperty(name, value);
+    }
+}
@@ -0,0 +1,15 @@
+package com.aws.ingest.metrics;
+
+/**
+ * Receives structured metrics records, in Lambda these are logged so
+ * CloudWatch extracts the metrics, locally they can be collected
+ */
+@FunctionalInterface
+public interface MetricsSink
+{
+    /**
+     * Emits a record
+     * @param record the JSON record on a single line
+     */
+    void emit(String record);
+}
@@ -1,9 +1,9 @@
 package com.aws.ingest.security;
 
 import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.logging.Log;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
-import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.security.KeyPair;
@@ -16,7 +16,7 @@ import java.security.PublicKey;
  */
 public class KenGenerator
 {
-    private static final Logger LOGGER = Logger.getLogger(KenGenerator.class);
+    private static final Log LOGGER = Log.getLog(KenGenerator.class);
 
     public static void main(String [] args)
     {
@@ -0,0 +1,118 @@
+package com.aws.ingest.security;
+
+import com.aws.ingest.exception.IngestException;
+import org.apache.commons.codec.binary.Base64;
+
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches verifiers and signers keyed on their Base64 encoded key, as read
+ * from the environment or a key file, so warm containers decode and parse
+ * each RSA key once rather than once per manifest. Verifiers and signers
+ * are thread safe, each thread reuses its own Signature instance.
+ */
+public final class KeyCache
+{
+    /**
+     * Keys are configured per deployment so very few are ever seen,
+     * the cache is cleared if it somehow grows past this
+     */
+    private static final int MAX_ENTRIES = 32;
+
+    private static final Map<String, SignatureVerifier> VERIFIERS = new ConcurrentHashMap<>();
+    private static final Map<String, ManifestSigner> SIGNERS = new ConcurrentHashMap<>();
+
+    private KeyCache()
+    {
+    }
+
+    /**
+     * Fetches a verifier for a Base64 encoded X509 public key
+     * @param publicKeyString the encoded public key
+     * @return the cached verifier
+     */
+    public static SignatureVerifier getVerifier(String publicKeyString)
+    {
+        SignatureVerifier verifier = VERIFIERS.get(publicKeyString);
+
+        if (verifier != null)
+        {
+            return verifier;
+        }
+
+        if (VERIFIERS.size() >= MAX_ENTRIES)
+        {
+            VERIFIERS.clear();
+        }
+
+        return VERIFIERS.computeIfAbsent(publicKeyString,
+                encoded -> new SignatureVerifier(loadPublicKey(encoded)));
+    }
+
+    /**
+     * Fetches a signer for a Base64 encoded PKCS8 private key
+     * @param privateKeyString the encoded private key
+     * @return the cached signer
+     */
+    public static ManifestSigner getSigner(String privateKeyString)
+    {
+        ManifestSigner signer = SIGNERS.get(privateKeyString);
+
+        if (signer != null)
+        {
+            return signer;
+        }
+
+        if (SIGNERS.size() >= MAX_ENTRIES)
+        {
+            SIGNERS.clear();
+        }
+
+        return SIGNERS.computeIfAbsent(privateKeyString,
+                encoded -> new ManifestSigner(loadPrivateKey(encoded)));
+    }
+
+    /**
+     * Decodes and parses a public key
+     * @param publicKeyString the Base64 encoded X509 public key
+     * @return the public key
+     */
+    public static PublicKey loadPublicKey(String publicKeyString)
+    {
+        try
+        {
+            KeyFactory kf = KeyFactory.getInstance("RSA");
+            X509EncodedKeySpec keySpecX509 = new X509EncodedKeySpec(Base64.decodeBase64(publicKeyString));
+            return kf.generatePublic(keySpecX509);
+        }
+        catch (Throwable t)
+        {
+            throw new IngestException("Failed to load public key", t);
+        }
+    }
+
+    /**
+     * Decodes and parses a private key
+     * @param privateKeyString the Base64 encoded PKCS8 private key
+     * @return the private key
+     */
+    public static PrivateKey loadPrivateKey(String privateKeyString)
+    {
+        try
+        {
+            KeyFactory kf = KeyFactory.getInstance("RSA");
+            PKCS8EncodedKeySpec keySpecPKCS8 = new PKCS8EncodedKeySpec(Base64.decodeBase64(privateKeyString));
+            return kf.generatePrivate(keySpecPKCS8);
+        }
+        catch (Throwable t)
+        {
+            throw new IngestException("Failed to load private key", t);
+        }
+    }
+}
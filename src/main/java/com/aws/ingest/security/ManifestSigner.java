@@ -0,0 +1,67 @@
+package com.aws.ingest.security;
+
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.manifest.Manifest;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+
+/**
+ * Signs manifests with a parsed private key, each thread reuses
+ * a Signature initialised once for signing
+ */
+public class ManifestSigner
+{
+    private final PrivateKey privateKey;
+    private final ThreadLocal<Signature> signatures;
+
+    /**
+     * Creates a signer
+     * @param privateKey the private key to sign with
+     */
+    public ManifestSigner(PrivateKey privateKey)
+    {
+        this.privateKey = privateKey;
+        this.signatures = ThreadLocal.withInitial(this::createSignature);
+    }
+
+    /**
+     * Signs every entry of a manifest which must have their MD5 sums computed
+     * @param manifest the manifest to sign
+     */
+    public void sign(Manifest manifest)
+    {
+        try
+        {
+            manifest.signManifest(signatures.get());
+        }
+        catch (IngestException e)
+        {
+            /**
+             * Discard the signature in case it was left part way through an update
+             */
+            signatures.remove();
+            throw e;
+        }
+    }
+
+    public PrivateKey getPrivateKey()
+    {
+        return privateKey;
+    }
+
+    private Signature createSignature()
+    {
+        try
+        {
+            Signature signature = Signature.getInstance(Manifest.SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey);
+            return signature;
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IngestException("Failed to create manifest signer", e);
+        }
+    }
+}
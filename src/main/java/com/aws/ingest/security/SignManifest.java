@@ -1,23 +1,20 @@
 package com.aws.ingest.security;
 
 import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.io.ProgressListener;
+import com.aws.ingest.logging.Log;
 import com.aws.ingest.manifest.Manifest;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
-import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.KeyFactory;
-import java.security.PrivateKey;
-import java.security.spec.PKCS8EncodedKeySpec;
 
 /**
  * Sample code to sign a manifest
  */
 public class SignManifest
 {
-    private static final Logger LOGGER = Logger.getLogger(SignManifest.class);
+    private static final Log LOGGER = Log.getLog(SignManifest.class);
 
     public static void main(String [] args) throws IOException
     {
@@ -40,13 +37,10 @@ public class SignManifest
 
             Manifest manifest = Manifest.fromJSON(json);
 
-            manifest.computeMD5SumsFromFiles(manifestFile.getParentFile());
+            manifest.computeMD5SumsFromFiles(manifestFile.getParentFile(),
+                    Runtime.getRuntime().availableProcessors(), ProgressListener.logging(LOGGER, 1000L));
 
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            PKCS8EncodedKeySpec keySpecPKCS8 = new PKCS8EncodedKeySpec(Base64.decodeBase64(privateKeyString));
-            PrivateKey privateKey = kf.generatePrivate(keySpecPKCS8);
-
-            manifest.signManifest(privateKey);
+            KeyCache.getSigner(privateKeyString).sign(manifest);
 
             String signedJson = Manifest.toJSON(manifest);
 
@@ -0,0 +1,86 @@
+package com.aws.ingest.security;
+
+import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.manifest.Manifest;
+import com.aws.ingest.manifest.ManifestEntry;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+
+/**
+ * Verifies manifest entry signatures with a parsed public key, each
+ * thread reuses a Signature initialised once for verification so
+ * entries can be verified concurrently as they finish streaming
+ */
+public class SignatureVerifier
+{
+    private final PublicKey publicKey;
+    private final ThreadLocal<Signature> signatures;
+
+    /**
+     * Creates a verifier
+     * @param publicKey the public key to verify with
+     */
+    public SignatureVerifier(PublicKey publicKey)
+    {
+        this.publicKey = publicKey;
+        this.signatures = ThreadLocal.withInitial(this::createSignature);
+    }
+
+    /**
+     * Verifies the signature of an entry which must have its MD5 sum computed
+     * @param entry the entry to verify
+     */
+    public void verify(ManifestEntry entry)
+    {
+        try
+        {
+            Manifest.verifyEntrySignature(signatures.get(), entry);
+        }
+        catch (IngestException e)
+        {
+            /**
+             * Discard the signature in case it was left part way through an update
+             */
+            signatures.remove();
+            throw e;
+        }
+    }
+
+    /**
+     * Verifies every entry of a manifest which must have their MD5 sums computed
+     * @param manifest the manifest to verify
+     */
+    public void verify(Manifest manifest)
+    {
+        try
+        {
+            manifest.verifySignature(signatures.get());
+        }
+        catch (IngestException e)
+        {
+            signatures.remove();
+            throw e;
+        }
+    }
+
+    public PublicKey getPublicKey()
+    {
+        return publicKey;
+    }
+
+    private Signature createSignature()
+    {
+        try
+        {
+            Signature signature = Signature.getInstance(Manifest.SIGNATURE_ALGORITHM);
+            signature.initVerify(publicKey);
+            return signature;
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IngestException("Failed to create signature verifier", e);
+        }
+    }
+}
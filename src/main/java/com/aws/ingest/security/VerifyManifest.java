@@ -1,25 +1,20 @@
 package com.aws.ingest.security;
 
 import com.aws.ingest.exception.IngestException;
+import com.aws.ingest.io.ProgressListener;
+import com.aws.ingest.logging.Log;
 import com.aws.ingest.manifest.Manifest;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
-import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.KeyFactory;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 
 /**
  * Sample code to verify a manifest
  */
 public class VerifyManifest
 {
-    private static final Logger LOGGER = Logger.getLogger(VerifyManifest.class);
+    private static final Log LOGGER = Log.getLog(VerifyManifest.class);
 
     public static void main(String [] args) throws IOException
     {
@@ -42,13 +37,10 @@ public class VerifyManifest
 
             Manifest manifest = Manifest.fromJSON(json);
 
-            manifest.computeMD5SumsFromFiles(manifestFile.getParentFile());
+            manifest.computeMD5SumsFromFiles(manifestFile.getParentFile(),
+                    Runtime.getRuntime().availableProcessors(), ProgressListener.logging(LOGGER, 1000L));
 
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            X509EncodedKeySpec keySpecX509 = new X509EncodedKeySpec(Base64.decodeBase64(publicKeyString));
-            PublicKey publicKey = kf.generatePublic(keySpecX509);
-
-            manifest.verifySignature(publicKey);
+            KeyCache.getVerifier(publicKeyString).verify(manifest);
         }
         catch (Throwable t)
         {
@@ -0,0 +1,51 @@
+package com.aws.ingest.validation;
+
+/**
+ * Validates the non empty values of a single column, validators are compiled
+ * once per data type and shared by every thread so hold no per value state
+ */
+public abstract class ColumnValidator
+{
+    private final String description;
+
+    /**
+     * Creates a validator
+     * @param description what a valid value is, used in reject reasons
+     */
+    protected ColumnValidator(String description)
+    {
+        this.description = description;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * Checks a non empty value
+     * @param value the value to check
+     * @return true if the value is valid
+     */
+    public abstract boolean isValid(CharSequence value);
+
+    /**
+     * Checks a non empty value given as UTF-8 bytes without decoding them,
+     * only called on validators that only accept ASCII values
+     * @param bytes the bytes
+     * @param start the start of the value
+     * @param end the end of the value
+     * @return true if the value is valid
+     */
+    public boolean isValid(byte [] bytes, int start, int end)
+    {
+        throw new UnsupportedOperationException("Validator requires decoded values: " + description);
+    }
+
+    /**
+     * Validators that only accept ASCII values may be given UTF-8 bytes,
+     * as every byte of a multi byte sequence is outside ASCII and rejected
+     * @return true if only ASCII values are valid
+     */
+    public abstract boolean isAsciiOnly();
+}
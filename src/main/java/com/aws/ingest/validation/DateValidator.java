@@ -0,0 +1,341 @@
+package com.aws.ingest.validation;
+
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+
+/**
+ * Validates dates and times in a fixed width numeric format such as
+ * yyyy-MM-dd or yyyy-MM-dd'T'HH:mm:ss by checking each character and the
+ * range of each field, so a value is never parsed into a date object.
+ * Other formats are validated with a strict DateTimeFormatter.
+ */
+public class DateValidator extends ColumnValidator
+{
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int DAY = 2;
+    private static final int HOUR = 3;
+    private static final int MINUTE = 4;
+    private static final int SECOND = 5;
+
+    private static final int [] MAX_DAYS = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    /**
+     * The literal at each position or zero for a digit
+     */
+    private final char [] layout;
+
+    /**
+     * The position of each field or -1 if the format does not have it
+     */
+    private final int [] offsets;
+
+    private DateValidator(String format, char [] layout, int [] offsets)
+    {
+        super("date " + format);
+        this.layout = layout;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Compiles a validator for a date format
+     * @param format the DateTimeFormatter pattern
+     * @return the validator
+     * @throws IllegalArgumentException thrown if the format is invalid
+     */
+    public static ColumnValidator compile(String format)
+    {
+        DateValidator fixed = compileFixed(format);
+        return fixed != null ? fixed : new FormatterValidator(format);
+    }
+
+    /**
+     * Compiles a fixed width format made up of four digit years, two digit
+     * months, days, hours, minutes and seconds and literals, either quoted
+     * or characters other than letters
+     * @param format the format
+     * @return the validator or null if the format is not fixed width
+     */
+    private static DateValidator compileFixed(String format)
+    {
+        StringBuilder layout = new StringBuilder(format.length());
+        int [] offsets = { -1, -1, -1, -1, -1, -1 };
+        int i = 0;
+
+        while (i < format.length())
+        {
+            char c = format.charAt(i);
+
+            if (c == '\'')
+            {
+                /**
+                 * Copy a quoted literal, two quotes are a literal quote
+                 */
+                int close = format.indexOf('\'', i + 1);
+
+                if (close == -1)
+                {
+                    return null;
+                }
+
+                layout.append(close == i + 1 ? "'" : format.substring(i + 1, close));
+                i = close + 1;
+                continue;
+            }
+
+            if (!Character.isLetter(c))
+            {
+                layout.append(c);
+                i++;
+                continue;
+            }
+
+            int run = 1;
+
+            while (i + run < format.length() && format.charAt(i + run) == c)
+            {
+                run++;
+            }
+
+            int field;
+
+            switch (c)
+            {
+                case 'y':
+                case 'u':
+                    field = run == 4 ? YEAR : -1;
+                    break;
+                case 'M':
+                    field = run == 2 ? MONTH : -1;
+                    break;
+                case 'd':
+                    field = run == 2 ? DAY : -1;
+                    break;
+                case 'H':
+                    field = run == 2 ? HOUR : -1;
+                    break;
+                case 'm':
+                    field = run == 2 ? MINUTE : -1;
+                    break;
+                case 's':
+                    field = run == 2 ? SECOND : -1;
+                    break;
+                default:
+                    field = -1;
+            }
+
+            if (field == -1 || offsets[field] != -1)
+            {
+                return null;
+            }
+
+            offsets[field] = layout.length();
+
+            for (int digit = 0; digit < run; digit++)
+            {
+                layout.append('\0');
+            }
+
+            i += run;
+        }
+
+        /**
+         * Check the format is valid even though the formatter is not used
+         */
+        DateTimeFormatter.ofPattern(format);
+
+        return new DateValidator(format, layout.toString().toCharArray(), offsets);
+    }
+
+    @Override
+    public boolean isValid(CharSequence value)
+    {
+        if (value.length() != layout.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < layout.length; i++)
+        {
+            char c = value.charAt(i);
+
+            if (layout[i] == 0 ? c < '0' || c > '9' : c != layout[i])
+            {
+                return false;
+            }
+        }
+
+        return isInRange(digits(value, YEAR, 4), digits(value, MONTH, 2), digits(value, DAY, 2),
+                digits(value, HOUR, 2), digits(value, MINUTE, 2), digits(value, SECOND, 2));
+    }
+
+    @Override
+    public boolean isValid(byte [] bytes, int start, int end)
+    {
+        if (end - start != layout.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < layout.length; i++)
+        {
+            int c = bytes[start + i];
+
+            if (layout[i] == 0 ? c < '0' || c > '9' : c != layout[i])
+            {
+                return false;
+            }
+        }
+
+        return isInRange(digits(bytes, start, YEAR, 4), digits(bytes, start, MONTH, 2),
+                digits(bytes, start, DAY, 2), digits(bytes, start, HOUR, 2),
+                digits(bytes, start, MINUTE, 2), digits(bytes, start, SECOND, 2));
+    }
+
+    @Override
+    public boolean isAsciiOnly()
+    {
+        return true;
+    }
+
+    /**
+     * Reads a field's digits
+     * @param bytes the checked value
+     * @param start the start of the value
+     * @param field the field
+     * @param width the number of digits
+     * @return the field value or -1 if the format does not have the field
+     */
+    private int digits(byte [] bytes, int start, int field, int width)
+    {
+        int offset = offsets[field];
+
+        if (offset == -1)
+        {
+            return -1;
+        }
+
+        int result = 0;
+
+        for (int i = start + offset; i < start + offset + width; i++)
+        {
+            result = result * 10 + bytes[i] - '0';
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads a field's digits
+     * @param value the checked value
+     * @param field the field
+     * @param width the number of digits
+     * @return the field value or -1 if the format does not have the field
+     */
+    private int digits(CharSequence value, int field, int width)
+    {
+        int offset = offsets[field];
+
+        if (offset == -1)
+        {
+            return -1;
+        }
+
+        int result = 0;
+
+        for (int i = offset; i < offset + width; i++)
+        {
+            result = result * 10 + value.charAt(i) - '0';
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks the range of each field, fields the format does not have are -1
+     */
+    private static boolean isInRange(int year, int month, int day, int hour, int minute, int second)
+    {
+        if (month == 0 || month > 12 || day == 0 || day > (month == -1 ? 31 : MAX_DAYS[month - 1]))
+        {
+            return false;
+        }
+
+        if (month == 2 && day == 29 && year != -1 && !isLeapYear(year))
+        {
+            return false;
+        }
+
+        return hour < 24 && minute < 60 && second < 60;
+    }
+
+    private static boolean isLeapYear(int year)
+    {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Validates any other format with a strict formatter, which
+     * allocates and throws on invalid values so is slower
+     */
+    private static class FormatterValidator extends ColumnValidator
+    {
+        private final DateTimeFormatter formatter;
+
+        private FormatterValidator(String format)
+        {
+            super("date " + format);
+
+            /**
+             * Strict resolution rejects dates such as 31 April, it needs
+             * the proleptic year as a year of era also requires an era
+             */
+            this.formatter = DateTimeFormatter.ofPattern(toProlepticYear(format))
+                    .withResolverStyle(ResolverStyle.STRICT);
+        }
+
+        @Override
+        public boolean isValid(CharSequence value)
+        {
+            try
+            {
+                formatter.parse(value);
+                return true;
+            }
+            catch (DateTimeParseException e)
+            {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean isAsciiOnly()
+        {
+            return false;
+        }
+
+        /**
+         * Replaces year of era letters outside quoted literals with proleptic year letters
+         */
+        private static String toProlepticYear(String format)
+        {
+            StringBuilder result = new StringBuilder(format.length());
+            boolean quoted = false;
+
+            for (int i = 0; i < format.length(); i++)
+            {
+                char c = format.charAt(i);
+
+                if (c == '\'')
+                {
+                    quoted = !quoted;
+                }
+
+                result.append(c == 'y' && !quoted ? 'u' : c);
+            }
+
+            return result.toString();
+        }
+    }
+}
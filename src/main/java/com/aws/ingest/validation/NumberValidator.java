@@ -0,0 +1,143 @@
+package com.aws.ingest.validation;
+
+/**
+ * Validates whole numbers that fit in a long or plain decimal numbers
+ * by scanning their characters, so a value is never parsed or copied
+ */
+public class NumberValidator extends ColumnValidator
+{
+    private final boolean fraction;
+
+    /**
+     * Creates a number validator
+     * @param fraction true to accept a decimal fraction, false for whole numbers that fit in a long
+     */
+    public NumberValidator(boolean fraction)
+    {
+        super(fraction ? "decimal" : "int");
+        this.fraction = fraction;
+    }
+
+    @Override
+    public boolean isValid(CharSequence value)
+    {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+
+        if (first == '-' || first == '+')
+        {
+            negative = first == '-';
+            i++;
+        }
+
+        int digits = 0;
+        int points = 0;
+        long result = 0L;
+        boolean overflow = false;
+
+        for (; i < length; i++)
+        {
+            int digit = value.charAt(i) - '0';
+
+            if (digit >= 0 && digit <= 9)
+            {
+                digits++;
+                overflow |= accumulate(result, digit, negative) > 0L;
+                result = result * 10 - digit;
+            }
+            else if (digit == '.' - '0')
+            {
+                points++;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        return isValid(digits, points, overflow);
+    }
+
+    @Override
+    public boolean isValid(byte [] bytes, int start, int end)
+    {
+        int i = start;
+        boolean negative = false;
+        byte first = bytes[start];
+
+        if (first == '-' || first == '+')
+        {
+            negative = first == '-';
+            i++;
+        }
+
+        int digits = 0;
+        int points = 0;
+        long result = 0L;
+        boolean overflow = false;
+
+        for (; i < end; i++)
+        {
+            int digit = bytes[i] - '0';
+
+            if (digit >= 0 && digit <= 9)
+            {
+                digits++;
+                overflow |= accumulate(result, digit, negative) > 0L;
+                result = result * 10 - digit;
+            }
+            else if (digit == '.' - '0')
+            {
+                points++;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        return isValid(digits, points, overflow);
+    }
+
+    @Override
+    public boolean isAsciiOnly()
+    {
+        return true;
+    }
+
+    /**
+     * Checks the next digit fits, accumulating negatively as
+     * Long.parseLong does so Long.MIN_VALUE is accepted
+     * @param result the negated value so far
+     * @param digit the next digit
+     * @param negative true if the value is negative
+     * @return greater than zero if the value overflows a long
+     */
+    private static long accumulate(long result, int digit, boolean negative)
+    {
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+
+        if (result < limit / 10)
+        {
+            return 1L;
+        }
+
+        return result * 10 < limit + digit ? 1L : 0L;
+    }
+
+    /**
+     * Whole numbers need at least one digit, no point and to fit in a long,
+     * decimals need at least one digit and at most one point
+     */
+    private boolean isValid(int digits, int points, boolean overflow)
+    {
+        if (fraction)
+        {
+            return digits > 0 && points <= 1;
+        }
+
+        return digits > 0 && points == 0 && !overflow;
+    }
+}
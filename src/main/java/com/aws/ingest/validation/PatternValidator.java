@@ -0,0 +1,42 @@
+package com.aws.ingest.validation;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Validates values that match a regular expression in full, each thread
+ * reuses its own matcher so matching a value does not allocate one
+ */
+public class PatternValidator extends ColumnValidator
+{
+    private final ThreadLocal<Matcher> matchers;
+
+    /**
+     * Creates a pattern validator
+     * @param pattern the regular expression
+     */
+    public PatternValidator(Pattern pattern)
+    {
+        super("pattern " + pattern.pattern());
+        this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+    }
+
+    @Override
+    public boolean isValid(CharSequence value)
+    {
+        Matcher matcher = matchers.get();
+        boolean matches = matcher.reset(value).matches();
+
+        /**
+         * Release the value so the matcher does not hold the input buffer
+         */
+        matcher.reset("");
+        return matches;
+    }
+
+    @Override
+    public boolean isAsciiOnly()
+    {
+        return false;
+    }
+}
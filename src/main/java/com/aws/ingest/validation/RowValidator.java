@@ -0,0 +1,253 @@
+package com.aws.ingest.validation;
+
+import com.aws.ingest.config.ColumnSpec;
+import com.aws.ingest.config.ColumnType;
+import com.aws.ingest.exception.IngestException;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Validates rows of a data type against its column specs, compiled once
+ * when the config is loaded into a rule per validated column so checking
+ * a row only indexes arrays and scans values. A row with fewer fields than
+ * the data type's input columns fails validation rather than the entry.
+ */
+public class RowValidator
+{
+    /**
+     * The result of validating a valid row
+     */
+    public static final int VALID = -1;
+
+    private final int fieldCount;
+    private final int [] positions;
+    private final boolean [] required;
+    private final ColumnValidator [] typeValidators;
+    private final ColumnValidator [] patternValidators;
+    private final boolean [] asciiOnly;
+
+    /**
+     * The reason each rule fails followed by the reason for a short row
+     */
+    private final String [] reasons;
+
+    /**
+     * Compiles a validator
+     * @param dataTypeName the data type name used in errors
+     * @param inputColumns the data type's input columns
+     * @param specs the column specs
+     */
+    public RowValidator(String dataTypeName, List<String> inputColumns, List<ColumnSpec> specs)
+    {
+        int rules = specs.size();
+        this.fieldCount = inputColumns.size();
+        this.positions = new int[rules];
+        this.required = new boolean[rules];
+        this.typeValidators = new ColumnValidator[rules];
+        this.patternValidators = new ColumnValidator[rules];
+        this.asciiOnly = new boolean[rules];
+        this.reasons = new String[rules + 1];
+
+        Set<String> columns = new HashSet<>();
+
+        for (int i = 0; i < rules; i++)
+        {
+            ColumnSpec spec = specs.get(i);
+            String column = spec.getColumn();
+            positions[i] = inputColumns.indexOf(column);
+
+            if (positions[i] == -1)
+            {
+                throw new IngestException("Unknown validated column: " + column + " in data type: " + dataTypeName);
+            }
+
+            if (!columns.add(column))
+            {
+                throw new IngestException("Duplicate validated column: " + column + " in data type: " + dataTypeName);
+            }
+
+            /**
+             * Gson leaves unrecognised enum values null
+             */
+            if (spec.getType() == null)
+            {
+                throw new IngestException("Invalid type for column: " + column + " in data type: " + dataTypeName);
+            }
+
+            try
+            {
+                typeValidators[i] = compileType(spec);
+
+                if (spec.getPattern() != null)
+                {
+                    patternValidators[i] = new PatternValidator(Pattern.compile(spec.getPattern()));
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                /**
+                 * Includes PatternSyntaxException
+                 */
+                throw new IngestException("Invalid format or pattern for column: " + column +
+                        " in data type: " + dataTypeName, e);
+            }
+
+            required[i] = spec.isRequired();
+            asciiOnly[i] = (typeValidators[i] == null || typeValidators[i].isAsciiOnly()) &&
+                    (patternValidators[i] == null || patternValidators[i].isAsciiOnly());
+            reasons[i] = column + ": " + describe(i);
+        }
+
+        reasons[rules] = "expected " + fieldCount + " fields";
+    }
+
+    private static ColumnValidator compileType(ColumnSpec spec)
+    {
+        switch (spec.getType())
+        {
+            case INT:
+                return new NumberValidator(false);
+            case DECIMAL:
+                return new NumberValidator(true);
+            case DATE:
+                return DateValidator.compile(spec.getEffectiveFormat());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Describes a valid value for a rule such as "required int" or "expected value matching pattern [A-Z]+"
+     */
+    private String describe(int rule)
+    {
+        StringBuilder description = new StringBuilder(required[rule] ? "required" : "expected");
+
+        if (typeValidators[rule] != null)
+        {
+            description.append(' ').append(typeValidators[rule].getDescription());
+        }
+        else if (patternValidators[rule] != null)
+        {
+            description.append(" value");
+        }
+
+        if (patternValidators[rule] != null)
+        {
+            description.append(" matching ").append(patternValidators[rule].getDescription());
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * The number of fields a row must have
+     * @return the number of input columns
+     */
+    public int getFieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * The number of rules, a failure equal to this means the row had too few fields
+     * @return the number of validated columns
+     */
+    public int getRuleCount()
+    {
+        return positions.length;
+    }
+
+    /**
+     * The input field position a rule checks
+     * @param rule the rule
+     * @return the field position
+     */
+    public int getPosition(int rule)
+    {
+        return positions[rule];
+    }
+
+    /**
+     * Rules that only accept ASCII values may be given UTF-8 bytes without decoding them
+     * @param rule the rule
+     * @return true if the rule only accepts ASCII values
+     */
+    public boolean isAsciiOnly(int rule)
+    {
+        return asciiOnly[rule];
+    }
+
+    /**
+     * Checks a value against a rule
+     * @param rule the rule
+     * @param value the field value
+     * @return true if the value is valid
+     */
+    public boolean isValid(int rule, CharSequence value)
+    {
+        if (value.length() == 0)
+        {
+            return !required[rule];
+        }
+
+        return (typeValidators[rule] == null || typeValidators[rule].isValid(value)) &&
+                (patternValidators[rule] == null || patternValidators[rule].isValid(value));
+    }
+
+    /**
+     * Checks a value given as UTF-8 bytes against an ASCII only rule
+     * @param rule the rule
+     * @param bytes the bytes
+     * @param start the start of the value
+     * @param end the end of the value
+     * @return true if the value is valid
+     */
+    public boolean isValid(int rule, byte [] bytes, int start, int end)
+    {
+        if (start == end)
+        {
+            return !required[rule];
+        }
+
+        return (typeValidators[rule] == null || typeValidators[rule].isValid(bytes, start, end)) &&
+                (patternValidators[rule] == null || patternValidators[rule].isValid(bytes, start, end));
+    }
+
+    /**
+     * Validates a parsed row
+     * @param record the row
+     * @return VALID or the failed rule
+     */
+    public int validate(CSVRecord record)
+    {
+        if (record.size() < fieldCount)
+        {
+            return positions.length;
+        }
+
+        for (int rule = 0; rule < positions.length; rule++)
+        {
+            if (!isValid(rule, record.get(positions[rule])))
+            {
+                return rule;
+            }
+        }
+
+        return VALID;
+    }
+
+    /**
+     * Describes why a row failed validation
+     * @param failure the failed rule returned by validation
+     * @return the reason the row was rejected
+     */
+    public String getReason(int failure)
+    {
+        return reasons[failure];
+    }
+}
@@ -0,0 +1,217 @@
+package com.aws.ingest.io;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests blocks always end on a record boundary, every block is parsed on its own
+ * and must yield the same records as parsing the whole input. Inputs are split
+ * with every small block size so boundaries land on each character in turn.
+ */
+public class CSVBlockReaderTest
+{
+    private static final String [] LINE_ENDINGS = { "\n", "\r\n", "\r" };
+
+    @Test
+    public void testLineEndings() throws IOException
+    {
+        for (String lineEnding: LINE_ENDINGS)
+        {
+            String input = "a,b,c" + lineEnding + "1,\"2\",3" + lineEnding + "4,5,6" + lineEnding + "7,8,9";
+
+            for (int blockSize = 1; blockSize <= input.length() + 1; blockSize++)
+            {
+                assertSameRecords(input, blockSize);
+            }
+        }
+    }
+
+    /**
+     * Bare CRs must end blocks, otherwise the buffer grows to hold the whole input
+     */
+    @Test
+    public void testBareCarriageReturnsEndBlocks() throws IOException
+    {
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < 100; i++)
+        {
+            input.append(i).append(",value-").append(i).append('\r');
+        }
+
+        List<String> blocks = split(input.toString(), 64);
+
+        assertTrue(blocks.size() > 10);
+
+        for (String block: blocks)
+        {
+            assertTrue(block.length() <= 64);
+            assertTrue(block.endsWith("\r"));
+        }
+    }
+
+    /**
+     * A CRLF is never split, wherever the block size places the end of the buffer
+     */
+    @Test
+    public void testCRLFAcrossBlockBoundary() throws IOException
+    {
+        String input = "ab,cd\r\nef,gh\r\n\"ij\",kl\r\nmn,op\r\n";
+
+        for (int blockSize = 1; blockSize <= input.length(); blockSize++)
+        {
+            List<String> blocks = split(input, blockSize);
+
+            for (String block: blocks)
+            {
+                assertTrue("Block size: " + blockSize, block.endsWith("\r\n"));
+                assertFalse("Block size: " + blockSize, block.startsWith("\n"));
+            }
+
+            assertSameRecords(input, blockSize);
+        }
+    }
+
+    @Test
+    public void testQuotedNewlinesStraddleBlocks() throws IOException
+    {
+        String input = "id,address\n1,\"Lot 55\n37 Jones St\"\n2,\"a\r\nb\rc\"\r\n" +
+                "3,\"say \"\"hi\"\"\nthere\",x\r4,\"\"\"\n\"\"\"\n";
+
+        for (int blockSize = 1; blockSize <= input.length(); blockSize++)
+        {
+            List<String> blocks = split(input, blockSize);
+
+            for (String block: blocks)
+            {
+                assertFalse("Block size: " + blockSize, block.endsWith("Lot 55\n"));
+                assertFalse("Block size: " + blockSize, block.endsWith("\"a\r\n"));
+            }
+
+            assertSameRecords(input, blockSize);
+        }
+    }
+
+    @Test
+    public void testRandomInputs() throws IOException
+    {
+        Random random = new Random(11L);
+        String [] values = { "x", "", "a b", "\"q\"", "multi\nline", "cr\rlf\r\n", ",", "\"\"" };
+
+        for (int i = 0; i < 300; i++)
+        {
+            StringBuilder input = new StringBuilder();
+            String lineEnding = LINE_ENDINGS[random.nextInt(LINE_ENDINGS.length)];
+            int rows = random.nextInt(20);
+
+            for (int row = 0; row < rows; row++)
+            {
+                for (int field = 0; field < 3; field++)
+                {
+                    String value = values[random.nextInt(values.length)];
+
+                    if (field > 0)
+                    {
+                        input.append(',');
+                    }
+
+                    input.append('"').append(value.replace("\"", "\"\"")).append('"');
+                }
+
+                input.append(lineEnding);
+            }
+
+            assertSameRecords(input.toString(), 1 + random.nextInt(32));
+        }
+    }
+
+    /**
+     * Checks the blocks rebuild the input and parse to the same records as the whole input
+     * @param input the input
+     * @param blockSize the block size
+     * @throws IOException thrown on failure to read
+     */
+    private static void assertSameRecords(String input, int blockSize) throws IOException
+    {
+        List<String> blocks = split(input, blockSize);
+        List<List<String>> records = new ArrayList<>();
+
+        for (String block: blocks)
+        {
+            records.addAll(parse(block));
+        }
+
+        String message = "Block size: " + blockSize + " input: " + input.replace("\r", "<CR>");
+        assertEquals(message, input, String.join("", blocks));
+        assertEquals(message, parse(input), records);
+    }
+
+    private static List<String> split(String input, int blockSize) throws IOException
+    {
+        CSVBlockReader blockReader = new CSVBlockReader(new TrickleReader(input), blockSize);
+        List<String> blocks = new ArrayList<>();
+        String block;
+
+        while ((block = blockReader.nextBlock()) != null)
+        {
+            blocks.add(block);
+        }
+
+        return blocks;
+    }
+
+    private static List<List<String>> parse(String input) throws IOException
+    {
+        List<List<String>> records = new ArrayList<>();
+
+        try (CSVParser parser = CSVParser.parse(input, CSVFormat.DEFAULT))
+        {
+            for (CSVRecord record: parser)
+            {
+                List<String> values = new ArrayList<>();
+                record.forEach(values::add);
+                records.add(values);
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Returns at most three characters per read so fills take several reads
+     */
+    private static final class TrickleReader extends Reader
+    {
+        private final StringReader reader;
+
+        private TrickleReader(String input)
+        {
+            this.reader = new StringReader(input);
+        }
+
+        @Override
+        public int read(char [] buffer, int offset, int length) throws IOException
+        {
+            return reader.read(buffer, offset, Math.min(length, 3));
+        }
+
+        @Override
+        public void close()
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.aws.ingest.io;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Differential tests for CSVProjector, every input is projected both by
+ * the projector and by the CSVParser and CSVPrinter path it replaces and
+ * the output bytes, row counts and parse failures must match. Each input
+ * is projected with several read buffer sizes so records straddle refills.
+ */
+public class CSVProjectorTest
+{
+    private static final String [] INPUT_COLUMNS = { "a", "b", "c", "d" };
+
+    private static final int [] BUFFER_SIZES = { 1, 7, 64, 8192 };
+
+    /**
+     * Field values the random inputs are built from, covering delimiters, quotes,
+     * line endings, leading characters CSVPrinter quotes and multi-byte UTF-8
+     */
+    private static final String [] VALUES = {
+        "abc", "", "Lot 55, 37 Jones St", "multi\nline", "q\"uote", "\"", "x\r\ny", " sp ",
+        "#h", "ä€", "a\"b", "tab\t", "!x", "x\r", "　", "𝄞"
+    };
+
+    private static final String [] LINE_ENDINGS = { "\n", "\r\n", "\r" };
+
+    /**
+     * The result of projecting an input, a failed projection has no output
+     */
+    private static final class Result
+    {
+        private final byte [] output;
+        private final long rows;
+        private final boolean failed;
+
+        private Result(byte [] output, long rows, boolean failed)
+        {
+            this.output = output;
+            this.rows = rows;
+            this.failed = failed;
+        }
+    }
+
+    @Test
+    public void testQuotedNewlines()
+    {
+        assertSameOutput("a,b,c,d\n1,\"Lot 55\n37 Jones St\",x,y\n2,\"a\r\nb\",\"c\rd\",z\n");
+    }
+
+    @Test
+    public void testDoubledQuotes()
+    {
+        assertSameOutput("a,b,c,d\n\"say \"\"hi\"\"\",\"\"\"\",\"\"\"\"\"\",x\"y\n");
+    }
+
+    @Test
+    public void testLineEndings()
+    {
+        for (String lineEnding: LINE_ENDINGS)
+        {
+            assertSameOutput("a,b,c,d" + lineEnding + "1,2,3,4" + lineEnding + "5,\"6\",7,8" + lineEnding);
+            assertSameOutput("a,b,c,d" + lineEnding + "1,2,3,4" + lineEnding + "5,\"6\",7,8");
+        }
+
+        assertSameOutput("a,b,c,d\r\n1,2,3,4\n5,6,7,8\r9,10,11,12\r\n");
+    }
+
+    @Test
+    public void testBlankLines()
+    {
+        assertSameOutput("a,b,c,d\n\n1,2,3,4\n\n\n5,6,7,8\n\n");
+        assertSameOutput("a,b,c,d\r\n\r\n1,2,3,4\r\n\r\n");
+        assertSameOutput("a,b,c,d\r\r1,2,3,4\r\r");
+    }
+
+    @Test
+    public void testLeadingHash()
+    {
+        assertSameOutput("a,b,c,d\n#1,#2,\"#3\",4\n# comment,,,\n");
+    }
+
+    @Test
+    public void testTrailingDelimiters()
+    {
+        assertSameOutput("a,b,c,d\n1,2,3,4,\n5,6,7,8,,\n9,,,\n");
+        assertSameOutput("a,b,c,d\n1,2,3,4\n,");
+    }
+
+    @Test
+    public void testNonAscii()
+    {
+        assertSameOutput("a,b,c,d\nä€,𝄞,\"　\",　x\n");
+    }
+
+    @Test
+    public void testParseFailures()
+    {
+        assertFailsBoth("a,b,c,d\n1,2,3,4\n5,\"unterminated,7,8\n");
+        assertFailsBoth("a,b,c,d\n1,\"quoted\"x,3,4\n");
+        assertFailsBoth("a,b,c,d\n1,2\n");
+    }
+
+    @Test
+    public void testRandomInputs()
+    {
+        Random random = new Random(7L);
+
+        for (int i = 0; i < 2000; i++)
+        {
+            String input = generate(random, random.nextInt(60));
+
+            if (random.nextInt(30) == 0)
+            {
+                input += ",";
+            }
+
+            if (random.nextInt(50) == 0)
+            {
+                input += "\"unterminated";
+            }
+
+            List<Integer> columns = new ArrayList<>(Arrays.asList(0, 1, 2, 3));
+            Collections.shuffle(columns, random);
+            int [] projection = new int[1 + random.nextInt(columns.size())];
+
+            for (int c = 0; c < projection.length; c++)
+            {
+                projection[c] = columns.get(c);
+            }
+
+            assertSameOutput(input, projection);
+        }
+    }
+
+    private static void assertSameOutput(String input)
+    {
+        assertSameOutput(input, new int [] { 3, 0, 2 });
+        assertSameOutput(input, new int [] { 0, 1, 2, 3 });
+    }
+
+    /**
+     * Projects an input both ways with every buffer size and compares the results
+     * @param input the CSV input including its header
+     * @param projection the input column of each output column
+     */
+    private static void assertSameOutput(String input, int [] projection)
+    {
+        byte [] data = input.getBytes(StandardCharsets.UTF_8);
+        Result expected = parse(data, projection);
+
+        for (int bufferSize: BUFFER_SIZES)
+        {
+            Result actual = project(data, projection, bufferSize);
+            String message = "Buffer size: " + bufferSize + " projection: " +
+                    Arrays.toString(projection) + " input: " + input.replace("\r", "<CR>");
+
+            assertEquals(message, expected.failed, actual.failed);
+
+            if (!expected.failed)
+            {
+                assertEquals(message, expected.rows, actual.rows);
+                assertArrayEquals(message, expected.output, actual.output);
+            }
+        }
+    }
+
+    private static void assertFailsBoth(String input)
+    {
+        int [] projection = { 0, 1, 2, 3 };
+        byte [] data = input.getBytes(StandardCharsets.UTF_8);
+
+        assertTrue("Parser accepted: " + input, parse(data, projection).failed);
+
+        for (int bufferSize: BUFFER_SIZES)
+        {
+            assertTrue("Projector accepted: " + input, project(data, projection, bufferSize).failed);
+        }
+    }
+
+    /**
+     * Projects with CSVParser and CSVPrinter as the Input Lambda reader path does
+     * @param data the input
+     * @param projection the input column of each output column
+     * @return the result
+     */
+    private static Result parse(byte [] data, int [] projection)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStreamWriter writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+            CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+            CSVParser parser = new CSVParser(new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(data), StandardCharsets.UTF_8)),
+                    CSVFormat.DEFAULT.withFirstRecordAsHeader().withHeader(INPUT_COLUMNS));
+
+            String [] row = new String[projection.length];
+            long rows = 0L;
+
+            for (CSVRecord record: parser)
+            {
+                for (int i = 0; i < projection.length; i++)
+                {
+                    row[i] = record.get(projection[i]);
+                }
+
+                printer.printRecord((Object []) row);
+                rows++;
+            }
+
+            printer.flush();
+            return new Result(bytes.toByteArray(), rows, false);
+        }
+        catch (Exception e)
+        {
+            return new Result(null, 0L, true);
+        }
+    }
+
+    private static Result project(byte [] data, int [] projection, int bufferSize)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long rows = new CSVProjector(projection, bufferSize)
+                    .project(new ByteArrayInputStream(data), bytes, true);
+            return new Result(bytes.toByteArray(), rows, false);
+        }
+        catch (Exception e)
+        {
+            return new Result(null, 0L, true);
+        }
+    }
+
+    /**
+     * Generates a CSV input with a header, mixing quoted and unquoted values,
+     * blank lines, extra fields and whitespace after closing quotes
+     * @param random the random source
+     * @param rows the number of rows
+     * @return the input
+     */
+    private static String generate(Random random, int rows)
+    {
+        StringBuilder input = new StringBuilder();
+        String lineEnding = LINE_ENDINGS[random.nextInt(LINE_ENDINGS.length)];
+        input.append("a,b,c,d").append(lineEnding);
+
+        for (int i = 0; i < rows; i++)
+        {
+            if (random.nextInt(20) == 0)
+            {
+                input.append(lineEnding);
+            }
+
+            int fields = INPUT_COLUMNS.length + (random.nextInt(10) == 0 ? random.nextInt(3) : 0);
+
+            for (int f = 0; f < fields; f++)
+            {
+                if (f > 0)
+                {
+                    input.append(',');
+                }
+
+                String value = VALUES[random.nextInt(VALUES.length)];
+                boolean mustQuote = value.contains(",") || value.contains("\n") ||
+                        value.contains("\r") || value.startsWith("\"");
+
+                if (mustQuote || random.nextInt(3) == 0)
+                {
+                    input.append('"').append(value.replace("\"", "\"\"")).append('"');
+
+                    if (random.nextInt(8) == 0)
+                    {
+                        input.append(random.nextBoolean() ? " \t" : "　");
+                    }
+                }
+                else
+                {
+                    input.append(value);
+                }
+            }
+
+            if (i < rows - 1 || random.nextBoolean())
+            {
+                input.append(lineEnding);
+            }
+        }
+
+        return input.toString();
+    }
+}
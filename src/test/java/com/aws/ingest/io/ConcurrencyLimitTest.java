@@ -0,0 +1,71 @@
+package com.aws.ingest.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the limit halves once for a burst of throttled calls
+ * that were in flight together and recovers by one at a time
+ */
+public class ConcurrencyLimitTest
+{
+    @Test
+    public void testBurstHalvesOnce() throws IOException
+    {
+        ConcurrencyLimit limit = new ConcurrencyLimit(8);
+        long [] started = new long[8];
+
+        for (int i = 0; i < started.length; i++)
+        {
+            started[i] = limit.acquire();
+        }
+
+        for (long start: started)
+        {
+            limit.release(start, true);
+        }
+
+        assertEquals(4, limit.getLimit());
+        assertEquals(8L, limit.getThrottleCount());
+
+        /**
+         * A call started after the decrease is a new burst
+         */
+        limit.release(limit.acquire(), true);
+
+        assertEquals(2, limit.getLimit());
+        assertEquals(9L, limit.getThrottleCount());
+    }
+
+    @Test
+    public void testRecoversByOne() throws IOException
+    {
+        ConcurrencyLimit limit = new ConcurrencyLimit(4);
+        limit.release(limit.acquire(), true);
+        limit.release(limit.acquire(), true);
+        assertEquals(1, limit.getLimit());
+
+        int [] expected = { 2, 3, 4, 4 };
+
+        for (int step: expected)
+        {
+            /**
+             * Each limit's worth of successes raises the limit by one up to the maximum
+             */
+            int successes = limit.getLimit();
+
+            for (int i = 0; i < successes; i++)
+            {
+                limit.release(limit.acquire(), false);
+            }
+
+            assertEquals(step, limit.getLimit());
+        }
+
+        limit.release(limit.acquire(), true);
+        assertEquals(2, limit.getLimit());
+    }
+}
@@ -0,0 +1,362 @@
+package com.aws.ingest.io;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An in memory S3 stand in for the calls S3OutputStream makes, with faults
+ * injected into chosen operations. A throttled call fails with 503 SlowDown
+ * before it has any effect, a failed part upload reads half its body before
+ * failing with 500 InternalError, and a lost response fails with 500 after
+ * the call has taken effect. Part bodies are checked against their MD5.
+ */
+class FaultyS3 extends AbstractAmazonS3
+{
+    /**
+     * The operations faults can be injected into
+     */
+    enum Operation
+    {
+        PUT_OBJECT,
+        GET_METADATA,
+        DELETE_OBJECT,
+        INITIATE_UPLOAD,
+        UPLOAD_PART,
+        COMPLETE_UPLOAD,
+        ABORT_UPLOAD
+    }
+
+    private static final int OPERATIONS = Operation.values().length;
+
+    private final Map<String, byte []> objects = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte []>> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * Per operation faults indexed by ordinal
+     */
+    private final AtomicInteger [] throttleNext = new AtomicInteger[OPERATIONS];
+    private final AtomicInteger [] failNext = new AtomicInteger[OPERATIONS];
+    private final AtomicInteger [] loseNext = new AtomicInteger[OPERATIONS];
+
+    private final AtomicLongArray calls = new AtomicLongArray(OPERATIONS);
+
+    FaultyS3()
+    {
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            throttleNext[i] = new AtomicInteger();
+            failNext[i] = new AtomicInteger();
+            loseNext[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Throttles the next calls to an operation with 503 SlowDown
+     * @param operation the operation
+     * @param count the number of calls to throttle
+     * @return the client
+     */
+    FaultyS3 throttleNext(Operation operation, int count)
+    {
+        throttleNext[operation.ordinal()].set(count);
+        return this;
+    }
+
+    /**
+     * Fails the next calls to an operation with 500 InternalError, part uploads
+     * read half of their body first as a connection dropped mid part would
+     * @param operation the operation
+     * @param count the number of calls to fail
+     * @return the client
+     */
+    FaultyS3 failNext(Operation operation, int count)
+    {
+        failNext[operation.ordinal()].set(count);
+        return this;
+    }
+
+    /**
+     * Makes the next calls to an operation take effect then fail with 500 InternalError
+     * @param operation the operation
+     * @param count the number of responses to lose
+     * @return the client
+     */
+    FaultyS3 loseNext(Operation operation, int count)
+    {
+        loseNext[operation.ordinal()].set(count);
+        return this;
+    }
+
+    long getCallCount(Operation operation)
+    {
+        return calls.get(operation.ordinal());
+    }
+
+    byte [] getObject(String key)
+    {
+        return objects.get(key);
+    }
+
+    int getUploadCount()
+    {
+        return uploads.size();
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request)
+    {
+        inject(Operation.PUT_OBJECT, request.getInputStream());
+
+        byte [] data = read(request.getInputStream());
+        checkDigest(data, request.getMetadata().getContentMD5());
+        store(request.getKey(), data, DigestUtils.md5Hex(data));
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(etags.get(request.getKey()));
+        return lost(Operation.PUT_OBJECT, result);
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request)
+    {
+        inject(Operation.GET_METADATA, null);
+
+        String etag = etags.get(request.getKey());
+
+        if (etag == null)
+        {
+            throw error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader(Headers.ETAG, etag);
+        metadata.setContentLength(objects.get(request.getKey()).length);
+        return lost(Operation.GET_METADATA, metadata);
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucket, String key)
+    {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucket, key));
+    }
+
+    @Override
+    public void deleteObject(DeleteObjectRequest request)
+    {
+        inject(Operation.DELETE_OBJECT, null);
+        objects.remove(request.getKey());
+        etags.remove(request.getKey());
+        lost(Operation.DELETE_OBJECT, null);
+    }
+
+    @Override
+    public void deleteObject(String bucket, String key)
+    {
+        deleteObject(new DeleteObjectRequest(bucket, key));
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request)
+    {
+        inject(Operation.INITIATE_UPLOAD, null);
+
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setUploadId(UUID.randomUUID().toString());
+        uploads.put(result.getUploadId(), new ConcurrentHashMap<>());
+        return lost(Operation.INITIATE_UPLOAD, result);
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request)
+    {
+        inject(Operation.UPLOAD_PART, request.getInputStream());
+
+        byte [] data = read(request.getInputStream());
+        checkDigest(data, request.getMd5Digest());
+        getUpload(request.getUploadId()).put(request.getPartNumber(), data);
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5Hex(data));
+        return lost(Operation.UPLOAD_PART, result);
+    }
+
+    /**
+     * Completes an upload from the listed parts, with the ETag
+     * S3 gives multipart objects derived from the part ETags
+     */
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request)
+    {
+        inject(Operation.COMPLETE_UPLOAD, null);
+
+        Map<Integer, byte []> parts = new TreeMap<>(getUpload(request.getUploadId()));
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        MessageDigest partsDigest = DigestUtils.getMd5Digest();
+
+        for (PartETag partETag: request.getPartETags())
+        {
+            byte [] part = parts.get(partETag.getPartNumber());
+
+            if (part == null || !DigestUtils.md5Hex(part).equals(partETag.getETag()))
+            {
+                throw error(400, "InvalidPart", "Part not found: " + partETag.getPartNumber());
+            }
+
+            data.write(part, 0, part.length);
+            partsDigest.update(DigestUtils.md5(part));
+        }
+
+        uploads.remove(request.getUploadId());
+        store(request.getKey(), data.toByteArray(),
+                Hex.encodeHexString(partsDigest.digest()) + "-" + request.getPartETags().size());
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setETag(etags.get(request.getKey()));
+        return lost(Operation.COMPLETE_UPLOAD, result);
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request)
+    {
+        inject(Operation.ABORT_UPLOAD, null);
+        getUpload(request.getUploadId());
+        uploads.remove(request.getUploadId());
+        lost(Operation.ABORT_UPLOAD, null);
+    }
+
+    private Map<Integer, byte []> getUpload(String uploadId)
+    {
+        Map<Integer, byte []> parts = uploadId != null ? uploads.get(uploadId) : null;
+
+        if (parts == null)
+        {
+            throw error(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+
+        return parts;
+    }
+
+    private void store(String key, byte [] data, String etag)
+    {
+        objects.put(key, data);
+        etags.put(key, etag);
+    }
+
+    /**
+     * Applies the faults that fail a call before it takes effect
+     * @param operation the operation called
+     * @param body the request body or null
+     */
+    private void inject(Operation operation, InputStream body)
+    {
+        int index = operation.ordinal();
+        calls.incrementAndGet(index);
+
+        if (take(throttleNext[index]))
+        {
+            throw error(503, "SlowDown", "Please reduce your request rate.");
+        }
+
+        if (take(failNext[index]))
+        {
+            if (body != null)
+            {
+                try
+                {
+                    IOUtils.skipFully(body, body.available() / 2);
+                }
+                catch (IOException e)
+                {
+                    throw new AmazonServiceException("Failed to read request", e);
+                }
+            }
+
+            throw error(500, "InternalError", "We encountered an internal error. Please try again.");
+        }
+    }
+
+    /**
+     * Fails a call that has taken effect if its response is to be lost
+     * @param operation the operation called
+     * @param result the result
+     * @param <T> the result type
+     * @return the result
+     */
+    private <T> T lost(Operation operation, T result)
+    {
+        if (take(loseNext[operation.ordinal()]))
+        {
+            throw error(500, "InternalError", "We encountered an internal error. Please try again.");
+        }
+
+        return result;
+    }
+
+    private static boolean take(AtomicInteger remaining)
+    {
+        return remaining.getAndUpdate(count -> Math.max(0, count - 1)) > 0;
+    }
+
+    private static byte [] read(InputStream body)
+    {
+        try
+        {
+            return IOUtils.toByteArray(body);
+        }
+        catch (IOException e)
+        {
+            throw new AmazonServiceException("Failed to read request", e);
+        }
+    }
+
+    private static void checkDigest(byte [] data, String contentMD5)
+    {
+        if (contentMD5 != null && !contentMD5.equals(Base64.encodeBase64String(DigestUtils.md5(data))))
+        {
+            throw error(400, "BadDigest", "The Content-MD5 you specified did not match what we received.");
+        }
+    }
+
+    private static AmazonS3Exception error(int statusCode, String errorCode, String message)
+    {
+        AmazonS3Exception e = new AmazonS3Exception(message);
+        e.setStatusCode(statusCode);
+        e.setErrorCode(errorCode);
+        e.setErrorType(statusCode >= 500 ? AmazonServiceException.ErrorType.Service :
+                AmazonServiceException.ErrorType.Client);
+        e.setServiceName("Amazon S3");
+        return e;
+    }
+}
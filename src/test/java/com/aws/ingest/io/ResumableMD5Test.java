@@ -0,0 +1,89 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.exception.IngestException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests a hash saved and restored at any length matches MessageDigest,
+ * including lengths either side of the 56 byte padding limit and the
+ * 64 byte block size where the pending bytes in the state change
+ */
+public class ResumableMD5Test
+{
+    private static final int [] LENGTHS = { 0, 1, 55, 56, 57, 63, 64, 65, 119, 120, 127, 128, 129, 1000, 65536, 100003 };
+
+    private static final byte [] DATA = generate(2 * 100003);
+
+    @Test
+    public void testDigest()
+    {
+        for (int length: LENGTHS)
+        {
+            ResumableMD5 md5 = new ResumableMD5();
+            md5.update(DATA, 0, length);
+            assertArrayEquals("Length: " + length, DigestUtils.md5(Arrays.copyOf(DATA, length)), md5.digest());
+        }
+    }
+
+    @Test
+    public void testStateRoundTrip()
+    {
+        for (int length: LENGTHS)
+        {
+            for (int tail: LENGTHS)
+            {
+                ResumableMD5 md5 = new ResumableMD5();
+                update(md5, 0, length);
+
+                ResumableMD5 restored = ResumableMD5.fromState(md5.getState());
+                assertEquals(length, restored.getLength());
+                assertEquals(md5.getState(), restored.getState());
+
+                update(restored, length, tail);
+
+                String message = "Length: " + length + " tail: " + tail;
+                assertArrayEquals(message, DigestUtils.md5(Arrays.copyOf(DATA, length + tail)), restored.digest());
+            }
+        }
+    }
+
+    @Test(expected = IngestException.class)
+    public void testTruncatedState()
+    {
+        ResumableMD5 md5 = new ResumableMD5();
+        md5.update(DATA, 0, 70);
+        String state = md5.getState();
+        ResumableMD5.fromState(state.substring(0, state.length() - 4));
+    }
+
+    /**
+     * Updates in uneven slices so blocks are completed across calls
+     */
+    private static void update(ResumableMD5 md5, int offset, int length)
+    {
+        int end = offset + length;
+        int slice = 1;
+
+        while (offset < end)
+        {
+            int count = Math.min(slice, end - offset);
+            md5.update(DATA, offset, count);
+            offset += count;
+            slice = slice * 3 + 1;
+        }
+    }
+
+    private static byte [] generate(int length)
+    {
+        byte [] data = new byte[length];
+        new Random(5L).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,169 @@
+package com.aws.ingest.io;
+
+import com.aws.ingest.io.FaultyS3.Operation;
+import com.aws.ingest.metrics.Metric;
+import com.aws.ingest.metrics.Metrics;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests S3OutputStream retries against an in memory S3 stand in that
+ * throttles, fails part way through a part or loses responses
+ */
+public class S3OutputStreamTest
+{
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "processed/data.csv";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFailedPartIsResentFromBuffer() throws IOException
+    {
+        FaultyS3 s3 = new FaultyS3().failNext(Operation.UPLOAD_PART, 2);
+        byte [] data = generate(2 * S3OutputStream.MIN_PART_SIZE + 12345);
+
+        S3OutputStream out = newStream(s3).withUploadExecutor(executor, 2);
+        out.write(data);
+        out.close();
+
+        assertArrayEquals(data, s3.getObject(KEY));
+        assertArrayEquals(DigestUtils.md5(data), out.getDigest());
+        assertEquals(5L, s3.getCallCount(Operation.UPLOAD_PART));
+        assertEquals(2L, out.getRetryCount());
+        assertEquals(0L, out.getThrottleCount());
+        assertEquals(0, s3.getUploadCount());
+    }
+
+    @Test
+    public void testAbortStopsBackoff() throws Exception
+    {
+        FaultyS3 s3 = new FaultyS3().throttleNext(Operation.INITIATE_UPLOAD, 5);
+        S3OutputStream out = new S3OutputStream(s3, BUCKET, KEY, S3OutputStream.MIN_PART_SIZE)
+                .withRetryPolicy(5, 60000L, 60000L);
+
+        Future<?> start = executor.submit(() ->
+        {
+            out.start();
+            return null;
+        });
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+
+        while (out.getRetryCount() == 0L && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10L);
+        }
+
+        assertEquals(1L, out.getRetryCount());
+
+        long aborted = System.nanoTime();
+        out.abort();
+
+        try
+        {
+            start.get(10L, TimeUnit.SECONDS);
+            fail("Start succeeded after abort");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        assertTrue(System.nanoTime() - aborted < TimeUnit.SECONDS.toNanos(5L));
+        assertEquals(1L, s3.getCallCount(Operation.INITIATE_UPLOAD));
+        assertNull(out.getUploadId());
+    }
+
+    @Test
+    public void testRetryAndThrottleCounts() throws IOException
+    {
+        FaultyS3 s3 = new FaultyS3()
+                .throttleNext(Operation.INITIATE_UPLOAD, 1)
+                .throttleNext(Operation.UPLOAD_PART, 2)
+                .failNext(Operation.COMPLETE_UPLOAD, 1);
+        ConcurrencyLimit limit = new ConcurrencyLimit(4);
+        Metrics metrics = new Metrics();
+        byte [] data = generate(S3OutputStream.MIN_PART_SIZE + 1);
+
+        S3OutputStream out = newStream(s3).withConcurrencyLimit(limit).withMetrics(metrics);
+        out.write(data);
+        out.close();
+
+        assertArrayEquals(data, s3.getObject(KEY));
+        assertEquals(4L, out.getRetryCount());
+        assertEquals(3L, out.getThrottleCount());
+        assertEquals(4L, metrics.get(Metric.UPLOAD_RETRIES));
+        assertEquals(3L, metrics.get(Metric.UPLOAD_THROTTLES));
+        assertEquals(3L, limit.getThrottleCount());
+        assertTrue(limit.getLimit() < limit.getMaxLimit());
+    }
+
+    @Test
+    public void testLostCompleteResponse() throws IOException
+    {
+        FaultyS3 s3 = new FaultyS3().loseNext(Operation.COMPLETE_UPLOAD, 1);
+        byte [] data = generate(S3OutputStream.MIN_PART_SIZE + 1);
+
+        S3OutputStream out = newStream(s3);
+        out.write(data);
+        out.close();
+
+        assertArrayEquals(data, s3.getObject(KEY));
+        assertEquals(2L, s3.getCallCount(Operation.COMPLETE_UPLOAD));
+        assertEquals(1L, s3.getCallCount(Operation.GET_METADATA));
+        assertTrue(out.getETag().endsWith("-2"));
+    }
+
+    @Test
+    public void testRetriesExhausted()
+    {
+        FaultyS3 s3 = new FaultyS3().failNext(Operation.PUT_OBJECT, 3);
+
+        try
+        {
+            S3OutputStream out = newStream(s3).withRetryPolicy(3, 1L, 1L);
+            out.write(generate(100));
+            out.close();
+            fail("Upload succeeded after every attempt failed");
+        }
+        catch (Exception e)
+        {
+            assertEquals(3L, s3.getCallCount(Operation.PUT_OBJECT));
+            assertNull(s3.getObject(KEY));
+        }
+    }
+
+    private static S3OutputStream newStream(FaultyS3 s3)
+    {
+        return new S3OutputStream(s3, BUCKET, KEY, S3OutputStream.MIN_PART_SIZE).withRetryPolicy(5, 1L, 10L);
+    }
+
+    private static byte [] generate(int length)
+    {
+        byte [] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
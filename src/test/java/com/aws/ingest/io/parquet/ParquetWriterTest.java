@@ -0,0 +1,272 @@
+package com.aws.ingest.io.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips rows through ParquetWriter and the parquet-hadoop reader, an
+ * independent decoder of the footer, page headers, dictionary and plain
+ * pages and RLE bit packed ids, with every page compression codec
+ */
+public class ParquetWriterTest
+{
+    private static final List<String> COLUMNS = Arrays.asList("id", "status", "constant", "code", "address");
+
+    private static final String [] STATUSES = { "active", "", "closed, pending", "ä€𝄞", "\"quoted\"" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDictionaryEncoded() throws IOException
+    {
+        List<String []> rows = generate(5000, false);
+
+        for (ParquetCompression compression: ParquetCompression.values())
+        {
+            File file = write(rows, compression, ParquetWriter.DEFAULT_ROW_GROUP_SIZE);
+            ParquetMetadata footer = readFooter(file);
+
+            assertEquals(1, footer.getBlocks().size());
+
+            for (ColumnChunkMetaData column: footer.getBlocks().get(0).getColumns())
+            {
+                assertEquals(codec(compression), column.getCodec());
+                assertTrue(column.getPath().toDotString(), usesDictionary(column));
+                assertTrue(column.hasDictionaryPage());
+            }
+
+            assertRows(rows, file);
+        }
+    }
+
+    /**
+     * Unique values outgrow the 1MB dictionary so the column falls back to
+     * plain encoding across several pages while the others stay dictionary encoded
+     */
+    @Test
+    public void testPlainFallback() throws IOException
+    {
+        List<String []> rows = generate(40000, true);
+
+        for (ParquetCompression compression: ParquetCompression.values())
+        {
+            File file = write(rows, compression, ParquetWriter.DEFAULT_ROW_GROUP_SIZE);
+            ParquetMetadata footer = readFooter(file);
+
+            assertEquals(1, footer.getBlocks().size());
+
+            ColumnChunkMetaData address = footer.getBlocks().get(0).getColumns().get(4);
+            assertTrue(address.getEncodings().contains(Encoding.PLAIN));
+            assertFalse(usesDictionary(address));
+            assertFalse(address.hasDictionaryPage());
+            assertTrue(address.getTotalUncompressedSize() > 2L * 1024L * 1024L);
+
+            ColumnChunkMetaData status = footer.getBlocks().get(0).getColumns().get(1);
+            assertTrue(usesDictionary(status));
+
+            assertRows(rows, file);
+        }
+    }
+
+    @Test
+    public void testMultipleRowGroups() throws IOException
+    {
+        List<String []> rows = generate(30000, true);
+
+        for (ParquetCompression compression: ParquetCompression.values())
+        {
+            File file = write(rows, compression, 256L * 1024L);
+            ParquetMetadata footer = readFooter(file);
+
+            assertTrue(footer.getBlocks().size() > 4);
+
+            long rowCount = 0L;
+            long offset = 4L;
+
+            for (BlockMetaData block: footer.getBlocks())
+            {
+                assertEquals(offset, block.getStartingPos());
+                offset += block.getCompressedSize();
+                rowCount += block.getRowCount();
+            }
+
+            assertEquals(rows.size(), rowCount);
+            assertRows(rows, file);
+        }
+    }
+
+    @Test
+    public void testSchema() throws IOException
+    {
+        File file = write(generate(10, false), ParquetCompression.GZIP, ParquetWriter.DEFAULT_ROW_GROUP_SIZE);
+        MessageType schema = readFooter(file).getFileMetaData().getSchema();
+
+        assertEquals(COLUMNS.size(), schema.getFieldCount());
+
+        for (int i = 0; i < COLUMNS.size(); i++)
+        {
+            Type field = schema.getType(i);
+            assertEquals(COLUMNS.get(i), field.getName());
+            assertTrue(field.isRepetition(Type.Repetition.REQUIRED));
+            assertEquals(PrimitiveType.PrimitiveTypeName.BINARY, field.asPrimitiveType().getPrimitiveTypeName());
+            assertEquals(LogicalTypeAnnotation.stringType(), field.getLogicalTypeAnnotation());
+        }
+    }
+
+    @Test
+    public void testNoRows() throws IOException
+    {
+        File file = write(new ArrayList<>(), ParquetCompression.ZSTD, ParquetWriter.DEFAULT_ROW_GROUP_SIZE);
+
+        assertEquals(0, readFooter(file).getBlocks().size());
+        assertRows(new ArrayList<>(), file);
+    }
+
+    private File write(List<String []> rows, ParquetCompression compression, long rowGroupSize) throws IOException
+    {
+        File file = folder.newFile();
+
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            ParquetWriter writer = new ParquetWriter(out, COLUMNS)
+                    .withCompression(compression)
+                    .withRowGroupSize(rowGroupSize);
+
+            for (String [] row: rows)
+            {
+                writer.writeRow(row);
+            }
+
+            writer.finish();
+            assertEquals(rows.size(), writer.getRowCount());
+        }
+
+        return file;
+    }
+
+    private static ParquetMetadata readFooter(File file) throws IOException
+    {
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                HadoopInputFile.fromPath(new Path(file.toURI()), new Configuration(false))))
+        {
+            return reader.getFooter();
+        }
+    }
+
+    /**
+     * Reads every row back and compares it with the rows written
+     * @param expected the rows written
+     * @param file the Parquet file
+     * @throws IOException thrown on failure to read
+     */
+    private static void assertRows(List<String []> expected, File file) throws IOException
+    {
+        List<String []> actual = new ArrayList<>();
+
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI()))
+                .withConf(new Configuration(false)).build())
+        {
+            Group group;
+
+            while ((group = reader.read()) != null)
+            {
+                String [] row = new String[COLUMNS.size()];
+
+                for (int i = 0; i < row.length; i++)
+                {
+                    row[i] = group.getString(i, 0);
+                }
+
+                actual.add(row);
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertArrayEquals("Row: " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static boolean usesDictionary(ColumnChunkMetaData column)
+    {
+        return column.getEncodings().stream().anyMatch(Encoding::usesDictionary);
+    }
+
+    private static CompressionCodecName codec(ParquetCompression compression)
+    {
+        switch (compression)
+        {
+            case GZIP:
+                return CompressionCodecName.GZIP;
+            case ZSTD:
+                return CompressionCodecName.ZSTD;
+            default:
+                return CompressionCodecName.UNCOMPRESSED;
+        }
+    }
+
+    /**
+     * Generates rows with an id, a few statuses, a single constant value and
+     * 300 codes so dictionary ids need 9 bits, and an address that is either
+     * repeated or unique per row
+     * @param count the number of rows
+     * @param uniqueAddresses true to give each row a distinct address
+     * @return the rows
+     */
+    private static List<String []> generate(int count, boolean uniqueAddresses)
+    {
+        Random random = new Random(count);
+        List<String []> rows = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            String address = uniqueAddresses ?
+                    "Lot " + i + ", " + random.nextLong() + " Jones St\nSuburb " + random.nextInt() :
+                    "Lot " + (i % 10) + ", 37 Jones St";
+
+            rows.add(new String [] {
+                Integer.toString(i % 5000),
+                STATUSES[random.nextInt(STATUSES.length)],
+                "constant",
+                "C" + random.nextInt(300),
+                address
+            });
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,104 @@
+package com.aws.ingest.lambda.input;
+
+import com.aws.ingest.io.MD5InputStream;
+import com.aws.ingest.io.ResumableMD5;
+import com.aws.ingest.manifest.ManifestEntry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests a resumed entry computes the MD5 of the whole input when the saved
+ * input state covers bytes read ahead of the boundary the input is read from
+ */
+public class EntryCheckpointerTest
+{
+    private static final int BOUNDARY = 100003;
+
+    private static final byte [] DATA = generate(300000);
+
+    @Test
+    public void testResumeWithReadAhead() throws IOException
+    {
+        int [] readAheads = { 0, 1, 63, 64, 8192, 65536, 150000 };
+
+        for (int readAhead: readAheads)
+        {
+            for (int chunk: new int [] { 1000, 70000 })
+            {
+                String message = "Read ahead: " + readAhead + " chunk: " + chunk;
+                EntryCheckpointer checkpointer = resume(BOUNDARY, BOUNDARY + readAhead);
+
+                assertTrue(message, checkpointer.isResumed());
+                assertEquals(message, BOUNDARY, checkpointer.getInputOffset());
+
+                MD5InputStream digestIn = new MD5InputStream(
+                        new ByteArrayInputStream(DATA, BOUNDARY, DATA.length - BOUNDARY),
+                        checkpointer.getInputHasher());
+                readFully(digestIn, chunk);
+
+                assertArrayEquals(message, DigestUtils.md5(DATA), digestIn.getDigest());
+            }
+        }
+    }
+
+    @Test
+    public void testResumeAtStart() throws IOException
+    {
+        EntryCheckpointer checkpointer = resume(0, 4096);
+        MD5InputStream digestIn = new MD5InputStream(new ByteArrayInputStream(DATA), checkpointer.getInputHasher());
+        readFully(digestIn, 4096);
+
+        assertArrayEquals(DigestUtils.md5(DATA), digestIn.getDigest());
+    }
+
+    /**
+     * Saves the input state as a first attempt does, after consuming bytes past
+     * the boundary through the digest stream, then resumes from it
+     * @param boundary the input offset of the first record after the checkpoint
+     * @param consumed the bytes consumed when the state was saved
+     * @return the resumed checkpointer
+     * @throws IOException thrown on failure to read
+     */
+    private static EntryCheckpointer resume(int boundary, int consumed) throws IOException
+    {
+        ResumableMD5 inputMD5 = new ResumableMD5();
+        MD5InputStream firstAttempt = new MD5InputStream(new ByteArrayInputStream(DATA, 0, consumed), inputMD5);
+        readFully(firstAttempt, 5000);
+        firstAttempt.hashConsumed();
+        assertEquals(consumed, inputMD5.getLength());
+
+        ManifestEntry entry = new ManifestEntry();
+        entry.setFileName("customer.csv");
+
+        EntryCheckpoint saved = new EntryCheckpoint(entry, "etag", "processed/customer.csv");
+        saved.setInputOffset(boundary);
+        saved.setInputDigestState(inputMD5.getState());
+
+        return new EntryCheckpointer(null, entry, "etag", "processed/customer.csv", saved, 0, 0L);
+    }
+
+    private static void readFully(InputStream in, int chunk) throws IOException
+    {
+        byte [] buffer = new byte[chunk];
+
+        while (in.read(buffer, 0, chunk) != -1)
+        {
+        }
+    }
+
+    private static byte [] generate(int length)
+    {
+        byte [] data = new byte[length];
+        new Random(3L).nextBytes(data);
+        return data;
+    }
+}
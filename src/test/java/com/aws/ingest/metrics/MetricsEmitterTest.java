@@ -0,0 +1,178 @@
+package com.aws.ingest.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Captures per entry and per manifest records in an in memory sink, emitted
+ * as the Input Lambda emits them, and checks the embedded metric format
+ */
+public class MetricsEmitterTest
+{
+    private static final String NAMESPACE = "IngestPipelineTest";
+
+    @Test
+    public void testEntryAndManifestRecords()
+    {
+        List<String> records = new ArrayList<>();
+        MetricsEmitter emitter = new MetricsEmitter(NAMESPACE, records::add);
+
+        Metrics manifestMetrics = new Metrics();
+
+        for (int i = 0; i < 2; i++)
+        {
+            Metrics entryMetrics = new Metrics();
+            entryMetrics.add(Metric.INPUT_BYTES, 1000L);
+            entryMetrics.add(Metric.OUTPUT_BYTES, 600L);
+            entryMetrics.add(Metric.ROWS_PARSED, 10L);
+            entryMetrics.add(Metric.ROWS_WRITTEN, 9L);
+            entryMetrics.add(Metric.ROWS_REJECTED, 1L);
+            entryMetrics.add(Metric.PARTS_UPLOADED, 2L);
+            entryMetrics.add(Metric.ENTRIES, 1L);
+            entryMetrics.add(Metric.UPLOAD_PART_TIME, TimeUnit.MILLISECONDS.toNanos(250L));
+            entryMetrics.stop();
+            manifestMetrics.addAll(entryMetrics);
+
+            emitter.emit(entryMetrics, dimensions("Entry", "customer"), properties("customer-" + i + ".csv"));
+        }
+
+        manifestMetrics.stop();
+        emitter.emit(manifestMetrics, dimensions("Manifest", null), properties(null));
+
+        assertEquals(3, records.size());
+
+        JsonObject entry = parse(records.get(0));
+        assertDirective(entry, "Scope", "DataType");
+        assertEquals("Entry", entry.get("Scope").getAsString());
+        assertEquals("customer", entry.get("DataType").getAsString());
+        assertEquals("customer-0.csv", entry.get("FileName").getAsString());
+        assertEquals("Success", entry.get("Status").getAsString());
+        assertEquals(1000L, entry.get("InputBytes").getAsLong());
+        assertEquals(9L, entry.get("RowsWritten").getAsLong());
+        assertEquals(1L, entry.get("RowsRejected").getAsLong());
+        assertEquals(250.0, entry.get("UploadPartTime").getAsDouble(), 1.0E-9);
+
+        JsonObject manifest = parse(records.get(2));
+        assertDirective(manifest, "Scope");
+        assertEquals("Manifest", manifest.get("Scope").getAsString());
+        assertFalse(manifest.has("DataType"));
+        assertFalse(manifest.has("FileName"));
+        assertEquals(2000L, manifest.get("InputBytes").getAsLong());
+        assertEquals(1200L, manifest.get("OutputBytes").getAsLong());
+        assertEquals(20L, manifest.get("RowsParsed").getAsLong());
+        assertEquals(4L, manifest.get("PartsUploaded").getAsLong());
+        assertEquals(2L, manifest.get("Entries").getAsLong());
+        assertEquals(500.0, manifest.get("UploadPartTime").getAsDouble(), 1.0E-9);
+    }
+
+    @Test
+    public void testTimestamp()
+    {
+        Metrics metrics = new Metrics();
+        metrics.stop();
+
+        JsonObject record = parse(new MetricsEmitter(NAMESPACE, line -> { })
+                .format(metrics, dimensions("Entry", "customer"), properties("customer.csv"), 1579000000000L));
+
+        assertEquals(1579000000000L, record.getAsJsonObject("_aws").get("Timestamp").getAsLong());
+    }
+
+    /**
+     * Checks the directive declares every metric with its unit, in the namespace
+     * with a single dimension set, and that each metric and dimension has a value
+     * @param record the record
+     * @param dimensionNames the expected dimension names in order
+     */
+    private static void assertDirective(JsonObject record, String ... dimensionNames)
+    {
+        JsonObject aws = record.getAsJsonObject("_aws");
+        assertTrue(aws.get("Timestamp").getAsLong() > 0L);
+
+        JsonArray directives = aws.getAsJsonArray("CloudWatchMetrics");
+        assertEquals(1, directives.size());
+
+        JsonObject directive = directives.get(0).getAsJsonObject();
+        assertEquals(NAMESPACE, directive.get("Namespace").getAsString());
+
+        JsonArray dimensionSets = directive.getAsJsonArray("Dimensions");
+        assertEquals(1, dimensionSets.size());
+
+        JsonArray dimensionSet = dimensionSets.get(0).getAsJsonArray();
+        assertEquals(dimensionNames.length, dimensionSet.size());
+
+        for (int i = 0; i < dimensionNames.length; i++)
+        {
+            assertEquals(dimensionNames[i], dimensionSet.get(i).getAsString());
+            assertTrue(record.get(dimensionNames[i]).isJsonPrimitive());
+        }
+
+        Map<String, String> units = new HashMap<>();
+
+        for (JsonElement definition: directive.getAsJsonArray("Metrics"))
+        {
+            units.put(definition.getAsJsonObject().get("Name").getAsString(),
+                    definition.getAsJsonObject().get("Unit").getAsString());
+        }
+
+        for (Metric metric: Metric.values())
+        {
+            assertEquals(metric.getName(), metric.getUnit().getName(), units.get(metric.getName()));
+            assertTrue(metric.getName(), record.get(metric.getName()).getAsJsonPrimitive().isNumber());
+        }
+
+        assertEquals("Milliseconds", units.get("ElapsedTime"));
+        assertEquals("Bytes", units.get("InputBytes"));
+        assertEquals("Count", units.get("RowsWritten"));
+        assertEquals("Percent", units.get("GcShare"));
+        assertTrue(record.get("GcShare").getAsJsonPrimitive().isNumber());
+        assertEquals(Metric.values().length + 1, units.size());
+    }
+
+    private static Map<String, String> dimensions(String scope, String dataType)
+    {
+        Map<String, String> dimensions = new LinkedHashMap<>();
+        dimensions.put("Scope", scope);
+
+        if (dataType != null)
+        {
+            dimensions.put("DataType", dataType);
+        }
+
+        return dimensions;
+    }
+
+    private static Map<String, Object> properties(String fileName)
+    {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("Manifest", "source/batch/manifest.json");
+        properties.put("SourceSystem", "source");
+
+        if (fileName != null)
+        {
+            properties.put("FileName", fileName);
+        }
+
+        properties.put("Status", "Success");
+        return properties;
+    }
+
+    private static JsonObject parse(String record)
+    {
+        assertFalse("Records must be a single line", record.contains("\n"));
+        return JsonParser.parseString(record).getAsJsonObject();
+    }
+}